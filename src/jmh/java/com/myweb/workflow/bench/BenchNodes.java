@@ -0,0 +1,126 @@
+package com.myweb.workflow.bench;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.myweb.workflow.ExecutionContext;
+import com.myweb.workflow.NodeExecutionResult;
+import com.myweb.workflow.NodeInputs;
+import com.myweb.workflow.TaskNodeFactory;
+import com.myweb.workflow.TaskTriggerRule;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.nodes.AbstractNode;
+
+/**
+ * 基准测试使用的节点：
+ * <ul>
+ *     <li>bench-noop: 什么也不做，只用于衡量调度本身的开销</li>
+ *     <li>bench-cpu: 执行固定量的 CPU 计算(data.cpuTokens)</li>
+ *     <li>bench-branch: 类似 IfElse 的分支节点，只激活 data.branches 中的一个下游</li>
+ * </ul>
+ * 节点的触发规则可以通过 data.triggerRule 指定。
+ */
+public final class BenchNodes {
+    public static final String NOOP = "bench-noop";
+    public static final String CPU = "bench-cpu";
+    public static final String BRANCH = "bench-branch";
+
+    public static final String CPU_TOKENS = "cpuTokens";
+    public static final String BRANCHES = "branches";
+    public static final String TRIGGER_RULE = "triggerRule";
+
+    private static volatile boolean registered = false;
+
+    private BenchNodes() {
+    }
+
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        TaskNodeFactory.register(NOOP, NoopNode::new);
+        TaskNodeFactory.register(CPU, CpuNode::new);
+        TaskNodeFactory.register(BRANCH, BranchNode::new);
+        registered = true;
+    }
+
+    static class NoopNode extends AbstractNode {
+        private final TaskTriggerRule triggerRule;
+
+        NoopNode(GNode gNode) {
+            super(gNode);
+            Object rule = gNode.getData().get(TRIGGER_RULE);
+            this.triggerRule = rule != null ? TaskTriggerRule.valueOf(rule.toString()) : TaskTriggerRule.ALL_SUCCESS;
+        }
+
+        @Override
+        public String getType() {
+            return NOOP;
+        }
+
+        @Override
+        public TaskTriggerRule getTriggerRule() {
+            return this.triggerRule;
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return 0;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            return NodeExecutionResult.success();
+        }
+    }
+
+    static class CpuNode extends NoopNode {
+        private final long tokens;
+
+        CpuNode(GNode gNode) {
+            super(gNode);
+            Object tokens = gNode.getData().get(CPU_TOKENS);
+            this.tokens = tokens instanceof Number ? ((Number) tokens).longValue() : 1000L;
+        }
+
+        @Override
+        public String getType() {
+            return CPU;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            Blackhole.consumeCPU(this.tokens);
+            return NodeExecutionResult.success();
+        }
+    }
+
+    static class BranchNode extends NoopNode {
+        private final List<String> activated;
+
+        @SuppressWarnings("unchecked")
+        BranchNode(GNode gNode) {
+            super(gNode);
+            List<String> branches = (List<String>) gNode.getData().get(BRANCHES);
+            if (branches == null || branches.isEmpty()) {
+                this.activated = Collections.emptyList();
+            } else {
+                // 每个分支节点固定选择一个下游，保证每次执行的路径相同
+                this.activated = Collections.singletonList(
+                        branches.get(Math.floorMod(gNode.getId().hashCode(), branches.size())));
+            }
+        }
+
+        @Override
+        public String getType() {
+            return BRANCH;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            return NodeExecutionResult.success().setNextNodesToActivate(this.activated);
+        }
+    }
+}
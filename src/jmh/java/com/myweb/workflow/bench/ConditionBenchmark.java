@@ -0,0 +1,97 @@
+package com.myweb.workflow.bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.myweb.workflow.ExecutionContext;
+import com.myweb.workflow.NodeExecutionResult;
+import com.myweb.workflow.NodeInputs;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.nodes.ConditionExpression;
+import com.myweb.workflow.nodes.IfElseNode;
+
+/**
+ * 分支条件求值基准测试.
+ * <ul>
+ *     <li>compiled: 预编译的条件表达式每次求值的耗时</li>
+ *     <li>interpreted: 每次求值都重新解析表达式的耗时(即不缓存编译结果时的开销)</li>
+ *     <li>ifElseNode: 4 个分支的 IfElseNode 一次执行的耗时(依次求值直到命中，包括命中计数)</li>
+ * </ul>
+ * 运行方式：
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.include=ConditionBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConditionBenchmark {
+
+    @Param({
+            "context.order.amount >= 100",
+            "context.order.amount >= 100 && (context.level == 'vip' || context.order.tags contains 'urgent')",
+            "context.user.name startsWith 'A' || context.user.email matches '.*@example\\\\.com'"
+    })
+    public String condition;
+
+    private ConditionExpression compiled;
+    private IfElseNode ifElseNode;
+    private ExecutionContext context;
+    private NodeInputs inputs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.compiled = ConditionExpression.compile(this.condition);
+
+        final Map<String, Object> data = new HashMap<>();
+        data.put("branches", List.of(
+                Map.of("condition", "context.level == 'svip'", "targetNodeId", "a"),
+                Map.of("condition", "context.order.amount > 10000", "targetNodeId", "b"),
+                Map.of("condition", "context.order.tags contains 'refund'", "targetNodeId", "c"),
+                Map.of("condition", this.condition, "targetNodeId", "d")));
+        data.put("elseTargetNodeId", "e");
+        final GNode gNode = new GNode();
+        gNode.setId("branch");
+        gNode.setType("branch");
+        gNode.setData(data);
+        this.ifElseNode = new IfElseNode(gNode);
+
+        this.context = new ExecutionContext();
+        this.context.put("level", "vip");
+        this.context.put("order", Map.of("amount", 128, "tags", List.of("new", "urgent")));
+        this.context.put("user", Map.of("name", "Bob", "email", "bob@example.com"));
+        this.inputs = new NodeInputs();
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return this.compiled.test(this.context, this.inputs);
+    }
+
+    @Benchmark
+    public boolean interpreted() {
+        return ConditionExpression.compile(this.condition).test(this.context, this.inputs);
+    }
+
+    @Benchmark
+    public NodeExecutionResult ifElseNode() throws Exception {
+        return this.ifElseNode.call(this.context, this.inputs);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ConditionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,175 @@
+package com.myweb.workflow.bench;
+
+import java.util.*;
+
+import com.myweb.workflow.TaskTriggerRule;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+
+/**
+ * 基准测试使用的合成DAG图
+ */
+public final class GraphGenerators {
+
+    public enum GraphShape {
+        /** 长链: n0 -> n1 -> ... -> n(k) */
+        CHAIN,
+        /** 宽扇出/扇入: source -> (k 个节点) -> sink */
+        FAN_OUT_IN,
+        /** 串联的菱形: a -> (b, c) -> a' -> ... */
+        DIAMOND,
+        /** 随机分层DAG: 每个节点随机连接上一层的 1~3 个节点 */
+        LAYERED,
+        /** 分支密集(类似 IfElse): branch -> (t, f) -> branch' -> ...，每个分支只激活一个下游 */
+        BRANCH
+    }
+
+    private GraphGenerators() {
+    }
+
+    /**
+     * 生成指定形状的DAG图
+     *
+     * @param shape 图的形状
+     * @param nodeCount 期望的节点数(实际节点数可能因形状略有差异)
+     * @param workType 工作节点类型: {@link BenchNodes#NOOP} 或 {@link BenchNodes#CPU}
+     * @param cpuTokens CPU 节点的计算量
+     * @param seed 随机种子(仅 LAYERED 使用)
+     * @return DAG图
+     */
+    public static Graph generate(GraphShape shape, int nodeCount, String workType, long cpuTokens, long seed) {
+        Builder b = new Builder(workType, cpuTokens);
+        final int n = Math.max(3, nodeCount);
+        switch (shape) {
+            case CHAIN:
+                b.work("n0");
+                for (int i = 1; i < n; i++) {
+                    b.work("n" + i);
+                    b.edge("n" + (i - 1), "n" + i);
+                }
+                break;
+            case FAN_OUT_IN:
+                b.work("source");
+                b.work("sink");
+                for (int i = 0; i < n - 2; i++) {
+                    b.work("n" + i);
+                    b.edge("source", "n" + i);
+                    b.edge("n" + i, "sink");
+                }
+                break;
+            case DIAMOND: {
+                final int diamonds = Math.max(1, (n - 1) / 3);
+                b.work("a0");
+                for (int i = 0; i < diamonds; i++) {
+                    b.work("b" + i);
+                    b.work("c" + i);
+                    b.work("a" + (i + 1));
+                    b.edge("a" + i, "b" + i);
+                    b.edge("a" + i, "c" + i);
+                    b.edge("b" + i, "a" + (i + 1));
+                    b.edge("c" + i, "a" + (i + 1));
+                }
+                break;
+            }
+            case LAYERED: {
+                final Random random = new Random(seed);
+                final int layers = Math.max(2, (int) Math.sqrt(n));
+                final int width = Math.max(1, n / layers);
+                for (int l = 0; l < layers; l++) {
+                    for (int i = 0; i < width; i++) {
+                        String id = "l" + l + "_" + i;
+                        b.work(id);
+                        if (l == 0) {
+                            continue;
+                        }
+                        int parents = 1 + random.nextInt(Math.min(3, width));
+                        Set<Integer> picked = new HashSet<>();
+                        while (picked.size() < parents) {
+                            picked.add(random.nextInt(width));
+                        }
+                        for (int p : picked) {
+                            b.edge("l" + (l - 1) + "_" + p, id);
+                        }
+                    }
+                }
+                break;
+            }
+            case BRANCH: {
+                final int segments = Math.max(1, (n - 1) / 3);
+                for (int i = 0; i < segments; i++) {
+                    String branch = "br" + i;
+                    String t = "t" + i;
+                    String f = "f" + i;
+                    Map<String, Object> data = new HashMap<>();
+                    data.put(BenchNodes.BRANCHES, Arrays.asList(t, f));
+                    if (i > 0) {
+                        // 两个分支中只有一个会执行，另一个被跳过，汇合节点需要容忍跳过的上游
+                        data.put(BenchNodes.TRIGGER_RULE, TaskTriggerRule.NONE_FAILED_MIN_ONE_SUCCESS.name());
+                    }
+                    b.node(branch, BenchNodes.BRANCH, data);
+                    b.work(t);
+                    b.work(f);
+                    b.edge(branch, t);
+                    b.edge(branch, f);
+                    if (i > 0) {
+                        b.edge("t" + (i - 1), branch);
+                        b.edge("f" + (i - 1), branch);
+                    }
+                }
+                Map<String, Object> data = new HashMap<>();
+                data.put(BenchNodes.TRIGGER_RULE, TaskTriggerRule.NONE_FAILED_MIN_ONE_SUCCESS.name());
+                b.node("end", workType, b.workData(data));
+                b.edge("t" + (segments - 1), "end");
+                b.edge("f" + (segments - 1), "end");
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown graph shape: " + shape);
+        }
+        return b.build();
+    }
+
+    private static class Builder {
+        private final String workType;
+        private final long cpuTokens;
+        private final List<GNode> nodes = new ArrayList<>();
+        private final List<GEdge> edges = new ArrayList<>();
+
+        Builder(String workType, long cpuTokens) {
+            this.workType = workType;
+            this.cpuTokens = cpuTokens;
+        }
+
+        void work(String id) {
+            node(id, this.workType, workData(new HashMap<>()));
+        }
+
+        Map<String, Object> workData(Map<String, Object> data) {
+            if (BenchNodes.CPU.equals(this.workType)) {
+                data.put(BenchNodes.CPU_TOKENS, this.cpuTokens);
+            }
+            return data;
+        }
+
+        void node(String id, String type, Map<String, Object> data) {
+            GNode node = new GNode();
+            node.setId(id);
+            node.setType(type);
+            node.setData(data);
+            this.nodes.add(node);
+        }
+
+        void edge(String source, String target) {
+            GEdge edge = new GEdge();
+            edge.setId(source + "->" + target);
+            edge.setSource(source);
+            edge.setTarget(target);
+            this.edges.add(edge);
+        }
+
+        Graph build() {
+            return new Graph(this.nodes, this.edges);
+        }
+    }
+}
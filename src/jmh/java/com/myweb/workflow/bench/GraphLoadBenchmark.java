@@ -0,0 +1,171 @@
+package com.myweb.workflow.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.myweb.util.JsonObjectMapper;
+import com.myweb.workflow.FlowPlan;
+import com.myweb.workflow.FlowPlanCache;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.graph.GraphCodec;
+import com.myweb.workflow.graph.GraphReader;
+
+/**
+ * 流程定义加载基准测试(设计器导出的定义，带 position/width/height 等属性).
+ * <ul>
+ *     <li>jackson: Jackson 绑定为 Graph/GNode/GEdge</li>
+ *     <li>reader: GraphReader 流式读取(跳过设计器属性，节点ID/类型去重)</li>
+ *     <li>binary: GraphCodec 二进制格式解码</li>
+ *     <li>preload: 模拟重启，新的 FlowPlanCache 从磁盘目录预加载并编译执行计划</li>
+ * </ul>
+ * 三种读取方式得到的流程定义哈希必须相同，在 setup 中校验。
+ * 内存分配量见 -prof gc 的 gc.alloc.rate.norm(字节/次)，运行方式：
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.include=GraphLoadBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphLoadBenchmark {
+    private static final String PLAN_KEY = "flow:v1";
+
+    @Param({"1000", "10000"})
+    public int nodeCount;
+
+    private byte[] json;
+    private byte[] binary;
+    private Path planDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.json = definition(this.nodeCount).getBytes(StandardCharsets.UTF_8);
+        this.binary = GraphCodec.encode(GraphReader.read(this.json));
+
+        final String expected = FlowPlan.definitionHash(JsonObjectMapper.parse(this.json, Graph.class));
+        check("reader", expected, GraphReader.read(this.json));
+        check("binary", expected, GraphCodec.decode(this.binary));
+
+        this.planDir = Files.createTempDirectory("flow-plans");
+        new FlowPlanCache(16, this.planDir).getOrCompile(PLAN_KEY, () -> GraphReader.read(this.json));
+        check("preload", expected, preload().getGraph());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(this.planDir)) {
+            files.forEach(f -> f.toFile().delete());
+        }
+        Files.deleteIfExists(this.planDir);
+    }
+
+    @Benchmark
+    public Graph jackson() {
+        return JsonObjectMapper.parse(this.json, Graph.class);
+    }
+
+    @Benchmark
+    public Graph reader() {
+        return GraphReader.read(this.json);
+    }
+
+    @Benchmark
+    public Graph binary() {
+        return GraphCodec.decode(this.binary);
+    }
+
+    @Benchmark
+    public FlowPlan preload() {
+        FlowPlanCache restarted = new FlowPlanCache(16, this.planDir);
+        restarted.preload();
+        return restarted.getOrCompile(PLAN_KEY, () -> {
+            throw new IllegalStateException("Flow definition should be loaded from disk");
+        });
+    }
+
+    private static void check(String name, String expected, Graph graph) {
+        if (!expected.equals(FlowPlan.definitionHash(graph))) {
+            throw new IllegalStateException(name + ": definition hash mismatch");
+        }
+    }
+
+    /**
+     * 设计器导出的流程定义：start -> n 个 http 节点(每 100 个一组串联) -> end(output)
+     */
+    private static String definition(int n) {
+        List<Object> nodes = new ArrayList<>(n + 2);
+        List<Object> edges = new ArrayList<>(n * 2);
+        nodes.add(node("start", "start", Map.of()));
+        nodes.add(node("end", "output", Map.of()));
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("url", "http://127.0.0.1:8080/api/items/" + i);
+            data.put("method", "GET");
+            data.put("timeoutMillis", 3000);
+            data.put("retries", 2);
+            data.put("headers", Map.of("Accept", "application/json"));
+            nodes.add(node("n" + i, "http", data));
+
+            String source = i % 100 == 0 ? "start" : "n" + (i - 1);
+            edges.add(edge(source, "n" + i));
+            if (i % 100 == 99 || i == n - 1) {
+                edges.add(edge("n" + i, "end"));
+            }
+        }
+        Map<String, Object> graph = new LinkedHashMap<>();
+        graph.put("nodes", nodes);
+        graph.put("edges", edges);
+        graph.put("viewport", Map.of("x", 0, "y", 0, "zoom", 1));
+        return JsonObjectMapper.stringify(graph);
+    }
+
+    private static Map<String, Object> node(String id, String type, Map<String, Object> data) {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("id", id);
+        node.put("type", type);
+        node.put("position", Map.of("x", id.hashCode() % 1000, "y", id.length() * 40));
+        node.put("width", 180);
+        node.put("height", 64);
+        node.put("selected", false);
+        node.put("dragging", false);
+        node.put("measured", Map.of("width", 180, "height", 64));
+        node.put("data", data);
+        return node;
+    }
+
+    private static Map<String, Object> edge(String source, String target) {
+        Map<String, Object> edge = new LinkedHashMap<>();
+        edge.put("id", "xy-edge__" + source + "output-" + target + "input");
+        edge.put("source", source);
+        edge.put("target", target);
+        edge.put("sourceHandle", "output");
+        edge.put("targetHandle", "input");
+        edge.put("type", "smoothstep");
+        edge.put("animated", false);
+        return edge;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(GraphLoadBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,143 @@
+package com.myweb.workflow.bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.bench.GraphGenerators.GraphShape;
+import com.myweb.workflow.graph.Graph;
+
+/**
+ * 流程执行器调度开销基准测试.
+ * <p>
+ * 对比 FlowExecutor / FlowExecutorPro / FlowEngine 在不同形状、规模的DAG图上的表现：
+ * <ul>
+ *     <li>run: 一次完整流程执行的端到端耗时</li>
+ *     <li>run:nodes: 平均到每个节点上的耗时(节点为 noop 时即为每个节点的调度开销)</li>
+ *     <li>gc.alloc.rate.norm: 每次执行的内存分配量(需要 -prof gc)</li>
+ * </ul>
+ * 运行方式：
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.include=SchedulerBenchmark
+ * # 只跑部分参数组合
+ * mvn -Pjmh test-compile exec:exec -Djmh.include=SchedulerBenchmark -Djmh.params="-p shape=CHAIN -p nodes=10000"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SchedulerBenchmark {
+
+    @Param({"CHAIN", "FAN_OUT_IN", "DIAMOND", "LAYERED", "BRANCH"})
+    public GraphShape shape;
+
+    @Param({"1000", "10000", "100000"})
+    public int nodes;
+
+    @Param({BenchNodes.NOOP, BenchNodes.CPU})
+    public String work;
+
+    @Param({"ENGINE", "PRO", "BASIC"})
+    public String executor;
+
+    private static final long CPU_TOKENS = 1000;
+    private static final long SEED = 20250101L;
+
+    private static final ExecutionListener NOOP_LISTENER = new ExecutionListener() {
+        @Override public void onFlowStart() {}
+        @Override public void onNodeCompleted(NodeExecutionResult result) {}
+        @Override public void onFlowCompleted(FlowExecutionResult result) {}
+    };
+
+    private Graph graph;
+    private FlowPlan plan;
+    private int nodeCount;
+
+    private ExecutorService sharedPool;
+    private FlowExecutorPro proExecutor;
+    private FlowEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchNodes.register();
+        this.graph = GraphGenerators.generate(this.shape, this.nodes, this.work, CPU_TOKENS, SEED);
+        this.plan = FlowPlan.compile(this.graph);
+        this.nodeCount = this.plan.size();
+
+        final int threads = Runtime.getRuntime().availableProcessors();
+        switch (this.executor) {
+            case "ENGINE":
+                this.engine = new FlowEngine(threads, 1, 0, 16);
+                this.engine.afterPropertiesSet();
+                break;
+            case "PRO":
+                this.sharedPool = Executors.newFixedThreadPool(threads);
+                this.proExecutor = new FlowExecutorPro(this.plan, NOOP_LISTENER, this.sharedPool);
+                break;
+            case "BASIC":
+                this.sharedPool = Executors.newFixedThreadPool(threads);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown executor: " + this.executor);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (this.engine != null) {
+            this.engine.destroy();
+        }
+        if (this.proExecutor != null) {
+            this.proExecutor.close();
+        }
+        if (this.sharedPool != null) {
+            this.sharedPool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public FlowExecutionResult run(NodeCounter counter) throws Exception {
+        counter.nodes += this.nodeCount;
+        switch (this.executor) {
+            case "ENGINE":
+                return this.engine.execute(this.plan, new ExecutionContext(), null);
+            case "PRO":
+                return this.proExecutor.executeAsync(new ExecutionContext()).get();
+            default:
+                // FlowExecutor 只能执行一次，每次执行都需要新建(这也是它的固有开销)
+                try (FlowExecutor basic = new FlowExecutor(this.graph, NOOP_LISTENER, this.sharedPool)) {
+                    return basic.executeAsync(new ExecutionContext()).get();
+                }
+        }
+    }
+
+    /**
+     * 以节点数作为辅助的操作计数，在 AverageTime 模式下即为平均每个节点的耗时
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class NodeCounter {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.nodes = 0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SchedulerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,47 @@
+package com.myweb.workflow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 异步执行的节点(如 HTTP 请求、远程调用).
+ * <p>
+ * 执行引擎在工作线程中组装输入后调用 {@link #callAsync(ExecutionContext, NodeInputs)}，
+ * 节点发出请求后立即返回 future，不占用工作线程等待响应；future 完成后引擎在工作线程中处理结果并调度下游节点。
+ * 等待响应的节点不占用执行槽位(maxInFlight)，因此同时进行的请求数不受工作线程数限制，由节点自己的客户端控制。
+ * <p>
+ * 节点被取消时引擎会取消返回的 future，节点应在 future 被取消时中止请求。
+ *
+ * @author yswang
+ */
+public interface AsyncTaskNode extends TaskNode {
+
+    /**
+     * 异步执行节点
+     *
+     * @param context 执行上下文
+     * @param inputs 节点的输入数据
+     * @return 执行结果的 future，结果为 null 表示成功且没有输出；异常完成表示节点执行失败
+     */
+    CompletableFuture<NodeExecutionResult> callAsync(ExecutionContext context, NodeInputs inputs);
+
+    /**
+     * 同步执行：等待 {@link #callAsync(ExecutionContext, NodeInputs)} 完成，用于不支持异步节点的执行器
+     */
+    @Override
+    default NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+        final CompletableFuture<NodeExecutionResult> future = callAsync(context, inputs);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.myweb.workflow;
+
+import java.util.List;
+
+/**
+ * 支持批量执行的节点.
+ * <p>
+ * 宽扇出的流程中，大量同类节点(如几百个 LLM、HTTP 节点)会同时就绪。执行引擎会将同一次执行中
+ * 批量 key 相同的就绪节点在一个很短的时间窗口内收集起来(最多 {@link #getMaxBatchSize()} 个)，
+ * 通过第一个节点的 {@link #callBatch(ExecutionContext, List)} 一次调用执行，再将结果拆分回各个节点。
+ * <p>
+ * 批量调用失败(抛出异常)时，批次中的每个节点都按普通的失败处理(按各自的重试次数重试)；
+ * 只有部分节点失败时，应返回对应节点的失败结果({@link NodeExecutionResult#failed(String)})。
+ * 节点结果缓存命中的节点不会加入批量调用。
+ *
+ * @author yswang
+ */
+public interface BatchableTaskNode extends TaskNode {
+    int DEFAULT_MAX_BATCH_SIZE = 32;
+    long DEFAULT_BATCH_WINDOW_MILLIS = 5L;
+
+    /**
+     * 批量 key：key 相同的节点可以在一次批量调用中执行(默认为节点类型)。
+     * 如果不同配置的节点不能放在一次调用中(如请求不同的服务地址)，应将这些配置加入 key 中。
+     */
+    default String getBatchKey() {
+        return getType();
+    }
+
+    /**
+     * 一次批量调用最多包含的节点数，达到后立即执行
+     */
+    default int getMaxBatchSize() {
+        return DEFAULT_MAX_BATCH_SIZE;
+    }
+
+    /**
+     * 收集就绪节点的时间窗口(毫秒)，从批次中第一个节点就绪开始计算，<=0 表示不等待
+     */
+    default long getBatchWindowMillis() {
+        return DEFAULT_BATCH_WINDOW_MILLIS;
+    }
+
+    /**
+     * 批量执行
+     *
+     * @param context 执行上下文
+     * @param items 批次中的节点及其输入(节点实例可能是其他同类节点，应使用 item 中的节点获取配置)
+     * @return 与 items 一一对应的执行结果，元素为 null 表示成功且没有输出
+     * @throws Exception 整个批次失败
+     */
+    List<NodeExecutionResult> callBatch(ExecutionContext context, List<BatchItem> items) throws Exception;
+
+    /**
+     * 批次中的一个节点
+     */
+    final class BatchItem {
+        private final BatchableTaskNode node;
+        private final NodeInputs inputs;
+
+        BatchItem(BatchableTaskNode node, NodeInputs inputs) {
+            this.node = node;
+            this.inputs = inputs;
+        }
+
+        public BatchableTaskNode getNode() {
+            return this.node;
+        }
+
+        public String getNodeId() {
+            return this.node.getId();
+        }
+
+        public NodeInputs getInputs() {
+            return this.inputs;
+        }
+    }
+}
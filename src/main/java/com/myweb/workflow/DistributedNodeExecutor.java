@@ -0,0 +1,249 @@
+package com.myweb.workflow;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import com.myweb.workflow.distributed.PgWorkQueue;
+import com.myweb.workflow.distributed.WorkHandler;
+import com.myweb.workflow.distributed.WorkItem;
+import com.myweb.workflow.distributed.WorkResult;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.nodes.ForEachNode;
+import com.myweb.workflow.nodes.StartNode;
+
+/**
+ * 分布式执行节点：在执行引擎和 {@link PgWorkQueue} 之间转换节点的输入、输出.
+ * <p>
+ * 提交端：{@link FlowRun} 把可分布式执行的节点(见 {@link TaskNode#isDistributable()})包装为 {@link AsyncTaskNode}，
+ * 节点的输入组装完成后连同节点定义、流程输入和执行上下文中的数据一起提交到队列，不占用工作线程和执行槽位等待结果，
+ * 结果返回后与普通异步节点一样在工作线程中处理(写入缓存、溢写、调度下游节点、失败重试)。
+ * 节点有流式输入时无法提交，直接在本实例中执行。
+ * <p>
+ * 执行端：作为队列的 {@link WorkHandler}，按节点定义创建节点实例(按定义缓存)，在工作线程池中执行领取的节点。
+ *
+ * @author yswang
+ */
+final class DistributedNodeExecutor implements WorkHandler {
+    // 执行端缓存的节点实例数上限，超过后清空重新创建
+    private static final int MAX_CACHED_NODES = 1024;
+
+    private final PgWorkQueue queue;
+    private final Executor executor;
+    // 执行端的节点实例 <nodeKey, TaskNode>
+    private final ConcurrentMap<String, TaskNode> nodes = new ConcurrentHashMap<>();
+    // 提交端节点定义的 key <计划中的节点实例, nodeKey>，同一个执行计划的节点只计算一次
+    private final ConcurrentMap<TaskNode, String> nodeKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param queue 分布式执行队列
+     * @param executor 执行领取的节点的线程池
+     */
+    DistributedNodeExecutor(PgWorkQueue queue, Executor executor) {
+        this.queue = queue;
+        this.executor = executor;
+    }
+
+    PgWorkQueue getQueue() {
+        return this.queue;
+    }
+
+    /**
+     * 节点是否提交到队列执行：开始节点使用流程输入、ForEach 节点执行子流程、批量节点需要合并调用，只在本实例中执行
+     */
+    boolean accepts(TaskNode node) {
+        return node.isDistributable()
+                && !(node instanceof StartNode)
+                && !(node instanceof ForEachNode)
+                && !(node instanceof BatchableTaskNode);
+    }
+
+    /**
+     * 包装为提交到队列执行的异步节点
+     */
+    AsyncTaskNode remoteNode(String runId, FlowPlan plan, int nodeIndex, TaskNode node) {
+        return new RemoteNode(runId, plan.getCompiledGraph().getNode(nodeIndex), node);
+    }
+
+    private CompletableFuture<NodeExecutionResult> dispatch(String runId, GNode gNode, TaskNode node,
+                                                            ExecutionContext context, NodeInputs inputs) {
+        final Map<String, Object> variables = new HashMap<>(context);
+        final WorkItem item = new WorkItem()
+                .setRunId(runId)
+                .setNodeId(gNode.getId())
+                .setNodeKey(nodeKeyOf(gNode, node))
+                .setNodeType(gNode.getType())
+                .setNodeData(gNode.getData())
+                .setInputs(inputs.getPayloads())
+                .setWorkflowInput(context.getWorkflowInput())
+                .setVariables(variables);
+
+        final CompletableFuture<WorkResult> call = this.queue.submit(item);
+        final CompletableFuture<NodeExecutionResult> result = call.thenApply(DistributedNodeExecutor::toExecutionResult);
+        // 节点被取消时取消队列中的执行
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                call.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    private String nodeKeyOf(GNode gNode, TaskNode node) {
+        final String key = this.nodeKeys.get(node);
+        if (key != null) {
+            return key;
+        }
+        if (this.nodeKeys.size() >= MAX_CACHED_NODES) {
+            this.nodeKeys.clear();
+        }
+        return this.nodeKeys.computeIfAbsent(node, k ->
+                FlowPlan.canonicalHash(Arrays.asList(gNode.getId(), gNode.getType(), gNode.getData())));
+    }
+
+    @Override
+    public CompletableFuture<WorkResult> handle(WorkItem item) {
+        final CompletableFuture<WorkResult> future = new CompletableFuture<>();
+        this.executor.execute(() -> {
+            final Instant startTime = Instant.now();
+            try {
+                final TaskNode node = nodeOf(item);
+                final ExecutionContext context = new ExecutionContext();
+                context.setWorkflowInput(item.getWorkflowInput());
+                item.getVariables().forEach((key, value) -> {
+                    if (key != null && value != null) {
+                        context.put(key, value);
+                    }
+                });
+                final NodeInputs inputs = new NodeInputs();
+                item.getInputs().forEach((port, payloads) -> {
+                    for (Object payload : payloads) {
+                        inputs.addInput(port, new NodeOutput(payload));
+                    }
+                });
+
+                if (node instanceof AsyncTaskNode) {
+                    ((AsyncTaskNode) node).callAsync(context, inputs).whenComplete((result, error) -> {
+                        if (error != null) {
+                            future.completeExceptionally(error);
+                        } else {
+                            future.complete(toWorkResult(result, startTime));
+                        }
+                    });
+                } else {
+                    future.complete(toWorkResult(node.call(context, inputs), startTime));
+                }
+            } catch (Exception e) {
+                future.complete(WorkResult.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getName())
+                        .setStartTime(startTime).setEndTime(Instant.now()));
+            }
+        });
+        return future;
+    }
+
+    private TaskNode nodeOf(WorkItem item) {
+        final TaskNode node = this.nodes.get(item.getNodeKey());
+        if (node != null) {
+            return node;
+        }
+        if (this.nodes.size() >= MAX_CACHED_NODES) {
+            this.nodes.clear();
+        }
+        return this.nodes.computeIfAbsent(item.getNodeKey(), k -> {
+            final GNode gNode = new GNode();
+            gNode.setId(item.getNodeId());
+            gNode.setType(item.getNodeType());
+            gNode.setData(new HashMap<>(item.getNodeData()));
+            return TaskNodeFactory.createNode(gNode);
+        });
+    }
+
+    private static WorkResult toWorkResult(NodeExecutionResult result, Instant startTime) {
+        if (result == null) {
+            result = NodeExecutionResult.success();
+        }
+        final WorkResult workResult = new WorkResult()
+                .setSuccess(result.isSuccess())
+                .setSkipped(result.isSkipped())
+                .setErrorMessage(result.isSuccess() ? null : result.getErrorMessage())
+                .setNextNodes(result.getNextNodesToActivate() != null ? new ArrayList<>(result.getNextNodesToActivate()) : null)
+                .setStartTime(startTime)
+                .setEndTime(Instant.now());
+        final Map<String, Object> outputs = new HashMap<>(result.getNodeOutputs().size() * 2);
+        for (Map.Entry<String, NodeOutput> entry : result.getNodeOutputs().entrySet()) {
+            if (entry.getValue() instanceof StreamingNodeOutput) {
+                return WorkResult.failed("Streaming output of port <" + entry.getKey() + "> can not be distributed")
+                        .setStartTime(startTime).setEndTime(Instant.now());
+            }
+            outputs.put(entry.getKey(), entry.getValue() != null ? entry.getValue().getPayload() : null);
+        }
+        return workResult.setOutputs(outputs);
+    }
+
+    private static NodeExecutionResult toExecutionResult(WorkResult workResult) {
+        final NodeExecutionResult result = workResult.isSuccess()
+                ? NodeExecutionResult.success()
+                : NodeExecutionResult.failed(workResult.getErrorMessage());
+        result.setSkipped(workResult.isSkipped())
+                .setNextNodesToActivate(workResult.getNextNodes());
+        workResult.getOutputs().forEach((port, payload) -> result.addNodeOutput(port, new NodeOutput(payload)));
+        return result;
+    }
+
+    /**
+     * 提交到队列执行的节点，其余属性与原节点相同
+     */
+    private final class RemoteNode implements AsyncTaskNode {
+        private final String runId;
+        private final GNode gNode;
+        private final TaskNode node;
+
+        RemoteNode(String runId, GNode gNode, TaskNode node) {
+            this.runId = runId;
+            this.gNode = gNode;
+            this.node = node;
+        }
+
+        @Override
+        public String getId() {
+            return this.node.getId();
+        }
+
+        @Override
+        public String getType() {
+            return this.node.getType();
+        }
+
+        @Override
+        public void setTaskState(TaskState taskState) {
+            this.node.setTaskState(taskState);
+        }
+
+        @Override
+        public TaskState getTaskState() {
+            return this.node.getTaskState();
+        }
+
+        @Override
+        public CompletableFuture<NodeExecutionResult> callAsync(ExecutionContext context, NodeInputs inputs) {
+            if (!inputs.hasStreams()) {
+                return dispatch(this.runId, this.gNode, this.node, context, inputs);
+            }
+            // 流式输入无法提交到队列，在本实例中执行
+            if (this.node instanceof AsyncTaskNode) {
+                return ((AsyncTaskNode) this.node).callAsync(context, inputs);
+            }
+            try {
+                return CompletableFuture.completedFuture(this.node.call(context, inputs));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.myweb.workflow;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import com.myweb.workflow.exception.FlowExecuteException;
+
 /**
  * 任务执行上下文, 提供节点之间的数据传递.
  */
@@ -15,6 +18,12 @@ public class ExecutionContext extends ConcurrentHashMap<String, Object> {
     // 流程的初始输入
     private Object workflowInput;
 
+    // 提交流程的租户，FlowEngine 按租户权重在多个执行之间公平调度
+    private String tenant;
+
+    // 使用本上下文的执行(FlowEngine/FlowExecutorPro)，用于执行子流程
+    private transient volatile FlowRun flowRun;
+
     public Optional<NodeExecutionResult> getNodeExecutionResult(String nodeId) {
         return Optional.ofNullable(this.nodeExecutionResults.get(nodeId));
     }
@@ -33,4 +42,32 @@ public class ExecutionContext extends ConcurrentHashMap<String, Object> {
         this.workflowInput = workflowInput;
     }
 
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    void bindFlowRun(FlowRun flowRun) {
+        this.flowRun = flowRun;
+    }
+
+    /**
+     * 在当前执行所在的线程池中执行子流程，子流程随当前执行一起被取消
+     *
+     * @param plan 子流程的执行计划
+     * @param subContext 子流程的执行上下文
+     * @return 子流程的执行结果，取消它会取消子流程
+     * @throws FlowExecuteException 当前上下文不属于 FlowEngine/FlowExecutorPro 的执行
+     */
+    public CompletableFuture<FlowExecutionResult> executeSubFlow(FlowPlan plan, ExecutionContext subContext) {
+        final FlowRun run = this.flowRun;
+        if (run == null) {
+            throw new FlowExecuteException("Sub flow can only be executed within a FlowEngine or FlowExecutorPro run");
+        }
+        return run.runSubFlow(plan, subContext);
+    }
+
 }
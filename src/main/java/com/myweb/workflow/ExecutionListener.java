@@ -32,4 +32,18 @@ public interface ExecutionListener {
     default void onFlowPaused(String executionId, String flowStateData) {
     }
 
+    /**
+     * 开启节点结果缓存时，可缓存的节点命中缓存(复用之前的执行结果，不再调用节点)
+     * @param nodeId 节点ID
+     */
+    default void onNodeCacheHit(String nodeId) {
+    }
+
+    /**
+     * 开启节点结果缓存时，可缓存的节点未命中缓存(将调用节点，成功的结果会写入缓存)
+     * @param nodeId 节点ID
+     */
+    default void onNodeCacheMiss(String nodeId) {
+    }
+
 }
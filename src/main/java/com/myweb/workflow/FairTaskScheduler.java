@@ -0,0 +1,335 @@
+package com.myweb.workflow;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 多个流程执行之间的加权公平调度(Deficit Round Robin).
+ * <p>
+ * 每个执行通过自己的 {@link RunQueue} 提交任务(节点任务、异步调用、批次等)，任务先进入该执行的队列，
+ * 而不是直接进入共享线程池的 FIFO 队列；调度器最多同时向线程池派发 maxDispatched(工作线程数)个任务，
+ * 一个任务执行完后，所在的工作线程按以下顺序领取下一个任务：
+ * <ul>
+ *     <li>租户之间按权重轮转：轮到的租户获得与权重相同的额度，每派发一个任务消耗 1，额度用完轮到下一个租户；</li>
+ *     <li>同一租户的多个执行之间逐个任务轮转。</li>
+ * </ul>
+ * 因此一个租户提交的超大流程不会让其他租户的小流程排在它的几万个节点后面，线程池繁忙时各租户获得的线程数与权重成正比；
+ * 空闲时任一租户都可以用满所有线程。单次执行同时执行中的节点数仍由执行自身的执行槽位限制(max-in-flight-per-run)。
+ * <p>
+ * 没有指定租户的执行属于 {@link #DEFAULT_TENANT}，彼此之间逐个任务轮转。
+ * <p>
+ * 任务进入队列时没有被拒绝，之后调度器关闭或派发失败时才被丢弃：{@link Future} 任务被取消，
+ * 其他任务需要通过 {@link #rejectable(Runnable, Consumer)} 包装，丢弃时调用提交者的拒绝处理(如使节点失败)。
+ */
+final class FairTaskScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(FairTaskScheduler.class);
+
+    static final String DEFAULT_TENANT = "default";
+
+    private final Executor workers;
+    private final int maxDispatched;
+
+    // 租户权重，未配置的租户使用默认权重
+    private final ConcurrentMap<String, Integer> weights = new ConcurrentHashMap<>();
+    private volatile int defaultWeight = 1;
+
+    // 以下状态由 lock 保护
+    private final Object lock = new Object();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    // 有待派发任务的租户，队首为当前轮到的租户
+    private final ArrayDeque<Tenant> activeTenants = new ArrayDeque<>();
+    private int dispatched = 0;
+    private int queuedTasks = 0;
+    private boolean shutdown = false;
+
+    FairTaskScheduler(Executor workers, int maxDispatched) {
+        this.workers = workers;
+        this.maxDispatched = Math.max(1, maxDispatched);
+    }
+
+    /**
+     * 为一次执行创建任务队列，执行结束后需要调用 {@link RunQueue#close()}
+     * @param tenant 租户，为空时使用默认租户
+     */
+    RunQueue newRunQueue(String tenant) {
+        final String name = tenant != null && !tenant.isEmpty() ? tenant : DEFAULT_TENANT;
+        synchronized (this.lock) {
+            final Tenant t = this.tenants.computeIfAbsent(name, Tenant::new);
+            t.runs++;
+            return new RunQueue(t);
+        }
+    }
+
+    void setWeight(String tenant, int weight) {
+        if (weight <= 0) {
+            this.weights.remove(tenant);
+        } else {
+            this.weights.put(tenant, weight);
+        }
+    }
+
+    void setDefaultWeight(int weight) {
+        this.defaultWeight = Math.max(1, weight);
+    }
+
+    int getWeight(String tenant) {
+        return this.weights.getOrDefault(tenant, this.defaultWeight);
+    }
+
+    /**
+     * 已提交、尚未派发给线程池的任务数
+     */
+    int getQueuedTasks() {
+        synchronized (this.lock) {
+            return this.queuedTasks;
+        }
+    }
+
+    int getActiveTenants() {
+        synchronized (this.lock) {
+            return this.activeTenants.size();
+        }
+    }
+
+    /**
+     * 包装不是 {@link Future} 的任务(异步调用、回调、批次等)：被调度器丢弃时调用 onRejected，
+     * 与直接提交给线程池被拒绝时的处理一致
+     */
+    static Runnable rejectable(Runnable task, Consumer<RejectedExecutionException> onRejected) {
+        return new RejectableTask(task, onRejected);
+    }
+
+    /**
+     * 关闭调度器：不再接受新任务，尚未派发的任务被丢弃(节点任务按取消处理，其他任务调用其拒绝处理)
+     */
+    void shutdown() {
+        final ArrayDeque<Runnable> dropped = new ArrayDeque<>();
+        synchronized (this.lock) {
+            this.shutdown = true;
+            for (Tenant t : this.activeTenants) {
+                for (RunQueue q : t.activeRuns) {
+                    dropped.addAll(q.tasks);
+                    q.tasks.clear();
+                    q.active = false;
+                }
+                t.activeRuns.clear();
+                t.deficit = 0;
+            }
+            this.activeTenants.clear();
+            this.queuedTasks = 0;
+        }
+        final RejectedExecutionException error = new RejectedExecutionException("FairTaskScheduler is shut down");
+        dropped.forEach(task -> reject(task, error));
+    }
+
+    /**
+     * 在线程池容量范围内派发任务
+     */
+    private void dispatch() {
+        while (true) {
+            final Runnable task;
+            synchronized (this.lock) {
+                if (this.dispatched >= this.maxDispatched) {
+                    return;
+                }
+                task = pollNext();
+                if (task == null) {
+                    return;
+                }
+                this.dispatched++;
+            }
+            try {
+                this.workers.execute(new Lane(task));
+            } catch (RejectedExecutionException e) {
+                synchronized (this.lock) {
+                    this.dispatched--;
+                }
+                LOG.error(">> ERROR: Dispatch task failed: ", e);
+                reject(task, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按 DRR 取出下一个任务，调用时需持有 lock
+     */
+    private Runnable pollNext() {
+        final Tenant tenant = this.activeTenants.peekFirst();
+        if (tenant == null) {
+            return null;
+        }
+        if (tenant.deficit <= 0) {
+            // 新一轮轮到该租户
+            tenant.deficit += getWeight(tenant.name);
+        }
+
+        // 同一租户的执行之间逐个任务轮转
+        final RunQueue queue = tenant.activeRuns.pollFirst();
+        final Runnable task = queue.tasks.pollFirst();
+        if (queue.tasks.isEmpty()) {
+            queue.active = false;
+        } else {
+            tenant.activeRuns.addLast(queue);
+        }
+        this.queuedTasks--;
+        tenant.deficit--;
+
+        if (tenant.activeRuns.isEmpty()) {
+            // 没有待派发的任务，退出轮转，不保留剩余额度
+            this.activeTenants.pollFirst();
+            tenant.deficit = 0;
+            tenant.active = false;
+            removeIfUnused(tenant);
+        } else if (tenant.deficit <= 0) {
+            this.activeTenants.addLast(this.activeTenants.pollFirst());
+        }
+        return task;
+    }
+
+    private void removeIfUnused(Tenant tenant) {
+        if (tenant.runs == 0 && !tenant.active) {
+            this.tenants.remove(tenant.name, tenant);
+        }
+    }
+
+    private static void reject(Runnable task, RejectedExecutionException error) {
+        try {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            } else if (task instanceof RejectableTask) {
+                ((RejectableTask) task).onRejected.accept(error);
+            } else {
+                LOG.warn(">> WARNING: Dropped task {}: {}", task, error.getMessage());
+            }
+        } catch (Throwable e) {
+            LOG.error(">> ERROR: Handle rejected task failed: ", e);
+        }
+    }
+
+    private static final class RejectableTask implements Runnable {
+        private final Runnable task;
+        private final Consumer<RejectedExecutionException> onRejected;
+
+        RejectableTask(Runnable task, Consumer<RejectedExecutionException> onRejected) {
+            this.task = task;
+            this.onRejected = onRejected;
+        }
+
+        @Override
+        public void run() {
+            this.task.run();
+        }
+    }
+
+    private static final class Tenant {
+        final String name;
+        final ArrayDeque<RunQueue> activeRuns = new ArrayDeque<>();
+        // 本轮剩余的派发额度
+        long deficit = 0;
+        boolean active = false;
+        // 使用该租户的执行数，为 0 且没有待派发的任务时移除
+        int runs = 0;
+
+        Tenant(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * 一次执行(及其子流程)的任务队列
+     */
+    final class RunQueue implements Executor {
+        // 由 lock 保护：执行结束后所属租户可能被移除，重新激活时改为同名的租户(见 execute())
+        private Tenant tenant;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean active = false;
+        private boolean closed = false;
+
+        private RunQueue(Tenant tenant) {
+            this.tenant = tenant;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (lock) {
+                if (shutdown) {
+                    throw new RejectedExecutionException("FairTaskScheduler is shut down");
+                }
+                this.tasks.addLast(task);
+                queuedTasks++;
+                if (!this.active) {
+                    this.active = true;
+                    // 关闭后提交的任务(如已取消任务的回调)：所属租户可能已被移除，或者同名租户已重新创建。
+                    // 按名称查找(不存在时重新登记)，同一租户在轮转中只占一个位置
+                    final Tenant current = this.tenant;
+                    this.tenant = tenants.computeIfAbsent(current.name, k -> current);
+                    this.tenant.activeRuns.addLast(this);
+                    if (!this.tenant.active) {
+                        this.tenant.active = true;
+                        activeTenants.addLast(this.tenant);
+                    }
+                }
+            }
+            dispatch();
+        }
+
+        String getTenant() {
+            return this.tenant.name;
+        }
+
+        /**
+         * 执行结束，之后仍可以提交任务(如已取消任务的回调)
+         */
+        void close() {
+            synchronized (lock) {
+                if (!this.closed) {
+                    this.closed = true;
+                    this.tenant.runs--;
+                    removeIfUnused(this.tenant);
+                }
+            }
+        }
+    }
+
+    /**
+     * 工作线程上的派发通道：执行完一个任务后继续按 DRR 领取下一个任务，没有任务时归还通道
+     */
+    private final class Lane implements Runnable {
+        private Runnable task;
+
+        Lane(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            while (this.task != null) {
+                // 与线程池一样，不把上一个任务被取消时的中断状态带给下一个任务
+                Thread.interrupted();
+                try {
+                    this.task.run();
+                } catch (Throwable e) {
+                    LOG.error(">> ERROR: Task execution failed: ", e);
+                }
+                synchronized (lock) {
+                    this.task = shutdown ? null : pollNext();
+                    if (this.task == null) {
+                        dispatched--;
+                    }
+                }
+            }
+        }
+    }
+
+}
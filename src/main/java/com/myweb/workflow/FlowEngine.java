@@ -0,0 +1,736 @@
+package com.myweb.workflow;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.myweb.workflow.cache.NodeResultCache;
+import com.myweb.workflow.checkpoint.AsyncCheckpointWriter;
+import com.myweb.workflow.checkpoint.CheckpointStore;
+import com.myweb.workflow.checkpoint.RunCheckpoint;
+import com.myweb.workflow.distributed.PgWorkQueue;
+import com.myweb.workflow.exception.FlowExecuteException;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.metrics.NodeMetrics;
+
+/**
+ * 流程引擎.
+ * <p>
+ * 整个应用共享一个工作线程池和一个重试调度器，所有流程执行({@link FlowRun})都复用它们，
+ * 而不是像 {@link FlowExecutorPro} 那样每个执行器各自创建线程池。
+ * 编译后的执行计划通过 {@link FlowPlanCache} 缓存，相同的流程定义只编译一次。
+ * <p>
+ * 容器中存在 {@link CheckpointStore} 时自动开启检查点：节点完成记录异步批量持久化，
+ * 进程崩溃或重启后可以通过 {@link #resume(String, Supplier, ExecutionListener)} 恢复执行。
+ * 流程修改后可以通过 {@link #rerun(Graph, ExecutionContext, Collection, ExecutionListener)} 增量执行，只执行受影响的节点。
+ * 引擎关闭时会先停止写入检查点再取消执行，因此关闭时未结束的执行在重启后仍然可以恢复。
+ * <p>
+ * 开启节点结果缓存后(workflow.engine.node-cache.enabled=true)，所有执行共享一个 {@link NodeResultCache}，
+ * 配置和输入都相同的可缓存节点(见 {@link TaskNode#isCacheable()})直接复用之前的执行结果。
+ * <p>
+ * 开启分布式执行后(workflow.engine.distributed.enabled=true，使用容器中的 PostgreSQL 数据源)，
+ * 可分布式执行的节点(见 {@link TaskNode#isDistributable()})提交到所有实例共享的 {@link PgWorkQueue}，
+ * 由有空闲工作线程的实例领取执行，流程本身(调度、重试、检查点)仍在接收它的实例中执行。
+ * <p>
+ * 配置项：
+ * <pre>
+ * workflow.engine.worker-threads=0        # 工作线程数，<=0 表示 CPU核数 * 2
+ * workflow.engine.retry-threads=1         # 重试调度线程数
+ * workflow.engine.max-active-runs=1000    # 同时执行的流程数上限，<=0 表示不限制
+ * workflow.engine.plan-cache-size=1024    # 执行计划缓存数量
+ * workflow.engine.plan-cache-dir=         # 执行计划的磁盘缓存目录(二进制格式的流程定义，启动时预加载)，为空表示只使用内存
+ * workflow.engine.max-in-flight-per-run=0 # 单次执行同时执行中的节点数上限，<=0 表示与工作线程数相同(且不超过图的最大并行度)
+ * workflow.engine.priority-refresh-runs=100 # 每隔多少次执行按节点历史耗时刷新一次节点优先级，<=0 表示不按耗时加权
+ * workflow.engine.checkpoint.queue-capacity=10000 # 检查点写入队列容量，队列满时丢弃记录(不阻塞流程执行)
+ * workflow.engine.checkpoint.batch-size=200       # 检查点每批最多写入的记录数
+ * workflow.engine.node-cache.enabled=false        # 是否开启节点结果缓存
+ * workflow.engine.node-cache.max-size=10000       # 内存中缓存的节点结果数上限
+ * workflow.engine.node-cache.ttl-seconds=3600     # 节点结果的存活时间，<=0 表示不过期
+ * workflow.engine.node-cache.disk-dir=            # 磁盘缓存目录，为空表示只使用内存
+ * workflow.engine.metrics.enabled=false           # 是否按节点类型统计排队、执行耗时和重试次数(见 {@link NodeMetrics})
+ * workflow.engine.fair-scheduling.enabled=false   # 是否在多个执行之间按租户权重公平调度(见 {@link FairTaskScheduler})
+ * workflow.engine.fair-scheduling.default-weight=1 # 未配置权重的租户的权重
+ * workflow.engine.fair-scheduling.tenant-weights= # 租户权重，如: tenantA:4,tenantB:1
+ * workflow.engine.distributed.enabled=false        # 是否开启分布式执行(需要 PostgreSQL 数据源)
+ * workflow.engine.distributed.instance-id=         # 实例ID，为空表示 pid@host + 随机后缀
+ * workflow.engine.distributed.claim-batch-size=16  # 每次最多领取的节点执行数
+ * workflow.engine.distributed.max-claimed=0        # 本实例同时执行的领取的节点数上限，<=0 表示与工作线程数相同
+ * workflow.engine.distributed.lease-millis=60000   # 领取的租约时长，执行节点的实例失联超过租约后节点被重新领取
+ * workflow.engine.distributed.poll-interval-millis=1000 # 没有收到通知时领取和获取结果的间隔
+ * </pre>
+ *
+ * @author yswang
+ */
+@Component
+public class FlowEngine implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(FlowEngine.class);
+
+    private static final int SHUTDOWN_AWAIT_SECONDS = 10;
+
+    private static final ExecutionListener NOOP_LISTENER = new ExecutionListener() {
+        @Override public void onFlowStart() {}
+        @Override public void onNodeCompleted(NodeExecutionResult res) {}
+        @Override public void onFlowCompleted(FlowExecutionResult res) {}
+    };
+
+    @Value("${workflow.engine.worker-threads:0}")
+    private int workerThreads = 0;
+
+    @Value("${workflow.engine.retry-threads:1}")
+    private int retryThreads = 1;
+
+    @Value("${workflow.engine.max-active-runs:1000}")
+    private int maxActiveRuns = 1000;
+
+    @Value("${workflow.engine.plan-cache-size:1024}")
+    private int planCacheSize = FlowPlanCache.DEFAULT_MAX_SIZE;
+
+    @Value("${workflow.engine.plan-cache-dir:}")
+    private String planCacheDir;
+
+    @Value("${workflow.engine.max-in-flight-per-run:0}")
+    private int maxInFlightPerRun = 0;
+
+    @Value("${workflow.engine.priority-refresh-runs:100}")
+    private int priorityRefreshRuns = 100;
+
+    @Value("${workflow.engine.checkpoint.queue-capacity:10000}")
+    private int checkpointQueueCapacity = AsyncCheckpointWriter.DEFAULT_QUEUE_CAPACITY;
+
+    @Value("${workflow.engine.checkpoint.batch-size:200}")
+    private int checkpointBatchSize = AsyncCheckpointWriter.DEFAULT_BATCH_SIZE;
+
+    @Value("${workflow.engine.node-cache.enabled:false}")
+    private boolean nodeCacheEnabled = false;
+
+    @Value("${workflow.engine.node-cache.max-size:10000}")
+    private long nodeCacheMaxSize = NodeResultCache.DEFAULT_MAX_SIZE;
+
+    @Value("${workflow.engine.node-cache.ttl-seconds:3600}")
+    private long nodeCacheTtlSeconds = NodeResultCache.DEFAULT_TTL.getSeconds();
+
+    @Value("${workflow.engine.node-cache.disk-dir:}")
+    private String nodeCacheDiskDir;
+
+    @Value("${workflow.engine.spill.enabled:false}")
+    private boolean spillEnabled = false;
+
+    @Value("${workflow.engine.spill.threshold-bytes:16777216}")
+    private long spillThresholdBytes = PayloadSpiller.DEFAULT_THRESHOLD_BYTES;
+
+    @Value("${workflow.engine.spill.dir:}")
+    private String spillDir;
+
+    @Value("${workflow.engine.release-outputs:false}")
+    private boolean releaseOutputs = false;
+
+    @Value("${workflow.engine.metrics.enabled:false}")
+    private boolean metricsEnabled = false;
+
+    @Value("${workflow.engine.fair-scheduling.enabled:false}")
+    private boolean fairSchedulingEnabled = false;
+
+    @Value("${workflow.engine.fair-scheduling.default-weight:1}")
+    private int defaultTenantWeight = 1;
+
+    @Value("${workflow.engine.fair-scheduling.tenant-weights:}")
+    private String tenantWeights;
+
+    @Value("${workflow.engine.distributed.enabled:false}")
+    private boolean distributedEnabled = false;
+
+    @Value("${workflow.engine.distributed.instance-id:}")
+    private String instanceId;
+
+    @Value("${workflow.engine.distributed.claim-batch-size:16}")
+    private int claimBatchSize = PgWorkQueue.DEFAULT_CLAIM_BATCH_SIZE;
+
+    @Value("${workflow.engine.distributed.max-claimed:0}")
+    private int maxClaimed = 0;
+
+    @Value("${workflow.engine.distributed.lease-millis:60000}")
+    private long leaseMillis = PgWorkQueue.DEFAULT_LEASE_MILLIS;
+
+    @Value("${workflow.engine.distributed.poll-interval-millis:1000}")
+    private long pollIntervalMillis = PgWorkQueue.DEFAULT_POLL_INTERVAL_MILLIS;
+
+    @Autowired(required = false)
+    private DataSource dataSource;
+    private PgWorkQueue workQueue;
+    private DistributedNodeExecutor distributedExecutor;
+
+    @Autowired(required = false)
+    private CheckpointStore checkpointStore;
+    private AsyncCheckpointWriter checkpointWriter;
+
+    private ThreadPoolExecutor workerPool;
+    private FairTaskScheduler fairScheduler;
+    private ScheduledThreadPoolExecutor retryScheduler;
+    private FlowPlanCache planCache;
+    private NodeResultCache nodeResultCache;
+    private PayloadSpiller payloadSpiller;
+    private NodeMetrics nodeMetrics;
+
+    // 正在执行的流程 <runId, FlowRun>
+    private final ConcurrentMap<String, FlowRun> activeRuns = new ConcurrentHashMap<>();
+    // 执行中的流程数，用于准入控制(先占位再执行，避免并发提交时超过上限)
+    private final AtomicInteger activeRunsNum = new AtomicInteger(0);
+    private final AtomicLong submittedRuns = new AtomicLong(0);
+    private final AtomicLong rejectedRuns = new AtomicLong(0);
+    private final AtomicLong peakRetainedBytes = new AtomicLong(0);
+
+    public FlowEngine() {
+    }
+
+    /**
+     * 非 Spring 环境下使用，创建后需要调用 {@link #afterPropertiesSet()}
+     */
+    public FlowEngine(int workerThreads, int retryThreads, int maxActiveRuns, int planCacheSize) {
+        this.workerThreads = workerThreads;
+        this.retryThreads = retryThreads;
+        this.maxActiveRuns = maxActiveRuns;
+        this.planCacheSize = planCacheSize;
+    }
+
+    public void setMaxInFlightPerRun(int maxInFlightPerRun) {
+        this.maxInFlightPerRun = maxInFlightPerRun;
+    }
+
+    public void setPriorityRefreshRuns(int priorityRefreshRuns) {
+        this.priorityRefreshRuns = priorityRefreshRuns;
+    }
+
+    /**
+     * 是否在执行过程中释放已被所有下游节点消费的输出数据(释放后的执行结果不能用于增量执行)
+     */
+    public void setReleaseOutputs(boolean releaseOutputs) {
+        this.releaseOutputs = releaseOutputs;
+    }
+
+    /**
+     * 执行计划的磁盘缓存目录，需要在 {@link #afterPropertiesSet()} 之前调用(启动时从目录预加载执行计划)
+     */
+    public void setPlanCacheDir(String planCacheDir) {
+        this.planCacheDir = planCacheDir;
+    }
+
+    /**
+     * 是否按节点类型统计执行指标(默认关闭)，需要在 {@link #afterPropertiesSet()} 之前调用
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * 是否在多个执行之间按租户权重公平调度，需要在 {@link #afterPropertiesSet()} 之前调用
+     */
+    public void setFairSchedulingEnabled(boolean fairSchedulingEnabled) {
+        this.fairSchedulingEnabled = fairSchedulingEnabled;
+    }
+
+    /**
+     * 非 Spring 环境下开启分布式执行，需要在 {@link #afterPropertiesSet()} 之前调用；
+     * 队列由引擎启动(领取的节点在引擎的工作线程中执行)，引擎关闭时一起关闭
+     */
+    public void setWorkQueue(PgWorkQueue workQueue) {
+        this.workQueue = workQueue;
+    }
+
+    /**
+     * 非 Spring 环境下开启检查点，需要在 {@link #afterPropertiesSet()} 之前调用
+     */
+    public void setCheckpointStore(CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * 非 Spring 环境下开启节点结果缓存，需要在 {@link #afterPropertiesSet()} 之前调用
+     */
+    public void setNodeResultCache(NodeResultCache nodeResultCache) {
+        this.nodeResultCache = nodeResultCache;
+    }
+
+    /**
+     * 非 Spring 环境下开启大输出数据溢写，需要在 {@link #afterPropertiesSet()} 之前调用
+     */
+    public void setPayloadSpiller(PayloadSpiller payloadSpiller) {
+        this.payloadSpiller = payloadSpiller;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        final int cpuCores = Runtime.getRuntime().availableProcessors();
+        final int threads = this.workerThreads > 0 ? this.workerThreads : cpuCores * 2;
+
+        // 使用无界队列：队列满后由调用线程执行(CallerRunsPolicy)会在节点完成回调中层层嵌套执行下游任务，
+        // 是否过载由 max-active-runs 在流程级别控制
+        this.workerPool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("flow-engine-worker-")
+        );
+        this.workerPool.allowCoreThreadTimeOut(true);
+
+        // 多个执行之间按租户权重公平地使用工作线程
+        if (this.fairSchedulingEnabled) {
+            this.fairScheduler = new FairTaskScheduler(this.workerPool, threads);
+            this.fairScheduler.setDefaultWeight(this.defaultTenantWeight);
+            parseTenantWeights(this.tenantWeights).forEach(this.fairScheduler::setWeight);
+        }
+
+        this.retryScheduler = new ScheduledThreadPoolExecutor(Math.max(1, this.retryThreads),
+                new NamedThreadFactory("flow-engine-retry-"));
+        this.retryScheduler.setRemoveOnCancelPolicy(true);
+
+        final boolean hasPlanCacheDir = this.planCacheDir != null && !this.planCacheDir.isBlank();
+        this.planCache = new FlowPlanCache(Math.max(1, this.planCacheSize),
+                hasPlanCacheDir ? Paths.get(this.planCacheDir.trim()) : null);
+        if (hasPlanCacheDir) {
+            final long stime = System.nanoTime();
+            final int preloaded = this.planCache.preload();
+            LOG.info(">> FlowEngine preloaded {} flow plans from <{}> in {}ms",
+                    preloaded, this.planCacheDir.trim(), (System.nanoTime() - stime) / 1_000_000);
+        }
+
+        // 单次执行占用的工作线程不超过线程数，多出来的就绪节点留在该执行的就绪队列中按优先级调度
+        if (this.maxInFlightPerRun <= 0) {
+            this.maxInFlightPerRun = threads;
+        }
+
+        if (this.checkpointStore != null) {
+            this.checkpointWriter = new AsyncCheckpointWriter(this.checkpointStore,
+                    this.checkpointQueueCapacity, this.checkpointBatchSize);
+        }
+
+        if (this.nodeResultCache == null && this.nodeCacheEnabled) {
+            final boolean hasDiskDir = this.nodeCacheDiskDir != null && !this.nodeCacheDiskDir.isBlank();
+            this.nodeResultCache = new NodeResultCache(this.nodeCacheMaxSize,
+                    Duration.ofSeconds(Math.max(0, this.nodeCacheTtlSeconds)),
+                    hasDiskDir ? Paths.get(this.nodeCacheDiskDir.trim()) : null);
+        }
+        if (this.payloadSpiller == null && this.spillEnabled) {
+            final boolean hasSpillDir = this.spillDir != null && !this.spillDir.isBlank();
+            this.payloadSpiller = new PayloadSpiller(this.spillThresholdBytes,
+                    hasSpillDir ? Paths.get(this.spillDir.trim()) : null);
+        }
+        if (this.nodeMetrics == null && this.metricsEnabled) {
+            this.nodeMetrics = new NodeMetrics();
+        }
+        if (this.workQueue == null && this.distributedEnabled) {
+            if (this.dataSource == null) {
+                throw new FlowExecuteException("Distributed execution requires a PostgreSQL `DataSource`");
+            }
+            final boolean hasInstanceId = this.instanceId != null && !this.instanceId.isBlank();
+            this.workQueue = new PgWorkQueue(this.dataSource, hasInstanceId ? this.instanceId.trim() : PgWorkQueue.defaultInstanceId());
+            this.workQueue.setClaimBatchSize(this.claimBatchSize);
+            this.workQueue.setMaxClaimed(this.maxClaimed > 0 ? this.maxClaimed : threads);
+            this.workQueue.setLeaseMillis(this.leaseMillis);
+            this.workQueue.setPollIntervalMillis(this.pollIntervalMillis);
+        }
+        if (this.workQueue != null) {
+            // 领取的节点直接在工作线程池中执行，不经过公平调度(它们不属于本实例的执行)
+            this.distributedExecutor = new DistributedNodeExecutor(this.workQueue, this.workerPool);
+            this.workQueue.start(this.distributedExecutor);
+        }
+
+        LOG.info(">> FlowEngine started: workerThreads={}, retryThreads={}, maxActiveRuns={}, maxInFlightPerRun={}, fairScheduling={}, distributed={}, checkpoint={}, nodeCache={}, spill={}",
+                threads, Math.max(1, this.retryThreads), this.maxActiveRuns, this.maxInFlightPerRun,
+                this.fairScheduler != null ? "enabled" : "disabled",
+                this.workQueue != null ? this.workQueue.getInstanceId() : "disabled",
+                this.checkpointStore != null ? this.checkpointStore.getClass().getSimpleName() : "disabled",
+                this.nodeResultCache != null ? "enabled" : "disabled",
+                this.payloadSpiller != null ? this.payloadSpiller.getDir() : "disabled");
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        // 先关闭检查点写入器(写完已提交的记录)，之后的取消不会被记录，未结束的执行在重启后仍然可以恢复
+        if (this.checkpointWriter != null) {
+            this.checkpointWriter.close();
+        }
+        cancelAll();
+        // 领取但尚未完成的节点交还给其他实例
+        if (this.workQueue != null) {
+            this.workQueue.close();
+        }
+        if (this.fairScheduler != null) {
+            this.fairScheduler.shutdown();
+        }
+        shutdown(this.workerPool);
+        shutdown(this.retryScheduler);
+    }
+
+    /**
+     * 提交流程执行，执行计划按流程定义的哈希缓存
+     *
+     * @param graph 流程图
+     * @param context 执行上下文
+     * @param listener 执行监听器(可选)
+     * @return 本次执行，通过 {@link FlowRun#getResultFuture()} 获取执行结果
+     */
+    public FlowRun submit(Graph graph, ExecutionContext context, ExecutionListener listener) {
+        return submit(this.planCache.getOrCompile(graph), context, listener);
+    }
+
+    /**
+     * 提交流程执行，执行计划按指定的 key (比如: 流程ID + 版本号) 缓存
+     */
+    public FlowRun submit(String planKey, Supplier<Graph> graphSupplier, ExecutionContext context, ExecutionListener listener) {
+        return submit(this.planCache.getOrCompile(planKey, graphSupplier), context, listener);
+    }
+
+    /**
+     * 提交流程执行
+     *
+     * @param plan 执行计划
+     * @param context 执行上下文
+     * @param listener 执行监听器(可选)
+     * @return 本次执行
+     */
+    public FlowRun submit(FlowPlan plan, ExecutionContext context, ExecutionListener listener) {
+        return launch(plan, null, context, listener, null);
+    }
+
+    /**
+     * 增量执行：流程修改后重新执行时，只执行变化的节点及其所有下游节点，其余节点复用上一次执行的结果
+     *
+     * @param graph 修改后的流程图
+     * @param previous 上一次执行的上下文(流程输入和上下文数据会被复制到本次执行)
+     * @param changedNodeIds 变化的节点ID(配置修改、输入连线修改等)，上一次执行中没有成功结果的节点会自动视为变化
+     * @param listener 执行监听器(可选)
+     * @return 本次执行
+     */
+    public FlowRun rerun(Graph graph, ExecutionContext previous, Collection<String> changedNodeIds, ExecutionListener listener) {
+        return rerun(this.planCache.getOrCompile(graph), previous, changedNodeIds, listener);
+    }
+
+    /**
+     * 使用指定的执行计划增量执行
+     */
+    public FlowRun rerun(FlowPlan plan, ExecutionContext previous, Collection<String> changedNodeIds, ExecutionListener listener) {
+        if (previous == null) {
+            throw new FlowExecuteException("Previous `ExecutionContext` must not be null");
+        }
+        return launch(plan, null, FlowRun.contextForReuse(previous), listener,
+                run -> run.reuse(previous, changedNodeIds));
+    }
+
+    /**
+     * 从检查点恢复执行(进程崩溃/重启时未结束的执行，或者已暂停的执行)，已完成的节点不会重新执行
+     *
+     * @param runId 执行ID
+     * @param graphSupplier 执行计划不在缓存中时用于获取流程图，按检查点中记录的 planKey 编译和缓存
+     * @param listener 执行监听器(可选)
+     * @return 恢复的执行
+     */
+    public FlowRun resume(String runId, Supplier<Graph> graphSupplier, ExecutionListener listener) {
+        final RunCheckpoint checkpoint = FlowRun.loadResumableCheckpoint(this.checkpointWriter, runId);
+        return resume(checkpoint, this.planCache.getOrCompile(checkpoint.getPlanKey(), graphSupplier), listener);
+    }
+
+    /**
+     * 使用指定的执行计划从检查点恢复执行
+     */
+    public FlowRun resume(String runId, FlowPlan plan, ExecutionListener listener) {
+        if (plan == null) {
+            throw new FlowExecuteException("`FlowPlan` must not be null");
+        }
+        final RunCheckpoint checkpoint = FlowRun.loadResumableCheckpoint(this.checkpointWriter, runId);
+        if (!Objects.equals(checkpoint.getPlanKey(), plan.getPlanKey())) {
+            throw new FlowExecuteException("Run <" + runId + "> belongs to another plan: " + checkpoint.getPlanKey());
+        }
+        return resume(checkpoint, plan, listener);
+    }
+
+    /**
+     * 查找可以恢复的执行
+     * @param planKey 执行计划的 key，为 null 时查找全部
+     */
+    public List<RunCheckpoint> findResumableRuns(String planKey) {
+        if (this.checkpointWriter == null) {
+            return Collections.emptyList();
+        }
+        return this.checkpointWriter.getStore().findResumableRuns(planKey);
+    }
+
+    private FlowRun resume(RunCheckpoint checkpoint, FlowPlan plan, ExecutionListener listener) {
+        final String runId = checkpoint.getRunId();
+        final ExecutionContext context = new ExecutionContext();
+        context.setWorkflowInput(checkpoint.getWorkflowInput());
+        // 在占用执行ID之后才读取节点检查点，同一个执行被并发恢复时只有一个会读取和执行
+        return launch(plan, runId, context, listener,
+                run -> run.restore(this.checkpointWriter.getStore().loadNodes(runId)));
+    }
+
+    /**
+     * @param preparer 启动前恢复已完成的节点(从检查点恢复或增量执行)，可以为 null
+     */
+    private FlowRun launch(FlowPlan plan, String runId, ExecutionContext context, ExecutionListener listener,
+                           Consumer<FlowRun> preparer) {
+        if (plan == null) {
+            throw new FlowExecuteException("`FlowPlan` must not be null");
+        }
+        if (this.workerPool == null || this.workerPool.isShutdown()) {
+            throw new FlowExecuteException("FlowEngine is not running");
+        }
+
+        // 先做准入检查，被拒绝的执行不做任何恢复工作
+        final int running = this.activeRunsNum.incrementAndGet();
+        if (this.maxActiveRuns > 0 && running > this.maxActiveRuns) {
+            this.activeRunsNum.decrementAndGet();
+            this.rejectedRuns.incrementAndGet();
+            throw new FlowExecuteException("Too many active flow runs: " + (running - 1));
+        }
+
+        // 单次执行同时执行中的节点数不会超过图的最大并行度，窄图不必占用更多的执行槽位
+        final int maxInFlight = Math.min(this.maxInFlightPerRun, plan.getMaxParallelism());
+        // 开启公平调度时每个执行(包括它的子流程)通过自己的任务队列使用工作线程
+        final FairTaskScheduler.RunQueue runQueue = this.fairScheduler != null
+                ? this.fairScheduler.newRunQueue(context != null ? context.getTenant() : null) : null;
+        final FlowRun run = new FlowRun(runId, plan, context, listener != null ? listener : NOOP_LISTENER,
+                runQueue != null ? runQueue : this.workerPool, this.retryScheduler, maxInFlight, this.priorityRefreshRuns);
+        run.setCheckpointWriter(this.checkpointWriter);
+        run.setNodeResultCache(this.nodeResultCache);
+        run.setPayloadSpiller(this.payloadSpiller);
+        run.setReleaseOutputs(this.releaseOutputs);
+        run.setNodeMetrics(this.nodeMetrics);
+        run.setDistributedExecutor(this.distributedExecutor);
+
+        // 原子地占用执行ID：同一个执行被并发恢复时，后来者被拒绝，不会有两个相同ID的执行
+        if (this.activeRuns.putIfAbsent(run.getRunId(), run) != null) {
+            this.activeRunsNum.decrementAndGet();
+            if (runQueue != null) {
+                runQueue.close();
+            }
+            throw new FlowExecuteException("Run is still active: " + run.getRunId());
+        }
+        if (preparer != null) {
+            try {
+                preparer.accept(run);
+            } catch (RuntimeException e) {
+                this.activeRuns.remove(run.getRunId(), run);
+                this.activeRunsNum.decrementAndGet();
+                if (runQueue != null) {
+                    runQueue.close();
+                }
+                throw e;
+            }
+        }
+
+        this.submittedRuns.incrementAndGet();
+        run.getResultFuture().whenComplete((r, e) -> {
+            this.activeRuns.remove(run.getRunId(), run);
+            this.activeRunsNum.decrementAndGet();
+            if (runQueue != null) {
+                runQueue.close();
+            }
+            if (r != null) {
+                this.peakRetainedBytes.accumulateAndGet(r.getPeakRetainedBytes(), Math::max);
+            }
+        });
+        run.start();
+        return run;
+    }
+
+    /**
+     * 提交流程执行并等待执行结束
+     */
+    public FlowExecutionResult execute(FlowPlan plan, ExecutionContext context, ExecutionListener listener) {
+        FlowRun run = submit(plan, context, listener);
+        try {
+            return run.getResultFuture().get();
+        } catch (InterruptedException e) {
+            run.cancel();
+            Thread.currentThread().interrupt(); // 恢复中断状态
+            throw new FlowExecuteException("Flow execution interrupted", e);
+        } catch (ExecutionException e) {
+            throw new FlowExecuteException(e.getCause());
+        }
+    }
+
+    public FlowRun getRun(String runId) {
+        return runId != null ? this.activeRuns.get(runId) : null;
+    }
+
+    public Collection<FlowRun> getActiveRuns() {
+        return Collections.unmodifiableCollection(this.activeRuns.values());
+    }
+
+    /**
+     * 取消指定的流程执行
+     * @return 流程执行是否存在
+     */
+    public boolean cancel(String runId) {
+        FlowRun run = getRun(runId);
+        if (run == null) {
+            return false;
+        }
+        run.cancel();
+        return true;
+    }
+
+    public void cancelAll() {
+        for (FlowRun run : this.activeRuns.values()) {
+            run.cancel();
+        }
+    }
+
+    public FlowPlanCache getPlanCache() {
+        return this.planCache;
+    }
+
+    /**
+     * 节点结果缓存，未开启时返回 null
+     */
+    public NodeResultCache getNodeResultCache() {
+        return this.nodeResultCache;
+    }
+
+    /**
+     * 大输出数据溢写策略，未开启时返回 null
+     */
+    public PayloadSpiller getPayloadSpiller() {
+        return this.payloadSpiller;
+    }
+
+    /**
+     * 设置租户的调度权重：线程池繁忙时各租户的执行获得的工作线程数与权重成正比(只影响开启公平调度时)
+     *
+     * @param tenant 租户(见 {@link ExecutionContext#setTenant(String)})
+     * @param weight 权重，<=0 表示恢复为默认权重
+     */
+    public void setTenantWeight(String tenant, int weight) {
+        if (this.fairScheduler != null && tenant != null) {
+            this.fairScheduler.setWeight(tenant, weight);
+        }
+    }
+
+    /**
+     * 解析租户权重配置，如: tenantA:4,tenantB:1
+     */
+    static Map<String, Integer> parseTenantWeights(String config) {
+        final Map<String, Integer> weights = new LinkedHashMap<>();
+        if (config == null || config.isBlank()) {
+            return weights;
+        }
+        for (String item : config.split(",")) {
+            final int sep = item.lastIndexOf(':');
+            if (sep <= 0) {
+                throw new IllegalArgumentException("Invalid tenant weight: " + item.trim() + ", expected tenant:weight");
+            }
+            weights.put(item.substring(0, sep).trim(), Integer.parseInt(item.substring(sep + 1).trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * 按节点类型统计的节点执行指标，未开启时返回 null
+     */
+    public NodeMetrics getNodeMetrics() {
+        return this.nodeMetrics;
+    }
+
+    /**
+     * 引擎运行状态快照(线程池饱和度、排队任务数、执行中的流程数等)
+     */
+    public FlowEngineStats getStats() {
+        final FlowEngineStats stats = new FlowEngineStats()
+                .setActiveRuns(this.activeRunsNum.get())
+                .setMaxActiveRuns(this.maxActiveRuns)
+                .setSubmittedRuns(this.submittedRuns.get())
+                .setRejectedRuns(this.rejectedRuns.get())
+                .setPeakRetainedBytes(this.peakRetainedBytes.get());
+
+        final ThreadPoolExecutor pool = this.workerPool;
+        if (pool != null) {
+            stats.setPoolSize(pool.getPoolSize())
+                    .setCorePoolSize(pool.getCorePoolSize())
+                    .setMaxPoolSize(pool.getMaximumPoolSize())
+                    .setActiveThreads(pool.getActiveCount())
+                    .setQueuedTasks(pool.getQueue().size())
+                    .setCompletedTasks(pool.getCompletedTaskCount());
+        }
+        if (this.fairScheduler != null) {
+            stats.setFairQueuedTasks(this.fairScheduler.getQueuedTasks())
+                    .setActiveTenants(this.fairScheduler.getActiveTenants());
+        }
+        if (this.workQueue != null) {
+            stats.setDistributedPending(this.workQueue.getPendingCount())
+                    .setDistributedClaimed(this.workQueue.getClaimedCount());
+        }
+        if (this.retryScheduler != null) {
+            stats.setScheduledRetries(this.retryScheduler.getQueue().size());
+        }
+        if (this.planCache != null) {
+            stats.setCachedPlans(this.planCache.size())
+                    .setPlanCacheHits(this.planCache.hitCount())
+                    .setPlanCacheMisses(this.planCache.missCount());
+        }
+        if (this.nodeResultCache != null) {
+            stats.setCachedNodeResults(this.nodeResultCache.size())
+                    .setNodeCacheHits(this.nodeResultCache.hitCount())
+                    .setNodeCacheMisses(this.nodeResultCache.missCount());
+        }
+        if (this.payloadSpiller != null) {
+            stats.setSpilledOutputs(this.payloadSpiller.getSpilledCount())
+                    .setSpilledBytes(this.payloadSpiller.getSpilledBytes());
+        }
+        return stats;
+    }
+
+    private void shutdown(ExecutorService es) {
+        if (es == null) {
+            return;
+        }
+        try {
+            es.shutdown();
+            if (!es.awaitTermination(SHUTDOWN_AWAIT_SECONDS, TimeUnit.SECONDS)) {
+                es.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            es.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicLong tn = new AtomicLong(0);
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, this.prefix + tn.incrementAndGet());
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler((thread, e) ->
+                    LOG.error(">> ERROR: Flow-Engine thread<{}> exception: ", thread.getName(), e));
+            return t;
+        }
+    }
+}
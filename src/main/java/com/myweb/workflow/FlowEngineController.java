@@ -0,0 +1,52 @@
+package com.myweb.workflow;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.myweb.workflow.metrics.NodeMetrics;
+
+/**
+ * 流程引擎运行状态
+ */
+@RestController
+@RequestMapping("/api/workflow/engine")
+public class FlowEngineController {
+
+    @Autowired
+    private FlowEngine flowEngine;
+
+    /**
+     * 线程池饱和度、排队任务数、执行中的流程数等
+     */
+    @GetMapping("/stats")
+    public FlowEngineStats stats() {
+        return this.flowEngine.getStats();
+    }
+
+    /**
+     * 按节点类型统计的执行指标：就绪到提交、线程池排队、执行耗时的直方图(微秒)，执行、重试和失败次数
+     */
+    @GetMapping("/metrics")
+    public Map<String, NodeMetrics.Snapshot> metrics() {
+        final NodeMetrics metrics = this.flowEngine.getNodeMetrics();
+        return metrics != null ? metrics.snapshot() : Collections.emptyMap();
+    }
+
+    /**
+     * 清空节点执行指标，重新开始统计
+     */
+    @DeleteMapping("/metrics")
+    public void resetMetrics() {
+        final NodeMetrics metrics = this.flowEngine.getNodeMetrics();
+        if (metrics != null) {
+            metrics.reset();
+        }
+    }
+
+}
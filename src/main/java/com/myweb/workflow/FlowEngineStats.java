@@ -0,0 +1,289 @@
+package com.myweb.workflow;
+
+/**
+ * 流程引擎运行状态快照，用于观察共享线程池的饱和度.
+ */
+public class FlowEngineStats {
+    // 工作线程池
+    private int poolSize;
+    private int corePoolSize;
+    private int maxPoolSize;
+    private int activeThreads;
+    private int queuedTasks;
+    private long completedTasks;
+
+    // 重试调度器中等待触发的重试任务数
+    private int scheduledRetries;
+
+    // 公平调度：各执行队列中尚未派发给线程池的任务数，有待派发任务的租户数(未开启时均为 0)
+    private int fairQueuedTasks;
+    private int activeTenants;
+
+    // 分布式执行：本实例提交、等待结果的节点数，本实例领取、正在执行的节点数(未开启时均为 0)
+    private int distributedPending;
+    private int distributedClaimed;
+
+    // 流程执行
+    private int activeRuns;
+    private int maxActiveRuns;
+    private long submittedRuns;
+    private long rejectedRuns;
+
+    // 执行计划缓存
+    private long cachedPlans;
+    private long planCacheHits;
+    private long planCacheMisses;
+
+    // 节点结果缓存(未开启时均为 0)
+    private long cachedNodeResults;
+    private long nodeCacheHits;
+    private long nodeCacheMisses;
+
+    // 写入临时文件的节点输出(未开启时均为 0)
+    private long spilledOutputs;
+    private long spilledBytes;
+
+    // 已结束的执行中节点输出数据的估算占用峰值(字节，未开启释放输出数据时为 0)
+    private long peakRetainedBytes;
+
+    /**
+     * 线程池饱和度：活跃线程数 / 最大线程数
+     */
+    public double getSaturation() {
+        return this.maxPoolSize > 0 ? (double) this.activeThreads / this.maxPoolSize : 0d;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public FlowEngineStats setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public FlowEngineStats setCorePoolSize(int corePoolSize) {
+        this.corePoolSize = corePoolSize;
+        return this;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public FlowEngineStats setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+        return this;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    public FlowEngineStats setActiveThreads(int activeThreads) {
+        this.activeThreads = activeThreads;
+        return this;
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public FlowEngineStats setQueuedTasks(int queuedTasks) {
+        this.queuedTasks = queuedTasks;
+        return this;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    public FlowEngineStats setCompletedTasks(long completedTasks) {
+        this.completedTasks = completedTasks;
+        return this;
+    }
+
+    public int getScheduledRetries() {
+        return scheduledRetries;
+    }
+
+    public FlowEngineStats setScheduledRetries(int scheduledRetries) {
+        this.scheduledRetries = scheduledRetries;
+        return this;
+    }
+
+    public int getFairQueuedTasks() {
+        return fairQueuedTasks;
+    }
+
+    public FlowEngineStats setFairQueuedTasks(int fairQueuedTasks) {
+        this.fairQueuedTasks = fairQueuedTasks;
+        return this;
+    }
+
+    public int getActiveTenants() {
+        return activeTenants;
+    }
+
+    public FlowEngineStats setActiveTenants(int activeTenants) {
+        this.activeTenants = activeTenants;
+        return this;
+    }
+
+    public int getDistributedPending() {
+        return distributedPending;
+    }
+
+    public FlowEngineStats setDistributedPending(int distributedPending) {
+        this.distributedPending = distributedPending;
+        return this;
+    }
+
+    public int getDistributedClaimed() {
+        return distributedClaimed;
+    }
+
+    public FlowEngineStats setDistributedClaimed(int distributedClaimed) {
+        this.distributedClaimed = distributedClaimed;
+        return this;
+    }
+
+    public int getActiveRuns() {
+        return activeRuns;
+    }
+
+    public FlowEngineStats setActiveRuns(int activeRuns) {
+        this.activeRuns = activeRuns;
+        return this;
+    }
+
+    public int getMaxActiveRuns() {
+        return maxActiveRuns;
+    }
+
+    public FlowEngineStats setMaxActiveRuns(int maxActiveRuns) {
+        this.maxActiveRuns = maxActiveRuns;
+        return this;
+    }
+
+    public long getSubmittedRuns() {
+        return submittedRuns;
+    }
+
+    public FlowEngineStats setSubmittedRuns(long submittedRuns) {
+        this.submittedRuns = submittedRuns;
+        return this;
+    }
+
+    public long getRejectedRuns() {
+        return rejectedRuns;
+    }
+
+    public FlowEngineStats setRejectedRuns(long rejectedRuns) {
+        this.rejectedRuns = rejectedRuns;
+        return this;
+    }
+
+    public long getCachedPlans() {
+        return cachedPlans;
+    }
+
+    public FlowEngineStats setCachedPlans(long cachedPlans) {
+        this.cachedPlans = cachedPlans;
+        return this;
+    }
+
+    public long getPlanCacheHits() {
+        return planCacheHits;
+    }
+
+    public FlowEngineStats setPlanCacheHits(long planCacheHits) {
+        this.planCacheHits = planCacheHits;
+        return this;
+    }
+
+    public long getPlanCacheMisses() {
+        return planCacheMisses;
+    }
+
+    public FlowEngineStats setPlanCacheMisses(long planCacheMisses) {
+        this.planCacheMisses = planCacheMisses;
+        return this;
+    }
+
+    public long getCachedNodeResults() {
+        return cachedNodeResults;
+    }
+
+    public FlowEngineStats setCachedNodeResults(long cachedNodeResults) {
+        this.cachedNodeResults = cachedNodeResults;
+        return this;
+    }
+
+    public long getNodeCacheHits() {
+        return nodeCacheHits;
+    }
+
+    public FlowEngineStats setNodeCacheHits(long nodeCacheHits) {
+        this.nodeCacheHits = nodeCacheHits;
+        return this;
+    }
+
+    public long getNodeCacheMisses() {
+        return nodeCacheMisses;
+    }
+
+    public FlowEngineStats setNodeCacheMisses(long nodeCacheMisses) {
+        this.nodeCacheMisses = nodeCacheMisses;
+        return this;
+    }
+
+    public long getSpilledOutputs() {
+        return spilledOutputs;
+    }
+
+    public FlowEngineStats setSpilledOutputs(long spilledOutputs) {
+        this.spilledOutputs = spilledOutputs;
+        return this;
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    public FlowEngineStats setSpilledBytes(long spilledBytes) {
+        this.spilledBytes = spilledBytes;
+        return this;
+    }
+
+    public long getPeakRetainedBytes() {
+        return peakRetainedBytes;
+    }
+
+    public FlowEngineStats setPeakRetainedBytes(long peakRetainedBytes) {
+        this.peakRetainedBytes = peakRetainedBytes;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "FlowEngineStats{" +
+                "poolSize=" + poolSize +
+                ", maxPoolSize=" + maxPoolSize +
+                ", activeThreads=" + activeThreads +
+                ", queuedTasks=" + queuedTasks +
+                ", scheduledRetries=" + scheduledRetries +
+                ", fairQueuedTasks=" + fairQueuedTasks +
+                ", distributedPending=" + distributedPending +
+                ", distributedClaimed=" + distributedClaimed +
+                ", activeRuns=" + activeRuns +
+                ", submittedRuns=" + submittedRuns +
+                ", rejectedRuns=" + rejectedRuns +
+                '}';
+    }
+
+}
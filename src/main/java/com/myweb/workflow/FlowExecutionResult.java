@@ -17,6 +17,9 @@ public class FlowExecutionResult {
 
     private boolean success = false;
 
+    // 执行过程中节点输出数据的估算占用峰值(字节)，只在开启释放输出数据时统计
+    private long peakRetainedBytes = 0;
+
     public Instant getStartTime() {
         return startTime;
     }
@@ -57,6 +60,13 @@ public class FlowExecutionResult {
         return this;
     }
 
+    /**
+     * 失败的节点 <nodeId, failedReason>
+     */
+    public Map<String, String> getFailedNodes() {
+        return Collections.unmodifiableMap(this.failedNodes);
+    }
+
     public FlowExecutionResult addFailedNode(String nodeId, String failedReason) {
         if (nodeId != null) {
             this.failedNodes.put(nodeId, failedReason != null ? failedReason : "");
@@ -64,6 +74,15 @@ public class FlowExecutionResult {
         return this;
     }
 
+    public long getPeakRetainedBytes() {
+        return peakRetainedBytes;
+    }
+
+    public FlowExecutionResult setPeakRetainedBytes(long peakRetainedBytes) {
+        this.peakRetainedBytes = peakRetainedBytes;
+        return this;
+    }
+
     /**
      * 计算整个工作流的执行耗时, 单位: 毫秒
      * @return 工作流执行耗时多少毫秒, 如果没有被执行过, 则返回 null
@@ -4,38 +4,42 @@ import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.myweb.workflow.exception.FlowExecuteException;
-import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.CompiledGraph;
 import com.myweb.workflow.graph.GNodeInput;
 import com.myweb.workflow.graph.Graph;
 import com.myweb.workflow.nodes.StartNode;
 
 /**
  * DAG流程执行器
+ * <p>
+ * 事件驱动：节点执行完成后直接在完成回调中处理下游节点，不再由协调线程轮询等待。
  */
 public class FlowExecutor implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(FlowExecutor.class);
 
-    private static final int TASK_POLL_TIMEOUT_SECONDS = 10;
     private static final int SHUTDOWN_AWAIT_SECONDS = 10;
 
-    // 节点信息
-    private final ConcurrentMap<String, TaskNode> runNodes = new ConcurrentHashMap<>();
+    // 节点信息(按编译后图的节点下标存放)
+    private final TaskNode[] runNodes;
     // 计算每个节点的动态入度, 并用于运行过程中的更新
-    private final ConcurrentMap<String, AtomicInteger> currentInDegree = new ConcurrentHashMap<>();
-    // 就绪队列
-    private final Queue<String> readyQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicIntegerArray currentInDegree;
+    // 就绪队列(节点下标)
+    private final Queue<Integer> readyQueue = new ConcurrentLinkedQueue<>();
     // 用于重试
-    private final ConcurrentMap<String, AtomicInteger> retryCounts = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray retryCounts;
 
-    // 存储处于执行中的节点信息
-    private final ConcurrentMap<String, Future<NodeExecutionResult>> runningFutures = new ConcurrentHashMap<>();
-    // Future到NodeId的映射, 用于快速找到 nodeId
-    private final ConcurrentMap<Future<NodeExecutionResult>, String> future2NodeIdMap = new ConcurrentHashMap<>();
+    // 处于执行中的节点任务(按节点下标存放), 仅用于取消时中断任务
+    private final AtomicReferenceArray<NodeTask> runningTasks;
+    // 执行中的任务数(包括正在处理完成回调的任务), 用于判断流程是否已无事可做
+    private final AtomicInteger runningTasksNum = new AtomicInteger(0);
 
     private final AtomicInteger completedTasksNum = new AtomicInteger(0);
     // 已排程但尚未触发的重试
@@ -44,18 +48,25 @@ public class FlowExecutor implements AutoCloseable {
 
     // 执行完成的节点
     private final Set<String> completedNodes = ConcurrentHashMap.newKeySet();
-    // 记录跳过的节点, 用于类似 IF-ELSE 条件节点, 如果一个节点被跳过了, 它后续节点也要跳过(传递性)
-    private final Set<String> skippedNodes = ConcurrentHashMap.newKeySet();
+    // 记录跳过的节点(1 表示已跳过), 用于类似 IF-ELSE 条件节点, 如果一个节点被跳过了, 它后续节点也要跳过(传递性)
+    private final AtomicIntegerArray skippedNodes;
 
     private final Object stateLock = new Object();
     private volatile ExecutionState executionState = ExecutionState.READY;
 
-    private final ExecutorCompletionService<NodeExecutionResult> executorService;
+    // 本次执行的结果, 流程结束时完成
+    private final CompletableFuture<FlowExecutionResult> flowResultFuture = new CompletableFuture<>();
+    private final AtomicBoolean flowFinished = new AtomicBoolean(false);
+    private volatile FlowExecutionResult flowExecutionResult;
+    private volatile ExecutionContext executionContext;
+
+    private final ExecutorService taskExecutor;
     private final ScheduledExecutorService retryExecutorService;
     private final ExecutionListener executionListener;
     private ExecutorService threadPoolExecutor;
 
     private final Graph dagGraph;
+    private final CompiledGraph compiledGraph;
 
     /**
      * 执行状态
@@ -75,19 +86,28 @@ public class FlowExecutor implements AutoCloseable {
 
         this.dagGraph = flowGraph;
         this.dagGraph.initialize();
+        this.compiledGraph = this.dagGraph.getCompiledGraph();
+
+        final int nodeCount = this.compiledGraph.size();
+        this.runNodes = new TaskNode[nodeCount];
+        this.currentInDegree = new AtomicIntegerArray(nodeCount);
+        this.retryCounts = new AtomicIntegerArray(nodeCount);
+        this.skippedNodes = new AtomicIntegerArray(nodeCount);
+        this.runningTasks = new AtomicReferenceArray<>(nodeCount);
 
         if (executor == null) {
             // 计算最大并行度来创建自定义线程池
+            // 节点在完成回调中提交下游节点：队列不能有界，也不能使用 CallerRunsPolicy，
+            // 否则队列满时完成回调会在当前线程中内联执行下一个节点，调用栈随链路长度增长
             final int maxParallel = this.dagGraph.getMaxParallelism();
             final int cpuCores = Runtime.getRuntime().availableProcessors();
-            final int corePoolSize = Math.max(1, Math.min(maxParallel / 2, cpuCores / 2));
-            final int maxPoolSize = Math.min(maxParallel, cpuCores);
-            this.threadPoolExecutor = new ThreadPoolExecutor(
-                    corePoolSize,
-                    maxPoolSize,
+            final int poolSize = Math.max(1, Math.min(maxParallel, cpuCores));
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    poolSize,
+                    poolSize,
                     60L,
                     TimeUnit.SECONDS,
-                    new LinkedBlockingQueue<>(maxParallel * 2),
+                    new LinkedBlockingQueue<>(),
                     new ThreadFactory() {
                         private final AtomicLong tn = new AtomicLong(0);
                         @Override
@@ -99,62 +119,79 @@ public class FlowExecutor implements AutoCloseable {
                             });
                             return t;
                         }
-                    },
-                    new ThreadPoolExecutor.CallerRunsPolicy()
+                    }
             );
+            pool.allowCoreThreadTimeOut(true);
+            this.threadPoolExecutor = pool;
         }
 
         this.initialize();
 
         this.executionListener = listener != null ? listener : new DefaultExecutionListener();
-        this.executorService = new ExecutorCompletionService<NodeExecutionResult>(executor != null ? executor : this.threadPoolExecutor);
+        this.taskExecutor = executor != null ? executor : this.threadPoolExecutor;
         this.retryExecutorService = Executors.newSingleThreadScheduledExecutor();
     }
 
     private void initialize() {
-        List<GNode> nodes = this.dagGraph.getNodes();
-        for (GNode node : nodes) {
-            this.runNodes.put(node.getId(), TaskNodeFactory.createNode(node));
-            // 预设
-            this.retryCounts.put(node.getId(), new AtomicInteger(0));
+        for (int i = 0; i < this.runNodes.length; i++) {
+            this.runNodes[i] = TaskNodeFactory.createNode(this.compiledGraph.getNode(i));
+            this.currentInDegree.set(i, this.compiledGraph.getInDegree(i));
         }
-
-        this.dagGraph.getNodesInDegree().forEach((nodeId, degree) -> this.currentInDegree.put(nodeId, new AtomicInteger(degree)));
     }
 
     private void resetExecutionState() {
-        // 重置入度
-        this.dagGraph.getNodesInDegree().forEach((nodeId, degree) -> this.currentInDegree.get(nodeId).set(degree));
-        // 重置重试计数
-        this.retryCounts.values().forEach(counter -> counter.set(0));
+        for (int i = 0; i < this.runNodes.length; i++) {
+            // 重置入度
+            this.currentInDegree.set(i, this.compiledGraph.getInDegree(i));
+            // 重置重试计数
+            this.retryCounts.set(i, 0);
+            this.skippedNodes.set(i, 0);
+            this.runningTasks.set(i, null);
+        }
         this.readyQueue.clear();
-        this.runningFutures.clear();
-        this.future2NodeIdMap.clear();
+        this.runningTasksNum.set(0);
         this.completedTasksNum.set(0);
         this.failedTasks.clear();
         this.completedNodes.clear();
-        this.skippedNodes.clear();
     }
 
     /**
      * 初始化就绪队列
      */
     private void initializeReadyQueue() {
-        this.currentInDegree.forEach((nodeId, degree) -> {
-            if (degree.get() == 0) {
-                this.readyQueue.offer(nodeId);
+        for (int i = 0; i < this.runNodes.length; i++) {
+            if (this.currentInDegree.get(i) == 0) {
+                this.readyQueue.offer(i);
             }
-        });
+        }
     }
 
     /**
-     * 执行workflow
+     * 执行workflow, 并等待流程执行结束
      * @param context 执行上下文
      */
     public void execute(ExecutionContext context) {
-        if (this.runNodes.isEmpty()) {
+        CompletableFuture<FlowExecutionResult> future = executeAsync(context);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            cancelAllRunningTasks();
+            Thread.currentThread().interrupt(); // 恢复中断状态
+        } catch (ExecutionException e) {
+            LOG.error(">> ERROR: 流程执行时发生异常: ", e.getCause());
+        }
+    }
+
+    /**
+     * 异步执行workflow.
+     * 节点执行完成后, 由完成回调直接处理下游节点, 调用线程不会被阻塞.
+     * @param context 执行上下文
+     * @return 流程执行结果, 流程结束(完成/失败/取消)时完成
+     */
+    public CompletableFuture<FlowExecutionResult> executeAsync(ExecutionContext context) {
+        if (this.runNodes.length == 0) {
             LOG.warn(">> WARNING: 没有节点需要执行");
-            return;
+            return CompletableFuture.completedFuture(new FlowExecutionResult());
         }
 
         if (context == null) {
@@ -180,148 +217,157 @@ public class FlowExecutor implements AutoCloseable {
             this.executionState = ExecutionState.RUNNING;
         }
 
-        // 1. 初始化就绪队列
-        initializeReadyQueue();
-
-        // 2. 提交第一批任务
-        submitReadyTasks(context);
+        this.flowExecutionResult = flowExecutionResult;
+        this.executionContext = context;
 
+        // 提交第一批任务期间占用一个计数, 避免先完成的任务误判流程已结束
+        this.runningTasksNum.incrementAndGet();
         try {
-            // 3. 主循环：等待任务完成，并触发新任务
-            while ((this.completedTasksNum.get() + failedTasks.size()) < this.runNodes.size()
-                    && this.executionState == ExecutionState.RUNNING) {
-
-                // 获取执行完成的任务节点(不论成功或失败)
-                Future<NodeExecutionResult> completedFuture = this.executorService.poll(TASK_POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                if (completedFuture == null) {
-                    // 补交就绪任务
-                    if (this.runningFutures.isEmpty() && this.readyQueue.size() > 0) {
-                        submitReadyTasks(context);
-                        continue;
-                    }
-                    if (this.runningFutures.isEmpty() && this.readyQueue.isEmpty() && this.scheduledRetryTasksNum.get() == 0){
-                        // 真正无事可做 → 退出
-                        break;
-                    }
-                    continue;
-                }
+            // 1. 初始化就绪队列
+            initializeReadyQueue();
 
-                String finishedNodeId = this.future2NodeIdMap.remove(completedFuture);
-                if (finishedNodeId == null) {
-                    continue;
-                }
-                this.runningFutures.remove(finishedNodeId);
+            // 2. 提交第一批任务, 后续任务由完成回调驱动
+            submitReadyTasks(context);
+        } catch (Exception e) {
+            LOG.error(">> ERROR: 流程执行时发生异常: ", e);
+            cancelAllRunningTasks();
+        } finally {
+            releaseRunningTask();
+        }
 
-                try {
-                    NodeExecutionResult taskResult = completedFuture.get();
-                    // 更新节点状态
-                    this.runNodes.get(finishedNodeId).setTaskState(taskResult.isSuccess() ? TaskState.SUCCESS : TaskState.FAILED);
-
-                    if (taskResult.isSuccess()) {
-                        this.completedNodes.add(finishedNodeId);
-                        this.completedTasksNum.incrementAndGet();
-                        // 在上下文中记录节点输出
-                        context.addNodeExecutionResult(finishedNodeId, taskResult);
-
-                        // 触发后续任务
-                        Collection<String> allDependents = this.dagGraph.getDownstreamNodes(finishedNodeId);
-                        // 如果此节点存在分支情况
-                        Collection<String> nodesToActivate = taskResult.getNextNodesToActivate();
-                        // 如果节点未指定激活路径，则默认激活所有下游
-                        if (nodesToActivate == null || nodesToActivate.isEmpty()) {
-                            nodesToActivate = allDependents;
-                        }
+        return this.flowResultFuture;
+    }
 
-                        // 处理下游依赖
-                        for (String dependentId : allDependents) {
-                            if (nodesToActivate.contains(dependentId)) {
-                                // 路径被激活：正常处理入度，如果为0则加入就绪队列
-                                if (this.currentInDegree.get(dependentId).decrementAndGet() == 0) {
-                                    if (this.skippedNodes.contains(dependentId)) {
-                                        // 虽然被激活了，但因为之前有其他父节点跳过它，导致它已被标记。
-                                        // 现在所有父节点都齐了(入度0)，它正式成为"完成的跳过节点"。
-                                        this.completedTasksNum.incrementAndGet();
-                                        // 触发下游跳过
-                                        Collection<String> childDependents = this.dagGraph.getDownstreamNodes(dependentId);
-                                        if (childDependents != null && !childDependents.isEmpty()) {
-                                            for(String child : childDependents) {
-                                                propagateSkipNode(context, child);
-                                            }
-                                        }
-                                    } else {
-                                        // 正常入队
-                                        this.readyQueue.offer(dependentId);
-                                    }
-                                }
-                            } else {
-                                // 路径被跳过：启动“跳过”传播
-                                propagateSkipNode(context, dependentId);
-                            }
-                        }
+    /**
+     * 节点任务执行结束(不论成功、失败或取消)后的回调, 在执行该任务的线程(或取消任务的线程)中被调用.
+     */
+    private void onTaskDone(NodeTask task) {
+        final int finishedNode = task.nodeIndex;
+        final String finishedNodeId = this.compiledGraph.getNodeId(finishedNode);
+        final ExecutionContext context = this.executionContext;
+        this.runningTasks.compareAndSet(finishedNode, task, null);
 
-                        // 提交新加入就绪队列的任务
-                        submitReadyTasks(context);
+        try {
+            NodeExecutionResult taskResult = task.get();
+            // 更新节点状态
+            this.runNodes[finishedNode].setTaskState(taskResult.isSuccess() ? TaskState.SUCCESS : TaskState.FAILED);
 
-                        try {
-                            this.executionListener.onNodeCompleted(taskResult);
-                        } catch (Exception e) {
-                            LOG.error(">> ERROR: 回调 `executionListener.onNodeCompleted()` 时发生异常: ", e);
+            if (taskResult.isSuccess()) {
+                this.completedNodes.add(finishedNodeId);
+                this.completedTasksNum.incrementAndGet();
+                // 在上下文中记录节点输出
+                context.addNodeExecutionResult(finishedNodeId, taskResult);
+
+                // 如果此节点存在分支情况
+                Collection<String> nodesToActivate = taskResult.getNextNodesToActivate();
+                // 如果节点未指定激活路径，则默认激活所有下游；指定了空的激活路径时所有下游都被跳过
+                final boolean activateAll = nodesToActivate == null;
+
+                // 触发后续任务：处理下游依赖
+                final CompiledGraph cg = this.compiledGraph;
+                for (int p = cg.getDownstreamStart(finishedNode), end = cg.getDownstreamEnd(finishedNode); p < end; p++) {
+                    final int dependent = cg.getDownstreamAt(p);
+                    if (activateAll || nodesToActivate.contains(cg.getNodeId(dependent))) {
+                        // 路径被激活：正常处理入度，如果为0则加入就绪队列
+                        if (this.currentInDegree.decrementAndGet(dependent) == 0) {
+                            if (this.skippedNodes.get(dependent) == 1) {
+                                // 虽然被激活了，但因为之前有其他父节点跳过它，导致它已被标记。
+                                // 现在所有父节点都齐了(入度0)，它正式成为"完成的跳过节点"。
+                                this.completedTasksNum.incrementAndGet();
+                                // 触发下游跳过
+                                skipDependents(context, dependent);
+                            } else {
+                                // 正常入队
+                                this.readyQueue.offer(dependent);
+                            }
                         }
-
                     } else {
-                        // 容错与重试
-                        handleTaskFailure(taskResult, context);
+                        // 路径被跳过：启动“跳过”传播
+                        propagateSkipNode(context, dependent);
                     }
+                }
 
-                } catch (CancellationException e) {
-                    LOG.warn(">> WARNING: 任务 <{}> 被取消了.", finishedNodeId);
-                    NodeExecutionResult failedResult = NodeExecutionResult.failed(e).setNodeId(finishedNodeId).setErrorMessage("节点被取消执行");
-                    this.runNodes.get(finishedNodeId).setTaskState(TaskState.CANCELLED);
-                    context.addNodeExecutionResult(finishedNodeId, failedResult);
-
-                    if (this.failedTasks.add(failedResult)) {
-                        try {
-                            this.executionListener.onNodeCompleted(failedResult);
-                        } catch (Exception e2) {
-                            LOG.error(">> ERROR: 回调 `executionListener.onNodeCompleted()` 时发生异常: ", e2);
-                        }
-                        // 如果这个节点被取消执行, 则跳过其下游依赖节点
-                        skipDependents(context, finishedNodeId);
-                    }
+                // 提交新加入就绪队列的任务
+                submitReadyTasks(context);
 
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    cancelAllRunningTasks();
-                    break;
+                try {
+                    this.executionListener.onNodeCompleted(taskResult);
                 } catch (Exception e) {
-                    // 容错与重试
-                    handleTaskFailure(NodeExecutionResult.failed(e).setNodeId(finishedNodeId), context);
+                    LOG.error(">> ERROR: 回调 `executionListener.onNodeCompleted()` 时发生异常: ", e);
                 }
 
-            } // end-while
+            } else {
+                // 容错与重试
+                handleTaskFailure(finishedNode, taskResult, context);
+            }
+
+        } catch (CancellationException e) {
+            LOG.warn(">> WARNING: 任务 <{}> 被取消了.", finishedNodeId);
+            NodeExecutionResult failedResult = NodeExecutionResult.failed(e).setNodeId(finishedNodeId).setErrorMessage("节点被取消执行");
+            this.runNodes[finishedNode].setTaskState(TaskState.CANCELLED);
+            context.addNodeExecutionResult(finishedNodeId, failedResult);
+
+            if (this.failedTasks.add(failedResult)) {
+                try {
+                    this.executionListener.onNodeCompleted(failedResult);
+                } catch (Exception e2) {
+                    LOG.error(">> ERROR: 回调 `executionListener.onNodeCompleted()` 时发生异常: ", e2);
+                }
+                // 如果这个节点被取消执行, 则跳过其下游依赖节点
+                skipDependents(context, finishedNode);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAllRunningTasks();
+        } catch (Exception e) {
+            // 容错与重试
+            handleTaskFailure(finishedNode, NodeExecutionResult.failed(e).setNodeId(finishedNodeId), context);
+        } finally {
+            releaseRunningTask();
+        }
+    }
+
+    /**
+     * 释放一个执行中的计数, 如果流程已无事可做则结束流程
+     */
+    private void releaseRunningTask() {
+        if (this.runningTasksNum.decrementAndGet() == 0) {
+            tryFinishExecution();
+        }
+    }
+
+    /**
+     * 当所有节点都已完结, 或者已没有执行中的任务且不会再有新任务(无待触发的重试、或流程已不在运行状态)时, 结束流程
+     */
+    private void tryFinishExecution() {
+        if (this.runningTasksNum.get() > 0) {
+            return;
+        }
+
+        final boolean allDone = (this.completedTasksNum.get() + this.failedTasks.size()) >= this.runNodes.length;
+        final boolean noMoreWork = this.readyQueue.isEmpty() && this.scheduledRetryTasksNum.get() == 0;
+        if (!allDone && !noMoreWork && this.executionState == ExecutionState.RUNNING) {
+            return;
+        }
 
+        if (!this.flowFinished.compareAndSet(false, true)) {
+            return;
+        }
+
+        final FlowExecutionResult flowExecutionResult = this.flowExecutionResult;
+        try {
             // 任务流执行完毕
             synchronized (this.stateLock) {
                 if (this.executionState == ExecutionState.RUNNING) {
-                    if (this.completedTasksNum.get() == this.runNodes.size()) {
+                    if (this.completedTasksNum.get() == this.runNodes.length) {
                         this.executionState = ExecutionState.COMPLETED;
                         flowExecutionResult.setSuccess(true);
                     } else {
                         this.executionState = ExecutionState.FAILED;
                     }
                 }
-
-                // 确保清理剩余任务
-                if (!this.runningFutures.isEmpty()) {
-                    cancelAllRunningTasks();
-                }
             }
-
-        } catch (InterruptedException e) {
-            cancelAllRunningTasks();
-            Thread.currentThread().interrupt(); // 恢复中断状态
-        } catch (Exception e) {
-            cancelAllRunningTasks();
         } finally {
             flowExecutionResult.setSucceedNodes(completedNodes);
             flowExecutionResult.setEndTime(Instant.now());
@@ -335,6 +381,8 @@ public class FlowExecutor implements AutoCloseable {
             } catch (Exception e) {
                 LOG.error(">> ERROR: 回调 `executionListener.onFlowCompleted()` 时发生异常: ", e);
             }
+
+            this.flowResultFuture.complete(flowExecutionResult);
         }
     }
 
@@ -355,9 +403,9 @@ public class FlowExecutor implements AutoCloseable {
      */
     private void submitReadyTasks(ExecutionContext context) {
         while (!this.readyQueue.isEmpty() && this.executionState == ExecutionState.RUNNING) {
-            String nodeId = this.readyQueue.poll();
-            if (nodeId != null && !this.skippedNodes.contains(nodeId)) {
-                submitTask(nodeId, context);
+            Integer nodeIndex = this.readyQueue.poll();
+            if (nodeIndex != null && this.skippedNodes.get(nodeIndex) == 0) {
+                submitTask(nodeIndex, context);
             }
         }
     }
@@ -365,19 +413,17 @@ public class FlowExecutor implements AutoCloseable {
     /**
      * 提交单个任务
      */
-    private void submitTask(final String nodeId, final ExecutionContext context) {
+    private void submitTask(final int nodeIndex, final ExecutionContext context) {
         // 检查是否已被取消
-        if (this.executionState != ExecutionState.RUNNING || this.skippedNodes.contains(nodeId)) {
+        if (this.executionState != ExecutionState.RUNNING || this.skippedNodes.get(nodeIndex) == 1) {
             return;
         }
 
-        final TaskNode runNode = this.runNodes.get(nodeId);
-        if (runNode == null) {
-            return;
-        }
+        final TaskNode runNode = this.runNodes[nodeIndex];
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
 
-        // 提交一个任务，并返回一个 Future ，任务完成后会自动把 Future 放入内部队列
-        Future<NodeExecutionResult> future = this.executorService.submit(() -> {
+        // 提交一个任务，任务结束后会自动回调 onTaskDone() 处理下游节点
+        final NodeTask task = new NodeTask(nodeIndex, () -> {
             Instant startTime = Instant.now();
             runNode.setTaskState(TaskState.RUNNING);
 
@@ -389,9 +435,10 @@ public class FlowExecutor implements AutoCloseable {
             }
 
             // 当执行此节点时，先自动从其上游节点获取输入
-            Collection<GNodeInput> upstreamNodeInputs = dagGraph.getUpstreamNodeInputs(nodeId);
+            final CompiledGraph cg = this.compiledGraph;
             NodeInputs inputs = new NodeInputs();
-            for (GNodeInput gNodeInput : upstreamNodeInputs) {
+            for (int p = cg.getInputStart(nodeIndex), end = cg.getInputEnd(nodeIndex); p < end; p++) {
+                final GNodeInput gNodeInput = cg.getInputAt(p);
                 // 上游节点的输出端口->目标节点的输入端口信息
                 final String sourceNodeId = gNodeInput.getSourceNodeId();
                 final String sourcePort = gNodeInput.getSourcePort();
@@ -429,38 +476,48 @@ public class FlowExecutor implements AutoCloseable {
             }
         });
 
-        this.runningFutures.put(nodeId, future);
-        this.future2NodeIdMap.put(future, nodeId);
+        this.runningTasks.set(nodeIndex, task);
+        this.runningTasksNum.incrementAndGet();
+        try {
+            this.taskExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOG.error(">> ERROR: 任务 <{}> 提交失败: ", nodeId, e);
+            // 取消任务会触发完成回调, 按取消处理
+            task.cancel(false);
+        }
     }
 
     /**
      * 处理任务失败：重试或永久失败
      */
-    private void handleTaskFailure(NodeExecutionResult failedResult, ExecutionContext context) {
+    private void handleTaskFailure(final int failedNodeIndex, NodeExecutionResult failedResult, ExecutionContext context) {
         if (this.failedTasks.contains(failedResult)) {
             return;
         }
 
         final String failedNodeId = failedResult.getNodeId();
-        TaskNode failedNode = this.runNodes.get(failedNodeId);
+        TaskNode failedNode = this.runNodes[failedNodeIndex];
         final int maxRetries = failedNode.getMaxRetries();
         final long retryDelayMillis = failedNode.getRetryDelayMillis();
-        AtomicInteger retryCounter = this.retryCounts.get(failedNodeId);
 
         boolean retrySuccess = false;
-        if (retryCounter.incrementAndGet() <= maxRetries) {
-            LOG.warn(">> WARNING: 重试任务 <{}> ({}/{})", failedNodeId, retryCounter.get(), maxRetries);
+        final int retryCount = this.retryCounts.incrementAndGet(failedNodeIndex);
+        if (retryCount <= maxRetries) {
+            LOG.warn(">> WARNING: 重试任务 <{}> ({}/{})", failedNodeId, retryCount, maxRetries);
             // 计数延后重试排程
             this.scheduledRetryTasksNum.incrementAndGet();
             // 延迟重试
             try {
                 this.retryExecutorService.schedule(() -> {
-                    // 更新延后重试排程计数
-                    scheduledRetryTasksNum.decrementAndGet();
-                    submitTask(failedNodeId, context);
+                    // 先提交重试任务再更新延后重试排程计数, 避免流程被误判为已结束
+                    submitTask(failedNodeIndex, context);
+                    if (scheduledRetryTasksNum.decrementAndGet() == 0) {
+                        tryFinishExecution();
+                    }
                 }, retryDelayMillis, TimeUnit.MILLISECONDS);
                 retrySuccess = true;
             } catch (RejectedExecutionException e) {
+                this.scheduledRetryTasksNum.decrementAndGet();
                 LOG.error(">> ERROR: 重试任务 <{}> 提交失败: ", failedNodeId, e);
             }
         } else {
@@ -475,19 +532,17 @@ public class FlowExecutor implements AutoCloseable {
             }
 
             // 如果此节点达到最大重试次数后,仍然失败,则此节点的下游依赖节点全部跳过
-            skipDependents(context, failedNodeId);
+            skipDependents(context, failedNodeIndex);
         }
     }
 
     /**
      * 跳过这个节点的下游依赖节点
      */
-    private void skipDependents(ExecutionContext context, String nodeId) {
-        Collection<String> dependents = this.dagGraph.getDownstreamNodes(nodeId);
-        if (dependents != null && dependents.size() > 0) {
-            for (String nextNodeId : dependents) {
-                propagateSkipNode(context, nextNodeId);
-            }
+    private void skipDependents(ExecutionContext context, int nodeIndex) {
+        final CompiledGraph cg = this.compiledGraph;
+        for (int p = cg.getDownstreamStart(nodeIndex), end = cg.getDownstreamEnd(nodeIndex); p < end; p++) {
+            propagateSkipNode(context, cg.getDownstreamAt(p));
         }
     }
 
@@ -495,19 +550,21 @@ public class FlowExecutor implements AutoCloseable {
      * 递归地传播“跳过”状态。
      * 当一个节点被其上游跳过时，它本身也必须被视为“跳过”，并将其完成状态向下游传播。
      */
-    private void propagateSkipNode(ExecutionContext context, String nodeIdToSkip) {
+    private void propagateSkipNode(ExecutionContext context, int nodeIndexToSkip) {
+        final CompiledGraph cg = this.compiledGraph;
         // 使用队列代替递归，避免栈溢出
-        Queue<String> skipQueue = new LinkedList<>();
-        skipQueue.offer(nodeIdToSkip);
+        Queue<Integer> skipQueue = new ArrayDeque<>();
+        skipQueue.offer(nodeIndexToSkip);
 
         while (!skipQueue.isEmpty()) {
-            final String skipNodeId = skipQueue.poll();
+            final int skipNode = skipQueue.poll();
+            final String skipNodeId = cg.getNodeId(skipNode);
             // 先减入度(入度代表的是“上游是否已表态”)
-            final int remaining = this.currentInDegree.get(skipNodeId).decrementAndGet();
+            final int remaining = this.currentInDegree.decrementAndGet(skipNode);
 
-            if (this.skippedNodes.add(skipNodeId)) {
+            if (this.skippedNodes.compareAndSet(skipNode, 0, 1)) {
                 // 更新节点状态
-                this.runNodes.get(skipNodeId).setTaskState(TaskState.SKIPPED);
+                this.runNodes[skipNode].setTaskState(TaskState.SKIPPED);
                 NodeExecutionResult result = NodeExecutionResult.failed("节点被跳过")
                         .setNodeId(skipNodeId)
                         .setSkipped(true);
@@ -525,9 +582,8 @@ public class FlowExecutor implements AutoCloseable {
             if (remaining <= 0) {
                 this.completedTasksNum.incrementAndGet();
                 // 将跳过状态继续向下游传播
-                Collection<String> dependents = this.dagGraph.getDownstreamNodes(skipNodeId);
-                if (dependents != null && dependents.size() > 0) {
-                    skipQueue.addAll(dependents);
+                for (int p = cg.getDownstreamStart(skipNode), end = cg.getDownstreamEnd(skipNode); p < end; p++) {
+                    skipQueue.offer(cg.getDownstreamAt(p));
                 }
             }
 
@@ -542,26 +598,23 @@ public class FlowExecutor implements AutoCloseable {
             if (this.executionState == ExecutionState.RUNNING) {
                 this.executionState = ExecutionState.FAILED;
             }
+            this.readyQueue.clear();
+        }
 
-            if (this.runningFutures.size() > 0) {
-                for (Map.Entry<String, Future<NodeExecutionResult>> en : this.runningFutures.entrySet()) {
-                    // 更新节点状态
-                    this.runNodes.get(en.getKey()).setTaskState(TaskState.CANCELLED);
-                    Future<NodeExecutionResult> f = en.getValue();
-                    if (!f.isDone() && !f.isCancelled()) {
-                        try {
-                            f.cancel(true);
-                        } catch (Exception e) {
-                            LOG.error(">> ERROR: 任务 <{}> 取消失败", en.getKey());
-                        }
-                    }
+        for (int i = 0; i < this.runningTasks.length(); i++) {
+            NodeTask task = this.runningTasks.get(i);
+            if (task != null && !task.isDone()) {
+                // 更新节点状态
+                this.runNodes[i].setTaskState(TaskState.CANCELLED);
+                try {
+                    task.cancel(true);
+                } catch (Exception e) {
+                    LOG.error(">> ERROR: 任务 <{}> 取消失败", this.compiledGraph.getNodeId(i));
                 }
             }
-
-            this.readyQueue.clear();
-            this.runningFutures.clear();
-            this.future2NodeIdMap.clear();
         }
+
+        tryFinishExecution();
     }
 
     @Override
@@ -598,6 +651,24 @@ public class FlowExecutor implements AutoCloseable {
         }
     }
 
+    /**
+     * 节点任务: 任务结束时(完成、异常或被取消)直接回调 {@link #onTaskDone(NodeTask)},
+     * 由执行该任务的线程处理下游节点, 无需协调线程轮询完成队列.
+     */
+    private final class NodeTask extends FutureTask<NodeExecutionResult> {
+        private final int nodeIndex;
+
+        NodeTask(int nodeIndex, Callable<NodeExecutionResult> callable) {
+            super(callable);
+            this.nodeIndex = nodeIndex;
+        }
+
+        @Override
+        protected void done() {
+            onTaskDone(this);
+        }
+    }
+
     private static class DefaultExecutionListener implements ExecutionListener {
         @Override
         public void onFlowStart() {
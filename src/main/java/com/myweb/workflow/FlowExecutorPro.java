@@ -1,21 +1,18 @@
 package com.myweb.workflow;
 
-import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.myweb.workflow.cache.NodeResultCache;
+import com.myweb.workflow.checkpoint.AsyncCheckpointWriter;
+import com.myweb.workflow.checkpoint.CheckpointStore;
+import com.myweb.workflow.checkpoint.RunCheckpoint;
 import com.myweb.workflow.exception.FlowExecuteException;
-import com.myweb.workflow.exception.FlowFailException;
-import com.myweb.workflow.exception.FlowPauseException;
-import com.myweb.workflow.exception.FlowSkipException;
-import com.myweb.workflow.graph.GNode;
-import com.myweb.workflow.graph.GNodeInput;
 import com.myweb.workflow.graph.Graph;
-import com.myweb.workflow.nodes.StartNode;
+import com.myweb.workflow.metrics.NodeMetrics;
 
 /**
  * DAG流程执行器
@@ -23,44 +20,51 @@ import com.myweb.workflow.nodes.StartNode;
  * 修改说明：
  * 1. 集成 TaskTriggerRule，从"计数器驱动"转变为"状态规则驱动"。
  * 2. 支持分支、条件执行、Eager Execution (如 ONE_SUCCESS)。
+ * 3. 事件驱动：节点执行完成后直接在完成回调中评估并提交下游节点，不再由协调线程轮询等待。
+ * 4. 执行器绑定不可变的 {@link FlowPlan}，每次执行创建一个只保存本次状态的 {@link FlowRun}，
+ *    同一个执行器可以同时执行多次。
+ * 5. 可选的检查点：通过 {@link #setCheckpointStore(CheckpointStore)} 开启后，节点完成记录异步批量持久化，
+ *    进程崩溃或重启后可以通过 {@link #resume(String)} 恢复执行，已完成的节点不会重新执行。
+ * 6. 可选的节点结果缓存：通过 {@link #setNodeResultCache(NodeResultCache)} 开启后，
+ *    配置和输入都相同的可缓存节点直接复用之前的执行结果。
+ * 7. 增量执行：流程修改后通过 {@link #rerun(ExecutionContext, Collection)} 只执行变化的节点及其下游节点。
+ * 8. 可选的大输出数据溢写：通过 {@link #setPayloadSpiller(PayloadSpiller)} 开启后，超过阈值的输出写入临时文件。
+ * 9. 可选的释放输出数据：通过 {@link #setReleaseOutputs(boolean)} 开启后，输出数据在所有下游节点都执行结束后释放，
+ *    降低大数据量流程的内存占用。
+ * 10. 批量执行：实现 {@link BatchableTaskNode} 的同类节点同时就绪时，在很短的时间窗口内合并为一次批量调用。
+ * 11. 异步节点：{@link AsyncTaskNode}(如 HTTP 请求节点)等待响应时不占用工作线程。
+ * 12. 子流程：节点可以通过 {@link ExecutionContext#executeSubFlow(FlowPlan, ExecutionContext)} 在同一个线程池中执行子流程(如 ForEach 节点)。
+ * 13. 可选的节点执行指标：通过 {@link #setNodeMetrics(NodeMetrics)} 开启后，按节点类型统计就绪到提交、线程池排队、
+ *     执行耗时的直方图以及重试次数。
+ * <p>
+ * 每个执行器会各自创建线程池和重试调度器，适合单独使用；在应用中执行大量流程时，应使用共享线程池的 {@link FlowEngine}。
  */
 public class FlowExecutorPro implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(FlowExecutorPro.class);
 
-    private static final int TASK_POLL_TIMEOUT_SECONDS = 2; // 缩短轮询时间以便更快响应状态变化
     private static final int SHUTDOWN_AWAIT_SECONDS = 10;
+    // 每隔多少次执行按节点历史耗时刷新一次节点优先级
+    private static final int PRIORITY_REFRESH_RUNS = 100;
 
-    // 节点信息
-    private final ConcurrentMap<String, TaskNode> runNodes = new ConcurrentHashMap<>();
-    // 计算每个节点的动态入度，用于判断是否"所有上游都已完结"
-    private final ConcurrentMap<String, AtomicInteger> currentInDegree = new ConcurrentHashMap<>();
-    // 就绪队列
-    private final Queue<String> readyQueue = new ConcurrentLinkedQueue<>();
-    // 用于重试
-    private final ConcurrentMap<String, AtomicInteger> retryCounts = new ConcurrentHashMap<>();
-
-    // 存储处于执行中的节点信息
-    private final ConcurrentMap<String, Future<NodeExecutionResult>> runningFutures = new ConcurrentHashMap<>();
-    // Future到NodeId的映射
-    private final ConcurrentMap<Future<NodeExecutionResult>, String> future2NodeIdMap = new ConcurrentHashMap<>();
-
-    private final AtomicInteger completedTasksNum = new AtomicInteger(0);
-    private final AtomicInteger scheduledRetryTasksNum = new AtomicInteger(0);
-    // 记录明确失败的任务（非跳过）
-    private final Set<NodeExecutionResult> failedTasks = ConcurrentHashMap.newKeySet();
-
-    // 执行完成的节点 (包括 Success, Failed, Skipped, UpstreamFailed)
-    private final Set<String> completedNodes = ConcurrentHashMap.newKeySet();
-
-    private final Object stateLock = new Object();
-    private volatile ExecutionState executionState = ExecutionState.READY;
+    private final FlowPlan flowPlan;
+    // 正在执行的 FlowRun，用于取消/关闭时终止
+    private final Set<FlowRun> activeRuns = ConcurrentHashMap.newKeySet();
 
-    private final ExecutorCompletionService<NodeExecutionResult> executorService;
+    private final ExecutorService taskExecutor;
     private final ScheduledExecutorService retryExecutorService;
     private final ExecutionListener executionListener;
+    // 单次执行同时执行中的节点数上限，<=0 表示不限制
+    private final int maxInFlight;
     private ExecutorService threadPoolExecutor;
-
-    private final Graph dagGraph;
+    // 检查点写入器(可选)
+    private volatile AsyncCheckpointWriter checkpointWriter;
+    // 节点结果缓存(可选)
+    private volatile NodeResultCache nodeResultCache;
+    // 大输出数据溢写策略(可选)
+    private volatile PayloadSpiller payloadSpiller;
+    private volatile NodeMetrics nodeMetrics;
+    // 是否在执行过程中释放已被所有下游节点消费的输出数据
+    private volatile boolean releaseOutputs = false;
 
     public enum ExecutionState {
         READY, RUNNING, CANCELLED, COMPLETED, FAILED, PAUSED;
@@ -71,24 +75,28 @@ public class FlowExecutorPro implements AutoCloseable {
     }
 
     public FlowExecutorPro(Graph flowGraph, ExecutionListener listener, ExecutorService executor) {
-        if (flowGraph == null) {
-            throw new FlowExecuteException("`Graph` must not be null");
+        this(FlowPlan.compile(requireGraph(flowGraph)), listener, executor);
+    }
+
+    public FlowExecutorPro(FlowPlan flowPlan, ExecutionListener listener, ExecutorService executor) {
+        if (flowPlan == null) {
+            throw new FlowExecuteException("`FlowPlan` must not be null");
         }
 
-        this.dagGraph = flowGraph;
-        this.dagGraph.initialize(); // 确保图已初始化
+        this.flowPlan = flowPlan;
 
         if (executor == null) {
-            final int maxParallel = this.dagGraph.getMaxParallelism();
+            // 线程池会被同时执行的多个 FlowRun 共享，使用无界队列：
+            // 如果队列满后由调用线程执行(CallerRunsPolicy)，任务会在完成回调中层层嵌套执行下游任务，长链路时会导致栈溢出
+            final int maxParallel = this.flowPlan.getMaxParallelism();
             final int cpuCores = Runtime.getRuntime().availableProcessors();
-            final int corePoolSize = Math.max(1, Math.min(maxParallel / 2, cpuCores / 2));
-            final int maxPoolSize = Math.min(maxParallel, cpuCores);
-            this.threadPoolExecutor = new ThreadPoolExecutor(
-                    corePoolSize,
-                    maxPoolSize,
+            final int poolSize = Math.max(1, Math.min(maxParallel, cpuCores));
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    poolSize,
+                    poolSize,
                     60L,
                     TimeUnit.SECONDS,
-                    new LinkedBlockingQueue<>(maxParallel * 2),
+                    new LinkedBlockingQueue<>(),
                     new ThreadFactory() {
                         private final AtomicLong tn = new AtomicLong(0);
                         @Override
@@ -98,560 +106,209 @@ public class FlowExecutorPro implements AutoCloseable {
                                     LOG.error(">> ERROR: Flow-Executor thread<{}> exception: ", thread.getName(), e));
                             return t;
                         }
-                    },
-                    new ThreadPoolExecutor.CallerRunsPolicy()
+                    }
             );
+            pool.allowCoreThreadTimeOut(true);
+            this.threadPoolExecutor = pool;
         }
 
         this.executionListener = listener != null ? listener : new DefaultExecutionListener();
-        this.executorService = new ExecutorCompletionService<>(executor != null ? executor : this.threadPoolExecutor);
+        this.taskExecutor = executor != null ? executor : this.threadPoolExecutor;
         this.retryExecutorService = Executors.newSingleThreadScheduledExecutor();
-
-        this.initializeNodes();
+        // 单次执行同时执行的节点数不超过线程数和图的最大并行度，多出来的就绪节点按优先级排队
+        final int maxParallel = this.flowPlan.getMaxParallelism();
+        this.maxInFlight = this.taskExecutor instanceof ThreadPoolExecutor
+                ? Math.min(maxParallel, ((ThreadPoolExecutor) this.taskExecutor).getMaximumPoolSize()) : maxParallel;
     }
 
-    private void initializeNodes() {
-        List<GNode> nodes = this.dagGraph.getNodes();
-        for (GNode node : nodes) {
-            this.runNodes.put(node.getId(), TaskNodeFactory.createNode(node));
-            this.retryCounts.put(node.getId(), new AtomicInteger(0));
+    private static Graph requireGraph(Graph flowGraph) {
+        if (flowGraph == null) {
+            throw new FlowExecuteException("`Graph` must not be null");
         }
-        this.dagGraph.getNodesInDegree().forEach((nodeId, degree) ->
-                this.currentInDegree.put(nodeId, new AtomicInteger(degree)));
+        return flowGraph;
     }
 
-    private void resetExecutionState() {
-        // 重置入度
-        this.dagGraph.getNodesInDegree().forEach((nodeId, degree) -> this.currentInDegree.get(nodeId).set(degree));
-        this.runNodes.values().forEach(n -> n.setTaskState(TaskState.PENDING));
-        this.retryCounts.values().forEach(counter -> counter.set(0));
-        this.readyQueue.clear();
-        this.runningFutures.clear();
-        this.future2NodeIdMap.clear();
-        this.completedTasksNum.set(0);
-        this.failedTasks.clear();
-        this.completedNodes.clear();
-    }
-
-    private void initializeReadyQueue() {
-        // 初始入度为0的节点，或者触发规则为 ALWAYS 的节点
-        this.runNodes.values().forEach(node -> {
-            int degree = this.currentInDegree.get(node.getId()).get();
-            if (degree == 0 || node.getTriggerRule() == TaskTriggerRule.ALWAYS) {
-                // 避免重复添加，execute loop 中有 PENDING 检查
-                this.readyQueue.offer(node.getId());
-            }
-        });
+    public FlowPlan getFlowPlan() {
+        return this.flowPlan;
     }
 
     /**
-     * 执行workflow
+     * 开启检查点，之后启动的执行会将节点完成记录异步批量写入到指定的存储
      *
-     * @param context 执行上下文
+     * @param store 检查点存储，为 null 时关闭检查点
      */
-    public void execute(ExecutionContext context) {
-        if (this.runNodes.isEmpty()) {
-            LOG.warn(">> WARNING: No nodes to execute.");
-            return;
-        }
-
-        if (context == null) {
-            context = new ExecutionContext();
-        }
-
-        try {
-            this.executionListener.onFlowStart();
-        } catch (Exception e) {
-            LOG.error("Start listener error", e);
-        }
-
-        FlowExecutionResult flowExecutionResult = new FlowExecutionResult();
-        flowExecutionResult.setStartTime(Instant.now());
-
-        // 重置状态
-        resetExecutionState();
-
-        synchronized (this.stateLock) {
-            if (this.executionState != ExecutionState.READY) {
-                throw new FlowExecuteException("Executor state invalid: " + this.executionState);
-            }
-            this.executionState = ExecutionState.RUNNING;
-        }
-
-        // 1. 初始化就绪队列
-        initializeReadyQueue();
-
-        // 2. 提交第一批任务
-        submitReadyTasks(context);
-
-        try {
-            while ((this.completedTasksNum.get()) < this.runNodes.size()
-                    && this.executionState == ExecutionState.RUNNING) {
-
-                Future<NodeExecutionResult> completedFuture = this.executorService.poll(TASK_POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                if (completedFuture == null) {
-                    // 补交就绪任务
-                    if (this.runningFutures.isEmpty() && this.readyQueue.size() > 0) {
-                        submitReadyTasks(context);
-                        continue;
-                    }
-                    // 所有任务都结束(包括重试队列)，退出循环
-                    if (this.runningFutures.isEmpty() && this.readyQueue.isEmpty() && this.scheduledRetryTasksNum.get() == 0) {
-                        break;
-                    }
-                    continue;
-                }
-
-                String finishedNodeId = this.future2NodeIdMap.remove(completedFuture);
-                if (finishedNodeId == null) {
-                    continue;
-                }
-                this.runningFutures.remove(finishedNodeId);
-
-                try {
-                    NodeExecutionResult taskResult = completedFuture.get();
-                    handleTaskCompletion(finishedNodeId, taskResult, context);
-                } catch (ExecutionException e) {
-                    // 拆包获取真实的业务异常
-                    Throwable cause = e.getCause();
-
-                    NodeExecutionResult execResult = NodeExecutionResult.failed(cause)
-                            .setNodeId(finishedNodeId)
-                            .setEndTime(Instant.now());
-
-                    if (cause instanceof FlowPauseException) {
-                        // 场景 1: 流程暂停 (如: 屏幕交互)
-                        handleTaskPause(finishedNodeId, (FlowPauseException) cause, context);
-                    }
-                    else if (cause instanceof FlowSkipException) {
-                        // 场景 2: 动态跳过 (如: 无数据)
-                        handleTaskSkip(finishedNodeId, (FlowSkipException) cause, context);
-                    }
-                    else if (cause instanceof FlowFailException) {
-                        // 场景 3: 快速失败 (忽略重试)
-                        handleTaskFailure(execResult, context, false);
-                    }
-                    else {
-                        // 场景 4: 普通异常 (走默认重试机制)
-                        handleTaskFailure(execResult, context, true);
-                    }
-
-                }
-                catch (CancellationException e) {
-                    handleCancellation(finishedNodeId, context);
-                }
-                catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    cancelAllRunningTasks();
-                    break;
-                }
-                catch (Exception e) {
-                    // 系统级异常，视为失败
-                    handleTaskFailure(NodeExecutionResult.failed(e).setNodeId(finishedNodeId), context, true);
-                }
-
-            } // end while
-
-            finalizeExecution(flowExecutionResult);
-
-        } catch (Exception e) {
-            LOG.error("Execution Loop Error", e);
-            cancelAllRunningTasks();
-            flowExecutionResult.setSuccess(false);
-        } finally {
-            notifyFlowCompletion(flowExecutionResult);
+    public synchronized void setCheckpointStore(CheckpointStore store) {
+        final AsyncCheckpointWriter old = this.checkpointWriter;
+        this.checkpointWriter = store != null ? new AsyncCheckpointWriter(store) : null;
+        if (old != null) {
+            old.close();
         }
     }
 
     /**
-     * 处理任务正常完成（包括业务上的成功或失败）
+     * 开启节点结果缓存，之后启动的执行中可缓存的节点(见 {@link TaskNode#isCacheable()})会先查找缓存
+     *
+     * @param cache 节点结果缓存(可以在多个执行器之间共享)，为 null 时关闭缓存
      */
-    private void handleTaskCompletion(String nodeId, NodeExecutionResult result, ExecutionContext context) {
-        TaskNode node = this.runNodes.get(nodeId);
-        // 更新状态
-        TaskState finalState = result.isSuccess() ? TaskState.SUCCESS : TaskState.FAILED;
-        node.setTaskState(finalState);
-
-        if (result.isSuccess()) {
-            this.completedNodes.add(nodeId);
-            this.completedTasksNum.incrementAndGet();
-            // 在上下文中记录节点输出
-            context.addNodeExecutionResult(nodeId, result);
-            notifyNodeCompletion(result);
-
-            // 成功后，评估下游节点
-            evaluateAndTriggerDownstream(nodeId, context, result.getNextNodesToActivate());
-        } else {
-            // 失败处理 (内部包含重试逻辑)
-            handleTaskFailure(result, context, true);
-        }
+    public void setNodeResultCache(NodeResultCache cache) {
+        this.nodeResultCache = cache;
     }
 
     /**
-     * 处理任务失败（含重试逻辑）
+     * 开启大输出数据溢写：之后启动的执行中超过阈值的 byte[]/文本输出写入临时文件，下游节点通过内存映射或流式读取获取
+     *
+     * @param spiller 溢写策略，为 null 时关闭
      */
-    private void handleTaskFailure(NodeExecutionResult failedResult, ExecutionContext context, final boolean needRetry) {
-        if (this.failedTasks.contains(failedResult)) {
-            return;
-        }
-
-        final String failedNodeId = failedResult.getNodeId();
-        TaskNode failedNode = this.runNodes.get(failedNodeId);
-
-        if (needRetry) {
-            // 检查重试
-            int maxRetries = failedNode.getMaxRetries();
-            if (this.retryCounts.get(failedNodeId).incrementAndGet() <= maxRetries) {
-                LOG.warn(">> WARNING: Retry task <{}>", failedNodeId);
-                this.scheduledRetryTasksNum.incrementAndGet();
-                this.retryExecutorService.schedule(() -> {
-                    this.scheduledRetryTasksNum.decrementAndGet();
-                    submitTask(failedNodeId, context);
-                }, failedNode.getRetryDelayMillis(), TimeUnit.MILLISECONDS);
-                return; // 正在重试，暂不视为完结
-            }
-        }
-
-        // 最终失败
-        LOG.error(">> ERROR: Task <{}> failed after retries.", failedNodeId);
-        failedNode.setTaskState(TaskState.FAILED);
-        this.failedTasks.add(failedResult);
-        this.completedTasksNum.incrementAndGet(); // 计数+1
-
-        context.addNodeExecutionResult(failedNodeId, failedResult);
-        notifyNodeCompletion(failedResult);
-
-        // 即使失败，也需要评估下游（因为可能有 rules 如 ALL_DONE, ALL_FAILED 等需要运行）
-        evaluateAndTriggerDownstream(failedNodeId, context, null);
+    public void setPayloadSpiller(PayloadSpiller spiller) {
+        this.payloadSpiller = spiller;
     }
 
-    private void handleTaskSkip(String nodeId, FlowSkipException ex, ExecutionContext context) {
-        LOG.info(">> Task <{}> skipped programmatically.", nodeId);
-
-        TaskNode node = this.runNodes.get(nodeId);
-        node.setTaskState(TaskState.SKIPPED);
-
-        NodeExecutionResult result = NodeExecutionResult.failed("Skipped by logic")
-                .setNodeId(nodeId)
-                .setSkipped(true)
-                .setErrorMessage(ex.getMessage());
-
-        this.completedTasksNum.incrementAndGet(); // 计数+1
-        this.completedNodes.add(nodeId);
-
-        context.addNodeExecutionResult(nodeId, result);
-        notifyNodeCompletion(result);
-
-        // 【关键】：跳过也被视为一种完成，必须评估下游
-        // 下游是否运行取决于 TriggerRule (如 ALL_SKIPPED 或 ALL_SUCCESS 等)
-        evaluateAndTriggerDownstream(nodeId, context, null);
-    }
-
-    private void handleTaskPause(String nodeId, FlowPauseException ex, ExecutionContext context) {
-        LOG.info(">> Task <{}> paused flow. Reason: {}", nodeId, ex.getMessage());
-
-        synchronized (this.stateLock) {
-            // 1. 修改全局执行状态为 PAUSED
-            // 这会让 execute 主循环条件不满足，从而跳出循环，停止提交新任务
-            // 注意：已经在运行的其他线程任务会继续跑完，这通常是合理的
-            this.executionState = ExecutionState.PAUSED;
-        }
-
-        TaskNode node = this.runNodes.get(nodeId);
-        // 2. 更新节点状态
-        node.setTaskState(TaskState.PAUSED);
-        // 3. 记录结果
-        // 假设 FlowPauseException 里可以携带 UI 数据
-        NodeExecutionResult result = NodeExecutionResult.failed("Paused for interaction")
-                .setNodeId(nodeId)
-                .setErrorMessage(ex.getMessage());
-
-        // TODO 如果你的 FlowPauseException 有 payload (比如前端需要的 JSON)，记得塞入 result
-        //result.addNodeOutput("ui_schema", new NodeOutput(exception.getUiData()));
-
-        context.addNodeExecutionResult(nodeId, result);
-        // 4. 通知监听器 (外部系统收到此事件后，应持久化当前 context 和 graph 状态)
-        notifyNodeCompletion(result);
+    /**
+     * 开启节点执行指标统计：之后启动的执行按节点类型记录排队、执行耗时和重试次数
+     *
+     * @param metrics 节点执行指标(可以在多个执行器之间共享)，为 null 时关闭
+     */
+    public void setNodeMetrics(NodeMetrics metrics) {
+        this.nodeMetrics = metrics;
     }
 
-    private void handleCancellation(String nodeId, ExecutionContext context) {
-        LOG.warn(">> Task <{}> Cancelled.", nodeId);
-        NodeExecutionResult res = NodeExecutionResult.failed("Task Cancelled").setNodeId(nodeId);
-        this.runNodes.get(nodeId).setTaskState(TaskState.CANCELLED);
-        this.completedTasksNum.incrementAndGet();
-        this.failedTasks.add(res);
-
-        context.addNodeExecutionResult(nodeId, res);
-        notifyNodeCompletion(res);
-
-        // 取消通常意味着流程终止，或者可以视为 FAILED 触发下游
-        evaluateAndTriggerDownstream(nodeId, context, null);
+    /**
+     * 开启执行过程中释放输出数据：输出端口在所有消费它的下游节点都执行结束后释放，
+     * 流程结果节点(见 {@link TaskNode#isFlowResult()})的输出保留到流程结束。
+     * 释放后的执行结果不能用于 {@link #rerun(ExecutionContext, Collection)}，受影响的节点会重新执行。
+     */
+    public void setReleaseOutputs(boolean releaseOutputs) {
+        this.releaseOutputs = releaseOutputs;
     }
 
     /**
-     * 核心逻辑：评估下游节点是否可以触发
-     * 替代了原有的 "入度减1即触发" 逻辑
+     * 执行workflow，并等待流程执行结束
      *
-     * @param finishedNodeId 刚刚结束的节点ID
-     * @param context 上下文
-     * @param activatedBranch (可选) 如果上游是分支节点，这里指定了允许激活的下游分支集合
+     * @param context 执行上下文
      */
-    private void evaluateAndTriggerDownstream(String finishedNodeId, ExecutionContext context, Collection<String> activatedBranch) {
-        Collection<String> downstreamNodes = this.dagGraph.getDownstreamNodes(finishedNodeId);
-        if (downstreamNodes == null || downstreamNodes.isEmpty()) {
-            return;
-        }
-
-        for (String dependentId : downstreamNodes) {
-            TaskNode dependentNode = this.runNodes.get(dependentId);
-
-            // 1. 快速检查：如果节点已经运行或完成，跳过
-            // 使用 double-check 或是依赖 synchronized 保证状态一致性
-            // 这里为了性能，先读 volatile state
-            if (dependentNode.getTaskState() != TaskState.PENDING) {
-                continue;
-            }
-
-            // 2. 分支逻辑检查
-            // 如果上游指定了分支，且当前节点不在分支中，则当前节点被“逻辑排除”
-            // 注意：Airflow中未被选择的分支会置为 SKIPPED。
-            // 只有当 finishedNode 是成功状态且显式指定了 nextNodes 时才应用分支逻辑
-            final boolean isBranchSkipped = (activatedBranch != null && !activatedBranch.isEmpty() && !activatedBranch.contains(dependentId));
-
-            // 3. 更新入度 (表示有多少上游已经表态)
-            final int remainingDependencies = this.currentInDegree.get(dependentId).decrementAndGet();
-
-            if (isBranchSkipped) {
-                // 如果被分支排除，直接视为 SKIPPED 并不再评估规则
-                markNodeAsSkipped(dependentId, "Not selected by branch node " + finishedNodeId, context);
-                continue;
-            }
-
-            // 4. 获取所有上游状态
-            Collection<String> upstreamNodeIds = this.dagGraph.getUpstreamNodes(dependentId);
-            List<TaskState> upstreamStates = new ArrayList<>(upstreamNodeIds.size());
-            for (String unid : upstreamNodeIds) {
-                upstreamStates.add(this.runNodes.get(unid).getTaskState());
-            }
-
-            // 5. 评估触发规则
-            TaskTriggerRule rule = dependentNode.getTriggerRule();
-            if (rule == null) {
-                rule = TaskTriggerRule.ALL_SUCCESS;
-            }
-            final boolean shouldRun = rule.evaluate(upstreamStates);
-            if (shouldRun) {
-                // 满足规则，加入就绪队列
-                // 注意：这里需要防止并发重复添加。submitReadyTasks 会再次检查 PENDING
-                // 但为了保险，可以加锁或使用 CAS。此处简化依赖 submitTask 的状态检查。
-                if (!this.readyQueue.contains(dependentId)) {
-                    this.readyQueue.offer(dependentId);
-                }
-            } else {
-                // 6. 如果规则不满足，且所有上游都已完结，则必须给出一个最终状态 (SKIPPED 或 UPSTREAM_FAILED)
-                if (remainingDependencies <= 0) {
-                    handleRuleMismatch(dependentId, rule, context);
-                }
-            }
+    public void execute(ExecutionContext context) {
+        FlowRun run = start(context);
+        try {
+            run.getResultFuture().get();
+        } catch (InterruptedException e) {
+            run.cancel();
+            Thread.currentThread().interrupt(); // 恢复中断状态
+        } catch (ExecutionException e) {
+            LOG.error("Execution Error", e.getCause());
         }
-
-        // 尝试提交新产生的就绪任务
-        submitReadyTasks(context);
     }
 
     /**
-     * 当所有上游都已结束，但触发规则仍不满足时的处理逻辑
+     * 异步执行workflow。
+     * 节点执行完成后，由完成回调直接评估并提交下游节点，调用线程不会被阻塞。
+     *
+     * @param context 执行上下文
+     * @return 流程执行结果，流程结束(完成/失败/取消/暂停)时完成
      */
-    private void handleRuleMismatch(String nodeId, TaskTriggerRule rule, ExecutionContext context) {
-        TaskNode node = this.runNodes.get(nodeId);
-        synchronized (node) {
-            if (node.getTaskState() != TaskState.PENDING) {
-                return;
-            }
-
-            String reason;
-            TaskState finalState;
-
-            // 简单的映射逻辑，可根据需要扩展
-            if (rule == TaskTriggerRule.ALL_SUCCESS) {
-                finalState = TaskState.UPSTREAM_FAILED;
-                reason = "Upstream failed or skipped.";
-            } else if (rule == TaskTriggerRule.ALL_FAILED) {
-                finalState = TaskState.SKIPPED;
-                reason = "Some upstreams succeeded.";
-            } else {
-                finalState = TaskState.UPSTREAM_FAILED;
-                reason = "Trigger rule " + rule + " not satisfied after all upstreams finished.";
-            }
-
-            node.setTaskState(finalState);
-
-            NodeExecutionResult result = NodeExecutionResult.failed(reason)
-                    .setNodeId(nodeId)
-                    .setSkipped(finalState == TaskState.SKIPPED); // UPSTREAM_FAILED 也可以视作 Skipped 的一种变体，视业务定义
-
-            this.completedTasksNum.incrementAndGet();
-            this.completedNodes.add(nodeId);
-
-            context.addNodeExecutionResult(nodeId, result);
-            notifyNodeCompletion(result);
-
-            // 递归：这个节点现在的状态变了，需要通知它的下游
-            evaluateAndTriggerDownstream(nodeId, context, null);
-        }
+    public CompletableFuture<FlowExecutionResult> executeAsync(ExecutionContext context) {
+        return start(context).getResultFuture();
     }
 
-    private void markNodeAsSkipped(String nodeId, String reason, ExecutionContext context) {
-        TaskNode node = this.runNodes.get(nodeId);
-        synchronized (node) {
-            if (node.getTaskState() != TaskState.PENDING) {
-                return;
-            }
-
-            node.setTaskState(TaskState.SKIPPED);
-            NodeExecutionResult result = NodeExecutionResult.failed(reason)
-                    .setNodeId(nodeId)
-                    .setSkipped(true);
-
-            this.completedNodes.add(nodeId);
-            this.completedTasksNum.incrementAndGet();
-
-            context.addNodeExecutionResult(nodeId, result);
-            notifyNodeCompletion(result);
-
-            evaluateAndTriggerDownstream(nodeId, context, null);
-        }
+    /**
+     * 创建并启动一次执行，可以通过返回的 {@link FlowRun} 获取执行状态或取消本次执行
+     *
+     * @param context 执行上下文
+     * @return 本次执行
+     */
+    public FlowRun start(ExecutionContext context) {
+        return launch(newRun(null, context));
     }
 
-    private void submitReadyTasks(ExecutionContext context) {
-        while (!this.readyQueue.isEmpty() && this.executionState == ExecutionState.RUNNING) {
-            String nodeId = this.readyQueue.poll();
-            if (nodeId != null) {
-                submitTask(nodeId, context);
-            }
+    /**
+     * 增量执行：只执行变化的节点及其所有下游节点，其余节点复用上一次执行的结果
+     *
+     * @param previous 上一次执行的上下文(流程输入和上下文数据会被复制到本次执行)
+     * @param changedNodeIds 变化的节点ID，上一次执行中没有成功结果的节点会自动视为变化
+     * @return 本次执行
+     */
+    public FlowRun rerun(ExecutionContext previous, Collection<String> changedNodeIds) {
+        if (previous == null) {
+            throw new FlowExecuteException("Previous `ExecutionContext` must not be null");
         }
+        final FlowRun run = newRun(null, FlowRun.contextForReuse(previous));
+        run.reuse(previous, changedNodeIds);
+        return launch(run);
     }
 
-    private void submitTask(final String nodeId, final ExecutionContext context) {
-        final TaskNode runNode = this.runNodes.get(nodeId);
-
-        // 关键：CAS 或 同步块防止重复提交
-        // Eager Execution (如 ONE_SUCCESS) 可能导致多次触发 submitTask
-        synchronized (runNode) {
-            if (runNode.getTaskState() != TaskState.PENDING) {
-                return;
+    /**
+     * 从检查点恢复执行(进程崩溃/重启时未结束的执行，或者已暂停的执行)，已完成的节点不会重新执行
+     *
+     * @param runId 执行ID
+     * @return 恢复的执行
+     */
+    public FlowRun resume(String runId) {
+        final AsyncCheckpointWriter writer = this.checkpointWriter;
+        for (FlowRun active : this.activeRuns) {
+            if (active.getRunId().equals(runId)) {
+                throw new FlowExecuteException("Run is still active: " + runId);
             }
-            runNode.setTaskState(TaskState.RUNNING);
         }
 
-        Future<NodeExecutionResult> future = this.executorService.submit(() -> {
-            Instant startTime = Instant.now();
-
-            if (Thread.currentThread().isInterrupted()) {
-                return NodeExecutionResult.failed("Interrupted", new InterruptedException()).setNodeId(nodeId);
-            }
-
-            // 数据准备：从上游获取数据 (Inputs)
-            // 注意：对于 ONE_SUCCESS 等规则，部分上游可能还没跑完，getNodeExecuteResult 可能为空
-            Collection<GNodeInput> upstreamInputs = dagGraph.getUpstreamNodeInputs(nodeId);
-            NodeInputs inputs = new NodeInputs();
-            for (GNodeInput inputConf : upstreamInputs) {
-                Optional<NodeExecutionResult> upResultOpt = context.getNodeExecutionResult(inputConf.getSourceNodeId());
-                if (upResultOpt.isPresent()) {
-                    NodeExecutionResult upRes = upResultOpt.get();
-                    if (upRes.isSuccess() && !upRes.isSkipped()) {
-                        // 上游节点指定端口的输出写入目标节点的指定输入端口，
-                        // 这样节点中执行时就可以获取到自己输入端口上的数据了
-                        NodeOutput out = upRes.getNodeOutput(inputConf.getSourcePort());
-                        if (out != null) {
-                            inputs.addInput(inputConf.getTargetPort(), out);
-                        }
-                    }
-                }
-                // 如果上游没跑完，这里就拿不到数据。这对于 ONE_SUCCESS 是正常的。
-                // 节点内部逻辑需要处理 input 可能缺失的情况。
-            }
-
-            // 开始节点没有输入，使用流程输入作为输入
-            if (runNode instanceof StartNode) {
-                inputs.addInput(StartNode.DEFAULT_INPUT_PORT_NAME, new NodeOutput(context.getWorkflowInput()));
-            }
-
-            try {
-                NodeExecutionResult result = runNode.call(context, inputs);
-                if (result == null) {
-                    result = NodeExecutionResult.success();
-                }
-                result.setNodeId(nodeId).setStartTime(startTime).setEndTime(Instant.now());
-                return result;
-            } catch (Exception e) {
-                return NodeExecutionResult.failed(e).setNodeId(nodeId).setStartTime(startTime).setEndTime(Instant.now());
-            }
-        });
-
-        this.runningFutures.put(nodeId, future);
-        this.future2NodeIdMap.put(future, nodeId);
-    }
-
-    private void cancelAllRunningTasks() {
-        synchronized (this.stateLock) {
-            if (this.executionState == ExecutionState.RUNNING) {
-                this.executionState = ExecutionState.FAILED;
-            }
+        final RunCheckpoint checkpoint = FlowRun.loadResumableCheckpoint(writer, runId);
+        if (!Objects.equals(checkpoint.getPlanKey(), this.flowPlan.getPlanKey())) {
+            throw new FlowExecuteException("Run <" + runId + "> belongs to another plan: " + checkpoint.getPlanKey());
         }
-        this.runningFutures.values().forEach(f -> f.cancel(true));
-        this.readyQueue.clear();
-    }
 
-    public void cancel() {
-        synchronized (this.stateLock) {
-            if (this.executionState == ExecutionState.RUNNING) {
-                this.executionState = ExecutionState.CANCELLED;
-            }
-        }
-        cancelAllRunningTasks();
+        final ExecutionContext context = new ExecutionContext();
+        context.setWorkflowInput(checkpoint.getWorkflowInput());
+        final FlowRun run = newRun(runId, context);
+        run.restore(writer.getStore().loadNodes(runId));
+        return launch(run);
     }
 
-    private void finalizeExecution(FlowExecutionResult result) {
-        synchronized (this.stateLock) {
-            if (this.executionState == ExecutionState.RUNNING) {
-                if (this.completedTasksNum.get() >= this.runNodes.size()) {
-                    this.executionState = ExecutionState.COMPLETED;
-                    result.setSuccess(this.failedTasks.isEmpty());
-                } else {
-                    this.executionState = ExecutionState.FAILED;
-                    result.setSuccess(false);
-                }
-            } else {
-                result.setSuccess(false);
-            }
+    /**
+     * 查找此执行计划可以恢复的执行
+     */
+    public List<RunCheckpoint> findResumableRuns() {
+        final AsyncCheckpointWriter writer = this.checkpointWriter;
+        if (writer == null) {
+            return Collections.emptyList();
         }
+        return writer.getStore().findResumableRuns(this.flowPlan.getPlanKey());
+    }
 
-        result.setEndTime(Instant.now());
-        result.setSucceedNodes(this.completedNodes);
-        for (NodeExecutionResult f : this.failedTasks) {
-            result.addFailedNode(f.getNodeId(), f.getErrorMessage());
-        }
+    /**
+     * 创建一次执行(释放输出数据的设置需要在恢复已完成的节点之前生效)
+     */
+    private FlowRun newRun(String runId, ExecutionContext context) {
+        final FlowRun run = new FlowRun(runId, this.flowPlan, context, this.executionListener,
+                this.taskExecutor, this.retryExecutorService, this.maxInFlight, PRIORITY_REFRESH_RUNS);
+        run.setReleaseOutputs(this.releaseOutputs);
+        return run;
     }
 
-    private void notifyNodeCompletion(NodeExecutionResult result) {
-        try {
-            this.executionListener.onNodeCompleted(result);
-        } catch (Exception e) {
-            LOG.error("Listener error", e);
-        }
+    private FlowRun launch(FlowRun run) {
+        run.setCheckpointWriter(this.checkpointWriter);
+        run.setNodeResultCache(this.nodeResultCache);
+        run.setPayloadSpiller(this.payloadSpiller);
+        run.setNodeMetrics(this.nodeMetrics);
+        this.activeRuns.add(run);
+        run.getResultFuture().whenComplete((r, e) -> this.activeRuns.remove(run));
+        run.start();
+        return run;
     }
 
-    private void notifyFlowCompletion(FlowExecutionResult result) {
-        try {
-            this.executionListener.onFlowCompleted(result);
-        } catch (Exception e) {
-            LOG.error("Listener error", e);
+    /**
+     * 取消此执行器上所有正在执行的流程
+     */
+    public void cancel() {
+        for (FlowRun run : this.activeRuns) {
+            run.cancel();
         }
     }
 
     @Override
     public void close() throws Exception {
+        // 先关闭检查点写入器(写完已提交的记录)，取消不会被记录，未结束的执行之后仍然可以恢复
+        final AsyncCheckpointWriter writer = this.checkpointWriter;
+        if (writer != null) {
+            writer.close();
+        }
         cancel();
         shutdown(this.threadPoolExecutor);
         shutdown(this.retryExecutorService);
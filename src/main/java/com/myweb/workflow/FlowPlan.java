@@ -0,0 +1,450 @@
+package com.myweb.workflow;
+
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.myweb.workflow.exception.FlowExecuteException;
+import com.myweb.workflow.graph.CompiledGraph;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.GNodeInput;
+import com.myweb.workflow.graph.Graph;
+
+/**
+ * 编译后的流程执行计划(不可变).
+ * <p>
+ * 包含编译后的DAG图、每个节点的 {@link TaskNode} 实例以及解析后的触发规则等，
+ * 只在第一次编译时校验图和创建节点，之后可以被任意多个 {@link FlowRun} 并发共享。
+ * 每次执行的可变状态(节点状态、动态入度、重试次数等)全部保存在 {@link FlowRun} 中。
+ * <p>
+ * 执行计划还记录了每个节点的调度优先级(向上秩，即节点到出口节点的关键路径长度)，
+ * 执行时就绪节点按优先级从高到低调度；可以选择按节点的历史平均耗时加权重新计算优先级。
+ * <p>
+ * 注意：由于节点实例会被多次执行共享，{@link TaskNode#call(ExecutionContext, NodeInputs)} 中不应保存单次执行的状态。
+ *
+ * @author yswang
+ */
+public final class FlowPlan {
+
+    // 用于计算定义哈希：Map 按 key 排序输出，保证相同定义得到相同的哈希
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private final String planKey;
+    private final Graph graph;
+    private final CompiledGraph compiledGraph;
+    private final TaskNode[] nodes;
+    private final TaskTriggerRule[] triggerRules;
+    private final int maxParallelism;
+    // 可缓存节点的缓存 key 前缀(节点类型 + 节点配置的规范化哈希)，不可缓存的节点为 null
+    private final String[] cacheKeyPrefixes;
+    // 节点的输出是否为流程的结果(执行过程中不释放)
+    private final boolean[] flowResults;
+
+    // 被下游节点消费的输出端口(上游节点 + 输出端口)，用于执行过程中按引用计数释放输出数据：
+    // inputPortIds 按编译后的输入连接位置存放端口ID，其余数组按端口ID存放
+    private final int[] inputPortIds;
+    private final int[] portSourceNodes;
+    private final String[] portNames;
+    private final int[] portConsumerCounts;
+    // 每个节点被消费的输出端口ID
+    private final int[][] nodePortIds;
+    // 每个节点的输入槽位(输入端口 → 上游节点 + 输出端口)，执行时直接按槽位组装节点输入
+    private final InputWiring[] inputWirings;
+
+    // 节点调度优先级(向上秩)，按历史耗时加权刷新时整体替换
+    private volatile long[] priorities;
+    // 节点的历史平均耗时(微秒，指数加权移动平均)，0 表示尚无记录
+    private final AtomicLongArray avgDurationMicros;
+    private final AtomicLong runsSinceRefresh = new AtomicLong(0);
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private FlowPlan(String planKey, Graph graph) {
+        this.planKey = planKey;
+        this.graph = graph;
+        this.graph.initialize();
+        this.compiledGraph = graph.getCompiledGraph();
+        this.maxParallelism = graph.getMaxParallelism();
+
+        final int n = this.compiledGraph.size();
+        this.nodes = new TaskNode[n];
+        this.triggerRules = new TaskTriggerRule[n];
+        this.cacheKeyPrefixes = new String[n];
+        this.flowResults = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            GNode gNode = this.compiledGraph.getNode(i);
+            TaskNode node = TaskNodeFactory.createNode(gNode);
+            TaskTriggerRule rule = node.getTriggerRule();
+            this.nodes[i] = node;
+            this.triggerRules[i] = rule != null ? rule : TaskTriggerRule.ALL_SUCCESS;
+            if (node.isCacheable()) {
+                this.cacheKeyPrefixes[i] = node.getType() + ":" + canonicalHash(gNode.getData());
+            }
+            this.flowResults[i] = node.isFlowResult();
+        }
+
+        // 为每个被消费的输出端口分配ID，并统计消费它的输入连接数
+        final CompiledGraph cg = this.compiledGraph;
+        final int inputNum = n > 0 ? cg.getInputEnd(n - 1) : 0;
+        this.inputPortIds = new int[inputNum];
+        final Map<String, Integer> portIds = new HashMap<>();
+        final List<Integer> sources = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        final List<Integer> counts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int p = cg.getInputStart(i), end = cg.getInputEnd(i); p < end; p++) {
+                final GNodeInput input = cg.getInputAt(p);
+                final int source = cg.indexOf(input.getSourceNodeId());
+                if (source < 0) {
+                    this.inputPortIds[p] = -1;
+                    continue;
+                }
+                final Integer portId = portIds.computeIfAbsent(source + ":" + input.getSourcePort(), k -> {
+                    sources.add(source);
+                    names.add(input.getSourcePort());
+                    counts.add(0);
+                    return sources.size() - 1;
+                });
+                counts.set(portId, counts.get(portId) + 1);
+                this.inputPortIds[p] = portId;
+            }
+        }
+
+        final int portNum = sources.size();
+        this.portSourceNodes = new int[portNum];
+        this.portNames = names.toArray(new String[0]);
+        this.portConsumerCounts = new int[portNum];
+        final int[] nodePortNums = new int[n];
+        for (int id = 0; id < portNum; id++) {
+            this.portSourceNodes[id] = sources.get(id);
+            this.portConsumerCounts[id] = counts.get(id);
+            nodePortNums[this.portSourceNodes[id]]++;
+        }
+        this.nodePortIds = new int[n][];
+        for (int i = 0; i < n; i++) {
+            this.nodePortIds[i] = new int[nodePortNums[i]];
+            nodePortNums[i] = 0;
+        }
+        for (int id = 0; id < portNum; id++) {
+            final int source = this.portSourceNodes[id];
+            this.nodePortIds[source][nodePortNums[source]++] = id;
+        }
+
+        this.inputWirings = new InputWiring[n];
+        for (int i = 0; i < n; i++) {
+            this.inputWirings[i] = InputWiring.compile(cg, i);
+        }
+
+        this.priorities = graph.computeUpwardRanks(null);
+        this.avgDurationMicros = new AtomicLongArray(n);
+    }
+
+    /**
+     * 编译流程图为执行计划，计划的 key 为流程定义的哈希
+     * @param graph 流程图
+     * @return 执行计划
+     */
+    public static FlowPlan compile(Graph graph) {
+        return compile(definitionHash(graph), graph);
+    }
+
+    /**
+     * 使用指定的 key (比如: 流程ID + 版本号) 编译流程图为执行计划
+     * @param planKey 计划的唯一标识
+     * @param graph 流程图
+     * @return 执行计划
+     */
+    public static FlowPlan compile(String planKey, Graph graph) {
+        if (graph == null) {
+            throw new FlowExecuteException("`Graph` must not be null");
+        }
+        return new FlowPlan(planKey, graph);
+    }
+
+    /**
+     * 计算流程定义的哈希(SHA-256)。
+     * 只包含影响执行的内容(节点ID、类型、数据以及边的连接关系)，忽略 position 等界面属性。
+     *
+     * @param graph 流程图
+     * @return 十六进制的哈希字符串
+     */
+    public static String definitionHash(Graph graph) {
+        if (graph == null) {
+            throw new FlowExecuteException("`Graph` must not be null");
+        }
+
+        final List<Object> nodeDefs = new ArrayList<>(graph.getNodes().size());
+        for (GNode node : graph.getNodes()) {
+            nodeDefs.add(Arrays.asList(node.getId(), node.getType(), node.getData()));
+        }
+        final List<Object> edgeDefs = new ArrayList<>(graph.getEdges().size());
+        for (GEdge edge : graph.getEdges()) {
+            edgeDefs.add(Arrays.asList(edge.getSource(), edge.getTarget(), edge.getSourceHandle(), edge.getTargetHandle()));
+        }
+        return sha256Hex(Arrays.asList(nodeDefs, edgeDefs), "Failed to compute flow definition hash");
+    }
+
+    /**
+     * 计算任意数据的规范化哈希(SHA-256)：数据按 JSON 序列化，Map 按 key 排序，因此内容相同的数据得到相同的哈希
+     *
+     * @param value 数据(需要可以被 Jackson 序列化)
+     * @return 十六进制的哈希字符串
+     * @throws FlowExecuteException 数据无法序列化
+     */
+    public static String canonicalHash(Object value) {
+        return sha256Hex(value, "Failed to compute canonical hash");
+    }
+
+    private static String sha256Hex(Object value, String errorMessage) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // 直接写入摘要流，避免生成完整的 JSON 字节数组
+        try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            CANONICAL_MAPPER.writeValue(out, value);
+        } catch (Exception e) {
+            throw new FlowExecuteException(errorMessage, e);
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public String getPlanKey() {
+        return this.planKey;
+    }
+
+    public Graph getGraph() {
+        return this.graph;
+    }
+
+    public CompiledGraph getCompiledGraph() {
+        return this.compiledGraph;
+    }
+
+    /**
+     * 节点数量
+     */
+    public int size() {
+        return this.nodes.length;
+    }
+
+    public TaskNode getNode(int index) {
+        return this.nodes[index];
+    }
+
+    /**
+     * 节点的触发规则(已将 null 解析为 {@link TaskTriggerRule#ALL_SUCCESS})
+     */
+    public TaskTriggerRule getTriggerRule(int index) {
+        return this.triggerRules[index];
+    }
+
+    /**
+     * 节点结果缓存 key 的前缀(节点类型 + 节点配置的规范化哈希)，与节点输入的哈希一起组成缓存 key
+     * @return 节点不可缓存时返回 null
+     */
+    String getCacheKeyPrefix(int index) {
+        return this.cacheKeyPrefixes[index];
+    }
+
+    /**
+     * 节点的输出是否为流程的结果(见 {@link TaskNode#isFlowResult()})
+     */
+    public boolean isFlowResult(int index) {
+        return this.flowResults[index];
+    }
+
+    /**
+     * 被下游节点消费的输出端口数
+     */
+    int getConsumedPortCount() {
+        return this.portSourceNodes.length;
+    }
+
+    /**
+     * 编译后的输入连接(见 {@link CompiledGraph#getInputAt(int)})对应的输出端口ID
+     * @return 上游节点不存在时返回 -1
+     */
+    int getInputPortId(int inputPosition) {
+        return this.inputPortIds[inputPosition];
+    }
+
+    /**
+     * 输出端口所属的节点下标
+     */
+    int getPortSourceNode(int portId) {
+        return this.portSourceNodes[portId];
+    }
+
+    /**
+     * 输出端口名称
+     */
+    String getPortName(int portId) {
+        return this.portNames[portId];
+    }
+
+    /**
+     * 消费输出端口的输入连接数
+     */
+    int getPortConsumerCount(int portId) {
+        return this.portConsumerCounts[portId];
+    }
+
+    /**
+     * 节点被下游节点消费的输出端口ID(调用方不可修改)
+     */
+    int[] getNodePortIds(int index) {
+        return this.nodePortIds[index];
+    }
+
+    /**
+     * 节点的输入槽位
+     */
+    InputWiring getInputWiring(int index) {
+        return this.inputWirings[index];
+    }
+
+    public int getMaxParallelism() {
+        return this.maxParallelism;
+    }
+
+    /**
+     * 节点的调度优先级，值越大越优先
+     */
+    public long getPriority(int index) {
+        return this.priorities[index];
+    }
+
+    /**
+     * 获取一次执行使用的节点优先级。
+     * 如果开启了按耗时加权(refreshEveryRuns > 0)，每执行 refreshEveryRuns 次按节点的历史平均耗时重新计算一次。
+     *
+     * @param refreshEveryRuns 每隔多少次执行刷新一次优先级，<=0 表示不按耗时加权
+     * @return 按节点下标存放的优先级(调用方不可修改)
+     */
+    long[] prioritiesForRun(int refreshEveryRuns) {
+        if (refreshEveryRuns > 0 && this.runsSinceRefresh.incrementAndGet() >= refreshEveryRuns) {
+            refreshPriorities();
+        }
+        return this.priorities;
+    }
+
+    /**
+     * 按节点的历史平均耗时重新计算节点优先级(没有耗时记录的节点权重为 1 微秒)
+     */
+    public void refreshPriorities() {
+        if (!this.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.runsSinceRefresh.set(0);
+            final long[] weights = new long[this.nodes.length];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = Math.max(1L, this.avgDurationMicros.get(i));
+            }
+            this.priorities = this.graph.computeUpwardRanks(weights);
+        } finally {
+            this.refreshing.set(false);
+        }
+    }
+
+    /**
+     * 记录节点的一次执行耗时
+     *
+     * @param index 节点下标
+     * @param durationMicros 执行耗时(微秒)
+     */
+    void recordNodeDuration(int index, long durationMicros) {
+        final long prev = this.avgDurationMicros.get(index);
+        // EWMA(alpha = 1/8)，并发更新时丢失个别样本不影响结果
+        this.avgDurationMicros.set(index, prev == 0 ? durationMicros : prev + ((durationMicros - prev) >> 3));
+    }
+
+    /**
+     * 节点的历史平均耗时(微秒)，0 表示尚无记录
+     */
+    public long getAvgDurationMicros(int index) {
+        return this.avgDurationMicros.get(index);
+    }
+
+    /**
+     * 编译后的节点输入连接：同一个输入端口的连接占用连续的槽位，
+     * 槽位 k 的数据来自上游节点 sourceNodes[k] 的输出端口 sourcePorts[k]
+     */
+    static final class InputWiring {
+        private static final InputWiring EMPTY = new InputWiring(new String[0], new int[]{0}, new int[0], new String[0]);
+
+        // 输入端口名称，以及每个端口在槽位中的起始位置(最后一个元素为槽位总数)
+        final String[] ports;
+        final int[] portStarts;
+        // 每个槽位对应的上游节点下标(上游节点不存在时为 -1)和输出端口
+        final int[] sourceNodes;
+        final String[] sourcePorts;
+
+        private InputWiring(String[] ports, int[] portStarts, int[] sourceNodes, String[] sourcePorts) {
+            this.ports = ports;
+            this.portStarts = portStarts;
+            this.sourceNodes = sourceNodes;
+            this.sourcePorts = sourcePorts;
+        }
+
+        static InputWiring compile(CompiledGraph cg, int index) {
+            final int start = cg.getInputStart(index);
+            final int end = cg.getInputEnd(index);
+            if (start == end) {
+                return EMPTY;
+            }
+
+            // 按输入端口分组(保持端口第一次出现的顺序)
+            final Map<String, List<GNodeInput>> byPort = new LinkedHashMap<>();
+            for (int p = start; p < end; p++) {
+                final GNodeInput input = cg.getInputAt(p);
+                byPort.computeIfAbsent(input.getTargetPort(), k -> new ArrayList<>()).add(input);
+            }
+
+            final String[] ports = new String[byPort.size()];
+            final int[] portStarts = new int[ports.length + 1];
+            final int[] sourceNodes = new int[end - start];
+            final String[] sourcePorts = new String[end - start];
+            int portIndex = 0;
+            int slot = 0;
+            for (Map.Entry<String, List<GNodeInput>> entry : byPort.entrySet()) {
+                ports[portIndex] = entry.getKey();
+                portStarts[portIndex++] = slot;
+                for (GNodeInput input : entry.getValue()) {
+                    sourceNodes[slot] = input.getSourceNodeIndex();
+                    sourcePorts[slot++] = input.getSourcePort();
+                }
+            }
+            portStarts[ports.length] = slot;
+            return new InputWiring(ports, portStarts, sourceNodes, sourcePorts);
+        }
+
+        int slotCount() {
+            return this.sourceNodes.length;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FlowPlan{" +
+                "planKey='" + planKey + '\'' +
+                ", nodes=" + nodes.length +
+                ", maxParallelism=" + maxParallelism +
+                '}';
+    }
+}
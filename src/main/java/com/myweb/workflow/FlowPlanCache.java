@@ -0,0 +1,279 @@
+package com.myweb.workflow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.myweb.workflow.exception.FlowExecuteException;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.graph.GraphCodec;
+
+/**
+ * 执行计划缓存.
+ * <p>
+ * 相同的流程定义只编译一次，之后的执行直接复用缓存中的 {@link FlowPlan}。
+ * 并发请求同一个 key 时只会有一个线程执行编译，其它线程等待其结果。
+ * <p>
+ * 指定磁盘目录后，编译成功的流程定义以 {@link GraphCodec} 的二进制格式(连同计划的 key)写入目录，每个计划一个文件：
+ * 内存未命中时先读取文件，不再调用 graphSupplier 解析 JSON；启动时通过 {@link #preload()} 把目录中的计划预先编译进内存。
+ *
+ * @author yswang
+ */
+public class FlowPlanCache {
+    private static final Logger LOG = LoggerFactory.getLogger(FlowPlanCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static final String FILE_SUFFIX = ".flow";
+
+    private final Cache<String, FlowPlan> plans;
+    private final long maxSize;
+    private final Path diskDir;
+    private final AtomicLong diskHitNum = new AtomicLong(0);
+
+    public FlowPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public FlowPlanCache(long maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * @param maxSize 内存中缓存的计划数上限
+     * @param diskDir 磁盘缓存目录，为 null 表示只使用内存
+     */
+    public FlowPlanCache(long maxSize, Path diskDir) {
+        this.plans = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.maxSize = maxSize;
+
+        if (diskDir != null) {
+            try {
+                Files.createDirectories(diskDir);
+            } catch (IOException e) {
+                throw new FlowExecuteException("Failed to create flow plan cache directory: " + diskDir, e);
+            }
+        }
+        this.diskDir = diskDir;
+    }
+
+    /**
+     * 按流程定义的哈希获取执行计划，不存在则编译
+     * @param graph 流程图
+     * @return 执行计划
+     */
+    public FlowPlan getOrCompile(Graph graph) {
+        final String planKey = FlowPlan.definitionHash(graph);
+        return get(planKey, () -> compile(planKey, graph));
+    }
+
+    /**
+     * 按指定的 key 获取执行计划，不存在则编译。
+     * 调用方如果已有稳定的标识(如: 流程ID + 版本号)，使用此方法可以省去计算定义哈希的开销；
+     * 开启磁盘缓存时，进程重启后也不需要再解析流程定义。
+     *
+     * @param planKey 计划的唯一标识
+     * @param graphSupplier 缓存未命中时提供流程图
+     * @return 执行计划
+     */
+    public FlowPlan getOrCompile(String planKey, Supplier<Graph> graphSupplier) {
+        return get(planKey, () -> {
+            final Graph cached = this.diskDir != null ? readFromDisk(planKey) : null;
+            if (cached != null) {
+                this.diskHitNum.incrementAndGet();
+                return FlowPlan.compile(planKey, cached);
+            }
+            return compile(planKey, graphSupplier.get());
+        });
+    }
+
+    private FlowPlan get(String planKey, Callable<FlowPlan> loader) {
+        try {
+            return this.plans.get(planKey, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new FlowExecuteException("Failed to compile flow plan: " + planKey, cause);
+        }
+    }
+
+    /**
+     * 编译成功后写入磁盘(文件已存在时不重复写入)
+     */
+    private FlowPlan compile(String planKey, Graph graph) {
+        final FlowPlan plan = FlowPlan.compile(planKey, graph);
+        if (this.diskDir != null && !Files.exists(diskFile(planKey))) {
+            writeToDisk(planKey, graph);
+        }
+        return plan;
+    }
+
+    /**
+     * 将磁盘目录中最近写入的计划(不超过缓存上限)编译进内存，应在启动时调用。
+     * 无法读取或编译的文件被忽略。
+     *
+     * @return 加载的计划数
+     */
+    public int preload() {
+        if (this.diskDir == null) {
+            return 0;
+        }
+
+        final List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(this.diskDir)) {
+            list.filter(f -> f.getFileName().toString().endsWith(FILE_SUFFIX)).forEach(files::add);
+        } catch (IOException e) {
+            LOG.warn(">> WARNING: Failed to list flow plan cache directory <{}>: {}", this.diskDir, e.getMessage());
+            return 0;
+        }
+        files.sort(Comparator.comparingLong(FlowPlanCache::lastModified).reversed());
+
+        int loaded = 0;
+        for (Path file : files) {
+            if (loaded >= this.maxSize) {
+                break;
+            }
+            try (InputStream in = Files.newInputStream(file);
+                 MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(in)) {
+                final String planKey = unpacker.unpackString();
+                if (this.plans.getIfPresent(planKey) == null) {
+                    this.plans.put(planKey, FlowPlan.compile(planKey, GraphCodec.read(unpacker)));
+                }
+                loaded++;
+            } catch (Exception e) {
+                LOG.warn(">> WARNING: Failed to preload flow plan file <{}>: {}", file, e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    public FlowPlan getIfPresent(String planKey) {
+        return this.plans.getIfPresent(planKey);
+    }
+
+    public void invalidate(String planKey) {
+        this.plans.invalidate(planKey);
+        if (this.diskDir != null) {
+            try {
+                Files.deleteIfExists(diskFile(planKey));
+            } catch (IOException e) {
+                LOG.warn(">> WARNING: Failed to delete flow plan file of key <{}>: {}", planKey, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 清空内存缓存(磁盘缓存文件保留)
+     */
+    public void invalidateAll() {
+        this.plans.invalidateAll();
+    }
+
+    public long size() {
+        return this.plans.size();
+    }
+
+    public long hitCount() {
+        return this.plans.stats().hitCount();
+    }
+
+    public long missCount() {
+        return this.plans.stats().missCount();
+    }
+
+    /**
+     * 内存未命中、从磁盘加载的次数
+     */
+    public long diskHitCount() {
+        return this.diskHitNum.get();
+    }
+
+    private Graph readFromDisk(String planKey) {
+        final Path file = diskFile(planKey);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file);
+             MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(in)) {
+            // 同名文件对应的 key 不同(哈希碰撞)时视为未命中
+            if (!planKey.equals(unpacker.unpackString())) {
+                return null;
+            }
+            return GraphCodec.read(unpacker);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (Exception e) {
+            LOG.warn(">> WARNING: Failed to read flow plan file <{}>: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String planKey, Graph graph) {
+        final Path file = diskFile(planKey);
+        Path tmp = null;
+        try {
+            // 先写临时文件再原子替换，读取方不会看到写了一半的文件
+            tmp = Files.createTempFile(this.diskDir, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 MessagePacker packer = MessagePack.newDefaultPacker(out)) {
+                packer.packString(planKey);
+                GraphCodec.write(graph, packer);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            LOG.warn(">> WARNING: Failed to write flow plan file of key <{}>: {}", planKey, e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignore) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private Path diskFile(String planKey) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return this.diskDir.resolve(HexFormat.of().formatHex(digest.digest(planKey.getBytes(StandardCharsets.UTF_8))) + FILE_SUFFIX);
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,1847 @@
+package com.myweb.workflow;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.myweb.workflow.FlowExecutorPro.ExecutionState;
+import com.myweb.workflow.cache.CachedNodeResult;
+import com.myweb.workflow.cache.NodeResultCache;
+import com.myweb.workflow.checkpoint.AsyncCheckpointWriter;
+import com.myweb.workflow.checkpoint.NodeCheckpoint;
+import com.myweb.workflow.checkpoint.RunCheckpoint;
+import com.myweb.workflow.exception.FlowExecuteException;
+import com.myweb.workflow.exception.FlowFailException;
+import com.myweb.workflow.exception.FlowPauseException;
+import com.myweb.workflow.exception.FlowSkipException;
+import com.myweb.workflow.graph.CompiledGraph;
+import com.myweb.workflow.graph.GNodeInput;
+import com.myweb.workflow.metrics.NodeMetrics;
+import com.myweb.workflow.nodes.StartNode;
+
+/**
+ * 流程的一次执行.
+ * <p>
+ * 只保存本次执行的可变状态(节点状态、上游状态计数、重试次数、执行中的任务等)，
+ * 图结构、节点实例和触发规则均来自共享的不可变 {@link FlowPlan}，
+ * 因此同一个执行计划可以同时存在多个 FlowRun 并发执行，创建一个 FlowRun 只需分配几个与节点数等长的数组。
+ * <p>
+ * 节点状态保存在本对象的状态数组中，而不是 {@link TaskNode#getTaskState()}，因为节点实例会被多次执行共享。
+ * 所有状态迁移(PENDING → QUEUED → RUNNING → 终态)都通过对状态数组的 CAS 完成，
+ * 并发时每次迁移只有一个线程能成功，因此调度路径上既不需要扫描就绪队列去重，也不需要对节点加锁。
+ * <p>
+ * 就绪节点按执行计划中的优先级(向上秩，关键路径越长越优先)出队，
+ * 同时执行中的节点数不超过 maxInFlight，超出的就绪节点留在就绪队列中，
+ * 这样线程池空闲时总是先执行关键路径上的节点，而不是按就绪的先后顺序执行。
+ * <p>
+ * 开启检查点后，节点每次进入终态(成功、失败、跳过等)都会带上完成序号异步写入检查点，
+ * 进程崩溃后可以通过 {@link #restore(List)} 从最后一个一致的执行前沿恢复执行，已完成的节点不会重新执行。
+ * 同样的机制也用于增量执行({@link #reuse(ExecutionContext, Collection)})：只重新执行变化的节点及其下游节点。
+ * <p>
+ * 节点可以返回流式输出({@link StreamingNodeOutput})：节点返回后下游节点马上被调度并订阅数据流，数据边产生边消费。
+ * <p>
+ * 开启节点结果缓存后，可缓存的节点在调用前先按"节点类型 + 配置哈希 + 输入哈希"查找缓存，命中则直接使用缓存的结果。
+ * <p>
+ * 实现了 {@link BatchableTaskNode} 的节点就绪后不直接提交到线程池，而是交给 {@link NodeBatcher} 按批量 key 收集，
+ * 同时就绪的同类节点合并为一次 callBatch() 调用。
+ * {@link AsyncTaskNode} 在工作线程中发出异步调用后立即归还线程和执行槽位，调用完成后再回到工作线程处理结果。
+ * <p>
+ * 开启分布式执行后，可分布式执行的节点(见 {@link TaskNode#isDistributable()})按异步节点的方式提交到共享的执行队列，
+ * 可能由其他应用实例执行，结果返回后在本实例中调度下游节点。
+ *
+ * @author yswang
+ */
+public final class FlowRun {
+    private static final Logger LOG = LoggerFactory.getLogger(FlowRun.class);
+    private static final long RESUME_FLUSH_TIMEOUT_MILLIS = 5000L;
+    private static final ExecutionListener SUB_FLOW_LISTENER = new ExecutionListener() {
+        @Override public void onFlowStart() {}
+        @Override public void onNodeCompleted(NodeExecutionResult res) {}
+        @Override public void onFlowCompleted(FlowExecutionResult res) {}
+    };
+    // 节点执行指标的计时起点
+    private static final long NANO_ORIGIN = System.nanoTime() - 1;
+    // 批量执行和异步执行的节点任务不会被线程池直接执行，结果由批次执行或异步调用的回调设置
+    private static final Callable<NodeExecutionResult> EXTERNAL_CALLABLE = () -> {
+        throw new IllegalStateException("Batched or async node task must be completed by its callback");
+    };
+
+    private final String runId;
+    private final FlowPlan plan;
+    private final CompiledGraph compiledGraph;
+    private final ExecutionContext context;
+    private final ExecutionListener executionListener;
+    private final Executor taskExecutor;
+    private final ScheduledExecutorService retryScheduler;
+
+    // 本次执行中每个节点的状态(按节点下标存放)，只通过 transition() 进行 CAS 迁移
+    private final AtomicReferenceArray<TaskState> nodeStates;
+    // 每个节点的上游状态计数，用于 O(1) 评估触发规则以及判断是否"所有上游都已完结"
+    private final UpstreamStateCounters upstreamCounters;
+    // 就绪队列(节点下标)，按优先级从高到低出队；只有成功将节点从 PENDING 迁移到 QUEUED 的线程才会入队，因此不会重复
+    private final PriorityBlockingQueue<Integer> readyQueue;
+    // 同时执行中的节点数上限，以及当前占用的执行槽位数
+    private final int maxInFlight;
+    private final int priorityRefreshRuns;
+    private final AtomicInteger inFlightTasksNum = new AtomicInteger(0);
+    // 用于重试
+    private final AtomicIntegerArray retryCounts;
+
+    // 处于执行中的节点任务(按节点下标存放)，仅用于取消时中断任务
+    private final AtomicReferenceArray<NodeTask> runningTasks;
+    // 本次执行中节点的执行结果(按节点下标存放)，组装下游输入时不必按节点ID查找执行上下文
+    private final AtomicReferenceArray<NodeExecutionResult> nodeResults;
+    // 节点的输入(按节点下标存放)，同一个节点不会并发执行，重试时复用
+    private final NodeInputs[] nodeInputs;
+    // 收集同时就绪的可批量执行的节点
+    private final NodeBatcher batcher;
+    // 正在执行的子流程(如 ForEach 节点的元素)，随本次执行一起被取消
+    private final Set<FlowRun> subRuns = ConcurrentHashMap.newKeySet();
+    // 执行中的任务数(包括正在处理完成回调的任务)，用于判断流程是否已无事可做
+    private final AtomicInteger runningTasksNum = new AtomicInteger(0);
+
+    private final AtomicInteger completedTasksNum = new AtomicInteger(0);
+    private final AtomicInteger scheduledRetryTasksNum = new AtomicInteger(0);
+    // 记录明确失败的任务（非跳过）
+    private final Queue<NodeExecutionResult> failedTasks = new ConcurrentLinkedQueue<>();
+
+    // 执行完成的节点 (包括 Success, Failed, Skipped, UpstreamFailed)
+    private final Set<String> completedNodes = ConcurrentHashMap.newKeySet();
+
+    private final Object stateLock = new Object();
+    private volatile ExecutionState executionState = ExecutionState.READY;
+
+    // 本次执行的结果，流程结束时完成
+    private final CompletableFuture<FlowExecutionResult> flowResultFuture = new CompletableFuture<>();
+    private final AtomicBoolean flowFinished = new AtomicBoolean(false);
+    private final FlowExecutionResult flowExecutionResult = new FlowExecutionResult();
+
+    // 检查点(可选)：节点完成序号，以及从检查点恢复的节点(按完成序号排列)
+    private volatile AsyncCheckpointWriter checkpointWriter;
+    private final AtomicInteger checkpointSeq = new AtomicInteger(0);
+    private final List<Integer> restoredNodes = new ArrayList<>();
+    // 增量执行复用的节点结果不在本次执行的检查点中，开始执行时需要补写
+    private boolean checkpointRestoredNodes = false;
+
+    // 节点结果缓存(可选)
+    private volatile NodeResultCache nodeResultCache;
+    // 大输出数据写入临时文件(可选)
+    private volatile PayloadSpiller payloadSpiller;
+
+    // 执行过程中释放输出数据(可选)：被消费的输出端口尚未执行结束的消费者数、端口数据的估算大小，
+    // 以及当前保留的输出数据大小和峰值(字节)
+    private boolean releaseOutputs = false;
+    private AtomicIntegerArray remainingConsumers;
+    private AtomicLongArray portBytes;
+    private final AtomicLong retainedBytes = new AtomicLong(0);
+    private final AtomicLong peakRetainedBytes = new AtomicLong(0);
+
+    // 按节点类型统计执行指标(可选)：节点类型的指标按节点下标缓存，节点进入就绪队列的时间(纳秒)
+    private volatile NodeMetrics nodeMetrics;
+    private NodeMetrics.TypeMetrics[] typeMetrics;
+    private long[] readyNanos;
+
+    // 分布式执行(可选)
+    private volatile DistributedNodeExecutor distributedExecutor;
+
+    /**
+     * @param maxInFlight 同时执行中的节点数上限，<=0 表示不限制
+     * @param priorityRefreshRuns 每隔多少次执行按节点历史耗时刷新一次优先级，<=0 表示只按图结构计算优先级
+     */
+    FlowRun(FlowPlan plan, ExecutionContext context, ExecutionListener listener,
+            Executor taskExecutor, ScheduledExecutorService retryScheduler,
+            int maxInFlight, int priorityRefreshRuns) {
+        this(null, plan, context, listener, taskExecutor, retryScheduler, maxInFlight, priorityRefreshRuns);
+    }
+
+    /**
+     * @param runId 执行ID，为 null 时自动生成(从检查点恢复时使用原来的执行ID)
+     */
+    FlowRun(String runId, FlowPlan plan, ExecutionContext context, ExecutionListener listener,
+            Executor taskExecutor, ScheduledExecutorService retryScheduler,
+            int maxInFlight, int priorityRefreshRuns) {
+        this.runId = runId != null ? runId : UUID.randomUUID().toString();
+        this.plan = plan;
+        this.compiledGraph = plan.getCompiledGraph();
+        this.context = context != null ? context : new ExecutionContext();
+        this.executionListener = listener;
+        this.taskExecutor = taskExecutor;
+        this.retryScheduler = retryScheduler;
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE;
+        this.priorityRefreshRuns = priorityRefreshRuns;
+
+        final int nodeCount = plan.size();
+        // 本次执行使用的优先级快照，执行过程中刷新优先级不会影响已入队节点的顺序
+        final long[] priorities = plan.prioritiesForRun(priorityRefreshRuns);
+        this.readyQueue = new PriorityBlockingQueue<>(Math.max(1, Math.min(nodeCount, 64)), (a, b) -> {
+            int c = Long.compare(priorities[b], priorities[a]);
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        this.nodeStates = new AtomicReferenceArray<>(nodeCount);
+        this.upstreamCounters = new UpstreamStateCounters(nodeCount);
+        this.retryCounts = new AtomicIntegerArray(nodeCount);
+        this.runningTasks = new AtomicReferenceArray<>(nodeCount);
+        this.nodeResults = new AtomicReferenceArray<>(nodeCount);
+        this.nodeInputs = new NodeInputs[nodeCount];
+        this.batcher = new NodeBatcher(retryScheduler, taskExecutor, this::runBatch, this::rejectBatch);
+        for (int i = 0; i < nodeCount; i++) {
+            this.nodeStates.set(i, TaskState.PENDING);
+        }
+        this.context.bindFlowRun(this);
+    }
+
+    public String getRunId() {
+        return this.runId;
+    }
+
+    public FlowPlan getPlan() {
+        return this.plan;
+    }
+
+    public ExecutionContext getContext() {
+        return this.context;
+    }
+
+    public ExecutionState getExecutionState() {
+        return this.executionState;
+    }
+
+    /**
+     * 本次执行中节点的状态
+     * @param nodeId 节点ID
+     * @return 节点状态，节点不存在则返回 null
+     */
+    public TaskState getNodeState(String nodeId) {
+        final int index = this.compiledGraph.indexOf(nodeId);
+        return index >= 0 ? this.nodeStates.get(index) : null;
+    }
+
+    /**
+     * 流程执行结果，流程结束(完成/失败/取消/暂停)时完成
+     */
+    public CompletableFuture<FlowExecutionResult> getResultFuture() {
+        return this.flowResultFuture;
+    }
+
+    /**
+     * 开始执行，只能调用一次。
+     * 节点执行完成后，由完成回调直接评估并提交下游节点，调用线程不会被阻塞。
+     *
+     * @return 流程执行结果，流程结束(完成/失败/取消/暂停)时完成
+     */
+    CompletableFuture<FlowExecutionResult> start() {
+        synchronized (this.stateLock) {
+            if (this.executionState != ExecutionState.READY) {
+                throw new IllegalStateException("FlowRun state invalid: " + this.executionState);
+            }
+            this.executionState = ExecutionState.RUNNING;
+        }
+
+        if (this.plan.size() == 0) {
+            LOG.warn(">> WARNING: No nodes to execute.");
+            this.flowResultFuture.complete(new FlowExecutionResult());
+            return this.flowResultFuture;
+        }
+
+        try {
+            this.executionListener.onFlowStart();
+        } catch (Exception e) {
+            LOG.error("Start listener error", e);
+        }
+
+        this.flowExecutionResult.setStartTime(Instant.now());
+        checkpointRun(ExecutionState.RUNNING);
+        if (this.checkpointRestoredNodes) {
+            for (int index : this.restoredNodes) {
+                checkpointNode(index, this.nodeStates.get(index), this.nodeResults.get(index));
+            }
+        }
+
+        // 提交第一批任务期间占用一个计数，避免先完成的任务误判流程已结束
+        this.runningTasksNum.incrementAndGet();
+        try {
+            // 1. 初始化就绪队列
+            initializeReadyQueue();
+
+            // 2. 提交第一批任务，后续任务由完成回调驱动
+            submitReadyTasks();
+        } catch (Exception e) {
+            LOG.error("Execution Error", e);
+            cancelAllRunningTasks();
+        } finally {
+            releaseRunningTask();
+        }
+
+        return this.flowResultFuture;
+    }
+
+    private void initializeReadyQueue() {
+        if (!this.restoredNodes.isEmpty()) {
+            initializeRestoredFrontier();
+            return;
+        }
+
+        // 初始入度为0的节点，或者触发规则为 ALWAYS 的节点
+        for (int i = 0; i < this.plan.size(); i++) {
+            if (this.compiledGraph.getInDegree(i) == 0 || this.plan.getTriggerRule(i) == TaskTriggerRule.ALWAYS) {
+                enqueue(i);
+            }
+        }
+    }
+
+    /**
+     * 从检查点恢复的执行前沿出发，重新评估所有未完成的节点
+     */
+    private void initializeRestoredFrontier() {
+        final CompiledGraph cg = this.compiledGraph;
+
+        // 1. 已完成的分支节点没有选中的下游(崩溃时可能还未来得及标记为跳过)
+        for (int index : this.restoredNodes) {
+            final NodeExecutionResult result = this.nodeResults.get(index);
+            final Collection<String> activated = result != null ? result.getNextNodesToActivate() : null;
+            if (this.nodeStates.get(index) != TaskState.SUCCESS || activated == null) {
+                continue;
+            }
+            for (int p = cg.getDownstreamStart(index), end = cg.getDownstreamEnd(index); p < end; p++) {
+                final int dependent = cg.getDownstreamAt(p);
+                if (!activated.contains(cg.getNodeId(dependent))) {
+                    markNodeAsSkipped(dependent, "Not selected by branch node " + cg.getNodeId(index));
+                }
+            }
+        }
+
+        // 2. 其余未完成的节点按上游状态计数评估触发规则(包括崩溃时正在执行的节点)
+        for (int i = 0; i < this.plan.size(); i++) {
+            if (this.nodeStates.get(i) != TaskState.PENDING) {
+                continue;
+            }
+            final TaskTriggerRule rule = this.plan.getTriggerRule(i);
+            final int upstreamCount = cg.getUpstreamCount(i);
+            if (upstreamCount == 0 || rule == TaskTriggerRule.ALWAYS
+                    || this.upstreamCounters.evaluate(i, rule, upstreamCount)) {
+                enqueue(i);
+            } else if (this.upstreamCounters.isAllDone(i, upstreamCount)) {
+                handleRuleMismatch(i, rule);
+            }
+        }
+    }
+
+    /**
+     * 从检查点恢复已完成的节点，只能在 {@link #start()} 之前调用。
+     * <p>
+     * 只恢复完成序号从 1 开始连续的一段记录(最后一个一致的执行前沿)，之后的记录即使存在也会被忽略，
+     * 对应的节点会重新执行。
+     *
+     * @param checkpoints 节点的完成记录
+     * @return 恢复的节点数
+     */
+    int restore(List<NodeCheckpoint> checkpoints) {
+        synchronized (this.stateLock) {
+            if (this.executionState != ExecutionState.READY) {
+                throw new IllegalStateException("FlowRun state invalid: " + this.executionState);
+            }
+        }
+        if (checkpoints == null || checkpoints.isEmpty()) {
+            return 0;
+        }
+
+        final List<NodeCheckpoint> sorted = new ArrayList<>(checkpoints);
+        sorted.sort(Comparator.comparingInt(NodeCheckpoint::getSeq));
+
+        final CompiledGraph cg = this.compiledGraph;
+        int expectedSeq = 1;
+        for (NodeCheckpoint cp : sorted) {
+            final int index = cg.indexOf(cp.getNodeId());
+            if (cp.getSeq() != expectedSeq || index < 0 || this.nodeStates.get(index) != TaskState.PENDING) {
+                break;
+            }
+            expectedSeq++;
+            restoreNode(index, cp.getState(), toExecutionResult(cp));
+        }
+
+        this.checkpointSeq.set(expectedSeq - 1);
+        LOG.info(">> FlowRun <{}> restored {} of {} node checkpoints.", this.runId, this.restoredNodes.size(), checkpoints.size());
+        return this.restoredNodes.size();
+    }
+
+    /**
+     * 增量执行：复用上一次执行中未受影响的节点的结果，只能在 {@link #start()} 之前调用。
+     * <p>
+     * 变化的节点及其所有下游节点(正向可达闭包)会重新执行，其余节点直接复用上一次执行的结果。
+     * 上一次执行中没有成功结果的节点(失败、跳过、未执行或新增的节点)同样视为变化的节点，
+     * 因此复用的节点的所有上游一定也被复用，与从检查点恢复一样构成一个一致的执行前沿。
+     *
+     * @param previous 上一次执行的上下文
+     * @param changedNodeIds 变化的节点(配置修改、输入连线修改等)
+     * @return 复用的节点数
+     */
+    int reuse(ExecutionContext previous, Collection<String> changedNodeIds) {
+        synchronized (this.stateLock) {
+            if (this.executionState != ExecutionState.READY) {
+                throw new IllegalStateException("FlowRun state invalid: " + this.executionState);
+            }
+        }
+        if (previous == null) {
+            return 0;
+        }
+
+        final CompiledGraph cg = this.compiledGraph;
+        final Set<String> changed = changedNodeIds != null ? new HashSet<>(changedNodeIds) : new HashSet<>();
+        for (int i = 0; i < this.plan.size(); i++) {
+            final String nodeId = cg.getNodeId(i);
+            final NodeExecutionResult result = previous.getNodeExecutionResult(nodeId).orElse(null);
+            // 流式输出已被上一次执行消费、输出数据已在执行过程中释放，都不能复用
+            if (result == null || !result.isSuccess() || result.isSkipped() || hasStreamingOutput(result)
+                    || result.isOutputsReleased()) {
+                changed.add(nodeId);
+            }
+        }
+        final Set<String> invalidated = this.plan.getGraph().findDownstreamClosure(changed);
+
+        // 按拓扑序复用，写入检查点时完成序号与依赖顺序一致
+        for (int index : this.plan.getGraph().getTopologicalOrder()) {
+            final String nodeId = cg.getNodeId(index);
+            if (!invalidated.contains(nodeId)) {
+                // 复制结果，本次执行释放输出数据时不影响上一次执行的结果
+                restoreNode(index, TaskState.SUCCESS, previous.getNodeExecutionResult(nodeId).get().copy());
+            }
+        }
+
+        this.checkpointRestoredNodes = true;
+        LOG.info(">> FlowRun <{}> reused {} node results, {} nodes to execute.",
+                this.runId, this.restoredNodes.size(), this.plan.size() - this.restoredNodes.size());
+        return this.restoredNodes.size();
+    }
+
+    /**
+     * 增量执行使用的上下文：复制上一次执行的流程输入和上下文数据，不包括节点的执行结果
+     */
+    static ExecutionContext contextForReuse(ExecutionContext previous) {
+        final ExecutionContext context = new ExecutionContext();
+        if (previous != null) {
+            context.putAll(previous);
+            context.setWorkflowInput(previous.getWorkflowInput());
+        }
+        return context;
+    }
+
+    /**
+     * 将节点恢复为已完成的状态(不执行节点，也不通知监听器)
+     */
+    private void restoreNode(int index, TaskState state, NodeExecutionResult result) {
+        final CompiledGraph cg = this.compiledGraph;
+        final String nodeId = cg.getNodeId(index);
+        this.nodeStates.set(index, state);
+        this.completedTasksNum.incrementAndGet();
+        if (state == TaskState.FAILED) {
+            this.failedTasks.add(result);
+        } else {
+            this.completedNodes.add(nodeId);
+        }
+        onConsumerDone(index);
+        trackOutputs(index, result);
+        recordResult(index, result);
+        releaseUnconsumedOutputs(index);
+
+        for (int p = cg.getDownstreamStart(index), end = cg.getDownstreamEnd(index); p < end; p++) {
+            this.upstreamCounters.record(cg.getDownstreamAt(p), state);
+        }
+        this.restoredNodes.add(index);
+    }
+
+    /**
+     * 开启检查点，只能在 {@link #start()} 之前调用
+     */
+    void setCheckpointWriter(AsyncCheckpointWriter checkpointWriter) {
+        this.checkpointWriter = checkpointWriter;
+    }
+
+    /**
+     * 开启节点结果缓存，只能在 {@link #start()} 之前调用
+     */
+    void setNodeResultCache(NodeResultCache nodeResultCache) {
+        this.nodeResultCache = nodeResultCache;
+    }
+
+    /**
+     * 开启大输出数据溢写到临时文件，只能在 {@link #start()} 之前调用
+     */
+    void setPayloadSpiller(PayloadSpiller payloadSpiller) {
+        this.payloadSpiller = payloadSpiller;
+    }
+
+    /**
+     * 开启节点执行指标统计，只能在 {@link #start()} 之前调用
+     */
+    void setNodeMetrics(NodeMetrics nodeMetrics) {
+        this.nodeMetrics = nodeMetrics;
+        if (nodeMetrics != null && this.readyNanos == null) {
+            this.typeMetrics = new NodeMetrics.TypeMetrics[this.plan.size()];
+            this.readyNanos = new long[this.plan.size()];
+        }
+    }
+
+    /**
+     * 开启分布式执行，只能在 {@link #start()} 之前调用
+     */
+    void setDistributedExecutor(DistributedNodeExecutor distributedExecutor) {
+        this.distributedExecutor = distributedExecutor;
+    }
+
+    /**
+     * 开启执行过程中释放输出数据，只能在 {@link #start()} 之前(恢复已完成的节点之前)调用。
+     * <p>
+     * 被下游节点消费的输出端口，在所有消费它的下游节点都执行结束(成功、失败、跳过或取消)后释放，
+     * 释放后不再保留在执行上下文中；流程结果节点(见 {@link TaskNode#isFlowResult()})的输出、
+     * 没有被下游节点消费的输出以及流式输出不会被释放。
+     */
+    void setReleaseOutputs(boolean releaseOutputs) {
+        this.releaseOutputs = releaseOutputs;
+        if (releaseOutputs && this.remainingConsumers == null) {
+            final int portNum = this.plan.getConsumedPortCount();
+            this.remainingConsumers = new AtomicIntegerArray(portNum);
+            this.portBytes = new AtomicLongArray(portNum);
+            for (int id = 0; id < portNum; id++) {
+                this.remainingConsumers.set(id, this.plan.getPortConsumerCount(id));
+            }
+        }
+    }
+
+    /**
+     * 记录成功节点的输出数据大小，必须在结果加入执行上下文之前调用
+     */
+    private void trackOutputs(int nodeIndex, NodeExecutionResult result) {
+        if (!this.releaseOutputs || !result.isSuccess() || result.isSkipped()) {
+            return;
+        }
+        final Map<String, NodeOutput> outputs = result.getNodeOutputs();
+        long total = 0;
+        for (NodeOutput out : outputs.values()) {
+            total += PayloadSizeEstimator.estimate(out);
+        }
+        for (int portId : this.plan.getNodePortIds(nodeIndex)) {
+            this.portBytes.set(portId, PayloadSizeEstimator.estimate(outputs.get(this.plan.getPortName(portId))));
+        }
+        final long retained = this.retainedBytes.addAndGet(total);
+        this.peakRetainedBytes.accumulateAndGet(retained, Math::max);
+    }
+
+    /**
+     * 节点执行结束时，消费者已全部执行结束的输出端口立即释放(如 ONE_SUCCESS 的下游先于本节点结束)
+     */
+    private void releaseUnconsumedOutputs(int nodeIndex) {
+        if (!this.releaseOutputs) {
+            return;
+        }
+        for (int portId : this.plan.getNodePortIds(nodeIndex)) {
+            if (this.remainingConsumers.get(portId) == 0) {
+                releasePort(portId);
+            }
+        }
+    }
+
+    /**
+     * 节点已到达终态，它消费的上游输出端口的消费者数减一，减到 0 时释放端口数据
+     */
+    private void onConsumerDone(int nodeIndex) {
+        if (!this.releaseOutputs) {
+            return;
+        }
+        final CompiledGraph cg = this.compiledGraph;
+        for (int p = cg.getInputStart(nodeIndex), end = cg.getInputEnd(nodeIndex); p < end; p++) {
+            final int portId = this.plan.getInputPortId(p);
+            if (portId >= 0 && this.remainingConsumers.decrementAndGet(portId) == 0) {
+                releasePort(portId);
+            }
+        }
+    }
+
+    private void releasePort(int portId) {
+        final int source = this.plan.getPortSourceNode(portId);
+        if (this.plan.isFlowResult(source)) {
+            return;
+        }
+        final NodeExecutionResult result = this.nodeResults.get(source);
+        final String port = this.plan.getPortName(portId);
+        // 上游尚未执行结束时，由上游节点结束时释放
+        if (result == null || result.getNodeOutput(port) instanceof StreamingNodeOutput) {
+            return;
+        }
+        final NodeOutput released = result.releaseNodeOutput(port);
+        if (released != null) {
+            this.retainedBytes.addAndGet(-this.portBytes.getAndSet(portId, 0));
+            if (released instanceof SpilledNodeOutput) {
+                ((SpilledNodeOutput) released).delete();
+            }
+        }
+    }
+
+    /**
+     * 加载可以恢复的执行检查点
+     *
+     * @throws FlowExecuteException 未开启检查点、检查点不存在或执行已结束
+     */
+    static RunCheckpoint loadResumableCheckpoint(AsyncCheckpointWriter writer, String runId) {
+        if (writer == null) {
+            throw new FlowExecuteException("Checkpoint is not enabled");
+        }
+        if (runId == null) {
+            throw new FlowExecuteException("`runId` must not be null");
+        }
+
+        try {
+            // 本进程内暂停的执行，其检查点可能还在写入队列中
+            writer.flush(RESUME_FLUSH_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlowExecuteException("Interrupted while flushing checkpoints", e);
+        }
+
+        final RunCheckpoint checkpoint = writer.getStore().loadRun(runId);
+        if (checkpoint == null) {
+            throw new FlowExecuteException("Checkpoint of run not found: " + runId);
+        }
+        if (!checkpoint.isResumable()) {
+            throw new FlowExecuteException("Run <" + runId + "> is not resumable, state: " + checkpoint.getState());
+        }
+        return checkpoint;
+    }
+
+    private static NodeExecutionResult toExecutionResult(NodeCheckpoint cp) {
+        final NodeExecutionResult result = cp.isSuccess()
+                ? NodeExecutionResult.success()
+                : NodeExecutionResult.failed(cp.getErrorMessage());
+        result.setNodeId(cp.getNodeId())
+                .setSkipped(cp.isSkipped())
+                .setNextNodesToActivate(cp.getNextNodes())
+                .setStartTime(cp.getStartTime())
+                .setEndTime(cp.getEndTime());
+        cp.getOutputs().forEach((port, payload) -> result.addNodeOutput(port, new NodeOutput(payload)));
+        return result;
+    }
+
+    /**
+     * 记录节点的完成，必须在节点迁移到终态之后、评估下游之前调用，以保证完成序号与依赖顺序一致
+     */
+    private void checkpointNode(int nodeIndex, TaskState state, NodeExecutionResult result) {
+        final AsyncCheckpointWriter writer = this.checkpointWriter;
+        if (writer == null) {
+            return;
+        }
+
+        // 流式输出无法持久化，溢写的输出不读回堆内存(临时文件也不会保留到恢复时)：
+        // 只占用完成序号不写入记录，恢复时从此节点开始重新执行
+        final int seq = this.checkpointSeq.incrementAndGet();
+        if (hasStreamingOutput(result) || hasSpilledOutput(result)) {
+            return;
+        }
+
+        final Map<String, NodeOutput> nodeOutputs = result.getNodeOutputs();
+        final Map<String, Object> outputs = new HashMap<>(nodeOutputs.size() * 2);
+        nodeOutputs.forEach((port, out) -> outputs.put(port, out.getPayload()));
+
+        writer.writeNode(new NodeCheckpoint()
+                .setRunId(this.runId)
+                .setNodeId(this.compiledGraph.getNodeId(nodeIndex))
+                .setSeq(seq)
+                .setState(state)
+                .setSuccess(result.isSuccess())
+                .setSkipped(result.isSkipped())
+                .setErrorMessage(result.isSuccess() ? null : result.getErrorMessage())
+                .setNextNodes(result.getNextNodesToActivate() != null ? new ArrayList<>(result.getNextNodesToActivate()) : null)
+                .setOutputs(outputs)
+                .setStartTime(result.getStartTime())
+                .setEndTime(result.getEndTime()));
+    }
+
+    private void checkpointRun(ExecutionState state) {
+        final AsyncCheckpointWriter writer = this.checkpointWriter;
+        if (writer == null) {
+            return;
+        }
+        writer.writeRun(new RunCheckpoint()
+                .setRunId(this.runId)
+                .setPlanKey(this.plan.getPlanKey())
+                .setState(state)
+                .setWorkflowInput(this.context.getWorkflowInput())
+                .setUpdatedAt(Instant.now()));
+    }
+
+    /**
+     * 节点任务执行结束(不论成功、失败或取消)后的回调，在执行该任务的线程(或取消任务的线程)中被调用。
+     */
+    private void onTaskDone(NodeTask task) {
+        final int finishedNode = task.nodeIndex;
+        final String finishedNodeId = this.compiledGraph.getNodeId(finishedNode);
+        this.runningTasks.compareAndSet(finishedNode, task, null);
+        if (this.nodeMetrics != null) {
+            recordMetrics(task);
+        }
+        // 先释放执行槽位，评估下游后提交就绪节点时即可使用
+        task.releaseSlotOnce();
+
+        try {
+            NodeExecutionResult taskResult = task.get();
+            handleTaskCompletion(finishedNode, taskResult);
+        } catch (ExecutionException e) {
+            // 拆包获取真实的业务异常
+            Throwable cause = e.getCause();
+
+            NodeExecutionResult execResult = NodeExecutionResult.failed(cause)
+                    .setNodeId(finishedNodeId)
+                    .setEndTime(Instant.now());
+
+            if (cause instanceof FlowPauseException) {
+                // 场景 1: 流程暂停 (如: 屏幕交互)
+                handleTaskPause(finishedNode, (FlowPauseException) cause);
+            }
+            else if (cause instanceof FlowSkipException) {
+                // 场景 2: 动态跳过 (如: 无数据)
+                handleTaskSkip(finishedNode, (FlowSkipException) cause);
+            }
+            else if (cause instanceof FlowFailException) {
+                // 场景 3: 快速失败 (忽略重试)
+                handleTaskFailure(finishedNode, execResult, false);
+            }
+            else {
+                // 场景 4: 普通异常 (走默认重试机制)
+                handleTaskFailure(finishedNode, execResult, true);
+            }
+
+        }
+        catch (CancellationException e) {
+            handleCancellation(finishedNode);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAllRunningTasks();
+        }
+        catch (Exception e) {
+            // 系统级异常，视为失败
+            handleTaskFailure(finishedNode, NodeExecutionResult.failed(e).setNodeId(finishedNodeId), true);
+        }
+        finally {
+            // 本任务释放的槽位可能正被其他就绪节点等待(比如出口节点、重试的节点不会触发下游评估)
+            submitReadyTasks();
+            releaseRunningTask();
+        }
+    }
+
+    /**
+     * 释放一个执行中的计数，如果流程已无事可做则结束流程
+     */
+    private void releaseRunningTask() {
+        if (this.runningTasksNum.decrementAndGet() == 0) {
+            tryFinishExecution();
+        }
+    }
+
+    /**
+     * 当所有节点都已完结，或者已没有执行中的任务且不会再有新任务(无待触发的重试、或流程已不在运行状态)时，结束流程
+     */
+    private void tryFinishExecution() {
+        if (this.runningTasksNum.get() > 0) {
+            return;
+        }
+
+        final boolean allDone = this.completedTasksNum.get() >= this.plan.size();
+        final boolean noMoreWork = this.readyQueue.isEmpty() && this.scheduledRetryTasksNum.get() == 0;
+        if (!allDone && !noMoreWork && this.executionState == ExecutionState.RUNNING) {
+            return;
+        }
+
+        if (!this.flowFinished.compareAndSet(false, true)) {
+            return;
+        }
+
+        final FlowExecutionResult result = this.flowExecutionResult;
+        try {
+            finalizeExecution(result);
+        } catch (Exception e) {
+            LOG.error("Execution Error", e);
+            result.setSuccess(false);
+        } finally {
+            if (this.executionState != ExecutionState.COMPLETED) {
+                cancelOpenStreams();
+            }
+            checkpointRun(this.executionState);
+            notifyFlowCompletion(result);
+            this.flowResultFuture.complete(result);
+        }
+    }
+
+    /**
+     * 处理任务正常完成（包括业务上的成功或失败）
+     */
+    private void handleTaskCompletion(int nodeIndex, NodeExecutionResult result) {
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+
+        if (result.isSuccess()) {
+            // 更新状态
+            if (!transition(nodeIndex, TaskState.RUNNING, TaskState.SUCCESS)) {
+                return;
+            }
+            this.completedNodes.add(nodeId);
+            this.completedTasksNum.incrementAndGet();
+            // 在上下文中记录节点输出
+            trackOutputs(nodeIndex, result);
+            recordResult(nodeIndex, result);
+            // 流式输出：登记会订阅的下游节点，之后下游节点被调度时数据流可能仍在产生
+            bindStreamingOutputs(nodeIndex, result);
+            checkpointNode(nodeIndex, TaskState.SUCCESS, result);
+            releaseUnconsumedOutputs(nodeIndex);
+            notifyNodeCompletion(result);
+
+            // 成功后，评估下游节点
+            evaluateAndTriggerDownstream(nodeIndex, TaskState.SUCCESS, result.getNextNodesToActivate());
+        } else {
+            // 失败处理 (内部包含重试逻辑)
+            handleTaskFailure(nodeIndex, result, true);
+        }
+    }
+
+    /**
+     * 处理任务失败（含重试逻辑）
+     */
+    private void handleTaskFailure(final int failedNodeIndex, NodeExecutionResult failedResult, final boolean needRetry) {
+        final String failedNodeId = failedResult.getNodeId();
+        final TaskNode failedNode = this.plan.getNode(failedNodeIndex);
+
+        if (needRetry) {
+            // 检查重试
+            int maxRetries = failedNode.getMaxRetries();
+            // 重试的节点重新回到 QUEUED 状态，由重试调度器到期后再次提交
+            if (this.retryCounts.incrementAndGet(failedNodeIndex) <= maxRetries
+                    && transition(failedNodeIndex, TaskState.RUNNING, TaskState.QUEUED)) {
+                LOG.warn(">> WARNING: Retry task <{}>", failedNodeId);
+                if (this.nodeMetrics != null) {
+                    metricsOf(failedNodeIndex).recordRetry();
+                }
+                this.scheduledRetryTasksNum.incrementAndGet();
+                try {
+                    this.retryScheduler.schedule(() -> {
+                        // 重新加入就绪队列按优先级调度，先提交再更新计数，避免流程被误判为已结束
+                        markReady(failedNodeIndex);
+                        this.readyQueue.offer(failedNodeIndex);
+                        submitReadyTasks();
+                        if (this.scheduledRetryTasksNum.decrementAndGet() == 0) {
+                            tryFinishExecution();
+                        }
+                    }, failedNode.getRetryDelayMillis(), TimeUnit.MILLISECONDS);
+                    return; // 正在重试，暂不视为完结
+                } catch (RejectedExecutionException e) {
+                    this.scheduledRetryTasksNum.decrementAndGet();
+                    transition(failedNodeIndex, TaskState.QUEUED, TaskState.RUNNING);
+                    LOG.error(">> ERROR: Retry task <{}> submit failed: ", failedNodeId, e);
+                }
+            }
+        }
+
+        // 最终失败
+        if (!transition(failedNodeIndex, TaskState.RUNNING, TaskState.FAILED)) {
+            return;
+        }
+        LOG.error(">> ERROR: Task <{}> failed after retries.", failedNodeId);
+        if (this.nodeMetrics != null) {
+            metricsOf(failedNodeIndex).recordFailure();
+        }
+        this.failedTasks.add(failedResult);
+        this.completedTasksNum.incrementAndGet(); // 计数+1
+
+        recordResult(failedNodeIndex, failedResult);
+        checkpointNode(failedNodeIndex, TaskState.FAILED, failedResult);
+        notifyNodeCompletion(failedResult);
+
+        // 即使失败，也需要评估下游（因为可能有 rules 如 ALL_DONE, ALL_FAILED 等需要运行）
+        evaluateAndTriggerDownstream(failedNodeIndex, TaskState.FAILED, null);
+    }
+
+    private void handleTaskSkip(int nodeIndex, FlowSkipException ex) {
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+        if (!transition(nodeIndex, TaskState.RUNNING, TaskState.SKIPPED)) {
+            return;
+        }
+        LOG.info(">> Task <{}> skipped programmatically.", nodeId);
+
+        NodeExecutionResult result = NodeExecutionResult.failed("Skipped by logic")
+                .setNodeId(nodeId)
+                .setSkipped(true)
+                .setErrorMessage(ex.getMessage());
+
+        this.completedTasksNum.incrementAndGet(); // 计数+1
+        this.completedNodes.add(nodeId);
+
+        recordResult(nodeIndex, result);
+        checkpointNode(nodeIndex, TaskState.SKIPPED, result);
+        notifyNodeCompletion(result);
+
+        // 【关键】：跳过也被视为一种完成，必须评估下游
+        // 下游是否运行取决于 TriggerRule (如 ALL_SKIPPED 或 ALL_SUCCESS 等)
+        evaluateAndTriggerDownstream(nodeIndex, TaskState.SKIPPED, null);
+    }
+
+    private void handleTaskPause(int nodeIndex, FlowPauseException ex) {
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+        LOG.info(">> Task <{}> paused flow. Reason: {}", nodeId, ex.getMessage());
+
+        synchronized (this.stateLock) {
+            // 1. 修改执行状态为 PAUSED，停止提交新任务
+            // 注意：已经在运行的其他线程任务会继续跑完，这通常是合理的
+            this.executionState = ExecutionState.PAUSED;
+        }
+
+        // 2. 更新节点状态
+        transition(nodeIndex, TaskState.RUNNING, TaskState.PAUSED);
+        // 3. 记录结果
+        // 假设 FlowPauseException 里可以携带 UI 数据
+        NodeExecutionResult result = NodeExecutionResult.failed("Paused for interaction")
+                .setNodeId(nodeId)
+                .setErrorMessage(ex.getMessage());
+
+        // TODO 如果你的 FlowPauseException 有 payload (比如前端需要的 JSON)，记得塞入 result
+        //result.addNodeOutput("ui_schema", new NodeOutput(exception.getUiData()));
+
+        recordResult(nodeIndex, result);
+        // 4. 记录暂停状态(开启检查点时可以通过执行ID恢复执行，暂停的节点会重新执行)
+        checkpointRun(ExecutionState.PAUSED);
+        // 5. 通知监听器 (外部系统收到此事件后，应持久化当前 context 和 graph 状态)
+        notifyNodeCompletion(result);
+    }
+
+    private void handleCancellation(int nodeIndex) {
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+        if (!transition(nodeIndex, TaskState.RUNNING, TaskState.CANCELLED)) {
+            return;
+        }
+        LOG.warn(">> Task <{}> Cancelled.", nodeId);
+        NodeExecutionResult res = NodeExecutionResult.failed("Task Cancelled").setNodeId(nodeId);
+        this.completedTasksNum.incrementAndGet();
+        this.failedTasks.add(res);
+
+        recordResult(nodeIndex, res);
+        notifyNodeCompletion(res);
+
+        // 取消通常意味着流程终止，或者可以视为 FAILED 触发下游
+        evaluateAndTriggerDownstream(nodeIndex, TaskState.CANCELLED, null);
+    }
+
+    /**
+     * 核心逻辑：评估下游节点是否可以触发
+     *
+     * @param finishedNode 刚刚结束的节点下标
+     * @param finishedState 刚刚结束的节点的最终状态
+     * @param activatedBranch (可选) 如果上游是分支节点，这里指定了允许激活的下游分支集合
+     */
+    private void evaluateAndTriggerDownstream(int finishedNode, TaskState finishedState, Collection<String> activatedBranch) {
+        final CompiledGraph cg = this.compiledGraph;
+        final int downstreamStart = cg.getDownstreamStart(finishedNode);
+        final int downstreamEnd = cg.getDownstreamEnd(finishedNode);
+        if (downstreamStart == downstreamEnd) {
+            return;
+        }
+
+        // 为空时(分支节点没有选中任何分支)所有下游节点都被排除
+        final boolean hasBranch = activatedBranch != null;
+
+        for (int p = downstreamStart; p < downstreamEnd; p++) {
+            final int dependent = cg.getDownstreamAt(p);
+
+            // 1. 更新上游状态计数 (表示有多少上游已经表态)
+            final int doneUpstreams = this.upstreamCounters.record(dependent, finishedState);
+
+            // 2. 快速检查：如果节点已经运行或完成，跳过
+            if (this.nodeStates.get(dependent) != TaskState.PENDING) {
+                continue;
+            }
+
+            // 3. 分支逻辑检查
+            // 如果上游指定了分支，且当前节点不在分支中，则当前节点被“逻辑排除”
+            // 注意：Airflow中未被选择的分支会置为 SKIPPED。
+            // 只有当 finishedNode 是成功状态且显式指定了 nextNodes 时才应用分支逻辑
+            if (hasBranch && !activatedBranch.contains(cg.getNodeId(dependent))) {
+                // 如果被分支排除，直接视为 SKIPPED 并不再评估规则
+                markNodeAsSkipped(dependent, "Not selected by branch node " + cg.getNodeId(finishedNode));
+                continue;
+            }
+
+            // 4. 基于上游状态计数评估触发规则 (O(1))
+            final TaskTriggerRule rule = this.plan.getTriggerRule(dependent);
+            final int upstreamCount = cg.getUpstreamCount(dependent);
+            if (this.upstreamCounters.evaluate(dependent, rule, upstreamCount)) {
+                // 满足规则，加入就绪队列
+                // Eager Execution (如 ONE_SUCCESS) 可能导致多个上游同时触发，只有 CAS 成功的线程会入队
+                enqueue(dependent);
+            } else if (doneUpstreams >= upstreamCount) {
+                // 5. 如果规则不满足，且所有上游都已完结，则必须给出一个最终状态 (SKIPPED 或 UPSTREAM_FAILED)
+                handleRuleMismatch(dependent, rule);
+            }
+        }
+
+        // 尝试提交新产生的就绪任务
+        submitReadyTasks();
+    }
+
+    /**
+     * 当所有上游都已结束，但触发规则仍不满足时的处理逻辑
+     */
+    private void handleRuleMismatch(int nodeIndex, TaskTriggerRule rule) {
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+
+        String reason;
+        TaskState finalState;
+
+        // 简单的映射逻辑，可根据需要扩展
+        if (rule == TaskTriggerRule.ALL_SUCCESS) {
+            finalState = TaskState.UPSTREAM_FAILED;
+            reason = "Upstream failed or skipped.";
+        } else if (rule == TaskTriggerRule.ALL_FAILED) {
+            finalState = TaskState.SKIPPED;
+            reason = "Some upstreams succeeded.";
+        } else {
+            finalState = TaskState.UPSTREAM_FAILED;
+            reason = "Trigger rule " + rule + " not satisfied after all upstreams finished.";
+        }
+
+        if (!transition(nodeIndex, TaskState.PENDING, finalState)) {
+            return;
+        }
+
+        NodeExecutionResult result = NodeExecutionResult.failed(reason)
+                .setNodeId(nodeId)
+                .setSkipped(finalState == TaskState.SKIPPED); // UPSTREAM_FAILED 也可以视作 Skipped 的一种变体，视业务定义
+
+        this.completedTasksNum.incrementAndGet();
+        this.completedNodes.add(nodeId);
+        releaseStreamingInputs(nodeIndex);
+
+        recordResult(nodeIndex, result);
+        checkpointNode(nodeIndex, finalState, result);
+        notifyNodeCompletion(result);
+
+        // 递归：这个节点现在的状态变了，需要通知它的下游
+        evaluateAndTriggerDownstream(nodeIndex, finalState, null);
+    }
+
+    private void markNodeAsSkipped(int nodeIndex, String reason) {
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+        if (!transition(nodeIndex, TaskState.PENDING, TaskState.SKIPPED)) {
+            return;
+        }
+
+        NodeExecutionResult result = NodeExecutionResult.failed(reason)
+                .setNodeId(nodeId)
+                .setSkipped(true);
+
+        this.completedNodes.add(nodeId);
+        this.completedTasksNum.incrementAndGet();
+        releaseStreamingInputs(nodeIndex);
+
+        recordResult(nodeIndex, result);
+        checkpointNode(nodeIndex, TaskState.SKIPPED, result);
+        notifyNodeCompletion(result);
+
+        evaluateAndTriggerDownstream(nodeIndex, TaskState.SKIPPED, null);
+    }
+
+    /**
+     * 节点状态迁移，并发时只有一个线程能迁移成功
+     *
+     * @return true - 本线程迁移成功
+     */
+    private boolean transition(int nodeIndex, TaskState expect, TaskState update) {
+        if (!this.nodeStates.compareAndSet(nodeIndex, expect, update)) {
+            return false;
+        }
+        // 节点到达终态后不会再读取输入，释放它对上游输出的引用
+        if (isTerminal(update)) {
+            this.nodeInputs[nodeIndex] = null;
+            onConsumerDone(nodeIndex);
+        }
+        return true;
+    }
+
+    private static boolean isTerminal(TaskState state) {
+        return state == TaskState.SUCCESS || state == TaskState.FAILED || state == TaskState.SKIPPED
+                || state == TaskState.CANCELLED || state == TaskState.UPSTREAM_FAILED;
+    }
+
+    /**
+     * 记录节点进入就绪队列的时间，必须在入队之前调用(入队保证提交任务的线程可见)
+     */
+    private void markReady(int nodeIndex) {
+        if (this.readyNanos != null) {
+            this.readyNanos[nodeIndex] = nanoTime();
+        }
+    }
+
+    /**
+     * 相对于进程内固定起点的纳秒时间，总是大于 0(0 表示未记录)
+     */
+    private static long nanoTime() {
+        return System.nanoTime() - NANO_ORIGIN;
+    }
+
+    private NodeMetrics.TypeMetrics metricsOf(int nodeIndex) {
+        NodeMetrics.TypeMetrics metrics = this.typeMetrics[nodeIndex];
+        if (metrics == null) {
+            // 并发时可能重复查找，得到的是同一个对象
+            metrics = this.nodeMetrics.forType(this.plan.getNode(nodeIndex).getType());
+            this.typeMetrics[nodeIndex] = metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * 记录一次节点执行的各段耗时：就绪到提交、提交到开始执行、开始执行到结束
+     */
+    private void recordMetrics(NodeTask task) {
+        final long doneNanos = nanoTime();
+        final long readyNanos = this.readyNanos[task.nodeIndex];
+        final long startedNanos = task.startedNanos;
+        metricsOf(task.nodeIndex).recordExecution(
+                readyNanos > 0 ? (task.submittedNanos - readyNanos) / 1000L : -1,
+                startedNanos > 0 ? (startedNanos - task.submittedNanos) / 1000L : -1,
+                startedNanos > 0 ? (doneNanos - startedNanos) / 1000L : -1);
+    }
+
+    /**
+     * 将节点从 PENDING 迁移到 QUEUED 并加入就绪队列
+     */
+    private void enqueue(int nodeIndex) {
+        if (transition(nodeIndex, TaskState.PENDING, TaskState.QUEUED)) {
+            markReady(nodeIndex);
+            this.readyQueue.offer(nodeIndex);
+        }
+    }
+
+    /**
+     * 按优先级提交就绪节点，直到就绪队列为空或执行槽位用完。
+     * <p>
+     * 入队总是先于获取槽位，释放槽位总是先于检查队列：
+     * 因此获取槽位失败的线程留下的就绪节点，一定会被释放槽位的线程随后提交。
+     */
+    private void submitReadyTasks() {
+        while (this.executionState == ExecutionState.RUNNING && !this.readyQueue.isEmpty()) {
+            if (!tryAcquireSlot()) {
+                return;
+            }
+            Integer nodeIndex = this.readyQueue.poll();
+            if (nodeIndex == null) {
+                // 已被其他线程取走，归还槽位后重新检查队列
+                releaseSlot();
+                continue;
+            }
+            if (!submitTask(nodeIndex)) {
+                releaseSlot();
+            }
+        }
+    }
+
+    private boolean tryAcquireSlot() {
+        for (;;) {
+            final int n = this.inFlightTasksNum.get();
+            if (n >= this.maxInFlight) {
+                return false;
+            }
+            if (this.inFlightTasksNum.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void releaseSlot() {
+        this.inFlightTasksNum.decrementAndGet();
+    }
+
+    /**
+     * 提交节点任务，调用前需要已占用一个执行槽位
+     *
+     * @return true - 已创建节点任务(任务结束时会释放槽位)；false - 未提交，调用方需要释放槽位
+     */
+    private boolean submitTask(final int nodeIndex) {
+        // 检查是否已被取消/暂停
+        if (this.executionState != ExecutionState.RUNNING) {
+            return false;
+        }
+
+        // 关键：CAS 防止重复提交，只有入队(或等待重试)的节点才能被提交
+        if (!transition(nodeIndex, TaskState.QUEUED, TaskState.RUNNING)) {
+            return false;
+        }
+
+        final TaskNode planNode = this.plan.getNode(nodeIndex);
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+        final ExecutionContext context = this.context;
+        // 可分布式执行的节点按异步节点提交到执行队列
+        final DistributedNodeExecutor distributed = this.distributedExecutor;
+        final TaskNode runNode = distributed != null && distributed.accepts(planNode)
+                ? distributed.remoteNode(this.runId, this.plan, nodeIndex, planNode) : planNode;
+
+        // 可批量执行的节点加入批次，由批次执行完成任务。
+        // 等待批次的节点不占用线程，马上归还执行槽位，这样同时就绪的同类节点都能进入同一个批次
+        if (runNode instanceof BatchableTaskNode) {
+            final BatchableTaskNode batchNode = (BatchableTaskNode) runNode;
+            final NodeTask task = new NodeTask(nodeIndex, EXTERNAL_CALLABLE);
+            this.runningTasks.set(nodeIndex, task);
+            this.runningTasksNum.incrementAndGet();
+            task.releaseSlotOnce();
+            this.batcher.add(batchNode.getBatchKey(), nodeIndex, batchNode.getMaxBatchSize(), batchNode.getBatchWindowMillis());
+            return true;
+        }
+
+        // 异步节点在工作线程中发出调用后立即返回，由调用完成的回调完成任务
+        if (runNode instanceof AsyncTaskNode) {
+            final NodeTask task = new NodeTask(nodeIndex, EXTERNAL_CALLABLE);
+            this.runningTasks.set(nodeIndex, task);
+            this.runningTasksNum.incrementAndGet();
+            execute(() -> startAsyncCall(task, (AsyncTaskNode) runNode), e -> {
+                LOG.error(">> ERROR: Task <{}> submit failed: ", nodeId, e);
+                task.cancel(false);
+            });
+            return true;
+        }
+
+        final NodeTask task = new NodeTask(nodeIndex, () -> {
+            Instant startTime = Instant.now();
+
+            if (Thread.currentThread().isInterrupted()) {
+                return NodeExecutionResult.failed("Interrupted", new InterruptedException()).setNodeId(nodeId);
+            }
+
+            // 数据准备：按预编译的输入槽位从上游获取数据 (Inputs)
+            final NodeInputs inputs = assembleInputs(nodeIndex);
+
+            // 开始节点没有输入，使用流程输入作为输入
+            if (runNode instanceof StartNode) {
+                inputs.addInput(StartNode.DEFAULT_INPUT_PORT_NAME, new NodeOutput(context.getWorkflowInput()));
+            }
+
+            try {
+                return callNode(nodeIndex, runNode, inputs, startTime);
+            } finally {
+                // 节点已执行结束，不再等待它订阅上游的流式输出
+                releaseStreamingInputs(nodeIndex);
+            }
+        });
+
+        this.runningTasks.set(nodeIndex, task);
+        this.runningTasksNum.incrementAndGet();
+        try {
+            this.taskExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOG.error(">> ERROR: Task <{}> submit failed: ", nodeId, e);
+            // 取消任务会触发完成回调，按取消处理
+            task.cancel(false);
+        }
+        return true;
+    }
+
+    /**
+     * 按节点的输入槽位组装输入：上游结果按节点下标直接读取，节点重试时复用上一次的 NodeInputs
+     */
+    private NodeInputs assembleInputs(int nodeIndex) {
+        final FlowPlan.InputWiring wiring = this.plan.getInputWiring(nodeIndex);
+        NodeInputs inputs = this.nodeInputs[nodeIndex];
+        if (inputs == null) {
+            inputs = new NodeInputs(wiring, this.compiledGraph.getNodeId(nodeIndex));
+            this.nodeInputs[nodeIndex] = inputs;
+        } else {
+            inputs.reset();
+        }
+
+        for (int port = 0; port < wiring.ports.length; port++) {
+            for (int slot = wiring.portStarts[port], end = wiring.portStarts[port + 1]; slot < end; slot++) {
+                final int source = wiring.sourceNodes[slot];
+                // 注意：对于 ONE_SUCCESS 等规则，部分上游可能还没跑完，这里就拿不到数据，节点内部逻辑需要处理 input 可能缺失的情况
+                final NodeExecutionResult upRes = source >= 0 ? this.nodeResults.get(source) : null;
+                if (upRes != null && upRes.isSuccess() && !upRes.isSkipped()) {
+                    // 上游节点指定端口的输出写入目标节点的指定输入端口
+                    final NodeOutput out = upRes.getNodeOutput(wiring.sourcePorts[slot]);
+                    if (out != null) {
+                        inputs.addInput(port, out);
+                    }
+                }
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * 记录节点的执行结果(执行上下文以及按节点下标存放的结果)
+     */
+    private void recordResult(int nodeIndex, NodeExecutionResult result) {
+        this.nodeResults.set(nodeIndex, result);
+        this.context.addNodeExecutionResult(this.compiledGraph.getNodeId(nodeIndex), result);
+    }
+
+    /**
+     * 调用节点(可缓存的节点先查找缓存)
+     */
+    private NodeExecutionResult callNode(int nodeIndex, TaskNode runNode, NodeInputs inputs, Instant startTime) {
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+        final ExecutionContext context = this.context;
+
+        // 可缓存的节点先查找缓存，命中则不再调用节点(也不记录耗时，避免拉低节点的平均耗时)
+        final String cacheKey = this.nodeResultCache != null ? nodeCacheKey(nodeIndex, inputs) : null;
+        final NodeExecutionResult cached = lookupCache(nodeIndex, cacheKey, startTime);
+        if (cached != null) {
+            return cached;
+        }
+
+        final long startNanos = System.nanoTime();
+        try {
+            return completeResult(nodeIndex, runNode.call(context, inputs), cacheKey, startTime);
+        } catch (Exception e) {
+            return NodeExecutionResult.failed(e).setNodeId(nodeId).setStartTime(startTime).setEndTime(Instant.now());
+        } finally {
+            // 记录节点耗时，用于按耗时加权计算优先级
+            this.plan.recordNodeDuration(nodeIndex, (System.nanoTime() - startNanos) / 1000L);
+        }
+    }
+
+    /**
+     * 提交不是 {@link NodeTask} 的任务：线程池拒绝提交，或公平调度器关闭时丢弃了尚未派发的任务，都调用 onRejected
+     */
+    private void execute(Runnable task, Consumer<RejectedExecutionException> onRejected) {
+        try {
+            this.taskExecutor.execute(FairTaskScheduler.rejectable(task, onRejected));
+        } catch (RejectedExecutionException e) {
+            onRejected.accept(e);
+        }
+    }
+
+    /**
+     * 在工作线程中组装输入并发出异步调用。调用发出后归还执行槽位，工作线程不等待调用完成
+     */
+    private void startAsyncCall(NodeTask task, AsyncTaskNode runNode) {
+        if (task.isDone()) {
+            return;
+        }
+        task.markStarted();
+        final int nodeIndex = task.nodeIndex;
+        final Instant startTime = Instant.now();
+        final String cacheKey;
+        final CompletableFuture<NodeExecutionResult> future;
+        final long startNanos = System.nanoTime();
+        try {
+            final NodeInputs inputs = assembleInputs(nodeIndex);
+            cacheKey = this.nodeResultCache != null ? nodeCacheKey(nodeIndex, inputs) : null;
+            final NodeExecutionResult cached = lookupCache(nodeIndex, cacheKey, startTime);
+            if (cached != null) {
+                releaseStreamingInputs(nodeIndex);
+                task.complete(cached);
+                return;
+            }
+            future = runNode.callAsync(this.context, inputs);
+            if (future == null) {
+                throw new FlowExecuteException("Async node <" + runNode.getId() + "> returned null future");
+            }
+        } catch (Exception e) {
+            releaseStreamingInputs(nodeIndex);
+            task.complete(NodeExecutionResult.failed(e).setNodeId(this.compiledGraph.getNodeId(nodeIndex))
+                    .setStartTime(startTime).setEndTime(Instant.now()));
+            return;
+        }
+
+        task.awaitCall(future);
+        // 等待响应不占用执行槽位，让就绪队列中的其他节点继续执行
+        task.releaseSlotOnce();
+        submitReadyTasks();
+
+        future.whenComplete((result, error) -> {
+            // 回调可能在客户端的线程中执行，回到工作线程处理结果和调度下游节点
+            final Runnable finish = () -> finishAsyncCall(task, result, error, cacheKey, startTime, startNanos);
+            execute(finish, e -> finish.run());
+        });
+    }
+
+    private void finishAsyncCall(NodeTask task, NodeExecutionResult result, Throwable error,
+                                 String cacheKey, Instant startTime, long startNanos) {
+        final int nodeIndex = task.nodeIndex;
+        NodeExecutionResult execResult;
+        try {
+            if (error != null) {
+                final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                execResult = NodeExecutionResult.failed(cause).setNodeId(this.compiledGraph.getNodeId(nodeIndex))
+                        .setStartTime(startTime).setEndTime(Instant.now());
+            } else {
+                execResult = completeResult(nodeIndex, result, cacheKey, startTime);
+            }
+        } catch (Exception e) {
+            execResult = NodeExecutionResult.failed(e).setNodeId(this.compiledGraph.getNodeId(nodeIndex))
+                    .setStartTime(startTime).setEndTime(Instant.now());
+        } finally {
+            this.plan.recordNodeDuration(nodeIndex, (System.nanoTime() - startNanos) / 1000L);
+            releaseStreamingInputs(nodeIndex);
+        }
+        task.complete(execResult);
+    }
+
+    /**
+     * 查找节点结果缓存
+     * @return 未命中时返回 null
+     */
+    private NodeExecutionResult lookupCache(int nodeIndex, String cacheKey, Instant startTime) {
+        if (cacheKey == null) {
+            return null;
+        }
+        final String nodeId = this.compiledGraph.getNodeId(nodeIndex);
+        final CachedNodeResult cached = this.nodeResultCache.get(cacheKey);
+        if (cached == null) {
+            notifyNodeCacheMiss(nodeId);
+            return null;
+        }
+        notifyNodeCacheHit(nodeId);
+        return toExecutionResult(cached).setNodeId(nodeId).setStartTime(startTime).setEndTime(Instant.now());
+    }
+
+    /**
+     * 节点调用返回后的处理：补全结果信息、溢写超大的输出、写入节点结果缓存
+     */
+    private NodeExecutionResult completeResult(int nodeIndex, NodeExecutionResult result, String cacheKey, Instant startTime) {
+        if (result == null) {
+            result = NodeExecutionResult.success();
+        }
+        result.setNodeId(this.compiledGraph.getNodeId(nodeIndex)).setStartTime(startTime).setEndTime(Instant.now());
+        // 先溢写超过阈值的输出，溢写后的结果不再写入缓存，避免缓存继续持有原来的大数据
+        final PayloadSpiller spiller = this.payloadSpiller;
+        if (spiller != null && result.isSuccess()) {
+            spiller.spill(result);
+        }
+        if (cacheKey != null && result.isSuccess() && !result.isSkipped()
+                && !hasStreamingOutput(result) && !hasSpilledOutput(result)) {
+            this.nodeResultCache.put(cacheKey, toCachedResult(result));
+        }
+        return result;
+    }
+
+    /**
+     * 执行一个批次的 {@link BatchableTaskNode} 节点(在任务线程池中执行)。
+     * 已被取消的节点不再执行，缓存命中的节点直接完成，其余节点通过第一个节点的 callBatch() 一次调用执行。
+     */
+    private void runBatch(List<Integer> nodeIndexes) {
+        final Instant startTime = Instant.now();
+        final List<Integer> members = new ArrayList<>(nodeIndexes.size());
+        final List<String> cacheKeys = new ArrayList<>(nodeIndexes.size());
+        final List<BatchableTaskNode.BatchItem> items = new ArrayList<>(nodeIndexes.size());
+        final NodeExecutionResult[] results = new NodeExecutionResult[nodeIndexes.size()];
+        final Throwable[] errors = new Throwable[nodeIndexes.size()];
+        // 已开始的节点，无论之后是否出现异常，都在 finally 中完成或失败，否则会一直处于执行中
+        final List<Integer> finished = new ArrayList<>(nodeIndexes.size());
+
+        try {
+            for (int nodeIndex : nodeIndexes) {
+                final NodeTask task = this.runningTasks.get(nodeIndex);
+                if (task == null || task.isDone()) {
+                    continue;
+                }
+                task.markStarted();
+                finished.add(nodeIndex);
+                final int k = finished.size() - 1;
+                final NodeInputs inputs;
+                final String cacheKey;
+                try {
+                    inputs = assembleInputs(nodeIndex);
+                    cacheKey = this.nodeResultCache != null ? nodeCacheKey(nodeIndex, inputs) : null;
+                    final NodeExecutionResult cached = lookupCache(nodeIndex, cacheKey, startTime);
+                    if (cached != null) {
+                        results[k] = cached;
+                        continue;
+                    }
+                } catch (Exception e) {
+                    // 只有这个节点失败(按普通的失败处理)，不影响批次中的其他节点
+                    errors[k] = e;
+                    continue;
+                }
+                members.add(k);
+                cacheKeys.add(cacheKey);
+                items.add(new BatchableTaskNode.BatchItem((BatchableTaskNode) this.plan.getNode(nodeIndex), inputs));
+            }
+            if (items.isEmpty()) {
+                return;
+            }
+
+            final long startNanos = System.nanoTime();
+            try {
+                final List<NodeExecutionResult> batchResults = items.get(0).getNode().callBatch(this.context, items);
+                if (batchResults == null || batchResults.size() != items.size()) {
+                    throw new FlowExecuteException("Batch call of <" + items.get(0).getNode().getBatchKey() + "> returned "
+                            + (batchResults == null ? "null" : batchResults.size() + " results") + " for " + items.size() + " nodes");
+                }
+                for (int k = 0; k < items.size(); k++) {
+                    results[members.get(k)] = completeResult(finished.get(members.get(k)), batchResults.get(k), cacheKeys.get(k), startTime);
+                }
+            } catch (Exception e) {
+                // 整个批次失败，每个节点按普通的失败处理(各自重试)
+                for (int k = 0; k < items.size(); k++) {
+                    results[members.get(k)] = NodeExecutionResult.failed(e).setNodeId(items.get(k).getNodeId())
+                            .setStartTime(startTime).setEndTime(Instant.now());
+                }
+            } finally {
+                // 批次的耗时就是每个节点的耗时
+                final long durationMicros = (System.nanoTime() - startNanos) / 1000L;
+                for (int k = 0; k < items.size(); k++) {
+                    this.plan.recordNodeDuration(finished.get(members.get(k)), durationMicros);
+                }
+            }
+        } finally {
+            for (int k = 0; k < finished.size(); k++) {
+                final int nodeIndex = finished.get(k);
+                releaseStreamingInputs(nodeIndex);
+                final NodeTask task = this.runningTasks.get(nodeIndex);
+                if (task != null) {
+                    // 结果为 null 说明组装输入等出现了异常
+                    if (results[k] != null) {
+                        task.complete(results[k]);
+                    } else {
+                        task.fail(errors[k] != null ? errors[k] : new FlowExecuteException("Batch execution aborted"));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 线程池拒绝执行批次时，批次中的节点按取消处理
+     */
+    private void rejectBatch(List<Integer> nodeIndexes) {
+        for (int nodeIndex : nodeIndexes) {
+            final NodeTask task = this.runningTasks.get(nodeIndex);
+            if (task != null) {
+                LOG.error(">> ERROR: Batch task <{}> submit failed.", this.compiledGraph.getNodeId(nodeIndex));
+                task.cancel(false);
+            }
+        }
+    }
+
+    private static boolean hasStreamingOutput(NodeExecutionResult result) {
+        for (NodeOutput out : result.getNodeOutputs().values()) {
+            if (out instanceof StreamingNodeOutput) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasSpilledOutput(NodeExecutionResult result) {
+        for (NodeOutput out : result.getNodeOutputs().values()) {
+            if (out instanceof SpilledNodeOutput) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 为节点的每个流式输出登记会订阅它的下游节点(输入连接到该输出端口、且尚未执行的下游节点)
+     */
+    private void bindStreamingOutputs(int nodeIndex, NodeExecutionResult result) {
+        if (!hasStreamingOutput(result)) {
+            return;
+        }
+        final CompiledGraph cg = this.compiledGraph;
+        final String nodeId = cg.getNodeId(nodeIndex);
+        result.getNodeOutputs().forEach((port, out) -> {
+            if (!(out instanceof StreamingNodeOutput)) {
+                return;
+            }
+            final List<String> consumers = new ArrayList<>();
+            for (int p = cg.getDownstreamStart(nodeIndex), end = cg.getDownstreamEnd(nodeIndex); p < end; p++) {
+                final int dependent = cg.getDownstreamAt(p);
+                if (this.nodeStates.get(dependent) != TaskState.PENDING) {
+                    continue;
+                }
+                for (int q = cg.getInputStart(dependent), qEnd = cg.getInputEnd(dependent); q < qEnd; q++) {
+                    final GNodeInput input = cg.getInputAt(q);
+                    if (nodeId.equals(input.getSourceNodeId()) && Objects.equals(port, input.getSourcePort())) {
+                        consumers.add(cg.getNodeId(dependent));
+                        break;
+                    }
+                }
+            }
+            ((StreamingNodeOutput<?>) out).bindConsumers(consumers);
+        });
+    }
+
+    /**
+     * 节点已执行结束或被跳过，上游的流式输出不再等待它订阅
+     */
+    private void releaseStreamingInputs(int nodeIndex) {
+        final CompiledGraph cg = this.compiledGraph;
+        final String nodeId = cg.getNodeId(nodeIndex);
+        for (int p = cg.getInputStart(nodeIndex), end = cg.getInputEnd(nodeIndex); p < end; p++) {
+            final GNodeInput input = cg.getInputAt(p);
+            final NodeExecutionResult result = this.nodeResults.get(input.getSourceNodeIndex());
+            final NodeOutput out = result != null ? result.getNodeOutput(input.getSourcePort()) : null;
+            if (out instanceof StreamingNodeOutput) {
+                ((StreamingNodeOutput<?>) out).releaseConsumer(nodeId);
+            }
+        }
+    }
+
+    /**
+     * 流程未成功完成时取消尚未结束的流式输出，阻塞中的生产者不会一直等待
+     */
+    private void cancelOpenStreams() {
+        for (int i = 0; i < this.plan.size(); i++) {
+            final NodeExecutionResult result = this.nodeResults.get(i);
+            if (result == null || !hasStreamingOutput(result)) {
+                continue;
+            }
+            for (NodeOutput out : result.getNodeOutputs().values()) {
+                if (out instanceof StreamingNodeOutput && !((StreamingNodeOutput<?>) out).isClosed()) {
+                    ((StreamingNodeOutput<?>) out).cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * 节点结果缓存的 key：节点类型 + 节点配置的哈希 + 节点输入的哈希
+     * @return 节点不可缓存或输入无法计算哈希时返回 null
+     */
+    private String nodeCacheKey(int nodeIndex, NodeInputs inputs) {
+        final String prefix = this.plan.getCacheKeyPrefix(nodeIndex);
+        if (prefix == null || inputs.hasStreams() || inputs.hasSpilled()) {
+            return null;
+        }
+        try {
+            return prefix + ":" + FlowPlan.canonicalHash(inputs.getPayloads());
+        } catch (FlowExecuteException e) {
+            LOG.debug(">> Inputs of node <{}> can not be hashed, cache bypassed: {}",
+                    this.compiledGraph.getNodeId(nodeIndex), e.getMessage());
+            return null;
+        }
+    }
+
+    private static CachedNodeResult toCachedResult(NodeExecutionResult result) {
+        final Map<String, NodeOutput> nodeOutputs = result.getNodeOutputs();
+        final Map<String, Object> outputs = new HashMap<>(nodeOutputs.size() * 2);
+        nodeOutputs.forEach((port, out) -> outputs.put(port, out != null ? out.getPayload() : null));
+        return new CachedNodeResult(outputs, result.getNextNodesToActivate() != null ? new ArrayList<>(result.getNextNodesToActivate()) : null);
+    }
+
+    private static NodeExecutionResult toExecutionResult(CachedNodeResult cached) {
+        final NodeExecutionResult result = NodeExecutionResult.success()
+                .setNextNodesToActivate(cached.getNextNodes());
+        cached.getOutputs().forEach((port, payload) -> result.addNodeOutput(port, new NodeOutput(payload)));
+        return result;
+    }
+
+    private void cancelAllRunningTasks() {
+        synchronized (this.stateLock) {
+            if (this.executionState == ExecutionState.RUNNING) {
+                this.executionState = ExecutionState.FAILED;
+            }
+        }
+        this.readyQueue.clear();
+        for (int i = 0; i < this.runningTasks.length(); i++) {
+            NodeTask task = this.runningTasks.get(i);
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+        tryFinishExecution();
+    }
+
+    /**
+     * 取消本次执行
+     */
+    public void cancel() {
+        synchronized (this.stateLock) {
+            if (this.executionState == ExecutionState.RUNNING) {
+                this.executionState = ExecutionState.CANCELLED;
+            }
+        }
+        cancelAllRunningTasks();
+        this.subRuns.forEach(FlowRun::cancel);
+    }
+
+    /**
+     * 在本次执行的线程池中执行一个子流程(如 ForEach 节点对每个元素执行的子图)。
+     * 子流程使用与本次执行相同的节点结果缓存、溢写和释放输出设置，不写入检查点，不通知执行监听器；
+     * 本次执行被取消时子流程一起被取消，取消返回的 future 会取消子流程。
+     *
+     * @param plan 子流程的执行计划
+     * @param context 子流程的执行上下文
+     * @return 子流程的执行结果
+     */
+    CompletableFuture<FlowExecutionResult> runSubFlow(FlowPlan plan, ExecutionContext context) {
+        if (this.executionState != ExecutionState.RUNNING) {
+            return CompletableFuture.failedFuture(new FlowExecuteException("Flow run <" + this.runId + "> is not running: " + this.executionState));
+        }
+        final FlowRun subRun = new FlowRun(null, plan, context, SUB_FLOW_LISTENER, this.taskExecutor, this.retryScheduler,
+                Math.min(this.maxInFlight, plan.getMaxParallelism()), this.priorityRefreshRuns);
+        subRun.setNodeResultCache(this.nodeResultCache);
+        subRun.setPayloadSpiller(this.payloadSpiller);
+        subRun.setReleaseOutputs(this.releaseOutputs);
+        subRun.setNodeMetrics(this.nodeMetrics);
+        subRun.setDistributedExecutor(this.distributedExecutor);
+
+        final CompletableFuture<FlowExecutionResult> future = new CompletableFuture<>();
+        this.subRuns.add(subRun);
+        subRun.getResultFuture().whenComplete((r, e) -> {
+            this.subRuns.remove(subRun);
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(r);
+            }
+        });
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) {
+                subRun.cancel();
+            }
+        });
+        subRun.start();
+        // 登记子流程时本次执行恰好被取消
+        if (this.executionState != ExecutionState.RUNNING) {
+            subRun.cancel();
+        }
+        return future;
+    }
+
+    private void finalizeExecution(FlowExecutionResult result) {
+        synchronized (this.stateLock) {
+            if (this.executionState == ExecutionState.RUNNING) {
+                if (this.completedTasksNum.get() >= this.plan.size()) {
+                    this.executionState = ExecutionState.COMPLETED;
+                    result.setSuccess(this.failedTasks.isEmpty());
+                } else {
+                    this.executionState = ExecutionState.FAILED;
+                    result.setSuccess(false);
+                }
+            } else {
+                result.setSuccess(false);
+            }
+        }
+
+        result.setEndTime(Instant.now());
+        result.setSucceedNodes(this.completedNodes);
+        result.setPeakRetainedBytes(this.peakRetainedBytes.get());
+        for (NodeExecutionResult f : this.failedTasks) {
+            result.addFailedNode(f.getNodeId(), f.getErrorMessage());
+        }
+    }
+
+    private void notifyNodeCompletion(NodeExecutionResult result) {
+        try {
+            this.executionListener.onNodeCompleted(result);
+        } catch (Exception e) {
+            LOG.error("Listener error", e);
+        }
+    }
+
+    private void notifyNodeCacheHit(String nodeId) {
+        try {
+            this.executionListener.onNodeCacheHit(nodeId);
+        } catch (Exception e) {
+            LOG.error("Listener error", e);
+        }
+    }
+
+    private void notifyNodeCacheMiss(String nodeId) {
+        try {
+            this.executionListener.onNodeCacheMiss(nodeId);
+        } catch (Exception e) {
+            LOG.error("Listener error", e);
+        }
+    }
+
+    private void notifyFlowCompletion(FlowExecutionResult result) {
+        try {
+            this.executionListener.onFlowCompleted(result);
+        } catch (Exception e) {
+            LOG.error("Listener error", e);
+        }
+    }
+
+    /**
+     * 节点任务：任务结束时(完成、异常或被取消)直接回调 {@link #onTaskDone(NodeTask)}，
+     * 由执行该任务的线程评估并提交下游节点，无需协调线程轮询完成队列。
+     */
+    private final class NodeTask extends FutureTask<NodeExecutionResult> {
+        private final int nodeIndex;
+        // 任务是否还占用执行槽位(等待批次的任务会提前归还)
+        private final AtomicBoolean holdingSlot = new AtomicBoolean(true);
+        // 异步节点正在进行的调用
+        private volatile Future<?> pendingCall;
+        // 提交和开始执行的时间(纳秒)，未开始执行时为 0
+        private final long submittedNanos = nanoTime();
+        private volatile long startedNanos;
+
+        NodeTask(int nodeIndex, Callable<NodeExecutionResult> callable) {
+            super(callable);
+            this.nodeIndex = nodeIndex;
+        }
+
+        void markStarted() {
+            if (this.startedNanos == 0) {
+                this.startedNanos = nanoTime();
+            }
+        }
+
+        @Override
+        public void run() {
+            markStarted();
+            super.run();
+        }
+
+        /**
+         * 归还任务占用的执行槽位，只会归还一次
+         */
+        void releaseSlotOnce() {
+            if (this.holdingSlot.compareAndSet(true, false)) {
+                releaseSlot();
+            }
+        }
+
+        /**
+         * 由批次执行设置结果(任务已被取消时忽略)
+         */
+        void complete(NodeExecutionResult result) {
+            set(result);
+        }
+
+        void fail(Throwable error) {
+            setException(error);
+        }
+
+        /**
+         * 记录异步节点正在进行的调用，任务被取消时一并取消
+         */
+        void awaitCall(Future<?> call) {
+            this.pendingCall = call;
+            if (isCancelled()) {
+                call.cancel(true);
+            }
+        }
+
+        @Override
+        protected void done() {
+            final Future<?> call = this.pendingCall;
+            if (call != null && isCancelled()) {
+                call.cancel(true);
+            }
+            onTaskDone(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FlowRun{" +
+                "runId='" + runId + '\'' +
+                ", planKey='" + plan.getPlanKey() + '\'' +
+                ", state=" + executionState +
+                '}';
+    }
+}
@@ -0,0 +1,116 @@
+package com.myweb.workflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 按批量 key 收集就绪的 {@link BatchableTaskNode} 节点(节点下标)：
+ * 批次达到最大数量时立即执行，否则在时间窗口到期时执行；批次在任务线程池中执行。
+ *
+ * @author yswang
+ */
+final class NodeBatcher {
+    private final ScheduledExecutorService timer;
+    private final Executor executor;
+    private final Consumer<List<Integer>> batchRunner;
+    private final Consumer<List<Integer>> rejectedHandler;
+
+    // 正在收集的批次 <batchKey, Batch>
+    private final Map<String, Batch> pending = new HashMap<>();
+
+    /**
+     * @param timer 时间窗口到期的调度器
+     * @param executor 执行批次的线程池
+     * @param batchRunner 执行一个批次
+     * @param rejectedHandler 线程池拒绝执行时处理批次中的节点
+     */
+    NodeBatcher(ScheduledExecutorService timer, Executor executor,
+                Consumer<List<Integer>> batchRunner, Consumer<List<Integer>> rejectedHandler) {
+        this.timer = timer;
+        this.executor = executor;
+        this.batchRunner = batchRunner;
+        this.rejectedHandler = rejectedHandler;
+    }
+
+    /**
+     * 加入一个就绪节点
+     *
+     * @param batchKey 批量 key
+     * @param nodeIndex 节点下标
+     * @param maxBatchSize 批次的最大节点数
+     * @param windowMillis 收集时间窗口(毫秒)
+     */
+    void add(String batchKey, int nodeIndex, int maxBatchSize, long windowMillis) {
+        List<Integer> ready = null;
+        boolean scheduleFlush = false;
+        final Batch batch;
+        synchronized (this) {
+            Batch current = this.pending.get(batchKey);
+            if (current == null) {
+                current = new Batch();
+                this.pending.put(batchKey, current);
+                scheduleFlush = windowMillis > 0;
+            }
+            current.nodeIndexes.add(nodeIndex);
+            if (current.nodeIndexes.size() >= Math.max(1, maxBatchSize) || windowMillis <= 0) {
+                this.pending.remove(batchKey);
+                ready = current.nodeIndexes;
+                scheduleFlush = false;
+                if (current.flushFuture != null) {
+                    current.flushFuture.cancel(false);
+                }
+            }
+            batch = current;
+        }
+
+        if (ready != null) {
+            dispatch(ready);
+            return;
+        }
+        if (scheduleFlush) {
+            try {
+                final ScheduledFuture<?> future = this.timer.schedule(() -> flush(batchKey, batch), windowMillis, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    batch.flushFuture = future;
+                }
+            } catch (RejectedExecutionException e) {
+                flush(batchKey, batch);
+            }
+        }
+    }
+
+    private void flush(String batchKey, Batch batch) {
+        synchronized (this) {
+            // 已因达到最大数量而执行
+            if (this.pending.get(batchKey) != batch) {
+                return;
+            }
+            this.pending.remove(batchKey);
+        }
+        dispatch(batch.nodeIndexes);
+    }
+
+    private void dispatch(List<Integer> nodeIndexes) {
+        // 公平调度器关闭时丢弃尚未派发的批次，同样交给 rejectedHandler，批次中的节点不会一直处于执行中
+        final Runnable task = FairTaskScheduler.rejectable(() -> this.batchRunner.accept(nodeIndexes),
+                e -> this.rejectedHandler.accept(nodeIndexes));
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            this.rejectedHandler.accept(nodeIndexes);
+        }
+    }
+
+    private static final class Batch {
+        private final List<Integer> nodeIndexes = new ArrayList<>();
+        private ScheduledFuture<?> flushFuture;
+    }
+}
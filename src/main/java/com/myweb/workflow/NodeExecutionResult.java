@@ -13,13 +13,18 @@ public class NodeExecutionResult {
     private final Throwable error;
     private String errorMessage = "";
     private boolean skipped = false;
-    // 此节点执行后，待激活的后续节点(分支节点需要设置此值)
-    private Set<String> nextNodesToActivate = new HashSet<>();
+    // 此节点执行后，待激活的后续节点(分支节点需要设置此值)：null 表示激活所有下游节点，空集合表示不激活任何下游节点
+    private Set<String> nextNodesToActivate;
     // 节点的输出<Port, NodeOutput>
     private Map<String, NodeOutput> nodeOutputs = new HashMap<>();
+    // 执行过程中是否有输出端口的数据已被释放(所有消费者都已执行结束)
+    private volatile boolean outputsReleased = false;
     private Instant startTime;
     private Instant endTime;
 
+    // 已释放的输出端口上的占位对象
+    private static final NodeOutput RELEASED = new NodeOutput();
+
     private NodeExecutionResult(boolean success, Throwable error) {
         this.success = success;
         this.error = error;
@@ -58,14 +63,19 @@ public class NodeExecutionResult {
         return error;
     }
 
+    /**
+     * 设置待激活的后续节点，其他下游节点被跳过
+     *
+     * @param nextNodeIds 为 null 时激活所有下游节点；为空时所有下游节点都被跳过(如分支节点没有选中任何分支)
+     */
     public NodeExecutionResult setNextNodesToActivate(Collection<String> nextNodeIds) {
-        this.nextNodesToActivate.clear();
-        if (nextNodeIds != null && nextNodeIds.size() > 0) {
-            this.nextNodesToActivate.addAll(nextNodeIds);
-        }
+        this.nextNodesToActivate = nextNodeIds != null ? new HashSet<>(nextNodeIds) : null;
         return this;
     }
 
+    /**
+     * @return 待激活的后续节点，null 表示激活所有下游节点
+     */
     public Collection<String> getNextNodesToActivate() {
         return this.nextNodesToActivate;
     }
@@ -87,7 +97,62 @@ public class NodeExecutionResult {
      * 获取指定输出端口上的输出数据
      */
     public NodeOutput getNodeOutput(String outputPort) {
-        return this.nodeOutputs.get(outputPort);
+        final NodeOutput output = this.nodeOutputs.get(outputPort);
+        return output != RELEASED ? output : null;
+    }
+
+    /**
+     * 获取所有输出端口上的输出数据<Port, NodeOutput>(只读，不包括已释放的端口)
+     */
+    public Map<String, NodeOutput> getNodeOutputs() {
+        if (!this.outputsReleased) {
+            return Collections.unmodifiableMap(this.nodeOutputs);
+        }
+        synchronized (this) {
+            final Map<String, NodeOutput> outputs = new HashMap<>(this.nodeOutputs);
+            outputs.values().removeIf(output -> output == RELEASED);
+            return Collections.unmodifiableMap(outputs);
+        }
+    }
+
+    /**
+     * 是否有输出端口的数据在执行过程中已被释放
+     */
+    public boolean isOutputsReleased() {
+        return this.outputsReleased;
+    }
+
+    /**
+     * 释放输出端口上的数据(替换为占位对象，不改变 Map 的结构，并发读取的线程不受影响)
+     *
+     * @return 被释放的输出，端口不存在或已释放时返回 null
+     */
+    synchronized NodeOutput releaseNodeOutput(String outputPort) {
+        final NodeOutput output = this.nodeOutputs.get(outputPort);
+        if (output == null || output == RELEASED) {
+            return null;
+        }
+        this.nodeOutputs.put(outputPort, RELEASED);
+        this.outputsReleased = true;
+        return output;
+    }
+
+    /**
+     * 复制执行结果(输出端口的 Map 是新的，输出数据共享)，释放副本的输出不影响原结果
+     */
+    NodeExecutionResult copy() {
+        final NodeExecutionResult copy = new NodeExecutionResult(this.success, this.error);
+        copy.nodeId = this.nodeId;
+        copy.errorMessage = this.errorMessage;
+        copy.skipped = this.skipped;
+        copy.nextNodesToActivate = this.nextNodesToActivate != null ? new HashSet<>(this.nextNodesToActivate) : null;
+        synchronized (this) {
+            copy.nodeOutputs = new HashMap<>(this.nodeOutputs);
+        }
+        copy.outputsReleased = this.outputsReleased;
+        copy.startTime = this.startTime;
+        copy.endTime = this.endTime;
+        return copy;
     }
 
     public NodeExecutionResult setErrorMessage(String message) {
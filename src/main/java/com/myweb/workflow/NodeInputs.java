@@ -4,15 +4,45 @@ import java.util.*;
 
 /**
  * 此节点上的输入
+ * <p>
+ * 由执行计划编译的输入槽位(见 {@link FlowPlan.InputWiring})组装时，输入数据保存在一个扁平的数组中，
+ * 同一个端口的输入占用连续的槽位，组装时不创建 Map 和 List；节点重试时同一个对象会被清空后重新组装。
+ * <p>
+ * 通过 {@link #getInput(String, Class)} 读取上游的流式输出时，等待数据流结束并物化为完整的数据，
+ * 需要边产生边消费的节点使用 {@link #getStream(String)}，并且要在物化读取任何输入之前订阅(见 {@link #subscribeStreams()})。
  */
 public class NodeInputs {
-    /**
-     * 一个端口上可能有多个输入
-     * 一个节点可能有多个输入端口
-     */
-    private Map<String, List<NodeOutput>> portInputs = new HashMap<>();
+    private static final String[] NO_PORTS = new String[0];
+    private static final int[] NO_PORT_STARTS = new int[]{0};
+
+    // 一个节点可能有多个输入端口，一个端口上可能有多个输入：
+    // 预编译的输入端口，以及每个端口在 slots 中的起始位置
+    private final String[] ports;
+    private final int[] portStarts;
+    // 输入数据，每个端口已写入的输入数(跳过的上游不占用槽位)
+    private final NodeOutput[] slots;
+    private final int[] portCounts;
+    // 不在预编译端口中的输入(如开始节点的流程输入)，按需创建
+    private Map<String, List<NodeOutput>> extraInputs;
+    // 读取这些输入的节点，订阅流式输入时使用
+    private final String consumerNodeId;
+    // 是否已为物化读取订阅了全部流式输入
+    private boolean streamsSubscribed = false;
 
     public NodeInputs() {
+        this(NO_PORTS, NO_PORT_STARTS, null);
+    }
+
+    NodeInputs(FlowPlan.InputWiring wiring, String consumerNodeId) {
+        this(wiring.ports, wiring.portStarts, consumerNodeId);
+    }
+
+    private NodeInputs(String[] ports, int[] portStarts, String consumerNodeId) {
+        this.ports = ports;
+        this.portStarts = portStarts;
+        this.consumerNodeId = consumerNodeId;
+        this.slots = new NodeOutput[portStarts[ports.length]];
+        this.portCounts = new int[ports.length];
     }
 
     /**
@@ -23,21 +53,64 @@ public class NodeInputs {
      * @return this
      */
     NodeInputs addInput(String inputPort, NodeOutput output) {
-        this.portInputs.computeIfAbsent(inputPort, k -> new ArrayList<>()).add(output);
+        final int portIndex = indexOfPort(inputPort);
+        if (portIndex >= 0) {
+            return addInput(portIndex, output);
+        }
+        if (this.extraInputs == null) {
+            this.extraInputs = new HashMap<>(4);
+        }
+        this.extraInputs.computeIfAbsent(inputPort, k -> new ArrayList<>()).add(output);
         return this;
     }
 
+    /**
+     * 在预编译的输入端口上添加输入数据
+     *
+     * @param portIndex 端口下标(见 {@link FlowPlan.InputWiring#ports})
+     * @param output 前置依赖节点的输出
+     * @return this
+     */
+    NodeInputs addInput(int portIndex, NodeOutput output) {
+        this.slots[this.portStarts[portIndex] + this.portCounts[portIndex]++] = output;
+        return this;
+    }
+
+    /**
+     * 清空输入数据，以便重新组装
+     */
+    void reset() {
+        Arrays.fill(this.slots, null);
+        Arrays.fill(this.portCounts, 0);
+        this.extraInputs = null;
+        this.streamsSubscribed = false;
+    }
+
     /**
      * 获取指定输入端口上的数据
      * @param inputPort 输入端口
      * @return  数据
      */
     public List<NodeOutput> getAllInputs(String inputPort) {
-        return this.portInputs.getOrDefault(inputPort, Collections.emptyList());
+        final int portIndex = indexOfPort(inputPort);
+        final List<NodeOutput> extra = this.extraInputs != null ? this.extraInputs.get(inputPort) : null;
+        if (portIndex < 0 || this.portCounts[portIndex] == 0) {
+            return extra != null ? Collections.unmodifiableList(extra) : Collections.emptyList();
+        }
+        final List<NodeOutput> slotInputs = new SlotList(this.slots, this.portStarts[portIndex], this.portCounts[portIndex]);
+        if (extra == null) {
+            return slotInputs;
+        }
+        final List<NodeOutput> all = new ArrayList<>(slotInputs.size() + extra.size());
+        all.addAll(slotInputs);
+        all.addAll(extra);
+        return Collections.unmodifiableList(all);
     }
 
     /**
      * 获取指定端口的第一个输入数据，并转为指定类型 (最常用场景)
+     * <p>
+     * 流式输入会阻塞到数据流结束，见 {@link StreamingNodeOutput#getPayload(String, Class)}
      * @param inputPort 输入端口
      * @param type 数据类型
      */
@@ -48,9 +121,44 @@ public class NodeInputs {
         }
         // 默认取第一个，因为大部分场景是 1对1 传递
         NodeOutput nodeOutput = outputs.get(0);
+        if (nodeOutput instanceof StreamingNodeOutput) {
+            subscribeStreams();
+            return ((StreamingNodeOutput<?>) nodeOutput).getPayload(this.consumerNodeId, type);
+        }
         return nodeOutput != null ? nodeOutput.getPayload(type) : null;
     }
 
+    /**
+     * 为本节点订阅全部尚未订阅的流式输入，用于物化读取(第一次物化读取流式输入时自动调用，之后只执行一次)。
+     * <p>
+     * 同一个上游的多个数据流(如 LLM 节点的 output 和 think)由一个生产者线程写入，每个数据流都要等
+     * 登记的下游节点全部订阅后才开始产生数据：若先阻塞读取一个数据流、读完再订阅另一个，
+     * 生产者可能正阻塞在另一个数据流的订阅闸门上，两者互相等待直到闸门超时。
+     * 因此在阻塞读取之前先订阅全部流式输入，已通过 {@link StreamingNodeOutput#iterator(String)} 订阅的数据流不受影响。
+     */
+    public void subscribeStreams() {
+        if (this.streamsSubscribed) {
+            return;
+        }
+        this.streamsSubscribed = true;
+        for (NodeOutput slot : this.slots) {
+            subscribeStream(slot);
+        }
+        if (this.extraInputs != null) {
+            for (List<NodeOutput> outputs : this.extraInputs.values()) {
+                outputs.forEach(this::subscribeStream);
+            }
+        }
+    }
+
+    private void subscribeStream(NodeOutput output) {
+        // 流程之外的读取(没有下游节点ID)不计入订阅闸门，不会阻塞生产者
+        if (this.consumerNodeId != null && output instanceof StreamingNodeOutput<?> stream
+                && !stream.isSubscribedBy(this.consumerNodeId)) {
+            stream.collectAsync(this.consumerNodeId);
+        }
+    }
+
     /**
      * 默认端口 "input" 获取数据
      */
@@ -58,12 +166,125 @@ public class NodeInputs {
         return getInput(TaskNode.DEFAULT_INPUT_PORT_NAME, type);
     }
 
+    /**
+     * 获取指定端口上的第一个流式输入(上游节点的 {@link StreamingNodeOutput})
+     * @param inputPort 输入端口
+     * @return 端口上没有流式输入时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> StreamingNodeOutput<T> getStream(String inputPort) {
+        for (NodeOutput output : getAllInputs(inputPort)) {
+            if (output instanceof StreamingNodeOutput) {
+                return (StreamingNodeOutput<T>) output;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 是否有流式输入
+     */
+    public boolean hasStreams() {
+        return containsInstanceOf(StreamingNodeOutput.class);
+    }
+
+    /**
+     * 是否有写入临时文件的输入(见 {@link SpilledNodeOutput})
+     */
+    public boolean hasSpilled() {
+        return containsInstanceOf(SpilledNodeOutput.class);
+    }
+
+    private boolean containsInstanceOf(Class<? extends NodeOutput> type) {
+        for (int p = 0; p < this.ports.length; p++) {
+            for (int k = this.portStarts[p], end = k + this.portCounts[p]; k < end; k++) {
+                if (type.isInstance(this.slots[k])) {
+                    return true;
+                }
+            }
+        }
+        if (this.extraInputs != null) {
+            for (List<NodeOutput> outputs : this.extraInputs.values()) {
+                for (NodeOutput output : outputs) {
+                    if (type.isInstance(output)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 各输入端口上的原始数据(端口 → 数据列表)，用于计算输入的哈希
+     */
+    Map<String, List<Object>> getPayloads() {
+        final Map<String, List<Object>> payloads = new HashMap<>((this.ports.length + 1) * 2);
+        for (int p = 0; p < this.ports.length; p++) {
+            if (this.portCounts[p] > 0) {
+                payloads.put(this.ports[p], toPayloads(getAllInputs(this.ports[p])));
+            }
+        }
+        if (this.extraInputs != null) {
+            this.extraInputs.forEach((port, outputs) -> payloads.computeIfAbsent(port, k -> toPayloads(outputs)));
+        }
+        return payloads;
+    }
+
+    private static List<Object> toPayloads(List<NodeOutput> outputs) {
+        final List<Object> values = new ArrayList<>(outputs.size());
+        for (NodeOutput out : outputs) {
+            values.add(out != null ? out.getPayload() : null);
+        }
+        return values;
+    }
+
     public boolean isEmpty() {
-    	return this.portInputs.isEmpty();
+        for (int count : this.portCounts) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return this.extraInputs == null || this.extraInputs.isEmpty();
     }
 
     public boolean isEmpty(String inputPort) {
-        return this.portInputs.getOrDefault(inputPort, Collections.emptyList()).isEmpty();
+        return getAllInputs(inputPort).isEmpty();
+    }
+
+    private int indexOfPort(String inputPort) {
+        // 节点的输入端口很少，线性查找即可
+        for (int i = 0; i < this.ports.length; i++) {
+            if (Objects.equals(this.ports[i], inputPort)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
+    /**
+     * 槽位数组中一个端口的输入(只读视图)
+     */
+    private static final class SlotList extends AbstractList<NodeOutput> implements RandomAccess {
+        private final NodeOutput[] slots;
+        private final int offset;
+        private final int size;
+
+        SlotList(NodeOutput[] slots, int offset, int size) {
+            this.slots = slots;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public NodeOutput get(int index) {
+            Objects.checkIndex(index, this.size);
+            return this.slots[this.offset + index];
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package com.myweb.workflow;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 估算节点输出数据占用的堆内存(字节).
+ * <p>
+ * 只按常见的数据类型(字符串、字节数组、数字、Map/Collection/数组)粗略估算，不使用反射遍历对象字段；
+ * 其他类型的对象按固定大小计算。结果只用于观察执行过程中输出数据的内存占用，不是精确值。
+ *
+ * @author yswang
+ */
+final class PayloadSizeEstimator {
+    private static final int MAX_DEPTH = 16;
+
+    private static final long OBJECT_HEADER = 16;
+    private static final long REFERENCE = 8;
+    private static final long STRING_OVERHEAD = 40;
+    private static final long BOXED_SIZE = 16;
+    private static final long UNKNOWN_OBJECT_SIZE = 64;
+    private static final long MAP_OVERHEAD = 48;
+    private static final long MAP_ENTRY_OVERHEAD = 32;
+    private static final long COLLECTION_OVERHEAD = 40;
+
+    private PayloadSizeEstimator() {
+    }
+
+    static long estimate(Object value) {
+        return estimate(value, 0);
+    }
+
+    /**
+     * 估算节点输出占用的堆内存：流式输出不计算，写入临时文件的输出只计算对象本身
+     */
+    static long estimate(NodeOutput output) {
+        if (output == null || output instanceof StreamingNodeOutput) {
+            return 0;
+        }
+        if (output instanceof SpilledNodeOutput) {
+            return UNKNOWN_OBJECT_SIZE;
+        }
+        return estimate(output.getPayload(), 0);
+    }
+
+    private static long estimate(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return STRING_OVERHEAD + 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return OBJECT_HEADER + ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum) {
+            return BOXED_SIZE;
+        }
+        if (depth >= MAX_DEPTH) {
+            return UNKNOWN_OBJECT_SIZE;
+        }
+        if (value instanceof Map) {
+            long size = MAP_OVERHEAD;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += MAP_ENTRY_OVERHEAD + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = COLLECTION_OVERHEAD;
+            for (Object element : (Collection<?>) value) {
+                size += REFERENCE + estimate(element, depth + 1);
+            }
+            return size;
+        }
+        if (value.getClass().isArray()) {
+            final int length = Array.getLength(value);
+            final Class<?> componentType = value.getClass().getComponentType();
+            if (componentType.isPrimitive()) {
+                return OBJECT_HEADER + (long) length * primitiveSize(componentType);
+            }
+            long size = OBJECT_HEADER + REFERENCE * length;
+            for (int i = 0; i < length; i++) {
+                size += estimate(Array.get(value, i), depth + 1);
+            }
+            return size;
+        }
+        return UNKNOWN_OBJECT_SIZE;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+}
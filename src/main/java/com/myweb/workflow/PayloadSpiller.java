@@ -0,0 +1,159 @@
+package com.myweb.workflow;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.myweb.workflow.exception.FlowExecuteException;
+
+/**
+ * 节点输出数据的溢写策略：超过大小阈值的 byte[]/CharSequence 输出写入临时文件，
+ * 替换为 {@link SpilledNodeOutput}，下游节点通过内存映射或流式读取获取数据，大数据不会长时间占用堆内存。
+ * <p>
+ * 节点成功返回后由引擎调用；写入失败时保留原来的输出(只记录日志)，不影响执行。
+ *
+ * @author yswang
+ */
+public class PayloadSpiller {
+    private static final Logger LOG = LoggerFactory.getLogger(PayloadSpiller.class);
+
+    public static final long DEFAULT_THRESHOLD_BYTES = 16L * 1024 * 1024;
+
+    private static final String FILE_PREFIX = "flow-spill-";
+    private static final int WRITE_CHUNK_CHARS = 64 * 1024;
+
+    private final long thresholdBytes;
+    private final Path dir;
+
+    private final AtomicLong spilledNum = new AtomicLong(0);
+    private final AtomicLong spilledBytes = new AtomicLong(0);
+
+    public PayloadSpiller() {
+        this(DEFAULT_THRESHOLD_BYTES, null);
+    }
+
+    /**
+     * @param thresholdBytes 输出数据(按堆内存估算：byte[] 为长度，文本为字符数 × 2)达到多少字节时写入文件
+     * @param dir 临时文件目录，为 null 时使用系统临时目录
+     */
+    public PayloadSpiller(long thresholdBytes, Path dir) {
+        this.thresholdBytes = Math.max(1, thresholdBytes);
+        this.dir = dir != null ? dir : Paths.get(System.getProperty("java.io.tmpdir"));
+        try {
+            Files.createDirectories(this.dir);
+        } catch (IOException e) {
+            throw new FlowExecuteException("Failed to create spill directory: " + this.dir, e);
+        }
+    }
+
+    /**
+     * 将节点执行结果中超过阈值的输出替换为 {@link SpilledNodeOutput}
+     */
+    void spill(NodeExecutionResult result) {
+        result.getNodeOutputs().forEach((port, out) -> {
+            final NodeOutput spilled = spill(out);
+            if (spilled != out) {
+                result.addNodeOutput(port, spilled);
+            }
+        });
+    }
+
+    /**
+     * 输出数据超过阈值时写入临时文件
+     * @return 写入文件后的输出；未超过阈值、不支持的数据类型或写入失败时返回原来的输出
+     */
+    public NodeOutput spill(NodeOutput output) {
+        if (output == null || output instanceof SpilledNodeOutput || output instanceof StreamingNodeOutput) {
+            return output;
+        }
+        final Object payload = output.getPayload();
+        final boolean isBytes = payload instanceof byte[];
+        final boolean isText = payload instanceof CharSequence;
+        if (!isBytes && !isText) {
+            return output;
+        }
+        final long heapBytes = isBytes ? ((byte[]) payload).length : 2L * ((CharSequence) payload).length();
+        if (heapBytes < this.thresholdBytes) {
+            return output;
+        }
+
+        Path file = null;
+        try {
+            file = Files.createTempFile(this.dir, FILE_PREFIX, isText ? ".txt" : ".bin");
+            final long length = isBytes ? writeBytes(file, (byte[]) payload) : writeText(file, (CharSequence) payload);
+            // UTF-8 中只有 ASCII 字符是单字节的，字节数等于字符数说明文本全部为 ASCII
+            final boolean ascii = isText && length == ((CharSequence) payload).length();
+            this.spilledNum.incrementAndGet();
+            this.spilledBytes.addAndGet(length);
+            return new SpilledNodeOutput(file, length, isText, ascii, true);
+        } catch (Exception e) {
+            LOG.warn(">> WARNING: Failed to spill payload of {} bytes, keep it in memory: {}", heapBytes, e.getMessage());
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignore) {
+                    // ignore
+                }
+            }
+            return output;
+        }
+    }
+
+    private static long writeBytes(Path file, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return bytes.length;
+    }
+
+    private static long writeText(Path file, CharSequence text) throws IOException {
+        // 分段编码写入，不生成完整的 UTF-8 字节数组
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int start = 0, len = text.length(); start < len; ) {
+                int end = Math.min(len, start + WRITE_CHUNK_CHARS);
+                // 不拆开代理对
+                if (end < len && Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+                writer.append(text, start, end);
+                start = end;
+            }
+        }
+        return Files.size(file);
+    }
+
+    public long getThresholdBytes() {
+        return this.thresholdBytes;
+    }
+
+    public Path getDir() {
+        return this.dir;
+    }
+
+    /**
+     * 已写入文件的输出数
+     */
+    public long getSpilledCount() {
+        return this.spilledNum.get();
+    }
+
+    /**
+     * 已写入文件的字节数
+     */
+    public long getSpilledBytes() {
+        return this.spilledBytes.get();
+    }
+}
@@ -0,0 +1,238 @@
+package com.myweb.workflow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.myweb.workflow.exception.FlowExecuteException;
+
+/**
+ * 数据保存在磁盘文件中的节点输出(见 {@link PayloadSpiller}).
+ * <p>
+ * 超大的输出数据(文件内容、提取的文本等)写入临时文件后不再占用堆内存，下游节点按需获取数据的视图：
+ * <ul>
+ *     <li>{@code InputStream}/{@code Reader}：按顺序读取文件，不会将数据全部加载到内存；</li>
+ *     <li>{@code ByteBuffer}：只读的内存映射视图(堆外)；</li>
+ *     <li>{@code CharSequence}：文本数据的视图，纯 ASCII 文本直接基于内存映射，其他文本会解码到内存；</li>
+ *     <li>{@code byte[]}/{@code String} 以及 {@link #getPayload()}：读取全部数据，与写入前的类型相同。</li>
+ * </ul>
+ * 文本数据以 UTF-8 编码保存。内存映射视图最大 2GB，超过时只能使用流式读取。
+ * 由引擎写入的临时文件在输出对象不再被引用(被 GC 回收)或输出被释放时删除。
+ *
+ * @author yswang
+ */
+public class SpilledNodeOutput extends NodeOutput {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Path file;
+    private final long length;
+    private final boolean text;
+    // 文本是否全部为 ASCII 字符(字节数等于字符数)
+    private final boolean ascii;
+    private final Cleaner.Cleanable cleanable;
+
+    private volatile MappedByteBuffer mapped;
+
+    /**
+     * 使用已有的文件作为节点输出(文件不会被删除)，适用于直接生成文件的节点
+     *
+     * @param file 数据文件
+     * @param text 是否为 UTF-8 文本
+     */
+    public SpilledNodeOutput(Path file, boolean text) {
+        this(file, size(file), text, false, false);
+    }
+
+    SpilledNodeOutput(Path file, long length, boolean text, boolean ascii, boolean temporary) {
+        this.file = file;
+        this.length = length;
+        this.text = text;
+        this.ascii = ascii;
+        this.cleanable = temporary ? CLEANER.register(this, new DeleteFile(file)) : null;
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    /**
+     * 数据的字节数
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    public boolean isText() {
+        return this.text;
+    }
+
+    /**
+     * 读取全部数据：文本返回 String，否则返回 byte[]
+     */
+    @Override
+    public Object getPayload() {
+        final byte[] bytes = readAllBytes();
+        return this.text ? new String(bytes, StandardCharsets.UTF_8) : bytes;
+    }
+
+    @Override
+    public void setPayload(Object payload) {
+        throw new UnsupportedOperationException("Payload of SpilledNodeOutput is read-only");
+    }
+
+    @Override
+    @JsonIgnore
+    public <T> T getPayload(Class<T> type) {
+        if (type == InputStream.class) {
+            return type.cast(openStream());
+        }
+        if (type == Reader.class) {
+            return type.cast(new InputStreamReader(openStream(), StandardCharsets.UTF_8));
+        }
+        if (type == ByteBuffer.class) {
+            return type.cast(mapped().asReadOnlyBuffer());
+        }
+        if (type == CharSequence.class && this.text) {
+            return type.cast(this.ascii ? new AsciiCharSequence(mapped().asReadOnlyBuffer()) : StandardCharsets.UTF_8.decode(mapped().asReadOnlyBuffer()));
+        }
+        if (type.isAssignableFrom(this.text ? String.class : byte[].class)) {
+            return type.cast(getPayload());
+        }
+        throw new ClassCastException("SpilledNodeOutput payload is type of " +
+                (this.text ? String.class : byte[].class).getName() + ", but requested " + type.getName());
+    }
+
+    /**
+     * 删除由引擎写入的临时文件(使用已有文件创建的输出不会删除)，删除后不能再读取数据
+     */
+    void delete() {
+        if (this.cleanable != null) {
+            this.cleanable.clean();
+        }
+    }
+
+    private InputStream openStream() {
+        try {
+            return Files.newInputStream(this.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open spilled payload: " + this.file, e);
+        }
+    }
+
+    private byte[] readAllBytes() {
+        if (this.length > Integer.MAX_VALUE - 8) {
+            throw new FlowExecuteException("Spilled payload is too large to load into memory: " + this.length + " bytes");
+        }
+        try {
+            return Files.readAllBytes(this.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read spilled payload: " + this.file, e);
+        }
+    }
+
+    private MappedByteBuffer mapped() {
+        MappedByteBuffer buffer = this.mapped;
+        if (buffer == null) {
+            if (this.length > Integer.MAX_VALUE) {
+                throw new FlowExecuteException("Spilled payload is too large to map: " + this.length + " bytes");
+            }
+            // 并发时可能映射多次，结果相同
+            try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, this.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map spilled payload: " + this.file, e);
+            }
+            this.mapped = buffer;
+        }
+        return buffer;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read size of file: " + file, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpilledNodeOutput{" +
+                "file=" + file +
+                ", length=" + length +
+                ", text=" + text +
+                '}';
+    }
+
+    /**
+     * 删除临时文件的清理动作(不能引用输出对象本身)
+     */
+    private static final class DeleteFile implements Runnable {
+        private final Path file;
+
+        DeleteFile(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Files.deleteIfExists(this.file);
+            } catch (IOException e) {
+                // 临时目录中的文件，删除失败不影响执行
+            }
+        }
+    }
+
+    /**
+     * 基于内存映射的 ASCII 文本视图，按下标访问字符为 O(1)
+     */
+    private static final class AsciiCharSequence implements CharSequence {
+        private final ByteBuffer bytes;
+
+        AsciiCharSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return this.bytes.remaining();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) (this.bytes.get(this.bytes.position() + index) & 0x7f);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+            }
+            final ByteBuffer slice = this.bytes.duplicate();
+            slice.position(this.bytes.position() + start).limit(this.bytes.position() + end);
+            return new AsciiCharSequence(slice.slice());
+        }
+
+        @Override
+        public String toString() {
+            final byte[] chars = new byte[length()];
+            this.bytes.duplicate().get(chars);
+            return new String(chars, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.myweb.workflow;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * 流式节点输出：输出数据是一个逐项产生的数据流({@link Flow.Publisher})，而不是一个完整的 payload.
+ * <p>
+ * 产生流式输出的节点(如 LLM 节点)在 {@link TaskNode#call(ExecutionContext, NodeInputs)} 中创建本对象并立即返回，
+ * 之后由其他线程(如 HTTP 客户端的回调线程)调用 {@link #emit(Object)} 逐项写入数据，最后调用 {@link #complete()}。
+ * 节点返回后下游节点马上被调度，下游节点通过 {@link NodeInputs#getStream(String)} 获取数据流并订阅，
+ * 不必等上游产生全部数据，从而缩短链式节点的首字延迟。
+ * <p>
+ * 背压：每个订阅者的缓冲区大小有上限，任一订阅者的缓冲区满时 {@link #emit(Object)} 会阻塞，直到订阅者消费了数据。
+ * 数据流只支持一个生产者线程。
+ * <p>
+ * 订阅闸门：数据流不会回放已经产生的数据，因此在引擎登记的下游节点全部订阅(或执行结束、被跳过)之前，
+ * {@link #emit(Object)} 会阻塞等待，避免先产生的数据丢失。等待超过 gateTimeoutMillis 后不再等待已订阅的下游节点：
+ * 仍未订阅的下游节点之后订阅时立即收到 {@link TimeoutException}(不会拿到缺少开头数据的数据流)；
+ * 引擎还没有登记下游节点时数据流异常结束，{@link #emit(Object)} 抛出 IllegalStateException。
+ * 注意：不要在节点的 call() 方法中(返回之前)调用 {@link #emit(Object)}，此时下游节点还没有被调度。
+ * <p>
+ * 不需要流式处理的下游节点可以直接通过 {@link NodeInputs#getInput(Class)} 读取：等待数据流结束后物化为完整的数据
+ * (文本数据项拼接为 String，其他数据项为 List)，见 {@link #getPayload(String, Class)}；
+ * 所有物化读取共用一个订阅收集的结果，之后的读取不再订阅。
+ * 下游节点第一次物化读取流式输入时，{@link NodeInputs} 会同时为它订阅其他全部流式输入：
+ * 一个节点同时消费同一个上游的多个数据流(如 LLM 的 output 和 think)，逐个读取时不会因为后读取的数据流
+ * 尚未订阅而使生产者阻塞在订阅闸门上。因此需要边产生边消费的节点应当在读取其他输入之前先订阅数据流
+ * ({@link #iterator(String)})，物化读取之后再订阅的节点会收到 IllegalStateException。
+ * <p>
+ * 流式输出不会写入检查点和节点结果缓存；流程失败或被取消时，未结束的数据流会被取消。
+ *
+ * @param <T> 数据项类型
+ * @author yswang
+ */
+public class StreamingNodeOutput<T> extends NodeOutput implements Flow.Publisher<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingNodeOutput.class);
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 256;
+    public static final long DEFAULT_GATE_TIMEOUT_MILLIS = 30_000L;
+
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final SubmissionPublisher<T> publisher;
+    private final int bufferCapacity;
+    private final long gateTimeoutMillis;
+
+    // 订阅闸门：尚未订阅的下游节点，为空且已登记时打开
+    private final Set<String> pendingConsumers = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private volatile boolean consumersBound = false;
+    // 闸门超时后仍未订阅的下游节点，之后订阅时直接收到 onError
+    private final Set<String> timedOutConsumers = ConcurrentHashMap.newKeySet();
+    private final Object gateLock = new Object();
+
+    // 因订阅者缓冲区已满而等待的生产者线程
+    private volatile Thread waitingProducer;
+    // 物化读取：第一个物化读取的下游节点订阅并收集全部数据，之后的物化读取共用同一个结果(数据流不回放)
+    private final AtomicReference<CompletableFuture<List<T>>> collecting = new AtomicReference<>();
+    // 已订阅的下游节点 / 已加入物化读取的下游节点
+    private final Set<String> subscribedConsumers = ConcurrentHashMap.newKeySet();
+    private final Set<String> collectingConsumers = ConcurrentHashMap.newKeySet();
+
+    public StreamingNodeOutput() {
+        this(DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * @param bufferCapacity 每个订阅者的缓冲区大小
+     */
+    public StreamingNodeOutput(int bufferCapacity) {
+        this(ForkJoinPool.commonPool(), bufferCapacity, DEFAULT_GATE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param deliveryExecutor 向订阅者投递数据的线程池
+     * @param bufferCapacity 每个订阅者的缓冲区大小
+     * @param gateTimeoutMillis 等待下游节点订阅的最长时间
+     */
+    public StreamingNodeOutput(Executor deliveryExecutor, int bufferCapacity, long gateTimeoutMillis) {
+        this.bufferCapacity = Math.max(1, bufferCapacity);
+        this.gateTimeoutMillis = Math.max(0, gateTimeoutMillis);
+        this.publisher = new SubmissionPublisher<>(deliveryExecutor, this.bufferCapacity);
+    }
+
+    /**
+     * 流式输出的数据就是本对象(数据流)
+     */
+    @Override
+    @JsonIgnore
+    public Object getPayload() {
+        return this;
+    }
+
+    /**
+     * 等待数据流结束后转为指定类型(不计入订阅闸门)，下游节点应通过 {@link NodeInputs#getInput(Class)} 读取
+     */
+    @Override
+    public <R> R getPayload(Class<R> type) {
+        return getPayload((String) null, type);
+    }
+
+    /**
+     * 下游节点读取完整的数据：
+     * <ul>
+     *     <li>目标类型是数据流本身(如 Flow.Publisher)：返回本对象，不等待</li>
+     *     <li>List/Collection/Iterable：全部数据项</li>
+     *     <li>String/CharSequence：数据项全部是文本时拼接后的文本</li>
+     *     <li>Object：数据项全部是文本时为拼接后的文本，否则为全部数据项</li>
+     * </ul>
+     *
+     * @param consumerNodeId 订阅的下游节点ID，为 null 时不计入订阅闸门
+     * @throws ClassCastException 数据不能转为目标类型
+     * @throws CompletionException 数据流异常结束
+     */
+    public <R> R getPayload(String consumerNodeId, Class<R> type) {
+        if (type != Object.class && type.isInstance(this)) {
+            return type.cast(this);
+        }
+        final List<T> items = collect(consumerNodeId);
+        if (type != Object.class && type.isAssignableFrom(List.class)) {
+            return type.cast(items);
+        }
+        if (type.isAssignableFrom(String.class) && isText(items)) {
+            final StringBuilder text = new StringBuilder();
+            for (T item : items) {
+                text.append((CharSequence) item);
+            }
+            return type.cast(text.toString());
+        }
+        if (type == Object.class) {
+            return type.cast(items);
+        }
+        throw new ClassCastException("Streaming output of " + items.size() + " items cannot be read as " + type.getName());
+    }
+
+    private static boolean isText(List<?> items) {
+        for (Object item : items) {
+            if (!(item instanceof CharSequence)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---------------- 生产者 ----------------
+
+    /**
+     * 写入一项数据，订阅者缓冲区已满或下游节点尚未全部订阅时阻塞
+     *
+     * @throws IllegalStateException 数据流已结束、已被取消，或等待下游节点订阅超时
+     */
+    public void emit(T item) throws InterruptedException {
+        awaitConsumers();
+        // 不直接使用 SubmissionPublisher.submit() 阻塞：它在等待期间持有发布者的锁，取消数据流时无法唤醒生产者。
+        // 改为在锁外等待订阅者消费(订阅者每收到一项数据都会唤醒生产者)，有空间时再提交
+        while (this.publisher.estimateMaximumLag() >= this.bufferCapacity) {
+            if (this.publisher.isClosed()) {
+                break;
+            }
+            this.waitingProducer = Thread.currentThread();
+            if (this.publisher.estimateMaximumLag() >= this.bufferCapacity) {
+                LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+            }
+            this.waitingProducer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        this.publisher.submit(item);
+    }
+
+    /**
+     * 数据流正常结束
+     */
+    public void complete() {
+        this.publisher.close();
+        this.gate.countDown();
+    }
+
+    /**
+     * 数据流异常结束，订阅者会收到 onError
+     */
+    public void completeExceptionally(Throwable error) {
+        this.publisher.closeExceptionally(error);
+        this.gate.countDown();
+    }
+
+    /**
+     * 取消数据流(流程失败或被取消时由引擎调用)，阻塞中的 {@link #emit(Object)} 会抛出 IllegalStateException
+     */
+    public void cancel() {
+        completeExceptionally(new CancellationException("Stream cancelled"));
+    }
+
+    @JsonIgnore
+    public boolean isClosed() {
+        return this.publisher.isClosed();
+    }
+
+    private void awaitConsumers() throws InterruptedException {
+        if (this.gate.getCount() == 0) {
+            return;
+        }
+        if (this.gate.await(this.gateTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+
+        final Set<String> missing = new TreeSet<>();
+        synchronized (this.gateLock) {
+            if (this.consumersBound) {
+                for (String consumerNodeId : this.pendingConsumers) {
+                    if (this.pendingConsumers.remove(consumerNodeId)) {
+                        this.timedOutConsumers.add(consumerNodeId);
+                        missing.add(consumerNodeId);
+                    }
+                }
+            }
+        }
+        if (!this.consumersBound) {
+            // 不知道下游节点是谁，任何数据都可能丢失，不再产生数据
+            final TimeoutException error = new TimeoutException(
+                    "Streaming output not bound to downstream nodes in " + this.gateTimeoutMillis + "ms");
+            completeExceptionally(error);
+            throw new IllegalStateException(error.getMessage(), error);
+        }
+        if (!missing.isEmpty()) {
+            LOG.warn(">> WARNING: Streaming output not subscribed by {} in {}ms, they will fail when subscribing.",
+                    missing, this.gateTimeoutMillis);
+        }
+        this.gate.countDown();
+    }
+
+    // ---------------- 引擎 ----------------
+
+    /**
+     * 登记会订阅此数据流的下游节点，节点成功返回后、调度下游节点之前由引擎调用
+     */
+    void bindConsumers(Collection<String> consumerNodeIds) {
+        this.pendingConsumers.addAll(consumerNodeIds);
+        this.consumersBound = true;
+        openGateIfReady();
+    }
+
+    /**
+     * 下游节点已执行结束或被跳过，不再等待它订阅
+     */
+    void releaseConsumer(String consumerNodeId) {
+        if (this.pendingConsumers.remove(consumerNodeId)) {
+            openGateIfReady();
+        }
+    }
+
+    private void openGateIfReady() {
+        if (this.consumersBound && this.pendingConsumers.isEmpty()) {
+            this.gate.countDown();
+        }
+    }
+
+    // ---------------- 消费者 ----------------
+
+    /**
+     * 订阅数据流(不计入订阅闸门，适用于流程之外的订阅者，如将结果推送给客户端)
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        this.publisher.subscribe(new ProducerWakingSubscriber<>(subscriber, this));
+    }
+
+    /**
+     * 下游节点订阅数据流，全部登记的下游节点订阅后才开始产生数据
+     *
+     * @param consumerNodeId 订阅的下游节点ID
+     */
+    public void subscribe(String consumerNodeId, Flow.Subscriber<? super T> subscriber) {
+        if (consumerNodeId != null && this.collectingConsumers.contains(consumerNodeId)) {
+            // 此时数据可能已经开始产生，再订阅会缺少开头的数据
+            reject(subscriber, new IllegalStateException("Node <" + consumerNodeId
+                    + "> already reads this streaming output as a whole, subscribe before reading other inputs"));
+            return;
+        }
+        subscribeConsumer(consumerNodeId, subscriber);
+    }
+
+    private void subscribeConsumer(String consumerNodeId, Flow.Subscriber<? super T> subscriber) {
+        if (consumerNodeId == null) {
+            subscribe(subscriber);
+            return;
+        }
+        // 与闸门超时互斥：订阅要么在开始产生数据之前完成，要么被拒绝
+        synchronized (this.gateLock) {
+            if (!this.timedOutConsumers.contains(consumerNodeId)) {
+                this.subscribedConsumers.add(consumerNodeId);
+                subscribe(subscriber);
+                releaseConsumer(consumerNodeId);
+                return;
+            }
+        }
+        reject(subscriber, new TimeoutException("Node <" + consumerNodeId + "> subscribed after "
+                + this.gateTimeoutMillis + "ms, streaming output may have been partially emitted"));
+    }
+
+    private static void reject(Flow.Subscriber<?> subscriber, Throwable error) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(error);
+    }
+
+    /**
+     * 下游节点是否已订阅此数据流(包括加入物化读取)
+     */
+    boolean isSubscribedBy(String consumerNodeId) {
+        return this.subscribedConsumers.contains(consumerNodeId) || this.collectingConsumers.contains(consumerNodeId);
+    }
+
+    /**
+     * 下游节点以阻塞迭代的方式订阅数据流，迭代期间按缓冲区大小分批请求数据
+     *
+     * @param consumerNodeId 订阅的下游节点ID
+     * @return 数据流异常结束时 next() 抛出 {@link CompletionException}
+     */
+    public Iterator<T> iterator(String consumerNodeId) {
+        final BlockingIteratorSubscriber<T> subscriber = new BlockingIteratorSubscriber<>(this.bufferCapacity);
+        subscribe(consumerNodeId, subscriber);
+        return subscriber;
+    }
+
+    /**
+     * 下游节点订阅数据流并等待全部数据(适用于不支持流式处理的节点)
+     *
+     * @param consumerNodeId 订阅的下游节点ID
+     * @return 全部数据项(只读)
+     */
+    public List<T> collect(String consumerNodeId) {
+        final CompletableFuture<List<T>> future = collectAsync(consumerNodeId);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for stream items");
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * 下游节点订阅数据流，数据流结束后得到全部数据(不阻塞调用线程，适用于异步节点)。
+     * 所有下游节点共用第一个节点的订阅；已通过 {@link #iterator(String)} 订阅的节点不能再调用
+     *
+     * @param consumerNodeId 订阅的下游节点ID
+     * @return 全部数据项(只读)；数据流异常结束时异常完成
+     */
+    public CompletableFuture<List<T>> collectAsync(String consumerNodeId) {
+        if (consumerNodeId != null && this.subscribedConsumers.contains(consumerNodeId)
+                && !this.collectingConsumers.contains(consumerNodeId)) {
+            // 已经通过 iterator()/subscribe() 订阅的节点自己消费数据，不再重复订阅
+            return CompletableFuture.failedFuture(new IllegalStateException("Node <" + consumerNodeId
+                    + "> already subscribed to this streaming output"));
+        }
+        if (consumerNodeId != null) {
+            this.collectingConsumers.add(consumerNodeId);
+        }
+        CompletableFuture<List<T>> future = this.collecting.get();
+        if (future == null && consumerNodeId == null) {
+            // 流程之外的读取不计入闸门，可能缺少开头的数据，不作为共用的结果
+            final CollectingSubscriber<T> subscriber = new CollectingSubscriber<>();
+            subscribe(subscriber);
+            return subscriber.result.thenApply(Collections::unmodifiableList);
+        }
+        if (future == null) {
+            final CollectingSubscriber<T> subscriber = new CollectingSubscriber<>();
+            final CompletableFuture<List<T>> created = subscriber.result.thenApply(Collections::unmodifiableList);
+            if (this.collecting.compareAndSet(null, created)) {
+                subscribeConsumer(consumerNodeId, subscriber);
+                return created;
+            }
+            future = this.collecting.get();
+        }
+        // 共用已有的订阅，不必等待本节点订阅
+        if (consumerNodeId != null) {
+            releaseConsumer(consumerNodeId);
+        }
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingNodeOutput{" +
+                "subscribers=" + this.publisher.getNumberOfSubscribers() +
+                ", closed=" + this.publisher.isClosed() +
+                '}';
+    }
+
+    private void wakeProducer() {
+        final Thread producer = this.waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * 订阅者每收到一项数据(缓冲区腾出一个位置)都唤醒等待中的生产者
+     */
+    private static final class ProducerWakingSubscriber<T> implements Flow.Subscriber<T> {
+        private final Flow.Subscriber<? super T> delegate;
+        private final StreamingNodeOutput<T> output;
+
+        ProducerWakingSubscriber(Flow.Subscriber<? super T> delegate, StreamingNodeOutput<T> output) {
+            this.delegate = delegate;
+            this.output = output;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(T item) {
+            try {
+                this.delegate.onNext(item);
+            } finally {
+                this.output.wakeProducer();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.delegate.onError(throwable);
+            this.output.wakeProducer();
+        }
+
+        @Override
+        public void onComplete() {
+            this.delegate.onComplete();
+        }
+    }
+
+    /**
+     * 阻塞迭代的订阅者：先请求一个缓冲区的数据，消费一半后再补充请求，缓冲的数据不会超过缓冲区大小
+     */
+    private static final class BlockingIteratorSubscriber<T> implements Flow.Subscriber<T>, Iterator<T> {
+        private static final Object COMPLETE = new Object();
+
+        private final int batchSize;
+        private final BlockingQueue<Object> queue;
+        private volatile Flow.Subscription subscription;
+        private int consumedSinceRequest = 0;
+        private Object next;
+
+        BlockingIteratorSubscriber(int bufferCapacity) {
+            this.batchSize = bufferCapacity;
+            // 多出的位置留给结束信号
+            this.queue = new ArrayBlockingQueue<>(bufferCapacity + 1);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(this.batchSize);
+        }
+
+        @Override
+        public void onNext(T item) {
+            this.queue.offer(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.queue.offer(new ErrorSignal(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            this.queue.offer(COMPLETE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next == null) {
+                try {
+                    this.next = this.queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelSubscription();
+                    throw new CancellationException("Interrupted while waiting for stream item");
+                }
+            }
+            if (this.next instanceof ErrorSignal) {
+                throw new CompletionException(((ErrorSignal) this.next).error);
+            }
+            return this.next != COMPLETE;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final T item = (T) this.next;
+            this.next = null;
+            if (++this.consumedSinceRequest >= Math.max(1, this.batchSize / 2)) {
+                this.subscription.request(this.consumedSinceRequest);
+                this.consumedSinceRequest = 0;
+            }
+            return item;
+        }
+
+        private void cancelSubscription() {
+            final Flow.Subscription s = this.subscription;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+
+    /**
+     * 一次请求全部数据并收集到列表中的订阅者
+     */
+    private static final class CollectingSubscriber<T> implements Flow.Subscriber<T> {
+        private final List<T> items = new ArrayList<>();
+        private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            this.items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.result.complete(this.items);
+        }
+    }
+
+    private static final class ErrorSignal {
+        private final Throwable error;
+
+        ErrorSignal(Throwable error) {
+            this.error = error;
+        }
+    }
+}
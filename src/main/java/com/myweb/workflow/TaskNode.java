@@ -47,6 +47,37 @@ public interface TaskNode {
         return 1000;
     }
 
+    /**
+     * 节点的执行结果是否可以缓存(默认不缓存)。
+     * <p>
+     * 只有结果完全由节点配置和输入决定的节点才可以缓存：开启节点结果缓存后，
+     * 配置和输入都相同的执行会直接复用之前成功的结果，不再调用 {@link #call(ExecutionContext, NodeInputs)}。
+     */
+    default boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * 节点的输出是否为流程的结果(默认不是)。
+     * <p>
+     * 开启执行过程中释放输出数据后，普通节点的输出端口在所有下游节点都执行结束后会被释放，
+     * 流程结果节点的输出会一直保留到流程结束，可以从执行上下文中获取。
+     */
+    default boolean isFlowResult() {
+        return false;
+    }
+
+    /**
+     * 开启分布式执行时，节点是否可以由其他应用实例执行(默认不可以)。
+     * <p>
+     * 只有输入、输出和执行上下文中的数据都可以编码为 msgpack、不返回流式输出、不依赖本实例内存状态的节点才可以分布式执行；
+     * 节点执行是"至少一次"的(执行它的实例失联后会被重新执行)，因此节点还应当是幂等的。
+     * 其他实例执行时只能获取流程输入和执行上下文中的数据，获取不到其他节点的执行结果。
+     */
+    default boolean isDistributable() {
+        return false;
+    }
+
     /**
      * 节点执行
      * @param context 执行上下文，可以从上下文中获取一些全局数据
@@ -1,20 +1,48 @@
 package com.myweb.workflow;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
 import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.nodes.ForEachNode;
+import com.myweb.workflow.nodes.HttpNode;
+import com.myweb.workflow.nodes.IfElseNode;
+import com.myweb.workflow.nodes.LLMNode;
 import com.myweb.workflow.nodes.OutputNode;
 import com.myweb.workflow.nodes.StartNode;
 
 public class TaskNodeFactory {
+    // 节点类型 -> 节点创建器
+    private static final Map<String, Function<GNode, TaskNode>> NODE_CREATORS = new ConcurrentHashMap<>();
+
+    static {
+        register("start", StartNode::new);
+        register("output", OutputNode::new);
+        register("http", HttpNode::new);
+        register("llm", LLMNode::new);
+        register("foreach", ForEachNode::new);
+        register("branch", IfElseNode::new);
+    }
+
     public static TaskNode createNode(GNode gNode) {
-        if ("start".equals(gNode.getType())) {
-            return new StartNode(gNode);
+        Function<GNode, TaskNode> creator = gNode.getType() != null ? NODE_CREATORS.get(gNode.getType()) : null;
+        if (creator == null) {
+            throw new IllegalArgumentException("Invalid node type: " + gNode.getType());
         }
+        return creator.apply(gNode);
+    }
 
-        if ("output".equals(gNode.getType())) {
-            return new OutputNode(gNode);
+    /**
+     * 注册节点类型，已存在的类型会被覆盖
+     * @param type 节点类型
+     * @param creator 节点创建器
+     */
+    public static void register(String type, Function<GNode, TaskNode> creator) {
+        if (type == null || creator == null) {
+            throw new IllegalArgumentException("Node type and creator must not be null");
         }
-
-        throw new IllegalArgumentException("Invalid node type: " + gNode.getType());
+        NODE_CREATORS.put(type, creator);
     }
 
 }
@@ -5,6 +5,7 @@ package com.myweb.workflow;
  */
 public enum TaskState {
     PENDING,         // 等待执行
+    QUEUED,          // 满足触发条件，已进入就绪队列(或等待重试)
     RUNNING,         // 正在执行
     SUCCESS,         // 成功完成
     FAILED,          // 执行失败
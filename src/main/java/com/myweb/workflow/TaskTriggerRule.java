@@ -98,9 +98,39 @@ public enum TaskTriggerRule {
      * @return true - 满足触发条件
      */
     public boolean evaluate(Collection<TaskState> upstreamStates) {
+        int done = 0, success = 0, failed = 0, skipped = 0;
+        for (TaskState s : upstreamStates) {
+            if (s == TaskState.PENDING || s == TaskState.QUEUED || s == TaskState.RUNNING) {
+                continue;
+            }
+            done++;
+            if (s == TaskState.SUCCESS) {
+                success++;
+            } else if (s == TaskState.FAILED || s == TaskState.UPSTREAM_FAILED) {
+                failed++;
+            } else if (s == TaskState.SKIPPED) {
+                skipped++;
+            }
+        }
+        return evaluate(upstreamStates.size(), done, success, failed, skipped);
+    }
+
+    /**
+     * 根据上游状态计数计算出当前节点是否满足触发运行的条件，时间复杂度 O(1).
+     * <p>
+     * 所有规则都只关心 成功、失败(含 upstream_failed)、跳过 三类状态的数量以及已结束的数量，
+     * 执行器在上游节点结束时增量更新这些计数，不需要每次重新收集所有上游的状态。
+     *
+     * @param total 上游节点总数
+     * @param done 已结束的上游数(包括成功、失败、跳过、取消等)
+     * @param success 成功的上游数
+     * @param failed 失败或 upstream_failed 的上游数
+     * @param skipped 跳过的上游数
+     * @return true - 满足触发条件
+     */
+    public boolean evaluate(int total, int done, int success, int failed, int skipped) {
         // 是否所有上游都已结束
-        boolean areAllDone = upstreamStates.stream()
-                .noneMatch(s -> s == TaskState.PENDING || s == TaskState.RUNNING);
+        final boolean areAllDone = done >= total;
 
         switch (this) {
             // ==========================================
@@ -109,11 +139,11 @@ public enum TaskTriggerRule {
 
             // 只要有一个满足条件立刻触发
             case ONE_SUCCESS:
-                return upstreamStates.stream().anyMatch(s -> s == TaskState.SUCCESS);
+                return success > 0;
             case ONE_FAILED:
-                return upstreamStates.stream().anyMatch(s -> s == TaskState.FAILED || s == TaskState.UPSTREAM_FAILED);
+                return failed > 0;
             case ONE_DONE:
-                return upstreamStates.stream().anyMatch(s -> s == TaskState.SUCCESS || s == TaskState.FAILED || s == TaskState.UPSTREAM_FAILED);
+                return success > 0 || failed > 0;
             case ALWAYS:
                 return true;
 
@@ -121,36 +151,25 @@ public enum TaskTriggerRule {
             // 2. 必须等待所有上游结束的规则 (Blocking Rules)
             // ==========================================
 
-            // 正向匹配逻辑 (allMatch 在遇到 PENDING 时会自动返回 false，这是安全的)
             case ALL_SUCCESS:
-                return upstreamStates.stream().allMatch(s -> s == TaskState.SUCCESS);
+                return success >= total;
             case ALL_FAILED:
-                return upstreamStates.stream().allMatch(s -> s == TaskState.FAILED || s == TaskState.UPSTREAM_FAILED);
+                return failed >= total;
             case ALL_SKIPPED:
-                return upstreamStates.stream().allMatch(s -> s == TaskState.SKIPPED);
+                return skipped >= total;
             case ALL_DONE:
                 return areAllDone;
 
             // ==========================================
-            // 3. 否定逻辑规则 (必须要加 !areAllDone 判断)
+            // 3. 否定逻辑规则 (必须要加 areAllDone 判断)
             // ==========================================
 
             case NONE_FAILED:
-                if (!areAllDone) {
-                    return false;
-                }
-                return upstreamStates.stream().noneMatch(s -> s == TaskState.FAILED || s == TaskState.UPSTREAM_FAILED);
+                return areAllDone && failed == 0;
             case NONE_SKIPPED:
-                if (!areAllDone) {
-                    return false;
-                }
-                return upstreamStates.stream().noneMatch(s -> s == TaskState.SKIPPED);
+                return areAllDone && skipped == 0;
             case NONE_FAILED_MIN_ONE_SUCCESS:
-                if (!areAllDone) {
-                    return false;
-                }
-                return upstreamStates.stream().noneMatch(s -> s == TaskState.FAILED || s == TaskState.UPSTREAM_FAILED)
-                        && upstreamStates.stream().anyMatch(s -> s == TaskState.SUCCESS);
+                return areAllDone && failed == 0 && success > 0;
             default:
                 throw new IllegalArgumentException("Unknown trigger rule: " + this);
         }
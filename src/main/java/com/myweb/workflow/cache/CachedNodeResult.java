@@ -0,0 +1,47 @@
+package com.myweb.workflow.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存的节点执行结果：各输出端口的数据以及分支节点选中的下游节点.
+ *
+ * @author yswang
+ */
+public final class CachedNodeResult {
+    private final Map<String, Object> outputs;
+    private final List<String> nextNodes;
+    private final long createdAt;
+
+    public CachedNodeResult(Map<String, Object> outputs, List<String> nextNodes) {
+        this(outputs, nextNodes, System.currentTimeMillis());
+    }
+
+    CachedNodeResult(Map<String, Object> outputs, List<String> nextNodes, long createdAt) {
+        this.outputs = outputs != null ? Collections.unmodifiableMap(outputs) : Collections.emptyMap();
+        this.nextNodes = nextNodes != null ? Collections.unmodifiableList(nextNodes) : null;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * 输出端口 → 输出数据
+     */
+    public Map<String, Object> getOutputs() {
+        return this.outputs;
+    }
+
+    /**
+     * 待激活的后续节点，null 表示激活所有下游节点
+     */
+    public List<String> getNextNodes() {
+        return this.nextNodes;
+    }
+
+    /**
+     * 写入缓存的时间(毫秒)
+     */
+    public long getCreatedAt() {
+        return this.createdAt;
+    }
+}
@@ -0,0 +1,250 @@
+package com.myweb.workflow.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.myweb.workflow.checkpoint.CheckpointCodec;
+import com.myweb.workflow.exception.FlowExecuteException;
+
+/**
+ * 节点执行结果缓存(内容寻址).
+ * <p>
+ * 缓存 key 由执行引擎根据节点类型、节点配置的规范化哈希以及节点输入的哈希生成，
+ * 相同配置、相同输入的可缓存节点(见 {@link com.myweb.workflow.TaskNode#isCacheable()})直接复用之前的执行结果，
+ * 不再调用节点，适用于耗时且结果确定的 LLM、HTTP 等节点。
+ * <p>
+ * 两级存储：
+ * <ul>
+ *     <li>内存：按条数上限(LRU)和写入后的存活时间淘汰；</li>
+ *     <li>磁盘(可选)：每个结果一个 msgpack 文件，内存未命中时读取并回填内存，进程重启后仍然有效；
+ *     过期文件在读取时删除，并且每写入一定数量的结果清理一次目录。</li>
+ * </ul>
+ * 注意：从磁盘读取的输出数据为通用类型(Map/List/String/Number/byte[] 等)，不会还原为原始的 Java 类型；
+ * 内存中缓存的输出数据与原始结果共享同一个对象，节点不应修改输入端口上的数据。
+ *
+ * @author yswang
+ */
+public class NodeResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(NodeResultCache.class);
+
+    public static final long DEFAULT_MAX_SIZE = 10000;
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+    private static final String FILE_SUFFIX = ".msgpack";
+    private static final int DISK_CLEANUP_INTERVAL = 1000;
+
+    private final Cache<String, CachedNodeResult> memory;
+    private final long ttlMillis;
+    private final Path diskDir;
+
+    private final AtomicLong hitNum = new AtomicLong(0);
+    private final AtomicLong diskHitNum = new AtomicLong(0);
+    private final AtomicLong missNum = new AtomicLong(0);
+    private final AtomicLong diskPutNum = new AtomicLong(0);
+
+    public NodeResultCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL, null);
+    }
+
+    /**
+     * @param maxSize 内存中缓存的结果数上限
+     * @param ttl 结果写入后的存活时间，为 null 或 <=0 表示不过期
+     * @param diskDir 磁盘缓存目录，为 null 表示只使用内存
+     */
+    public NodeResultCache(long maxSize, Duration ttl, Path diskDir) {
+        this.ttlMillis = ttl != null && !ttl.isNegative() && !ttl.isZero() ? ttl.toMillis() : 0L;
+
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(Math.max(1, maxSize));
+        if (this.ttlMillis > 0) {
+            builder.expireAfterWrite(this.ttlMillis, TimeUnit.MILLISECONDS);
+        }
+        this.memory = builder.build();
+
+        if (diskDir != null) {
+            try {
+                Files.createDirectories(diskDir);
+            } catch (IOException e) {
+                throw new FlowExecuteException("Failed to create node cache directory: " + diskDir, e);
+            }
+        }
+        this.diskDir = diskDir;
+    }
+
+    /**
+     * 获取缓存的结果，内存未命中时查找磁盘
+     * @param key 缓存 key
+     * @return 未命中则返回 null
+     */
+    public CachedNodeResult get(String key) {
+        CachedNodeResult result = this.memory.getIfPresent(key);
+        if (result == null && this.diskDir != null) {
+            result = readFromDisk(key);
+            if (result != null) {
+                this.memory.put(key, result);
+                this.diskHitNum.incrementAndGet();
+            }
+        }
+
+        if (result != null) {
+            this.hitNum.incrementAndGet();
+        } else {
+            this.missNum.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * 缓存结果，开启磁盘缓存时同时写入磁盘(写入失败只记录日志)
+     */
+    public void put(String key, CachedNodeResult result) {
+        if (key == null || result == null) {
+            return;
+        }
+        this.memory.put(key, result);
+        if (this.diskDir != null) {
+            writeToDisk(key, result);
+            if (this.diskPutNum.incrementAndGet() % DISK_CLEANUP_INTERVAL == 0) {
+                cleanUpDisk();
+            }
+        }
+    }
+
+    public void invalidate(String key) {
+        this.memory.invalidate(key);
+        if (this.diskDir != null) {
+            try {
+                Files.deleteIfExists(diskFile(key));
+            } catch (IOException e) {
+                LOG.warn(">> WARNING: Failed to delete node cache file of key <{}>: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 清空内存缓存(磁盘缓存文件保留)
+     */
+    public void invalidateAll() {
+        this.memory.invalidateAll();
+    }
+
+    /**
+     * 删除磁盘目录中已过期的缓存文件
+     */
+    public void cleanUpDisk() {
+        if (this.diskDir == null || this.ttlMillis <= 0) {
+            return;
+        }
+        final long expireBefore = System.currentTimeMillis() - this.ttlMillis;
+        try (Stream<Path> files = Files.list(this.diskDir)) {
+            files.filter(f -> f.getFileName().toString().endsWith(FILE_SUFFIX)).forEach(f -> {
+                try {
+                    if (Files.getLastModifiedTime(f).toMillis() < expireBefore) {
+                        Files.deleteIfExists(f);
+                    }
+                } catch (IOException e) {
+                    // 可能已被其他线程删除
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn(">> WARNING: Failed to clean up node cache directory <{}>: {}", this.diskDir, e.getMessage());
+        }
+    }
+
+    public long size() {
+        return this.memory.size();
+    }
+
+    public long hitCount() {
+        return this.hitNum.get();
+    }
+
+    /**
+     * 内存未命中、从磁盘读取到的次数(包含在 {@link #hitCount()} 中)
+     */
+    public long diskHitCount() {
+        return this.diskHitNum.get();
+    }
+
+    public long missCount() {
+        return this.missNum.get();
+    }
+
+    private CachedNodeResult readFromDisk(String key) {
+        final Path file = diskFile(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            final Map<String, Object> data = CheckpointCodec.decodeMap(Files.readAllBytes(file));
+            // 同名文件对应的 key 不同(哈希碰撞)时视为未命中
+            if (!key.equals(data.get("key"))) {
+                return null;
+            }
+            final long createdAt = ((Number) data.get("createdAt")).longValue();
+            if (this.ttlMillis > 0 && System.currentTimeMillis() - createdAt > this.ttlMillis) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> outputs = (Map<String, Object>) data.get("outputs");
+            @SuppressWarnings("unchecked")
+            final List<String> nextNodes = (List<String>) data.get("nextNodes");
+            return new CachedNodeResult(outputs, nextNodes, createdAt);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (Exception e) {
+            LOG.warn(">> WARNING: Failed to read node cache file <{}>: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, CachedNodeResult result) {
+        final Map<String, Object> data = new HashMap<>(8);
+        data.put("key", key);
+        data.put("outputs", result.getOutputs());
+        data.put("nextNodes", result.getNextNodes());
+        data.put("createdAt", result.getCreatedAt());
+
+        final Path file = diskFile(key);
+        Path tmp = null;
+        try {
+            final byte[] bytes = CheckpointCodec.encode(data);
+            // 先写临时文件再原子替换，读取方不会看到写了一半的文件
+            tmp = Files.createTempFile(this.diskDir, file.getFileName().toString(), ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            LOG.warn(">> WARNING: Failed to write node cache file of key <{}>: {}", key, e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignore) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private Path diskFile(String key) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return this.diskDir.resolve(HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,226 @@
+package com.myweb.workflow.checkpoint;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 异步批量写入检查点.
+ * <p>
+ * 节点完成时只是将记录放入内存队列(不阻塞、不做序列化)，由一个后台线程批量写入 {@link CheckpointStore}：
+ * 每次取出队列中已有的全部记录(最多 batchSize 条)在一个事务中写入，写入期间新到的记录自然地合并到下一批，
+ * 负载越高批次越大。写入失败时整批重试，重试仍失败或队列已满时丢弃记录，
+ * 丢弃只会使恢复时的执行前沿变短(之后的节点重新执行)，不会影响一致性，也不会阻塞流程执行。
+ *
+ * @author yswang
+ */
+public class AsyncCheckpointWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncCheckpointWriter.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 100L;
+    private static final long POLL_TIMEOUT_MILLIS = 100L;
+    private static final long CLOSE_AWAIT_MILLIS = 10_000L;
+
+    private final CheckpointStore store;
+    private final BlockingQueue<Object> queue;
+    private final int batchSize;
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    // 已入队但尚未处理完的记录数，用于 flush()
+    private final AtomicLong pendingNum = new AtomicLong(0);
+    private final Object flushLock = new Object();
+
+    private final AtomicLong writtenNum = new AtomicLong(0);
+    private final AtomicLong droppedNum = new AtomicLong(0);
+
+    public AsyncCheckpointWriter(CheckpointStore store) {
+        this(store, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    public AsyncCheckpointWriter(CheckpointStore store, int queueCapacity, int batchSize) {
+        if (store == null) {
+            throw new IllegalArgumentException("`CheckpointStore` must not be null");
+        }
+        this.store = store;
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+
+        this.writerThread = new Thread(this::writeLoop, "flow-checkpoint-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.setUncaughtExceptionHandler((thread, e) ->
+                LOG.error(">> ERROR: Flow-Checkpoint thread<{}> exception: ", thread.getName(), e));
+        this.writerThread.start();
+    }
+
+    public CheckpointStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * 提交节点的完成记录，不阻塞
+     * @return false - 队列已满或已关闭，记录被丢弃
+     */
+    public boolean writeNode(NodeCheckpoint node) {
+        return enqueue(node);
+    }
+
+    /**
+     * 提交流程执行的检查点，不阻塞
+     * @return false - 队列已满或已关闭，记录被丢弃
+     */
+    public boolean writeRun(RunCheckpoint run) {
+        return enqueue(run);
+    }
+
+    private boolean enqueue(Object record) {
+        if (this.closed || record == null) {
+            return false;
+        }
+        this.pendingNum.incrementAndGet();
+        if (!this.queue.offer(record)) {
+            donePending(1);
+            if (this.droppedNum.incrementAndGet() % 1000 == 1) {
+                LOG.warn(">> WARNING: Checkpoint queue is full, {} records dropped so far.", this.droppedNum.get());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 等待已提交的记录全部处理完毕(写入或丢弃)
+     *
+     * @param timeoutMillis 最长等待时间
+     * @return true - 已全部处理完毕
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this.flushLock) {
+            while (this.pendingNum.get() > 0) {
+                final long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                this.flushLock.wait(wait);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 已写入的记录数
+     */
+    public long getWrittenCount() {
+        return this.writtenNum.get();
+    }
+
+    /**
+     * 被丢弃的记录数(队列已满或重试后仍写入失败)
+     */
+    public long getDroppedCount() {
+        return this.droppedNum.get();
+    }
+
+    /**
+     * 等待中的记录数
+     */
+    public int getQueuedCount() {
+        return this.queue.size();
+    }
+
+    /**
+     * 停止接收新记录，写完队列中已有的记录后退出
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        try {
+            this.writerThread.join(CLOSE_AWAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.writerThread.isAlive()) {
+            LOG.warn(">> WARNING: Checkpoint writer not finished in {}ms, {} records left.",
+                    CLOSE_AWAIT_MILLIS, this.queue.size());
+        }
+    }
+
+    private void writeLoop() {
+        final List<Object> batch = new ArrayList<>(this.batchSize);
+        while (!this.closed || !this.queue.isEmpty()) {
+            try {
+                final Object first = this.queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch, this.batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (this.closed) {
+                    break;
+                }
+            } finally {
+                if (!batch.isEmpty()) {
+                    donePending(batch.size());
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<Object> batch) throws InterruptedException {
+        // 同一批中主键相同的记录(如: 同一执行的 RUNNING 与 COMPLETED，或同一节点的多次完成记录)只保留最后一条，
+        // 否则"先删除再插入"会因为同一主键插入两次而违反主键约束，导致整批写入失败
+        final Map<String, NodeCheckpoint> nodes = new LinkedHashMap<>();
+        final Map<String, RunCheckpoint> runs = new LinkedHashMap<>();
+        for (Object record : batch) {
+            if (record instanceof NodeCheckpoint node) {
+                nodes.put(node.getRunId() + '\u0000' + node.getNodeId(), node);
+            } else if (record instanceof RunCheckpoint run) {
+                runs.put(run.getRunId(), run);
+            }
+        }
+        final List<NodeCheckpoint> nodeList = new ArrayList<>(nodes.values());
+        final List<RunCheckpoint> runList = new ArrayList<>(runs.values());
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                // 覆盖写入是幂等的，重试时整批重写
+                this.store.saveNodes(nodeList);
+                this.store.saveRuns(runList);
+                this.writtenNum.addAndGet(batch.size());
+                return;
+            } catch (Exception e) {
+                if (attempt >= MAX_RETRIES) {
+                    this.droppedNum.addAndGet(batch.size());
+                    LOG.error(">> ERROR: Failed to write {} checkpoints after {} retries, dropped.", batch.size(), MAX_RETRIES, e);
+                    return;
+                }
+                LOG.warn(">> WARNING: Failed to write checkpoints, retry {}: {}", attempt + 1, e.getMessage());
+                Thread.sleep(RETRY_BACKOFF_MILLIS << attempt);
+            }
+        }
+    }
+
+    private void donePending(int n) {
+        if (this.pendingNum.addAndGet(-n) == 0) {
+            synchronized (this.flushLock) {
+                this.flushLock.notifyAll();
+            }
+        }
+    }
+}
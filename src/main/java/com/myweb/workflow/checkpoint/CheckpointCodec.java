@@ -0,0 +1,76 @@
+package com.myweb.workflow.checkpoint;
+
+import java.util.*;
+
+import org.msgpack.jackson.dataformat.MessagePackMapper;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myweb.util.JsonObjectMapper;
+
+/**
+ * 检查点数据的编解码，使用 msgpack 格式(比 JSON 更紧凑，且原样保留二进制数据).
+ * <p>
+ * 注意：节点输出的 payload 解码后为通用类型(Map/List/String/Number/byte[] 等)，不会还原为原始的 Java 类型。
+ *
+ * @author yswang
+ */
+public final class CheckpointCodec {
+    private static final ObjectMapper MAPPER = new MessagePackMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+    private static final TypeReference<List<String>> LIST_TYPE = new TypeReference<>() {};
+
+    static {
+        JsonObjectMapper.customizeObjectMapper(MAPPER, JsonObjectMapper.DEFAULT_TIMEZONE);
+    }
+
+    private CheckpointCodec() {
+    }
+
+    public static byte[] encode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to encode checkpoint data: " + e.getMessage(), e);
+        }
+    }
+
+    public static Object decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(data, Object.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to decode checkpoint data: " + e.getMessage(), e);
+        }
+    }
+
+    public static Map<String, Object> decodeMap(byte[] data) {
+        if (data == null || data.length == 0) {
+            return Collections.emptyMap();
+        }
+        try {
+            return MAPPER.readValue(data, MAP_TYPE);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to decode checkpoint data: " + e.getMessage(), e);
+        }
+    }
+
+    public static List<String> decodeStrings(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length == 0) {
+            return Collections.emptyList();
+        }
+        try {
+            return MAPPER.readValue(data, LIST_TYPE);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to decode checkpoint data: " + e.getMessage(), e);
+        }
+    }
+}
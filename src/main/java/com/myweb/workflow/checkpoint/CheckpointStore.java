@@ -0,0 +1,49 @@
+package com.myweb.workflow.checkpoint;
+
+import java.util.List;
+
+/**
+ * 流程执行检查点的存储.
+ * <p>
+ * 写入方法由 {@link AsyncCheckpointWriter} 在后台线程中批量调用，不在节点完成的路径上执行；
+ * 实现需要保证同一批记录要么全部写入，要么全部失败(失败时整批会被重试)。
+ *
+ * @author yswang
+ */
+public interface CheckpointStore {
+
+    /**
+     * 保存(覆盖)流程执行的检查点
+     */
+    void saveRuns(List<RunCheckpoint> runs);
+
+    /**
+     * 保存(覆盖)节点的完成记录
+     */
+    void saveNodes(List<NodeCheckpoint> nodes);
+
+    /**
+     * 获取流程执行的检查点
+     * @param runId 执行ID
+     * @return 不存在则返回 null
+     */
+    RunCheckpoint loadRun(String runId);
+
+    /**
+     * 获取流程执行中所有节点的完成记录，按完成序号排序
+     * @param runId 执行ID
+     */
+    List<NodeCheckpoint> loadNodes(String runId);
+
+    /**
+     * 查找可以恢复的流程执行(执行中或已暂停)
+     * @param planKey 执行计划的 key，为 null 时查找全部
+     */
+    List<RunCheckpoint> findResumableRuns(String planKey);
+
+    /**
+     * 删除流程执行的所有检查点
+     */
+    void deleteRun(String runId);
+
+}
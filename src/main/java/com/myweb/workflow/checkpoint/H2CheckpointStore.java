@@ -0,0 +1,87 @@
+package com.myweb.workflow.checkpoint;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.myweb.workflow.exception.FlowExecuteException;
+
+/**
+ * 基于嵌入式 H2 数据库的检查点存储，不依赖外部数据库，适合单机部署.
+ * <p>
+ * 创建时自动建表；使用文件模式(如: jdbc:h2:file:./data/flow-checkpoints)时，进程重启后检查点仍然存在。
+ * 存储打开期间会保持一个连接，避免连接全部关闭后 H2 关闭数据库，每次操作都要重新打开数据库文件。
+ *
+ * @author yswang
+ */
+public class H2CheckpointStore extends JdbcCheckpointStore implements AutoCloseable {
+
+    private static final String[] DDL = {
+            "CREATE TABLE IF NOT EXISTS " + RUN_TABLE + " (" +
+                    "run_id VARCHAR(64) NOT NULL PRIMARY KEY, " +
+                    "plan_key VARCHAR(128), " +
+                    "state VARCHAR(32) NOT NULL, " +
+                    "workflow_input BLOB, " +
+                    "updated_at TIMESTAMP NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS indx_flow_run_state ON " + RUN_TABLE + " (state)",
+            "CREATE TABLE IF NOT EXISTS " + NODE_TABLE + " (" +
+                    "run_id VARCHAR(64) NOT NULL, " +
+                    "node_id VARCHAR(128) NOT NULL, " +
+                    "seq INT NOT NULL, " +
+                    "state VARCHAR(32) NOT NULL, " +
+                    "success BOOLEAN NOT NULL, " +
+                    "skipped BOOLEAN NOT NULL, " +
+                    "error_message CLOB, " +
+                    "next_nodes BLOB, " +
+                    "outputs BLOB, " +
+                    "start_time TIMESTAMP, " +
+                    "end_time TIMESTAMP, " +
+                    "PRIMARY KEY (run_id, node_id))"
+    };
+
+    private final Connection keepAliveConnection;
+
+    /**
+     * @param jdbcUrl H2 连接地址，如: jdbc:h2:file:./data/flow-checkpoints
+     */
+    public H2CheckpointStore(String jdbcUrl) {
+        this(new DriverManagerDataSource(jdbcUrl, "sa", ""));
+    }
+
+    public H2CheckpointStore(DataSource dataSource) {
+        super(dataSource);
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            try (Statement stmt = conn.createStatement()) {
+                for (String ddl : DDL) {
+                    stmt.execute(ddl);
+                }
+            }
+        } catch (SQLException e) {
+            closeQuietly(conn);
+            throw new FlowExecuteException("Failed to initialize H2 checkpoint store", e);
+        }
+        this.keepAliveConnection = conn;
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(this.keepAliveConnection);
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.myweb.workflow.checkpoint;
+
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.myweb.workflow.FlowExecutorPro.ExecutionState;
+import com.myweb.workflow.TaskState;
+import com.myweb.workflow.exception.FlowExecuteException;
+
+/**
+ * 基于 JDBC 的检查点存储，只使用标准 SQL，适用于 PostgreSQL/H2 等数据库.
+ * <p>
+ * 表结构由 liquibase 维护(见 db/changelog/1.0.1.xml)：
+ * <pre>
+ * flow_run_checkpoints(run_id, plan_key, state, workflow_input, updated_at)
+ * flow_node_checkpoints(run_id, node_id, seq, state, success, skipped, error_message, next_nodes, outputs, start_time, end_time)
+ * </pre>
+ * 覆盖写入使用"先删除再插入"，同一批记录在一个事务中提交；因此同一批中每个主键只能出现一次
+ * ({@link AsyncCheckpointWriter} 写入前已按主键合并)。
+ * 节点输出、流程输入等数据使用 {@link CheckpointCodec} 编码为 msgpack 存储。
+ *
+ * @author yswang
+ */
+public class JdbcCheckpointStore implements CheckpointStore {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcCheckpointStore.class);
+
+    protected static final String RUN_TABLE = "flow_run_checkpoints";
+    protected static final String NODE_TABLE = "flow_node_checkpoints";
+
+    private static final String DELETE_RUN_SQL = "DELETE FROM " + RUN_TABLE + " WHERE run_id = ?";
+    private static final String INSERT_RUN_SQL = "INSERT INTO " + RUN_TABLE +
+            " (run_id, plan_key, state, workflow_input, updated_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String SELECT_RUN_SQL = "SELECT run_id, plan_key, state, workflow_input, updated_at FROM " + RUN_TABLE;
+
+    private static final String DELETE_NODE_SQL = "DELETE FROM " + NODE_TABLE + " WHERE run_id = ? AND node_id = ?";
+    private static final String DELETE_RUN_NODES_SQL = "DELETE FROM " + NODE_TABLE + " WHERE run_id = ?";
+    private static final String INSERT_NODE_SQL = "INSERT INTO " + NODE_TABLE +
+            " (run_id, node_id, seq, state, success, skipped, error_message, next_nodes, outputs, start_time, end_time)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_NODES_SQL = "SELECT run_id, node_id, seq, state, success, skipped, error_message," +
+            " next_nodes, outputs, start_time, end_time FROM " + NODE_TABLE + " WHERE run_id = ? ORDER BY seq";
+
+    private final DataSource dataSource;
+
+    public JdbcCheckpointStore(DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("`DataSource` must not be null");
+        }
+        this.dataSource = dataSource;
+    }
+
+    protected DataSource getDataSource() {
+        return this.dataSource;
+    }
+
+    @Override
+    public void saveRuns(List<RunCheckpoint> runs) {
+        if (runs == null || runs.isEmpty()) {
+            return;
+        }
+
+        // 先编码，无法编码的记录单独丢弃，不影响同一批的其他记录
+        final List<RunCheckpoint> records = new ArrayList<>(runs.size());
+        final List<byte[]> inputs = new ArrayList<>(runs.size());
+        for (RunCheckpoint run : runs) {
+            try {
+                inputs.add(CheckpointCodec.encode(run.getWorkflowInput()));
+                records.add(run);
+            } catch (Exception e) {
+                LOG.error(">> ERROR: Checkpoint of run <{}> dropped: {}", run.getRunId(), e.getMessage());
+            }
+        }
+
+        inTransaction(conn -> {
+            try (PreparedStatement delete = conn.prepareStatement(DELETE_RUN_SQL);
+                 PreparedStatement insert = conn.prepareStatement(INSERT_RUN_SQL)) {
+                for (int i = 0; i < records.size(); i++) {
+                    final RunCheckpoint run = records.get(i);
+                    delete.setString(1, run.getRunId());
+                    delete.addBatch();
+
+                    insert.setString(1, run.getRunId());
+                    insert.setString(2, run.getPlanKey());
+                    insert.setString(3, run.getState() != null ? run.getState().name() : null);
+                    insert.setBytes(4, inputs.get(i));
+                    insert.setTimestamp(5, toTimestamp(run.getUpdatedAt() != null ? run.getUpdatedAt() : Instant.now()));
+                    insert.addBatch();
+                }
+                delete.executeBatch();
+                insert.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public void saveNodes(List<NodeCheckpoint> nodes) {
+        if (nodes == null || nodes.isEmpty()) {
+            return;
+        }
+
+        // 无法编码的记录单独丢弃：恢复时只取连续的完成序号，丢弃的记录之后的节点会被重新执行
+        final List<NodeCheckpoint> records = new ArrayList<>(nodes.size());
+        final List<byte[][]> encoded = new ArrayList<>(nodes.size());
+        for (NodeCheckpoint node : nodes) {
+            try {
+                encoded.add(new byte[][] {
+                        CheckpointCodec.encode(node.getNextNodes()),
+                        CheckpointCodec.encode(node.getOutputs())
+                });
+                records.add(node);
+            } catch (Exception e) {
+                LOG.error(">> ERROR: Checkpoint of node <{}> in run <{}> dropped: {}",
+                        node.getNodeId(), node.getRunId(), e.getMessage());
+            }
+        }
+
+        inTransaction(conn -> {
+            try (PreparedStatement delete = conn.prepareStatement(DELETE_NODE_SQL);
+                 PreparedStatement insert = conn.prepareStatement(INSERT_NODE_SQL)) {
+                for (int i = 0; i < records.size(); i++) {
+                    final NodeCheckpoint node = records.get(i);
+                    delete.setString(1, node.getRunId());
+                    delete.setString(2, node.getNodeId());
+                    delete.addBatch();
+
+                    insert.setString(1, node.getRunId());
+                    insert.setString(2, node.getNodeId());
+                    insert.setInt(3, node.getSeq());
+                    insert.setString(4, node.getState() != null ? node.getState().name() : null);
+                    insert.setBoolean(5, node.isSuccess());
+                    insert.setBoolean(6, node.isSkipped());
+                    insert.setString(7, node.getErrorMessage());
+                    insert.setBytes(8, encoded.get(i)[0]);
+                    insert.setBytes(9, encoded.get(i)[1]);
+                    insert.setTimestamp(10, toTimestamp(node.getStartTime()));
+                    insert.setTimestamp(11, toTimestamp(node.getEndTime()));
+                    insert.addBatch();
+                }
+                delete.executeBatch();
+                insert.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public RunCheckpoint loadRun(String runId) {
+        if (runId == null) {
+            return null;
+        }
+        List<RunCheckpoint> runs = queryRuns(SELECT_RUN_SQL + " WHERE run_id = ?", runId);
+        return runs.isEmpty() ? null : runs.get(0);
+    }
+
+    @Override
+    public List<NodeCheckpoint> loadNodes(String runId) {
+        final List<NodeCheckpoint> nodes = new ArrayList<>();
+        try (Connection conn = this.dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SELECT_NODES_SQL)) {
+            ps.setString(1, runId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    nodes.add(new NodeCheckpoint()
+                            .setRunId(rs.getString(1))
+                            .setNodeId(rs.getString(2))
+                            .setSeq(rs.getInt(3))
+                            .setState(TaskState.valueOf(rs.getString(4)))
+                            .setSuccess(rs.getBoolean(5))
+                            .setSkipped(rs.getBoolean(6))
+                            .setErrorMessage(rs.getString(7))
+                            .setNextNodes(CheckpointCodec.decodeStrings(rs.getBytes(8)))
+                            .setOutputs(CheckpointCodec.decodeMap(rs.getBytes(9)))
+                            .setStartTime(toInstant(rs.getTimestamp(10)))
+                            .setEndTime(toInstant(rs.getTimestamp(11))));
+                }
+            }
+        } catch (SQLException e) {
+            throw new FlowExecuteException("Failed to load node checkpoints of run: " + runId, e);
+        }
+        return nodes;
+    }
+
+    @Override
+    public List<RunCheckpoint> findResumableRuns(String planKey) {
+        final String sql = SELECT_RUN_SQL + " WHERE state IN ('" + ExecutionState.RUNNING.name() + "', '"
+                + ExecutionState.PAUSED.name() + "')" + (planKey != null ? " AND plan_key = ?" : "") + " ORDER BY updated_at";
+        return planKey != null ? queryRuns(sql, planKey) : queryRuns(sql);
+    }
+
+    @Override
+    public void deleteRun(String runId) {
+        if (runId == null) {
+            return;
+        }
+        inTransaction(conn -> {
+            try (PreparedStatement deleteNodes = conn.prepareStatement(DELETE_RUN_NODES_SQL);
+                 PreparedStatement deleteRun = conn.prepareStatement(DELETE_RUN_SQL)) {
+                deleteNodes.setString(1, runId);
+                deleteNodes.executeUpdate();
+                deleteRun.setString(1, runId);
+                deleteRun.executeUpdate();
+            }
+        });
+    }
+
+    private List<RunCheckpoint> queryRuns(String sql, String... params) {
+        final List<RunCheckpoint> runs = new ArrayList<>();
+        try (Connection conn = this.dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    final String state = rs.getString(3);
+                    runs.add(new RunCheckpoint()
+                            .setRunId(rs.getString(1))
+                            .setPlanKey(rs.getString(2))
+                            .setState(state != null ? ExecutionState.valueOf(state) : null)
+                            .setWorkflowInput(CheckpointCodec.decode(rs.getBytes(4)))
+                            .setUpdatedAt(toInstant(rs.getTimestamp(5))));
+                }
+            }
+        } catch (SQLException e) {
+            throw new FlowExecuteException("Failed to load run checkpoints", e);
+        }
+        return runs;
+    }
+
+    /**
+     * 在一个事务中执行，失败时回滚并抛出 {@link FlowExecuteException}
+     */
+    protected void inTransaction(SqlCallback callback) {
+        try (Connection conn = this.dataSource.getConnection()) {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                callback.doInConnection(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new FlowExecuteException("Failed to save checkpoints", e);
+        }
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toInstant() : null;
+    }
+
+    @FunctionalInterface
+    protected interface SqlCallback {
+        void doInConnection(Connection conn) throws SQLException;
+    }
+}
@@ -0,0 +1,140 @@
+package com.myweb.workflow.checkpoint;
+
+import java.time.Instant;
+import java.util.*;
+
+import com.myweb.workflow.TaskState;
+
+/**
+ * 一个节点在某次执行中的完成记录(检查点).
+ * <p>
+ * seq 是节点在本次执行中的完成序号(从 1 开始)：节点总是在它依赖的上游节点完成之后才完成，
+ * 因此任意一段从 1 开始的连续序号都是一个一致的执行前沿，恢复时只取这一段，
+ * 即使中间某条记录写入失败也不会出现"下游已完成而上游未完成"的状态。
+ *
+ * @author yswang
+ */
+public class NodeCheckpoint {
+    private String runId;
+    private String nodeId;
+    private int seq;
+    private TaskState state;
+    private boolean success;
+    private boolean skipped;
+    private String errorMessage;
+    // 待激活的后续节点，null 表示激活所有下游节点
+    private Collection<String> nextNodes;
+    // 节点的输出<Port, Payload>
+    private Map<String, Object> outputs = Collections.emptyMap();
+    private Instant startTime;
+    private Instant endTime;
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public NodeCheckpoint setRunId(String runId) {
+        this.runId = runId;
+        return this;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public NodeCheckpoint setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+        return this;
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public NodeCheckpoint setSeq(int seq) {
+        this.seq = seq;
+        return this;
+    }
+
+    public TaskState getState() {
+        return state;
+    }
+
+    public NodeCheckpoint setState(TaskState state) {
+        this.state = state;
+        return this;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public NodeCheckpoint setSuccess(boolean success) {
+        this.success = success;
+        return this;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    public NodeCheckpoint setSkipped(boolean skipped) {
+        this.skipped = skipped;
+        return this;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public NodeCheckpoint setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+        return this;
+    }
+
+    public Collection<String> getNextNodes() {
+        return nextNodes;
+    }
+
+    public NodeCheckpoint setNextNodes(Collection<String> nextNodes) {
+        this.nextNodes = nextNodes;
+        return this;
+    }
+
+    public Map<String, Object> getOutputs() {
+        return outputs;
+    }
+
+    public NodeCheckpoint setOutputs(Map<String, Object> outputs) {
+        this.outputs = outputs != null ? outputs : Collections.emptyMap();
+        return this;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public NodeCheckpoint setStartTime(Instant startTime) {
+        this.startTime = startTime;
+        return this;
+    }
+
+    public Instant getEndTime() {
+        return endTime;
+    }
+
+    public NodeCheckpoint setEndTime(Instant endTime) {
+        this.endTime = endTime;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeCheckpoint{" +
+                "runId='" + runId + '\'' +
+                ", nodeId='" + nodeId + '\'' +
+                ", seq=" + seq +
+                ", state=" + state +
+                '}';
+    }
+}
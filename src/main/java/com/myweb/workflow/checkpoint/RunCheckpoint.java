@@ -0,0 +1,81 @@
+package com.myweb.workflow.checkpoint;
+
+import java.time.Instant;
+
+import com.myweb.workflow.FlowExecutorPro.ExecutionState;
+
+/**
+ * 一次流程执行的检查点(执行计划、流程输入和执行状态).
+ *
+ * @author yswang
+ */
+public class RunCheckpoint {
+    private String runId;
+    private String planKey;
+    private ExecutionState state;
+    // 流程的初始输入
+    private Object workflowInput;
+    private Instant updatedAt;
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public RunCheckpoint setRunId(String runId) {
+        this.runId = runId;
+        return this;
+    }
+
+    public String getPlanKey() {
+        return planKey;
+    }
+
+    public RunCheckpoint setPlanKey(String planKey) {
+        this.planKey = planKey;
+        return this;
+    }
+
+    public ExecutionState getState() {
+        return state;
+    }
+
+    public RunCheckpoint setState(ExecutionState state) {
+        this.state = state;
+        return this;
+    }
+
+    public Object getWorkflowInput() {
+        return workflowInput;
+    }
+
+    public RunCheckpoint setWorkflowInput(Object workflowInput) {
+        this.workflowInput = workflowInput;
+        return this;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public RunCheckpoint setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+        return this;
+    }
+
+    /**
+     * 是否可以恢复执行：执行中(进程崩溃时未结束)或已暂停
+     */
+    public boolean isResumable() {
+        return this.state == ExecutionState.RUNNING || this.state == ExecutionState.PAUSED;
+    }
+
+    @Override
+    public String toString() {
+        return "RunCheckpoint{" +
+                "runId='" + runId + '\'' +
+                ", planKey='" + planKey + '\'' +
+                ", state=" + state +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
@@ -0,0 +1,902 @@
+package com.myweb.workflow.distributed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.myweb.workflow.checkpoint.CheckpointCodec;
+import com.myweb.workflow.exception.FlowExecuteException;
+
+/**
+ * 基于 PostgreSQL 的分布式节点执行队列，多个应用实例共享同一张表.
+ * <p>
+ * 提交的节点执行写入 flow_work_items 表(状态 PENDING)，并通过 NOTIFY flow_work_ready 唤醒所有实例；
+ * 每个实例在执行能力范围内(maxClaimed)用 {@code FOR UPDATE SKIP LOCKED} 成批领取(状态 RUNNING)，
+ * 多个实例同时领取时互不等待、不会领到同一条记录，因此繁忙的实例领取得少，空闲的实例领取得多。
+ * 执行完成后结果写回表中(状态 DONE)并通过 NOTIFY flow_work_done 通知提交的实例，
+ * 提交的实例一次取走(删除)所有属于它的结果，完成对应的 future。本实例领取到自己提交的节点时直接完成，不经过通知。
+ * <p>
+ * 所有数据库读写(提交、取消、写回结果、领取、获取结果)都由一个调度线程批量执行，负载越高批次越大；
+ * 另有一个监听线程保持一个连接执行 LISTEN，断线后按指数退避重连，重连后补做一次领取和获取结果(断线期间的通知已丢失)。
+ * 通知只用于及时唤醒，调度线程每隔 pollIntervalMillis 也会领取和获取结果一次，通知丢失不会导致节点执行丢失。
+ * <p>
+ * 领取的节点执行有租约：执行中的实例定期续约，实例失联(租约过期)后节点执行重新变为 PENDING 由其他实例领取，
+ * 被领取 {@value #MAX_ATTEMPTS} 次仍未完成时按执行失败通知提交的实例(之后由流程的重试机制处理)。
+ * 因此节点执行是"至少一次"的，分布式执行的节点应当是幂等的。
+ * <p>
+ * 表结构定义在 {@value #SCHEMA_RESOURCE} 中，由 liquibase 执行(见 db/changelog/1.0.2.xml)，
+ * {@link #start(WorkHandler)} 时也会执行同一个文件自动创建(如不存在)。
+ *
+ * @author yswang
+ */
+public class PgWorkQueue implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(PgWorkQueue.class);
+
+    public static final String TABLE = "flow_work_items";
+    public static final String READY_CHANNEL = "flow_work_ready";
+    public static final String DONE_CHANNEL = "flow_work_done";
+
+    public static final int DEFAULT_CLAIM_BATCH_SIZE = 16;
+    public static final long DEFAULT_LEASE_MILLIS = 60_000L;
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000L;
+
+    // 节点执行最多被领取的次数(执行它的实例失联后重新领取)
+    static final int MAX_ATTEMPTS = 3;
+    // 无人取走的结果(提交的实例已退出)保留的时间：租约的倍数
+    private static final int RESULT_RETENTION_LEASES = 10;
+    private static final int MAX_WRITE_BATCH = 500;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 100L;
+    private static final long INITIAL_RECONNECT_DELAY_MILLIS = 1000L;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 60_000L;
+    private static final long CLOSE_AWAIT_MILLIS = 5000L;
+
+    // 建表语句，与 liquibase 的 db/changelog/1.0.2.xml 共用
+    static final String SCHEMA_RESOURCE = "db/changelog/flow_work_items.sql";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE +
+            " (owner, run_id, node_id, node_key, node_type, node_data, inputs, workflow_input, variables, status)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'PENDING')";
+    private static final String CLAIM_SQL = "UPDATE " + TABLE +
+            " SET status = 'RUNNING', worker = ?, claimed_at = CURRENT_TIMESTAMP, attempts = attempts + 1" +
+            " WHERE id IN (SELECT id FROM " + TABLE + " WHERE status = 'PENDING' ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED)" +
+            " RETURNING id, owner, run_id, node_id, node_key, node_type, node_data, inputs, workflow_input, variables, attempts";
+    private static final String COMPLETE_SQL = "UPDATE " + TABLE +
+            " SET status = 'DONE', success = ?, skipped = ?, error_message = ?, next_nodes = ?, outputs = ?," +
+            " start_time = ?, end_time = ?, finished_at = CURRENT_TIMESTAMP" +
+            " WHERE id = ? AND worker = ? AND status = 'RUNNING'";
+    private static final String FETCH_SQL = "DELETE FROM " + TABLE + " WHERE owner = ? AND status = 'DONE'" +
+            " RETURNING id, success, skipped, error_message, next_nodes, outputs, start_time, end_time, worker";
+    private static final String DELETE_SQL = "DELETE FROM " + TABLE + " WHERE id = ANY(?)";
+    private static final String CANCEL_SQL = "DELETE FROM " + TABLE + " WHERE id = ANY(?) AND status = 'PENDING'";
+    private static final String RENEW_SQL = "UPDATE " + TABLE +
+            " SET claimed_at = CURRENT_TIMESTAMP WHERE worker = ? AND status = 'RUNNING'";
+    private static final String EXPIRED_CONDITION = " WHERE status = 'RUNNING'" +
+            " AND claimed_at < CURRENT_TIMESTAMP - ? * INTERVAL '1 millisecond'";
+    private static final String REQUEUE_SQL = "UPDATE " + TABLE +
+            " SET status = 'PENDING', worker = NULL, claimed_at = NULL" + EXPIRED_CONDITION + " AND attempts < ?";
+    private static final String ABANDON_SQL = "UPDATE " + TABLE +
+            " SET status = 'DONE', success = FALSE, skipped = FALSE, error_message = ?, finished_at = CURRENT_TIMESTAMP" +
+            EXPIRED_CONDITION + " AND attempts >= ? RETURNING owner";
+    private static final String PURGE_SQL = "DELETE FROM " + TABLE +
+            " WHERE status = 'DONE' AND finished_at < CURRENT_TIMESTAMP - ? * INTERVAL '1 millisecond'";
+    private static final String RELEASE_SQL = "UPDATE " + TABLE +
+            " SET status = 'PENDING', worker = NULL, claimed_at = NULL WHERE worker = ? AND status = 'RUNNING'";
+    private static final String DELETE_OWNED_SQL = "DELETE FROM " + TABLE + " WHERE owner = ? AND status <> 'RUNNING'";
+    private static final String NOTIFY_SQL = "SELECT pg_notify(?, ?)";
+
+    private final DataSource dataSource;
+    private final String instanceId;
+    private int claimBatchSize = DEFAULT_CLAIM_BATCH_SIZE;
+    private int maxClaimed = Runtime.getRuntime().availableProcessors() * 2;
+    private long leaseMillis = DEFAULT_LEASE_MILLIS;
+    private long pollIntervalMillis = DEFAULT_POLL_INTERVAL_MILLIS;
+
+    private volatile WorkHandler handler;
+    private Thread dispatcherThread;
+    private Thread listenerThread;
+    private volatile Connection listenConnection;
+    private volatile boolean started = false;
+    private volatile boolean closed = false;
+
+    // 本实例提交、等待结果的节点执行 <id, future>
+    private final ConcurrentMap<Long, CompletableFuture<WorkResult>> pending = new ConcurrentHashMap<>();
+    // 由调度线程批量处理：待写入的提交、待删除的已取消执行、其他实例提交的执行的结果、已完成的本实例提交的执行
+    private final Queue<Submission> submissions = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> cancellations = new ConcurrentLinkedQueue<>();
+    private final Queue<Completion> completions = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> finishedOwnItems = new ConcurrentLinkedQueue<>();
+
+    private final Object signal = new Object();
+    private boolean signalled = false;
+    private final AtomicBoolean claimRequested = new AtomicBoolean(true);
+    private final AtomicBoolean fetchRequested = new AtomicBoolean(true);
+    // 本实例领取、正在执行的节点数
+    private final AtomicInteger claimedNum = new AtomicInteger(0);
+    private final AtomicLong submittedNum = new AtomicLong(0);
+    private final AtomicLong executedNum = new AtomicLong(0);
+
+    /**
+     * @param dataSource PostgreSQL 数据源，监听通知会一直占用其中的一个连接
+     * @param instanceId 实例ID，在共享同一张表的实例中唯一(见 {@link #defaultInstanceId()})
+     */
+    public PgWorkQueue(DataSource dataSource, String instanceId) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("`DataSource` must not be null");
+        }
+        if (instanceId == null || instanceId.isBlank()) {
+            throw new IllegalArgumentException("`instanceId` must not be empty");
+        }
+        this.dataSource = dataSource;
+        this.instanceId = instanceId.trim();
+    }
+
+    /**
+     * 默认的实例ID：进程名(pid@host) + 随机后缀
+     */
+    public static String defaultInstanceId() {
+        return ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 每次最多领取的节点执行数
+     */
+    public void setClaimBatchSize(int claimBatchSize) {
+        this.claimBatchSize = Math.max(1, claimBatchSize);
+    }
+
+    /**
+     * 本实例同时执行的领取的节点数上限(通常与工作线程数相同)，达到上限后不再领取
+     */
+    public void setMaxClaimed(int maxClaimed) {
+        this.maxClaimed = Math.max(1, maxClaimed);
+    }
+
+    /**
+     * 领取的租约时长：执行中的实例每隔 1/3 租约续约一次，超过租约未续约视为实例失联
+     */
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = Math.max(1000L, leaseMillis);
+    }
+
+    /**
+     * 没有收到通知时，领取和获取结果的间隔
+     */
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = Math.max(10L, pollIntervalMillis);
+    }
+
+    public String getInstanceId() {
+        return this.instanceId;
+    }
+
+    /**
+     * 创建表和索引(如不存在)
+     */
+    public void initSchema() {
+        try (Connection conn = this.dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String ddl : loadSchema()) {
+                stmt.execute(ddl);
+            }
+        } catch (SQLException e) {
+            throw new FlowExecuteException("Failed to initialize work queue table", e);
+        }
+    }
+
+    /**
+     * 读取 {@value #SCHEMA_RESOURCE} 中以 ; 分隔的语句(忽略 -- 注释行)
+     */
+    static List<String> loadSchema() {
+        final String sql;
+        try (InputStream in = PgWorkQueue.class.getClassLoader().getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (in == null) {
+                throw new FlowExecuteException("Work queue schema not found: " + SCHEMA_RESOURCE);
+            }
+            sql = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new FlowExecuteException("Failed to read work queue schema: " + SCHEMA_RESOURCE, e);
+        }
+
+        final StringBuilder body = new StringBuilder(sql.length());
+        for (String line : sql.split("\\R")) {
+            if (!line.trim().startsWith("--")) {
+                body.append(line).append('\n');
+            }
+        }
+        final List<String> statements = new ArrayList<>();
+        for (String statement : body.toString().split(";")) {
+            if (!statement.isBlank()) {
+                statements.add(statement.trim());
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * 启动调度线程和监听线程，只能调用一次
+     *
+     * @param handler 执行领取的节点，为 null 时本实例只提交、不领取
+     */
+    public synchronized void start(WorkHandler handler) {
+        if (this.started) {
+            throw new IllegalStateException("PgWorkQueue already started");
+        }
+        initSchema();
+        this.handler = handler;
+        this.started = true;
+
+        this.dispatcherThread = new Thread(this::dispatchLoop, "flow-work-dispatcher");
+        this.dispatcherThread.setDaemon(true);
+        this.dispatcherThread.start();
+        this.listenerThread = new Thread(this::listenLoop, "flow-work-listener");
+        this.listenerThread.setDaemon(true);
+        this.listenerThread.start();
+        LOG.info(">> PgWorkQueue started: instanceId={}, maxClaimed={}, claimBatchSize={}, leaseMillis={}",
+                this.instanceId, handler != null ? this.maxClaimed : 0, this.claimBatchSize, this.leaseMillis);
+    }
+
+    /**
+     * 提交节点执行。数据在调用线程中编码，由调度线程批量写入
+     *
+     * @param item 节点执行
+     * @return 执行结果，取消它会删除尚未被领取的节点执行(已被领取的执行结果会被丢弃)
+     * @throws FlowExecuteException 队列未启动或已关闭，或者数据无法编码
+     */
+    public CompletableFuture<WorkResult> submit(WorkItem item) {
+        if (!this.started || this.closed) {
+            throw new FlowExecuteException("PgWorkQueue is not running");
+        }
+        final Submission submission;
+        try {
+            submission = new Submission(item.setOwner(this.instanceId));
+        } catch (IllegalArgumentException e) {
+            throw new FlowExecuteException("Node <" + item.getNodeId() + "> can not be distributed: " + e.getMessage(), e);
+        }
+        submission.future.whenComplete((r, e) -> {
+            if (submission.future.isCancelled()) {
+                cancel(submission);
+            }
+        });
+        this.submissions.add(submission);
+        this.submittedNum.incrementAndGet();
+        wakeUp();
+        return submission.future;
+    }
+
+    /**
+     * 等待结果的节点执行数(包括尚未写入的提交)
+     */
+    public int getPendingCount() {
+        return this.pending.size() + this.submissions.size();
+    }
+
+    /**
+     * 本实例领取、正在执行的节点数
+     */
+    public int getClaimedCount() {
+        return this.claimedNum.get();
+    }
+
+    public long getSubmittedCount() {
+        return this.submittedNum.get();
+    }
+
+    /**
+     * 本实例执行过的领取的节点数(包括其他实例提交的)
+     */
+    public long getExecutedCount() {
+        return this.executedNum.get();
+    }
+
+    /**
+     * 关闭队列：本实例领取但尚未完成的节点执行交还给其他实例，本实例提交的未完成的执行被删除并按失败处理
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!this.started || this.closed) {
+                this.closed = true;
+                return;
+            }
+            this.closed = true;
+        }
+        wakeUp();
+        closeQuietly(this.listenConnection);
+        join(this.dispatcherThread);
+        join(this.listenerThread);
+
+        try (Connection conn = this.dataSource.getConnection()) {
+            try (PreparedStatement release = conn.prepareStatement(RELEASE_SQL)) {
+                release.setString(1, this.instanceId);
+                if (release.executeUpdate() > 0) {
+                    notify(conn, READY_CHANNEL, "");
+                }
+            }
+            try (PreparedStatement delete = conn.prepareStatement(DELETE_OWNED_SQL)) {
+                delete.setString(1, this.instanceId);
+                delete.executeUpdate();
+            }
+        } catch (SQLException e) {
+            LOG.warn(">> WARNING: Failed to release work items of <{}>: {}", this.instanceId, e.getMessage());
+        }
+
+        final FlowExecuteException closedError = new FlowExecuteException("PgWorkQueue closed");
+        Submission submission;
+        while ((submission = this.submissions.poll()) != null) {
+            submission.future.completeExceptionally(closedError);
+        }
+        for (Long id : new ArrayList<>(this.pending.keySet())) {
+            final CompletableFuture<WorkResult> future = this.pending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(closedError);
+            }
+        }
+        LOG.info(">> PgWorkQueue closed: instanceId={}, submitted={}, executed={}",
+                this.instanceId, this.submittedNum.get(), this.executedNum.get());
+    }
+
+    private void cancel(Submission submission) {
+        final long id = submission.id;
+        // 尚未写入的提交在写入后检查是否已取消
+        if (id > 0 && this.pending.remove(id) != null) {
+            this.cancellations.add(id);
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        synchronized (this.signal) {
+            this.signalled = true;
+            this.signal.notifyAll();
+        }
+    }
+
+    /**
+     * 等待唤醒
+     * @return true - 等待超时(没有被唤醒)
+     */
+    private boolean awaitSignal() {
+        synchronized (this.signal) {
+            if (!this.signalled) {
+                try {
+                    this.signal.wait(this.pollIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final boolean woken = this.signalled;
+            this.signalled = false;
+            return !woken;
+        }
+    }
+
+    private void dispatchLoop() {
+        long retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+        long nextMaintenance = 0;
+        while (!this.closed) {
+            final boolean timedOut = awaitSignal();
+            if (this.closed) {
+                break;
+            }
+            try {
+                flushSubmissions();
+                flushCancellations();
+                flushCompletions();
+                final boolean fetch = this.fetchRequested.getAndSet(false);
+                if (fetch || (timedOut && !this.pending.isEmpty())) {
+                    fetchResults();
+                }
+                if (this.claimRequested.getAndSet(false) || timedOut) {
+                    claimWork();
+                }
+                final long now = System.currentTimeMillis();
+                if (now >= nextMaintenance) {
+                    maintainLeases();
+                    nextMaintenance = now + this.leaseMillis / 3;
+                }
+                retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+            } catch (Exception e) {
+                LOG.error(">> ERROR: Work queue <{}> dispatch failed, retry in {}ms: {}", this.instanceId, retryDelay, e.getMessage());
+                this.claimRequested.set(true);
+                this.fetchRequested.set(true);
+                sleep(retryDelay);
+                retryDelay = Math.min(retryDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * 批量写入提交的节点执行，并在同一个事务中通知所有实例
+     */
+    private void flushSubmissions() throws SQLException {
+        final List<Submission> batch = drain(this.submissions);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            inTransaction(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL, new String[]{"id"})) {
+                    for (Submission s : batch) {
+                        final WorkItem item = s.item;
+                        ps.setString(1, item.getOwner());
+                        ps.setString(2, item.getRunId());
+                        ps.setString(3, item.getNodeId());
+                        ps.setString(4, item.getNodeKey());
+                        ps.setString(5, item.getNodeType());
+                        ps.setBytes(6, s.nodeData);
+                        ps.setBytes(7, s.inputs);
+                        ps.setBytes(8, s.workflowInput);
+                        ps.setBytes(9, s.variables);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        int i = 0;
+                        while (keys.next()) {
+                            batch.get(i++).item.setId(keys.getLong(1));
+                        }
+                    }
+                }
+                // 提交事务后节点执行才可见，结果一定在登记之后到达
+                for (Submission s : batch) {
+                    this.pending.put(s.item.getId(), s.future);
+                }
+                notify(conn, READY_CHANNEL, "");
+            });
+        } catch (SQLException | RuntimeException e) {
+            for (Submission s : batch) {
+                this.pending.remove(s.item.getId());
+                s.future.completeExceptionally(new FlowExecuteException("Failed to submit work item", e));
+            }
+            throw e;
+        }
+        for (Submission s : batch) {
+            s.id = s.item.getId();
+            if (s.future.isCancelled()) {
+                cancel(s);
+            }
+        }
+        // 本实例随后直接领取，不必等待自己发出的通知
+        this.claimRequested.set(true);
+    }
+
+    private void flushCancellations() throws SQLException {
+        final List<Long> ids = drain(this.cancellations);
+        if (!ids.isEmpty()) {
+            executeForIds(CANCEL_SQL, ids);
+        }
+    }
+
+    /**
+     * 批量写回其他实例提交的节点执行的结果并通知提交的实例，删除已完成的本实例提交的执行
+     */
+    private void flushCompletions() throws SQLException {
+        final List<Long> finished = drain(this.finishedOwnItems);
+        if (!finished.isEmpty()) {
+            executeForIds(DELETE_SQL, finished);
+        }
+
+        final List<Completion> batch = drain(this.completions);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            inTransaction(conn -> {
+                final Set<String> owners = new HashSet<>();
+                try (PreparedStatement ps = conn.prepareStatement(COMPLETE_SQL)) {
+                    for (Completion c : batch) {
+                        ps.setBoolean(1, c.result.isSuccess());
+                        ps.setBoolean(2, c.result.isSkipped());
+                        ps.setString(3, c.result.getErrorMessage());
+                        ps.setBytes(4, c.nextNodes);
+                        ps.setBytes(5, c.outputs);
+                        ps.setTimestamp(6, toTimestamp(c.result.getStartTime()));
+                        ps.setTimestamp(7, toTimestamp(c.result.getEndTime()));
+                        ps.setLong(8, c.result.getId());
+                        ps.setString(9, this.instanceId);
+                        ps.addBatch();
+                        owners.add(c.owner);
+                    }
+                    ps.executeBatch();
+                }
+                for (String owner : owners) {
+                    notify(conn, DONE_CHANNEL, owner);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            // 下一轮重试，一直失败时租约过期后由其他实例重新执行
+            this.completions.addAll(batch);
+            throw e;
+        }
+    }
+
+    /**
+     * 取走所有属于本实例的结果
+     */
+    private void fetchResults() throws SQLException {
+        final List<WorkResult> results = new ArrayList<>();
+        try (Connection conn = this.dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(FETCH_SQL)) {
+            ps.setString(1, this.instanceId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    final WorkResult result = new WorkResult()
+                            .setId(rs.getLong(1))
+                            .setSuccess(rs.getBoolean(2))
+                            .setSkipped(rs.getBoolean(3))
+                            .setErrorMessage(rs.getString(4))
+                            .setStartTime(toInstant(rs.getTimestamp(7)))
+                            .setEndTime(toInstant(rs.getTimestamp(8)))
+                            .setWorker(rs.getString(9));
+                    try {
+                        result.setNextNodes(CheckpointCodec.decodeStrings(rs.getBytes(5)))
+                                .setOutputs(CheckpointCodec.decodeMap(rs.getBytes(6)));
+                    } catch (IllegalArgumentException e) {
+                        result.setSuccess(false).setErrorMessage(e.getMessage());
+                    }
+                    results.add(result);
+                }
+            }
+        }
+        for (WorkResult result : results) {
+            final CompletableFuture<WorkResult> future = this.pending.remove(result.getId());
+            if (future != null) {
+                future.complete(result);
+            }
+        }
+    }
+
+    /**
+     * 在执行能力范围内成批领取节点执行，交给 {@link WorkHandler} 执行
+     */
+    private void claimWork() throws SQLException {
+        final WorkHandler h = this.handler;
+        if (h == null) {
+            return;
+        }
+        while (!this.closed) {
+            final int limit = Math.min(this.maxClaimed - this.claimedNum.get(), this.claimBatchSize);
+            if (limit <= 0) {
+                return;
+            }
+            final List<WorkItem> items = new ArrayList<>(limit);
+            try (Connection conn = this.dataSource.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(CLAIM_SQL)) {
+                ps.setString(1, this.instanceId);
+                ps.setInt(2, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        final WorkItem item = new WorkItem()
+                                .setId(rs.getLong(1))
+                                .setOwner(rs.getString(2))
+                                .setRunId(rs.getString(3))
+                                .setNodeId(rs.getString(4))
+                                .setNodeKey(rs.getString(5))
+                                .setNodeType(rs.getString(6))
+                                .setAttempts(rs.getInt(11));
+                        try {
+                            item.setNodeData(CheckpointCodec.decodeMap(rs.getBytes(7)))
+                                    .setInputs(decodeInputs(rs.getBytes(8)))
+                                    .setWorkflowInput(CheckpointCodec.decode(rs.getBytes(9)))
+                                    .setVariables(CheckpointCodec.decodeMap(rs.getBytes(10)));
+                        } catch (IllegalArgumentException e) {
+                            this.claimedNum.incrementAndGet();
+                            onExecuted(item, WorkResult.failed(e.getMessage()), null);
+                            continue;
+                        }
+                        items.add(item);
+                    }
+                }
+            }
+
+            for (WorkItem item : items) {
+                this.claimedNum.incrementAndGet();
+                CompletableFuture<WorkResult> future;
+                try {
+                    future = h.handle(item);
+                } catch (Exception e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                future.whenComplete((result, error) -> onExecuted(item, result, error));
+            }
+            if (items.size() < limit) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 领取的节点执行结束(在执行节点的线程中调用)
+     */
+    private void onExecuted(WorkItem item, WorkResult result, Throwable error) {
+        this.claimedNum.decrementAndGet();
+        this.executedNum.incrementAndGet();
+        if (error != null) {
+            final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            result = WorkResult.failed(cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName());
+        } else if (result == null) {
+            result = new WorkResult().setSuccess(true);
+        }
+        result.setId(item.getId()).setWorker(this.instanceId);
+
+        if (this.instanceId.equals(item.getOwner())) {
+            // 本实例提交的执行：直接完成，不经过数据库传递结果(输出数据也不需要编码)
+            this.finishedOwnItems.add(item.getId());
+            final CompletableFuture<WorkResult> future = this.pending.remove(item.getId());
+            if (future != null) {
+                future.complete(result);
+            }
+        } else {
+            this.completions.add(new Completion(item.getOwner(), result));
+        }
+        this.claimRequested.set(true);
+        wakeUp();
+    }
+
+    /**
+     * 续约本实例领取的节点执行，将失联实例的节点执行交还队列，清理无人取走的结果
+     */
+    private void maintainLeases() throws SQLException {
+        try (Connection conn = this.dataSource.getConnection()) {
+            if (this.claimedNum.get() > 0) {
+                try (PreparedStatement ps = conn.prepareStatement(RENEW_SQL)) {
+                    ps.setString(1, this.instanceId);
+                    ps.executeUpdate();
+                }
+            }
+
+            final Set<String> owners = new HashSet<>();
+            try (PreparedStatement ps = conn.prepareStatement(ABANDON_SQL)) {
+                ps.setString(1, "Work item abandoned: claimed " + MAX_ATTEMPTS + " times by lost workers");
+                ps.setLong(2, this.leaseMillis);
+                ps.setInt(3, MAX_ATTEMPTS);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        owners.add(rs.getString(1));
+                    }
+                }
+            }
+            for (String owner : owners) {
+                notify(conn, DONE_CHANNEL, owner);
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(REQUEUE_SQL)) {
+                ps.setLong(1, this.leaseMillis);
+                ps.setInt(2, MAX_ATTEMPTS);
+                final int requeued = ps.executeUpdate();
+                if (requeued > 0) {
+                    LOG.warn(">> WARNING: {} work items of lost workers requeued", requeued);
+                    notify(conn, READY_CHANNEL, "");
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(PURGE_SQL)) {
+                ps.setLong(1, this.leaseMillis * RESULT_RETENTION_LEASES);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * 保持一个连接监听通知，断线后按指数退避重连
+     */
+    private void listenLoop() {
+        long retryDelay = INITIAL_RECONNECT_DELAY_MILLIS;
+        while (!this.closed) {
+            try (Connection conn = this.dataSource.getConnection()) {
+                this.listenConnection = conn;
+                conn.setAutoCommit(true);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + READY_CHANNEL);
+                    stmt.execute("LISTEN " + DONE_CHANNEL);
+                }
+                final PGConnection pgConn = conn.unwrap(PGConnection.class);
+                retryDelay = INITIAL_RECONNECT_DELAY_MILLIS;
+
+                // 重新订阅后补做一次领取和获取结果，断线期间的通知已丢失
+                this.claimRequested.set(true);
+                this.fetchRequested.set(true);
+                wakeUp();
+
+                while (!this.closed) {
+                    // 心跳查询，检测连接是否有效
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.executeQuery("SELECT 1").close();
+                    }
+                    final PGNotification[] notifications = pgConn.getNotifications((int) this.pollIntervalMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        onNotifications(notifications);
+                    }
+                }
+            } catch (SQLException e) {
+                if (this.closed) {
+                    break;
+                }
+                LOG.warn(">> WARNING: Work queue listener of <{}> disconnected, reconnect in {}ms: {}",
+                        this.instanceId, retryDelay, e.getMessage());
+                sleep(retryDelay);
+                retryDelay = Math.min(retryDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            } finally {
+                this.listenConnection = null;
+            }
+        }
+    }
+
+    private void onNotifications(PGNotification[] notifications) {
+        boolean wake = false;
+        for (PGNotification n : notifications) {
+            if (READY_CHANNEL.equals(n.getName())) {
+                this.claimRequested.set(true);
+                wake = true;
+            } else if (DONE_CHANNEL.equals(n.getName()) && this.instanceId.equals(n.getParameter())) {
+                this.fetchRequested.set(true);
+                wake = true;
+            }
+        }
+        if (wake) {
+            wakeUp();
+        }
+    }
+
+    private void executeForIds(String sql, List<Long> ids) throws SQLException {
+        try (Connection conn = this.dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setArray(1, conn.createArrayOf("bigint", ids.toArray()));
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * 在一个事务中执行，失败时回滚
+     */
+    private void inTransaction(SqlCallback callback) throws SQLException {
+        try (Connection conn = this.dataSource.getConnection()) {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                callback.doInConnection(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static void notify(Connection conn, String channel, String payload) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(NOTIFY_SQL)) {
+            ps.setString(1, channel);
+            ps.setString(2, payload);
+            ps.execute();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<Object>> decodeInputs(byte[] data) {
+        final Map<String, List<Object>> inputs = new LinkedHashMap<>();
+        CheckpointCodec.decodeMap(data).forEach((port, payloads) ->
+                inputs.put(port, payloads instanceof List ? (List<Object>) payloads : Collections.singletonList(payloads)));
+        return inputs;
+    }
+
+    private static <T> List<T> drain(Queue<T> queue) {
+        final List<T> batch = new ArrayList<>();
+        T e;
+        while (batch.size() < MAX_WRITE_BATCH && (e = queue.poll()) != null) {
+            batch.add(e);
+        }
+        return batch;
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toInstant() : null;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void join(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(CLOSE_AWAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * 已编码、待写入的提交
+     */
+    private static final class Submission {
+        final WorkItem item;
+        final byte[] nodeData;
+        final byte[] inputs;
+        final byte[] workflowInput;
+        final byte[] variables;
+        final CompletableFuture<WorkResult> future = new CompletableFuture<>();
+        // 写入后的ID，写入前为 0
+        volatile long id;
+
+        Submission(WorkItem item) {
+            this.item = item;
+            this.nodeData = CheckpointCodec.encode(item.getNodeData());
+            this.inputs = CheckpointCodec.encode(item.getInputs());
+            this.workflowInput = CheckpointCodec.encode(item.getWorkflowInput());
+            this.variables = CheckpointCodec.encode(item.getVariables());
+        }
+    }
+
+    /**
+     * 已编码、待写回的其他实例提交的节点执行的结果
+     */
+    private static final class Completion {
+        final String owner;
+        final WorkResult result;
+        final byte[] nextNodes;
+        final byte[] outputs;
+
+        Completion(String owner, WorkResult result) {
+            byte[] nextNodes = null;
+            byte[] outputs = null;
+            try {
+                nextNodes = result.getNextNodes() != null ? CheckpointCodec.encode(new ArrayList<>(result.getNextNodes())) : null;
+                outputs = CheckpointCodec.encode(result.getOutputs());
+            } catch (IllegalArgumentException e) {
+                result = WorkResult.failed(e.getMessage()).setId(result.getId()).setWorker(result.getWorker())
+                        .setStartTime(result.getStartTime()).setEndTime(result.getEndTime());
+            }
+            this.owner = owner;
+            this.result = result;
+            this.nextNodes = nextNodes;
+            this.outputs = outputs;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCallback {
+        void doInConnection(Connection conn) throws SQLException;
+    }
+}
@@ -0,0 +1,22 @@
+package com.myweb.workflow.distributed;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 执行从分布式执行队列中领取的节点.
+ *
+ * @author yswang
+ */
+@FunctionalInterface
+public interface WorkHandler {
+
+    /**
+     * 执行节点，不能阻塞调用线程(队列的调度线程)：应在自己的线程池中执行并返回 future。
+     * 节点执行失败时返回失败的结果，future 异常完成同样按执行失败处理。
+     *
+     * @param item 领取的节点执行
+     * @return 执行结果
+     */
+    CompletableFuture<WorkResult> handle(WorkItem item);
+
+}
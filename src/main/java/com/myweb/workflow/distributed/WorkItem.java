@@ -0,0 +1,144 @@
+package com.myweb.workflow.distributed;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分布式执行队列中的一个节点执行(一次尝试).
+ * <p>
+ * 包含执行节点所需的全部数据：节点定义(类型和配置)、已组装的输入、流程输入和执行上下文中的数据，
+ * 领取它的实例不需要知道流程图，按节点定义创建节点实例后直接执行。
+ * 数据使用 msgpack 编码存储，解码后为通用类型(Map/List/String/Number/byte[] 等)。
+ *
+ * @author yswang
+ */
+public class WorkItem {
+    private long id;
+    // 提交的实例，执行结果通知给它
+    private String owner;
+    private String runId;
+    private String nodeId;
+    // 节点定义的 key(节点ID + 类型 + 配置的哈希)，领取的实例按它缓存节点实例
+    private String nodeKey;
+    private String nodeType;
+    private Map<String, Object> nodeData = Collections.emptyMap();
+    // 节点的输入<Port, Payloads>
+    private Map<String, List<Object>> inputs = Collections.emptyMap();
+    private Object workflowInput;
+    // 执行上下文中的数据
+    private Map<String, Object> variables = Collections.emptyMap();
+    // 被领取的次数(包括本次)
+    private int attempts;
+
+    public long getId() {
+        return id;
+    }
+
+    public WorkItem setId(long id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public WorkItem setOwner(String owner) {
+        this.owner = owner;
+        return this;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public WorkItem setRunId(String runId) {
+        this.runId = runId;
+        return this;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public WorkItem setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+        return this;
+    }
+
+    public String getNodeKey() {
+        return nodeKey;
+    }
+
+    public WorkItem setNodeKey(String nodeKey) {
+        this.nodeKey = nodeKey;
+        return this;
+    }
+
+    public String getNodeType() {
+        return nodeType;
+    }
+
+    public WorkItem setNodeType(String nodeType) {
+        this.nodeType = nodeType;
+        return this;
+    }
+
+    public Map<String, Object> getNodeData() {
+        return nodeData;
+    }
+
+    public WorkItem setNodeData(Map<String, Object> nodeData) {
+        this.nodeData = nodeData != null ? nodeData : Collections.emptyMap();
+        return this;
+    }
+
+    public Map<String, List<Object>> getInputs() {
+        return inputs;
+    }
+
+    public WorkItem setInputs(Map<String, List<Object>> inputs) {
+        this.inputs = inputs != null ? inputs : Collections.emptyMap();
+        return this;
+    }
+
+    public Object getWorkflowInput() {
+        return workflowInput;
+    }
+
+    public WorkItem setWorkflowInput(Object workflowInput) {
+        this.workflowInput = workflowInput;
+        return this;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    public WorkItem setVariables(Map<String, Object> variables) {
+        this.variables = variables != null ? variables : Collections.emptyMap();
+        return this;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public WorkItem setAttempts(int attempts) {
+        this.attempts = attempts;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkItem{" +
+                "id=" + id +
+                ", owner='" + owner + '\'' +
+                ", runId='" + runId + '\'' +
+                ", nodeId='" + nodeId + '\'' +
+                ", nodeType='" + nodeType + '\'' +
+                ", attempts=" + attempts +
+                '}';
+    }
+}
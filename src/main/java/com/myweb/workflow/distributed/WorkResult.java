@@ -0,0 +1,122 @@
+package com.myweb.workflow.distributed;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 分布式执行队列中一个节点执行的结果.
+ *
+ * @author yswang
+ */
+public class WorkResult {
+    private long id;
+    private boolean success;
+    private boolean skipped;
+    private String errorMessage;
+    // 待激活的后续节点，null 表示激活所有下游节点
+    private Collection<String> nextNodes;
+    // 节点的输出<Port, Payload>
+    private Map<String, Object> outputs = Collections.emptyMap();
+    private Instant startTime;
+    private Instant endTime;
+    // 执行节点的实例
+    private String worker;
+
+    public static WorkResult failed(String errorMessage) {
+        return new WorkResult().setSuccess(false).setErrorMessage(errorMessage);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public WorkResult setId(long id) {
+        this.id = id;
+        return this;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public WorkResult setSuccess(boolean success) {
+        this.success = success;
+        return this;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    public WorkResult setSkipped(boolean skipped) {
+        this.skipped = skipped;
+        return this;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public WorkResult setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+        return this;
+    }
+
+    public Collection<String> getNextNodes() {
+        return nextNodes;
+    }
+
+    public WorkResult setNextNodes(Collection<String> nextNodes) {
+        this.nextNodes = nextNodes;
+        return this;
+    }
+
+    public Map<String, Object> getOutputs() {
+        return outputs;
+    }
+
+    public WorkResult setOutputs(Map<String, Object> outputs) {
+        this.outputs = outputs != null ? outputs : Collections.emptyMap();
+        return this;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public WorkResult setStartTime(Instant startTime) {
+        this.startTime = startTime;
+        return this;
+    }
+
+    public Instant getEndTime() {
+        return endTime;
+    }
+
+    public WorkResult setEndTime(Instant endTime) {
+        this.endTime = endTime;
+        return this;
+    }
+
+    public String getWorker() {
+        return worker;
+    }
+
+    public WorkResult setWorker(String worker) {
+        this.worker = worker;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkResult{" +
+                "id=" + id +
+                ", success=" + success +
+                ", skipped=" + skipped +
+                ", errorMessage='" + errorMessage + '\'' +
+                ", worker='" + worker + '\'' +
+                '}';
+    }
+}
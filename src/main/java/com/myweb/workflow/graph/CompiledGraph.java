@@ -0,0 +1,312 @@
+package com.myweb.workflow.graph;
+
+import java.util.*;
+
+/**
+ * 编译后的DAG图(执行计划).
+ * <p>
+ * 在图初始化时一次性将节点ID映射为连续的 int 下标，正向/反向邻接关系使用
+ * CSR(Compressed Sparse Row) 格式的 int[] 数组存储，入度使用 int[] 存储。
+ * 执行器在运行期间只基于 int 下标访问，避免字符串哈希和装箱集合带来的开销。
+ * <p>
+ * 以节点 i 的下游节点为例，其下标范围为：
+ * <pre>
+ * downstreamTargets[downstreamOffsets[i] .. downstreamOffsets[i + 1])
+ * </pre>
+ * 此对象创建后不可变，可以被多个执行器安全共享。
+ *
+ * @author yswang
+ */
+public final class CompiledGraph {
+    private static final int[] EMPTY_INTS = new int[0];
+
+    private final String[] nodeIds;
+    private final GNode[] nodes;
+    // 节点ID -> 下标，仅用于边界处(如外部传入节点ID)的转换
+    private final Map<String, Integer> nodeIndexMap;
+
+    // 正向邻接(CSR)：fromNode -> [toNode1, toNode2, ...]，已去重
+    private final int[] downstreamOffsets;
+    private final int[] downstreamTargets;
+    // 反向邻接(CSR)：toNode -> [fromNode1, fromNode2, ...]，已去重
+    private final int[] upstreamOffsets;
+    private final int[] upstreamSources;
+    // 每个节点的原始入度(与上游节点绑定，不与边绑定)
+    private final int[] inDegree;
+    // 目标节点 -> 指向它的输入端口信息(CSR)
+    private final int[] inputOffsets;
+    private final GNodeInput[] inputs;
+
+    private CompiledGraph(String[] nodeIds, GNode[] nodes, Map<String, Integer> nodeIndexMap,
+                          int[] downstreamOffsets, int[] downstreamTargets,
+                          int[] upstreamOffsets, int[] upstreamSources,
+                          int[] inDegree, int[] inputOffsets, GNodeInput[] inputs) {
+        this.nodeIds = nodeIds;
+        this.nodes = nodes;
+        this.nodeIndexMap = nodeIndexMap;
+        this.downstreamOffsets = downstreamOffsets;
+        this.downstreamTargets = downstreamTargets;
+        this.upstreamOffsets = upstreamOffsets;
+        this.upstreamSources = upstreamSources;
+        this.inDegree = inDegree;
+        this.inputOffsets = inputOffsets;
+        this.inputs = inputs;
+    }
+
+    /**
+     * 将节点和边编译为 CSR 结构
+     * @param nodeList 节点列表(节点ID必须唯一)
+     * @param edgeList 边列表(指向不存在节点的边将被忽略)
+     * @return 编译后的图
+     */
+    static CompiledGraph compile(List<GNode> nodeList, List<GEdge> edgeList) {
+        final int n = nodeList != null ? nodeList.size() : 0;
+        final String[] nodeIds = new String[n];
+        final GNode[] nodes = new GNode[n];
+        final Map<String, Integer> nodeIndexMap = new HashMap<>(Math.max(16, (int) (n / 0.75f) + 1));
+
+        for (int i = 0; i < n; i++) {
+            GNode node = nodeList.get(i);
+            if (nodeIndexMap.putIfAbsent(node.getId(), i) != null) {
+                throw new IllegalStateException("DAG图中存在重复的节点ID: " + node.getId());
+            }
+            nodeIds[i] = node.getId();
+            nodes[i] = node;
+        }
+
+        // 先将合法的边转换为 (from, to) 下标对
+        final int edgeCount = edgeList != null ? edgeList.size() : 0;
+        final int[] edgeFrom = new int[edgeCount];
+        final int[] edgeTo = new int[edgeCount];
+        final GEdge[] validEdges = new GEdge[edgeCount];
+        int m = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            GEdge edge = edgeList.get(e);
+            Integer from = nodeIndexMap.get(edge.getSource());
+            Integer to = nodeIndexMap.get(edge.getTarget());
+            if (from != null && to != null) {
+                edgeFrom[m] = from;
+                edgeTo[m] = to;
+                validEdges[m] = edge;
+                m++;
+            }
+        }
+
+        // 构建正向/反向 CSR
+        // 注意：如果 A -> B 有多条边（比如连接不同的端口），只保留一条依赖关系，
+        // 入度采用和上游节点绑定，不和边绑定；这样当 A 执行完毕，B 的入度减1，当入度变为0时，B 就会加入到可执行队列中。
+        final int[] downstreamOffsets = new int[n + 1];
+        final int[] downstreamTargets = buildDedupCsr(n, m, edgeFrom, edgeTo, downstreamOffsets);
+        final int[] upstreamOffsets = new int[n + 1];
+        final int[] upstreamSources = buildDedupCsr(n, m, edgeTo, edgeFrom, upstreamOffsets);
+
+        final int[] inDegree = new int[n];
+        for (int i = 0; i < n; i++) {
+            inDegree[i] = upstreamOffsets[i + 1] - upstreamOffsets[i];
+        }
+
+        // 构建输入端口 CSR (同一个 source/sourcePort/targetPort 只保留一条)
+        final int[] inputOffsets = new int[n + 1];
+        final List<GNodeInput> inputList = new ArrayList<>(m);
+        final int[] edgeOrder = sortedEdgeOrderByTarget(n, m, edgeTo);
+        final Set<GNodeInput> seenInputs = new HashSet<>();
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            inputOffsets[i] = inputList.size();
+            seenInputs.clear();
+            while (pos < m && edgeTo[edgeOrder[pos]] == i) {
+                final int e = edgeOrder[pos++];
+                GNodeInput input = new GNodeInput(edgeFrom[e], nodeIds[edgeFrom[e]],
+                        validEdges[e].getSourceHandle(), validEdges[e].getTargetHandle());
+                if (seenInputs.add(input)) {
+                    inputList.add(input);
+                }
+            }
+        }
+        inputOffsets[n] = inputList.size();
+
+        return new CompiledGraph(nodeIds, nodes, nodeIndexMap,
+                downstreamOffsets, downstreamTargets, upstreamOffsets, upstreamSources,
+                inDegree, inputOffsets, inputList.toArray(new GNodeInput[0]));
+    }
+
+    /**
+     * 按 rows 分组构建去重后的 CSR 列数组，并写入 offsets
+     */
+    private static int[] buildDedupCsr(int n, int m, int[] rows, int[] cols, int[] offsets) {
+        final int[] counts = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            counts[rows[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            counts[i + 1] += counts[i];
+        }
+
+        final int[] raw = new int[m];
+        final int[] cursor = Arrays.copyOf(counts, n);
+        for (int e = 0; e < m; e++) {
+            raw[cursor[rows[e]]++] = cols[e];
+        }
+
+        // 每一行排序后压缩去重
+        int write = 0;
+        for (int i = 0; i < n; i++) {
+            final int from = counts[i];
+            final int to = counts[i + 1];
+            offsets[i] = write;
+            Arrays.sort(raw, from, to);
+            for (int k = from; k < to; k++) {
+                if (k == from || raw[k] != raw[k - 1]) {
+                    raw[write++] = raw[k];
+                }
+            }
+        }
+        offsets[n] = write;
+
+        return write == m ? raw : Arrays.copyOf(raw, write);
+    }
+
+    /**
+     * 按目标节点分组(保持原始边顺序)的边下标
+     */
+    private static int[] sortedEdgeOrderByTarget(int n, int m, int[] edgeTo) {
+        final int[] counts = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            counts[edgeTo[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            counts[i + 1] += counts[i];
+        }
+        final int[] order = new int[m];
+        for (int e = 0; e < m; e++) {
+            order[counts[edgeTo[e]]++] = e;
+        }
+        return order;
+    }
+
+    /**
+     * 节点数量
+     */
+    public int size() {
+        return this.nodeIds.length;
+    }
+
+    /**
+     * 根据节点ID获取节点下标
+     * @param nodeId 节点ID
+     * @return 节点下标，如果节点不存在则返回 -1
+     */
+    public int indexOf(String nodeId) {
+        if (nodeId == null) {
+            return -1;
+        }
+        Integer index = this.nodeIndexMap.get(nodeId);
+        return index != null ? index : -1;
+    }
+
+    public String getNodeId(int index) {
+        return this.nodeIds[index];
+    }
+
+    public GNode getNode(int index) {
+        return this.nodes[index];
+    }
+
+    /**
+     * 节点的原始入度
+     */
+    public int getInDegree(int index) {
+        return this.inDegree[index];
+    }
+
+    /**
+     * 所有节点的原始入度拷贝
+     */
+    public int[] copyInDegrees() {
+        return this.inDegree.clone();
+    }
+
+    public int getDownstreamStart(int index) {
+        return this.downstreamOffsets[index];
+    }
+
+    public int getDownstreamEnd(int index) {
+        return this.downstreamOffsets[index + 1];
+    }
+
+    /**
+     * 按 CSR 位置获取下游节点下标，位置范围为 [getDownstreamStart(i), getDownstreamEnd(i))
+     */
+    public int getDownstreamAt(int position) {
+        return this.downstreamTargets[position];
+    }
+
+    public int getDownstreamCount(int index) {
+        return this.downstreamOffsets[index + 1] - this.downstreamOffsets[index];
+    }
+
+    public int getUpstreamStart(int index) {
+        return this.upstreamOffsets[index];
+    }
+
+    public int getUpstreamEnd(int index) {
+        return this.upstreamOffsets[index + 1];
+    }
+
+    /**
+     * 按 CSR 位置获取上游节点下标，位置范围为 [getUpstreamStart(i), getUpstreamEnd(i))
+     */
+    public int getUpstreamAt(int position) {
+        return this.upstreamSources[position];
+    }
+
+    public int getUpstreamCount(int index) {
+        return this.upstreamOffsets[index + 1] - this.upstreamOffsets[index];
+    }
+
+    /**
+     * 节点的下游节点下标(拷贝)
+     */
+    public int[] getDownstreams(int index) {
+        final int from = this.downstreamOffsets[index];
+        final int to = this.downstreamOffsets[index + 1];
+        return from == to ? EMPTY_INTS : Arrays.copyOfRange(this.downstreamTargets, from, to);
+    }
+
+    /**
+     * 节点的上游节点下标(拷贝)
+     */
+    public int[] getUpstreams(int index) {
+        final int from = this.upstreamOffsets[index];
+        final int to = this.upstreamOffsets[index + 1];
+        return from == to ? EMPTY_INTS : Arrays.copyOfRange(this.upstreamSources, from, to);
+    }
+
+    /**
+     * 节点的上游输入端口信息
+     */
+    public List<GNodeInput> getInputs(int index) {
+        final int from = this.inputOffsets[index];
+        final int to = this.inputOffsets[index + 1];
+        if (from == to) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(this.inputs).subList(from, to));
+    }
+
+    public int getInputStart(int index) {
+        return this.inputOffsets[index];
+    }
+
+    public int getInputEnd(int index) {
+        return this.inputOffsets[index + 1];
+    }
+
+    /**
+     * 按 CSR 位置获取输入端口信息，位置范围为 [getInputStart(i), getInputEnd(i))
+     */
+    public GNodeInput getInputAt(int position) {
+        return this.inputs[position];
+    }
+
+}
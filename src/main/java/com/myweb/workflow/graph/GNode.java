@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import org.springframework.util.StringUtils;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -27,9 +28,9 @@ public class GNode implements Cloneable {
      */
     private Map<String, Object> data = new HashMap<>();
 
-    // 用于接收其它附属属性(比如：position,width,height等)
+    // 用于接收其它附属属性(比如：position,width,height等)，没有附属属性时为 null，不为每个节点分配空 Map
     @JsonAnySetter
-    private Map<String, Object> dynamicProps = new LinkedHashMap<>();
+    private Map<String, Object> dynamicProps;
 
     public String getId() {
         return id;
@@ -57,7 +58,7 @@ public class GNode implements Cloneable {
 
     @JsonAnyGetter
     public Map<String, Object> getDynamicProps() {
-        return dynamicProps;
+        return dynamicProps != null ? dynamicProps : Collections.emptyMap();
     }
 
     public void setDynamicProps(Map<String, Object> dynamicProps) {
@@ -75,7 +76,9 @@ public class GNode implements Cloneable {
         if (data != null) {
             cloned.setData(new HashMap<>(data));
         }
-        cloned.setDynamicProps(new LinkedHashMap<>(dynamicProps));
+        if (dynamicProps != null) {
+            cloned.setDynamicProps(new LinkedHashMap<>(dynamicProps));
+        }
         return cloned;
     }
 
@@ -6,18 +6,25 @@ import java.util.Objects;
  * 节点的输入信息采集
  */
 public class GNodeInput {
+    // 源节点在编译后图中的下标
+    private final int sourceNodeIndex;
     private final String sourceNodeId;
     // 源节点的输出端口
     private final String sourcePort;
     // 目标节点的输入端口
     private final String targetPort;
 
-    GNodeInput(String sourceNodeId, String sourcePort, String targetPort) {
+    GNodeInput(int sourceNodeIndex, String sourceNodeId, String sourcePort, String targetPort) {
+        this.sourceNodeIndex = sourceNodeIndex;
         this.sourceNodeId = sourceNodeId;
         this.sourcePort = sourcePort;
         this.targetPort = targetPort;
     }
 
+    public int getSourceNodeIndex() {
+        return sourceNodeIndex;
+    }
+
     public String getSourceNodeId() {
         return sourceNodeId;
     }
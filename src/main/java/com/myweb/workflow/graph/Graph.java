@@ -2,26 +2,28 @@ package com.myweb.workflow.graph;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * DAG图
  * @author yswang
  */
 public class Graph {
-    private final ConcurrentMap<String, GNode> nodesMap = new ConcurrentHashMap<>();
-    // 正向邻接表：fromNode -> [toNode1, toNode2, ...]
-    private final ConcurrentMap<String, Set<String>> adjacencyList = new ConcurrentHashMap<>();
-    // 反向邻接表：toNode -> [fromNode1, fromNode2, ...]
-    private final ConcurrentMap<String, Set<String>> reverseAdjacencyList = new ConcurrentHashMap<>();
-    // 初始化每个节点的入度 (原始入度，不可变)
-    private final ConcurrentMap<String, Integer> nodeInDegree = new ConcurrentHashMap<>();
-    // 目标节点 -> 指向它的输入端口信息，这个关系可以用于执行此节点前收集其依赖的所有输入
-    private final ConcurrentMap<String, Set<GNodeInput>> targetNodeInputsMap = new ConcurrentHashMap<>();
+    /**
+     * 节点数不超过此值时精确计算最大并行度(传递闭包位图约 n²/8 字节，2048 个节点约 512KB)，否则使用近似算法
+     */
+    public static final int EXACT_PARALLELISM_MAX_NODES = 2048;
+
+    // 编译后的图结构：节点ID映射为 int 下标，邻接关系/入度/输入端口均以 CSR 数组存储
+    private volatile CompiledGraph compiledGraph;
     private volatile int maxParallelism = 1;
+    private volatile boolean maxParallelismExact = true;
+    // 拓扑序(节点下标)
+    private volatile int[] topologicalOrder;
+    // 每个节点的向上秩：从该节点到任意出口节点的最长路径上的节点数(包括自身)，即关键路径长度
+    private volatile int[] upwardRanks;
 
     private volatile boolean initialized = false;
     private final Object initLock = new Object();
@@ -37,9 +39,9 @@ public class Graph {
         setEdges(edges);
     }
 
-    // 用于接收其它属性
+    // 用于接收其它属性，没有时为 null
     @JsonAnySetter
-    private Map<String, Object> dynamicProps = new LinkedHashMap<>();
+    private Map<String, Object> dynamicProps;
 
     public List<GNode> getNodes() {
         return nodes;
@@ -85,7 +87,7 @@ public class Graph {
 
     @JsonAnyGetter
     public Map<String, Object> getDynamicProps() {
-        return this.dynamicProps;
+        return this.dynamicProps != null ? this.dynamicProps : Collections.emptyMap();
     }
 
 
@@ -99,52 +101,25 @@ public class Graph {
                 return;
             }
 
-            if (this.nodes != null) {
-                for (GNode node : nodes) {
-                    this.nodesMap.put(node.getId(), node);
-                    this.adjacencyList.put(node.getId(), new HashSet<>());
-                    this.reverseAdjacencyList.put(node.getId(), new HashSet<>());
-                    this.nodeInDegree.put(node.getId(), 0);
-                }
-            }
-
-            if (edges != null) {
-                // 构建邻接表和入度
-                for (GEdge edge : edges) {
-                    String from = edge.getSource();
-                    String to = edge.getTarget();
-
-                    if (this.nodesMap.containsKey(from) && this.nodesMap.containsKey(to)) {
-                        final boolean isNewDependency = this.adjacencyList.get(from).add(to);
-                        this.reverseAdjacencyList.get(to).add(from);
-
-                        // 注意：只有当这是一个新的上游节点依赖时，才增加入度。
-                        // 入度（InDegree）在拓扑排序中代表的是“有多少个前置节点尚未完成。
-                        // 如果 A -> B 有多条边（比如连接不同的端口），入度也只能增加一次，入度采用和节点绑定，不和边绑定；
-                        // 这样当 A 执行完毕，B 的入度减1，当入度变为0时，B 就会加入到可执行队列中。
-                        if (isNewDependency) {
-                            int newInDegree = this.nodeInDegree.get(to) + 1;
-                            this.nodeInDegree.put(to, newInDegree);
-                        }
-
-                        // 连接到目标节点的输入
-                        this.targetNodeInputsMap.computeIfAbsent(to, k -> new HashSet<>())
-                                .add(new GNodeInput(from, edge.getSourceHandle(), edge.getTargetHandle()));
-                    }
-                }
-            }
+            // 一次性将节点ID映射为 int 下标，并构建邻接表、入度和输入端口信息
+            this.compiledGraph = CompiledGraph.compile(this.nodes, this.edges);
 
             this.analyzeGraph();
 
-            // 初始化完后，将一些集合转换为不可变集合
-            this.adjacencyList.replaceAll((k, v) -> Collections.unmodifiableSet(v));
-            this.reverseAdjacencyList.replaceAll((k, v) -> Collections.unmodifiableSet(v));
-            this.targetNodeInputsMap.replaceAll((k, v) -> Collections.unmodifiableSet(v));
-
             this.initialized = true;
         }
     }
 
+    /**
+     * 获取编译后的图结构，执行器在运行期间基于它的 int 下标进行调度
+     * @return 编译后的图
+     */
+    @JsonIgnore
+    public CompiledGraph getCompiledGraph() {
+        ensureInitialized();
+        return this.compiledGraph;
+    }
+
     /**
      * 获取节点的下游节点
      * @param nodeId 节点ID
@@ -152,7 +127,11 @@ public class Graph {
      */
     public Collection<String> getDownstreamNodes(String nodeId) {
         ensureInitialized();
-        return this.adjacencyList.getOrDefault(nodeId, Collections.emptySet());
+        final int index = this.compiledGraph.indexOf(nodeId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return toNodeIds(this.compiledGraph.getDownstreams(index));
     }
 
     /**
@@ -162,7 +141,11 @@ public class Graph {
      */
     public Collection<String> getUpstreamNodes(String nodeId) {
         ensureInitialized();
-        return this.reverseAdjacencyList.getOrDefault(nodeId, Collections.emptySet());
+        final int index = this.compiledGraph.indexOf(nodeId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return toNodeIds(this.compiledGraph.getUpstreams(index));
     }
 
     /**
@@ -173,18 +156,86 @@ public class Graph {
      */
     public Collection<GNodeInput> getUpstreamNodeInputs(String nodeId) {
         ensureInitialized();
-        return this.targetNodeInputsMap.getOrDefault(nodeId, Collections.emptySet());
+        final int index = this.compiledGraph.indexOf(nodeId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return this.compiledGraph.getInputs(index);
     }
 
     /**
-     * DAG图中可以并行执行节点的最大并行度
-     * @return 最大并行度
+     * DAG图中可以并行执行节点的最大并行度，即图的最大反链(两两之间不存在路径的最大节点集合)大小。
+     * 节点数超过 {@link #EXACT_PARALLELISM_MAX_NODES} 时为近似值(一个真实可达的下界)，
+     * 可以通过 {@link #isMaxParallelismExact()} 判断。
+     *
+     * @return 最大并行度，至少为 1
      */
     public int getMaxParallelism() {
         ensureInitialized();
         return this.maxParallelism;
     }
 
+    /**
+     * {@link #getMaxParallelism()} 是否为精确值
+     */
+    public boolean isMaxParallelismExact() {
+        ensureInitialized();
+        return this.maxParallelismExact;
+    }
+
+    /**
+     * 计算最大并行度
+     *
+     * @param exact true - 精确计算(需要 O(n²/8) 字节内存，大图慎用)；false - 近似计算，O(n + e)
+     * @return 最大并行度，至少为 1
+     */
+    public int computeMaxParallelism(boolean exact) {
+        ensureInitialized();
+        final int width = exact
+                ? GraphWidth.exact(this.compiledGraph, this.topologicalOrder)
+                : GraphWidth.approximate(this.compiledGraph, this.topologicalOrder);
+        return Math.max(1, width);
+    }
+
+    /**
+     * 获取节点的向上秩(upward rank)：从该节点到任意出口节点的最长路径上的节点数(包括自身)。
+     * 秩越大，说明该节点后面的关键路径越长，越应该优先执行。
+     *
+     * @param nodeId 节点ID
+     * @return 向上秩，节点不存在则返回 0
+     */
+    public int getUpwardRank(String nodeId) {
+        ensureInitialized();
+        final int index = this.compiledGraph.indexOf(nodeId);
+        return index >= 0 ? this.upwardRanks[index] : 0;
+    }
+
+    /**
+     * 按节点权重(如: 节点的历史平均耗时)计算每个节点的向上秩：
+     * <pre>
+     * rank(i) = weight(i) + max(rank(j)), j 为 i 的下游节点
+     * </pre>
+     *
+     * @param nodeWeights 按编译后节点下标存放的权重，为 null 时每个节点的权重均为 1
+     * @return 按编译后节点下标存放的向上秩
+     */
+    public long[] computeUpwardRanks(long[] nodeWeights) {
+        ensureInitialized();
+        final CompiledGraph cg = this.compiledGraph;
+        final int[] order = this.topologicalOrder;
+        final long[] ranks = new long[order.length];
+        // 逆拓扑序遍历，保证计算某个节点时其下游节点都已计算完毕
+        for (int k = order.length - 1; k >= 0; k--) {
+            final int index = order[k];
+            long maxDownstream = 0;
+            for (int p = cg.getDownstreamStart(index), end = cg.getDownstreamEnd(index); p < end; p++) {
+                maxDownstream = Math.max(maxDownstream, ranks[cg.getDownstreamAt(p)]);
+            }
+            ranks[index] = (nodeWeights != null ? nodeWeights[index] : 1L) + maxDownstream;
+        }
+        return ranks;
+    }
+
     /**
      * 判断节点是否是叶子节点
      * @param nodeId 节点ID
@@ -192,7 +243,8 @@ public class Graph {
      */
     public boolean isLeafNode(String nodeId) {
         ensureInitialized();
-        return this.adjacencyList.getOrDefault(nodeId, Collections.emptySet()).isEmpty();
+        final int index = this.compiledGraph.indexOf(nodeId);
+        return index < 0 || this.compiledGraph.getDownstreamCount(index) == 0;
     }
 
     /**
@@ -202,8 +254,13 @@ public class Graph {
      */
     public boolean isIsolatedNode(String nodeId) {
         ensureInitialized();
-        return this.adjacencyList.getOrDefault(nodeId, Collections.emptySet()).isEmpty()
-                && this.reverseAdjacencyList.getOrDefault(nodeId, Collections.emptySet()).isEmpty();
+        final int index = this.compiledGraph.indexOf(nodeId);
+        return index < 0 || isIsolatedNode(index);
+    }
+
+    private boolean isIsolatedNode(int index) {
+        return this.compiledGraph.getDownstreamCount(index) == 0
+                && this.compiledGraph.getUpstreamCount(index) == 0;
     }
 
     /**
@@ -213,9 +270,9 @@ public class Graph {
     public List<String> getIsolatedNodes() {
         ensureInitialized();
         List<String> isolatedNodes = new ArrayList<>();
-        for (String nodeId : this.nodesMap.keySet()) {
-            if (this.isIsolatedNode(nodeId)) {
-                isolatedNodes.add(nodeId);
+        for (int i = 0, n = this.compiledGraph.size(); i < n; i++) {
+            if (this.isIsolatedNode(i)) {
+                isolatedNodes.add(this.compiledGraph.getNodeId(i));
             }
         }
         return isolatedNodes;
@@ -223,7 +280,12 @@ public class Graph {
 
     public Map<String, Integer> getNodesInDegree() {
         ensureInitialized();
-        return Collections.unmodifiableMap(this.nodeInDegree);
+        final int n = this.compiledGraph.size();
+        Map<String, Integer> inDegrees = new HashMap<>(Math.max(16, (int) (n / 0.75f) + 1));
+        for (int i = 0; i < n; i++) {
+            inDegrees.put(this.compiledGraph.getNodeId(i), this.compiledGraph.getInDegree(i));
+        }
+        return Collections.unmodifiableMap(inDegrees);
     }
 
     /**
@@ -244,11 +306,13 @@ public class Graph {
             return null;
         }
 
+        final int targetIndex = this.compiledGraph.indexOf(targetNodeId);
+        if (targetIndex < 0) {
+            return null;
+        }
+
         if (this.edges.isEmpty()) {
-            GNode targetNode = this.nodesMap.get(targetNodeId);
-            if (targetNode == null) {
-                return null;
-            }
+            GNode targetNode = this.compiledGraph.getNode(targetIndex);
             // 如果不包含目标节点，则返回 null
             if (!includeTargetNode) {
                 return null;
@@ -258,25 +322,29 @@ public class Graph {
         }
 
         // 使用BFS反向遍历所有能够达到 targetNodeId 的节点
-        Set<String> visited = new HashSet<>(nodes.size());
-        Queue<String> queue = new LinkedList<>();
-        queue.add(targetNodeId);
-
-        while (queue.size() > 0) {
-            String nodeId = queue.poll();
-            if (visited.contains(nodeId)) {
-                continue;
-            }
-            visited.add(nodeId);
-
-            Set<String> upstreams = this.reverseAdjacencyList.getOrDefault(nodeId, Collections.emptySet());
-            for (String up : upstreams) {
-                if (!visited.contains(up)) {
-                    queue.add(up);
+        final CompiledGraph cg = this.compiledGraph;
+        final boolean[] visitedFlags = new boolean[cg.size()];
+        final int[] queue = new int[cg.size()];
+        int head = 0, tail = 0;
+        queue[tail++] = targetIndex;
+        visitedFlags[targetIndex] = true;
+
+        while (head < tail) {
+            final int index = queue[head++];
+            for (int p = cg.getUpstreamStart(index), end = cg.getUpstreamEnd(index); p < end; p++) {
+                final int up = cg.getUpstreamAt(p);
+                if (!visitedFlags[up]) {
+                    visitedFlags[up] = true;
+                    queue[tail++] = up;
                 }
             }
         }
 
+        Set<String> visited = new HashSet<>(Math.max(16, (int) (tail / 0.75f) + 1));
+        for (int i = 0; i < tail; i++) {
+            visited.add(cg.getNodeId(queue[i]));
+        }
+
         List<GNode> subNodes = new ArrayList<>(visited.size());
         List<GEdge> subEdges = new ArrayList<>(visited.size());
 
@@ -304,127 +372,126 @@ public class Graph {
     }
 
     /**
-     * 确保在使用图数据前已初始化
+     * “寻找指定节点的所有后继节点” 或 “正向可达闭包”，即指定节点变化后受影响(需要重新执行)的全部节点
+     *
+     * @param sourceNodeIds 指定的节点(不存在的节点会被忽略)
+     * @return 指定节点及其所有后继节点的ID
      */
-    private void ensureInitialized() {
-        if (!this.initialized) {
-            initialize();
+    public Set<String> findDownstreamClosure(Collection<String> sourceNodeIds) {
+        ensureInitialized();
+
+        if (sourceNodeIds == null || sourceNodeIds.isEmpty()) {
+            return Collections.emptySet();
         }
-    }
 
-    private void analyzeGraph() {
-        Map<String, Integer> tempInDegree = new HashMap<>(this.nodeInDegree);
-        Queue<String> queue = new LinkedList<>();
-        // 初始化队列
-        tempInDegree.forEach((nodeId, degree) -> {
-            if (degree == 0) {
-                queue.offer(nodeId);
+        // 使用BFS正向遍历指定节点能够到达的所有节点
+        final CompiledGraph cg = this.compiledGraph;
+        final boolean[] visitedFlags = new boolean[cg.size()];
+        final int[] queue = new int[cg.size()];
+        int head = 0, tail = 0;
+        for (String nodeId : sourceNodeIds) {
+            final int index = cg.indexOf(nodeId);
+            if (index >= 0 && !visitedFlags[index]) {
+                visitedFlags[index] = true;
+                queue[tail++] = index;
             }
-        });
-
-        int visitedCount = 0;
-        int currentMaxParallel = 0;
-
-        while (!queue.isEmpty()) {
-            int size = queue.size(); // 当前层的节点数，即当前并行度
-            currentMaxParallel = Math.max(currentMaxParallel, size);
-
-            // 处理这一层的所有节点
-            for (int i = 0; i < size; i++) {
-                String nodeId = queue.poll();
-                visitedCount++;
-
-                Set<String> neighbors = this.adjacencyList.get(nodeId);
-                if (neighbors != null) {
-                    for (String neighbor : neighbors) {
-                        int newDegree = tempInDegree.get(neighbor) - 1;
-                        tempInDegree.put(neighbor, newDegree);
-                        if (newDegree == 0) {
-                            queue.offer(neighbor);
-                        }
-                    }
+        }
+
+        while (head < tail) {
+            final int index = queue[head++];
+            for (int p = cg.getDownstreamStart(index), end = cg.getDownstreamEnd(index); p < end; p++) {
+                final int down = cg.getDownstreamAt(p);
+                if (!visitedFlags[down]) {
+                    visitedFlags[down] = true;
+                    queue[tail++] = down;
                 }
             }
         }
 
-        if (visitedCount != this.nodes.size()) {
-            throw new IllegalStateException("DAG图中存在环路，无法初始化");
+        Set<String> closure = new LinkedHashSet<>(Math.max(16, (int) (tail / 0.75f) + 1));
+        for (int i = 0; i < tail; i++) {
+            closure.add(cg.getNodeId(queue[i]));
         }
-
-        // 如果图是空的或只有孤立点，确保 maxParallelism 至少为 1
-        this.maxParallelism = Math.max(1, currentMaxParallel);
+        return closure;
     }
 
     /**
-     * 检测图中是否存在环（使用 Kahn 算法的变种）
-     * @return false 表示无环；true 表示有环
-     * @deprecated 被 {@link #analyzeGraph()} 替代
+     * 节点的拓扑序(节点下标)，上游节点总是排在下游节点之前
      */
-    private boolean detectCycle() {
-        // 拷贝入度，用于模拟拓扑排序
-        Map<String, Integer> tempInDegree = new HashMap<>(this.nodeInDegree);
-        Queue<String> queue = new LinkedList<>();
-        // 所有入度为0的入队
-        tempInDegree.forEach((nodeId, degree) -> {
-            if (degree == 0) {
-                queue.offer(nodeId);
-            }
-        });
-
-        int visitedCount = 0;
-        while (!queue.isEmpty()) {
-            String nodeId = queue.poll();
-            visitedCount++;
-            // 遍历其所有后继节点
-            Set<String> neighbors = this.adjacencyList.get(nodeId);
-            if (neighbors != null) {
-                for (String neighbor : neighbors) {
-                    int newDegree = tempInDegree.get(neighbor) - 1;
-                    tempInDegree.put(neighbor, newDegree);
-                    if (newDegree == 0) {
-                        queue.offer(neighbor);
-                    }
-                }
-            }
-        }
-
-        // 如果访问节点数 < 总节点数，说明有环
-        return visitedCount != this.nodes.size();
+    @JsonIgnore
+    public int[] getTopologicalOrder() {
+        ensureInitialized();
+        return this.topologicalOrder.clone();
     }
 
     /**
-     * 计算DAG图中可以并行执行节点的最大并行度.
-     * @return 最大并行度
-     * @deprecated 被 {@link #analyzeGraph()} 替代
+     * 确保在使用图数据前已初始化
      */
-    private int calcMaxParallelism() {
-        Map<String, Integer> tempInDegree = new HashMap<>(this.nodeInDegree);
-        Queue<String> tempQueue = new LinkedList<>();
-        // 所有入度为0的入队
-        tempInDegree.forEach((nodeId, degree) -> {
-            if (degree == 0) {
-                tempQueue.offer(nodeId);
+    private void ensureInitialized() {
+        if (!this.initialized) {
+            initialize();
+        }
+    }
+
+    private void analyzeGraph() {
+        final CompiledGraph cg = this.compiledGraph;
+        final int n = cg.size();
+        final int[] tempInDegree = cg.copyInDegrees();
+        final int[] queue = new int[n];
+        int head = 0, tail = 0;
+        // 初始化队列
+        for (int i = 0; i < n; i++) {
+            if (tempInDegree[i] == 0) {
+                queue[tail++] = i;
             }
-        });
+        }
 
-        int maxParallel = 0;
+        while (head < tail) {
+            final int index = queue[head++];
+            for (int p = cg.getDownstreamStart(index), end = cg.getDownstreamEnd(index); p < end; p++) {
+                final int neighbor = cg.getDownstreamAt(p);
+                if (--tempInDegree[neighbor] == 0) {
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
 
-        while (!tempQueue.isEmpty()) {
-            int size = tempQueue.size(); // 当前层的节点数
-            maxParallel = Math.max(maxParallel, size);
+        // 访问过的节点数即 tail
+        if (tail != n) {
+            throw new IllegalStateException("DAG图中存在环路，无法初始化");
+        }
 
-            for (int i = 0; i < size; i++) {
-                String nodeId = tempQueue.poll();
-                for (String next : this.adjacencyList.get(nodeId)) {
-                    tempInDegree.put(next, tempInDegree.get(next) - 1);
-                    if (tempInDegree.get(next) == 0) {
-                        tempQueue.offer(next);
-                    }
-                }
+        this.topologicalOrder = queue;
+
+        // 最大并行度即图的最大反链大小，BFS 最宽层只是它的下界
+        // 如果图是空的，确保 maxParallelism 至少为 1
+        final boolean exact = n <= EXACT_PARALLELISM_MAX_NODES;
+        final int width = exact ? GraphWidth.exact(cg, queue) : GraphWidth.approximate(cg, queue);
+        this.maxParallelism = Math.max(1, width);
+        this.maxParallelismExact = exact;
+
+        // 逆拓扑序计算每个节点的向上秩(关键路径长度)
+        final int[] ranks = new int[n];
+        for (int k = n - 1; k >= 0; k--) {
+            final int index = queue[k];
+            int maxDownstream = 0;
+            for (int p = cg.getDownstreamStart(index), end = cg.getDownstreamEnd(index); p < end; p++) {
+                maxDownstream = Math.max(maxDownstream, ranks[cg.getDownstreamAt(p)]);
             }
+            ranks[index] = 1 + maxDownstream;
         }
+        this.upwardRanks = ranks;
+    }
 
-        return maxParallel;
+    private List<String> toNodeIds(int[] indexes) {
+        if (indexes.length == 0) {
+            return Collections.emptyList();
+        }
+        String[] nodeIds = new String[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            nodeIds[i] = this.compiledGraph.getNodeId(indexes[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(nodeIds));
     }
 
     @Override
@@ -0,0 +1,270 @@
+package com.myweb.workflow.graph;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.ArrayBufferOutput;
+import org.msgpack.value.ValueType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myweb.util.JsonObjectMapper;
+
+/**
+ * 流程定义的紧凑二进制格式(基于 msgpack)，用于缓存编译过的流程定义，加载时不再解析 JSON.
+ * <p>
+ * 只保存执行需要的内容：节点的 id/type/data，边的 id/端口，边的 source/target 保存为节点下标
+ * (指向不存在节点的边在编译时本来就会被忽略，不保存)。格式：
+ * <pre>
+ * MAGIC VERSION
+ * nodeCount { id type data }*
+ * edgeCount { id sourceIndex targetIndex sourceHandle targetHandle }*
+ * </pre>
+ * 节点ID、类型、端口名、边ID以及 data 中 Map 的 key 按"符号"写入：第一次出现时写字符串并登记序号，之后只写序号，
+ * 解码时相同的符号共享同一个字符串实例。其余数据按 msgpack 原生类型写入，解码后的类型与 JSON 绑定一致
+ * (Map 为 LinkedHashMap，整数按范围为 Integer/Long/BigInteger，小数为 Double)；
+ * 其它 Java 类型先按 {@link JsonObjectMapper} 的配置转换为通用类型。
+ *
+ * @author yswang
+ */
+public final class GraphCodec {
+    // "FLOW"
+    private static final int MAGIC = 0x464C4F57;
+    private static final int VERSION = 1;
+    // 超出 long 范围的整数和 BigDecimal 使用扩展类型，内容为 toString() 的 UTF-8 字节
+    private static final byte EXT_BIG_DECIMAL = 1;
+    private static final byte EXT_BIG_INTEGER = 2;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static {
+        JsonObjectMapper.customizeObjectMapper(MAPPER, JsonObjectMapper.DEFAULT_TIMEZONE);
+    }
+
+    private GraphCodec() {
+    }
+
+    public static byte[] encode(Graph graph) {
+        final ArrayBufferOutput out = new ArrayBufferOutput();
+        try (MessagePacker packer = MessagePack.newDefaultPacker(out)) {
+            write(graph, packer);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to encode graph: " + e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    public static Graph decode(byte[] data) {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(data)) {
+            return read(unpacker);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Failed to decode graph: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写入流程定义，调用方可以在同一个 packer 中写入其它数据
+     */
+    public static void write(Graph graph, MessagePacker packer) throws IOException {
+        final Map<String, Integer> symbols = new HashMap<>();
+        final List<GNode> nodes = graph.getNodes();
+        final Map<String, Integer> nodeIndexes = new HashMap<>(Math.max(16, (int) (nodes.size() / 0.75f) + 1));
+
+        packer.packInt(MAGIC).packInt(VERSION);
+        packer.packArrayHeader(nodes.size());
+        for (GNode node : nodes) {
+            nodeIndexes.putIfAbsent(node.getId(), nodeIndexes.size());
+            writeSymbol(packer, symbols, node.getId());
+            writeSymbol(packer, symbols, node.getType());
+            writeValue(packer, symbols, node.getData());
+        }
+
+        final List<GEdge> edges = new ArrayList<>(graph.getEdges().size());
+        for (GEdge edge : graph.getEdges()) {
+            if (nodeIndexes.containsKey(edge.getSource()) && nodeIndexes.containsKey(edge.getTarget())) {
+                edges.add(edge);
+            }
+        }
+        packer.packArrayHeader(edges.size());
+        for (GEdge edge : edges) {
+            writeSymbol(packer, symbols, edge.getId());
+            packer.packInt(nodeIndexes.get(edge.getSource()));
+            packer.packInt(nodeIndexes.get(edge.getTarget()));
+            writeSymbol(packer, symbols, edge.getSourceHandle());
+            writeSymbol(packer, symbols, edge.getTargetHandle());
+        }
+    }
+
+    /**
+     * 读取 {@link #write(Graph, MessagePacker)} 写入的流程定义
+     */
+    public static Graph read(MessageUnpacker unpacker) throws IOException {
+        final int magic = unpacker.unpackInt();
+        final int version = unpacker.unpackInt();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IllegalArgumentException("Unsupported graph format: magic=" + Integer.toHexString(magic) + ", version=" + version);
+        }
+
+        final List<String> symbols = new ArrayList<>();
+        final int nodeCount = unpacker.unpackArrayHeader();
+        final List<GNode> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            final GNode node = new GNode();
+            node.setId(readSymbol(unpacker, symbols));
+            node.setType(readSymbol(unpacker, symbols));
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> data = (Map<String, Object>) readValue(unpacker, symbols);
+            node.setData(data);
+            nodes.add(node);
+        }
+
+        final int edgeCount = unpacker.unpackArrayHeader();
+        final List<GEdge> edges = new ArrayList<>(edgeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            final GEdge edge = new GEdge();
+            edge.setId(readSymbol(unpacker, symbols));
+            edge.setSource(nodes.get(unpacker.unpackInt()).getId());
+            edge.setTarget(nodes.get(unpacker.unpackInt()).getId());
+            edge.setSourceHandle(readSymbol(unpacker, symbols));
+            edge.setTargetHandle(readSymbol(unpacker, symbols));
+            edges.add(edge);
+        }
+        return new Graph(nodes, edges);
+    }
+
+    private static void writeSymbol(MessagePacker packer, Map<String, Integer> symbols, String value) throws IOException {
+        if (value == null) {
+            packer.packNil();
+            return;
+        }
+        final Integer ref = symbols.get(value);
+        if (ref != null) {
+            packer.packInt(ref);
+        } else {
+            symbols.put(value, symbols.size());
+            packer.packString(value);
+        }
+    }
+
+    private static String readSymbol(MessageUnpacker unpacker, List<String> symbols) throws IOException {
+        final MessageFormat format = unpacker.getNextFormat();
+        if (format == MessageFormat.NIL) {
+            unpacker.unpackNil();
+            return null;
+        }
+        if (format.getValueType() == ValueType.INTEGER) {
+            return symbols.get(unpacker.unpackInt());
+        }
+        final String value = unpacker.unpackString();
+        symbols.add(value);
+        return value;
+    }
+
+    private static void writeValue(MessagePacker packer, Map<String, Integer> symbols, Object value) throws IOException {
+        if (value == null) {
+            packer.packNil();
+        } else if (value instanceof String s) {
+            packer.packString(s);
+        } else if (value instanceof Boolean b) {
+            packer.packBoolean(b);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            packer.packLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            packer.packDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigInteger b) {
+            if (b.bitLength() < 64) {
+                packer.packLong(b.longValue());
+            } else {
+                writeText(packer, EXT_BIG_INTEGER, b.toString());
+            }
+        } else if (value instanceof BigDecimal d) {
+            writeText(packer, EXT_BIG_DECIMAL, d.toString());
+        } else if (value instanceof byte[] bytes) {
+            packer.packBinaryHeader(bytes.length);
+            packer.writePayload(bytes);
+        } else if (value instanceof Map<?, ?> map) {
+            packer.packMapHeader(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeSymbol(packer, symbols, entry.getKey() != null ? entry.getKey().toString() : null);
+                writeValue(packer, symbols, entry.getValue());
+            }
+        } else if (value instanceof Collection<?> list) {
+            packer.packArrayHeader(list.size());
+            for (Object item : list) {
+                writeValue(packer, symbols, item);
+            }
+        } else if (value instanceof Object[] array) {
+            packer.packArrayHeader(array.length);
+            for (Object item : array) {
+                writeValue(packer, symbols, item);
+            }
+        } else {
+            // 其它类型(日期、POJO 等)转换为 JSON 对应的通用类型
+            writeValue(packer, symbols, MAPPER.convertValue(value, Object.class));
+        }
+    }
+
+    private static void writeText(MessagePacker packer, byte extType, String text) throws IOException {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        packer.packExtensionTypeHeader(extType, bytes.length);
+        packer.writePayload(bytes);
+    }
+
+    private static Object readValue(MessageUnpacker unpacker, List<String> symbols) throws IOException {
+        final MessageFormat format = unpacker.getNextFormat();
+        switch (format.getValueType()) {
+            case NIL:
+                unpacker.unpackNil();
+                return null;
+            case BOOLEAN:
+                return unpacker.unpackBoolean();
+            case INTEGER: {
+                final long l = unpacker.unpackLong();
+                return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? (Object) (int) l : (Object) l;
+            }
+            case FLOAT:
+                return unpacker.unpackDouble();
+            case STRING:
+                return unpacker.unpackString();
+            case BINARY:
+                return unpacker.readPayload(unpacker.unpackBinaryHeader());
+            case ARRAY: {
+                final int size = unpacker.unpackArrayHeader();
+                final List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(unpacker, symbols));
+                }
+                return list;
+            }
+            case MAP: {
+                final int size = unpacker.unpackMapHeader();
+                final Map<String, Object> map = new LinkedHashMap<>((int) (size / 0.75f) + 1);
+                for (int i = 0; i < size; i++) {
+                    final String key = readSymbol(unpacker, symbols);
+                    map.put(key, readValue(unpacker, symbols));
+                }
+                return map;
+            }
+            case EXTENSION: {
+                final ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+                final String text = new String(unpacker.readPayload(header.getLength()), StandardCharsets.UTF_8);
+                if (header.getType() == EXT_BIG_INTEGER) {
+                    return new BigInteger(text);
+                }
+                if (header.getType() == EXT_BIG_DECIMAL) {
+                    return new BigDecimal(text);
+                }
+                throw new IllegalArgumentException("Unsupported extension type: " + header.getType());
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported value type: " + format.getValueType());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.myweb.workflow.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.myweb.util.JsonObjectMapper;
+
+/**
+ * 流式读取 JSON 格式的流程定义.
+ * <p>
+ * 与通过 Jackson 绑定为 {@link Graph}/{@link GNode}/{@link GEdge} 相比：
+ * <ul>
+ *     <li>只保留执行需要的属性(节点的 id/type/data，边的 id/source/target/端口，端口支持与 {@link GEdge} 相同的别名)，
+ *     position、width、height、selected 等设计器属性直接跳过，不创建 dynamicProps；</li>
+ *     <li>节点ID、类型和端口名在一次读取内去重，边的 source/target 与节点ID共享同一个字符串实例；</li>
+ *     <li>节点的 data 使用与 {@link JsonObjectMapper} 相同的配置读取，数据类型与绑定方式一致，流程定义的哈希不变。</li>
+ * </ul>
+ * 结果需要保留设计器属性(如: 保存回设计器)时仍使用 Jackson 绑定。
+ *
+ * @author yswang
+ */
+public final class GraphReader {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader DATA_READER;
+
+    static {
+        JsonObjectMapper.customizeObjectMapper(MAPPER, JsonObjectMapper.DEFAULT_TIMEZONE);
+        DATA_READER = MAPPER.readerFor(new TypeReference<Map<String, Object>>() {});
+    }
+
+    // 一次读取内的字符串去重表
+    private final Map<String, String> strings = new HashMap<>();
+    private final List<GNode> nodes = new ArrayList<>();
+    private final List<GEdge> edges = new ArrayList<>();
+
+    private GraphReader() {
+    }
+
+    public static Graph read(String json) {
+        try (JsonParser parser = MAPPER.createParser(json)) {
+            return new GraphReader().readGraph(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid flow definition: " + e.getMessage(), e);
+        }
+    }
+
+    public static Graph read(byte[] json) {
+        try (JsonParser parser = MAPPER.createParser(json)) {
+            return new GraphReader().readGraph(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid flow definition: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从输入流读取(不关闭输入流)
+     */
+    public static Graph read(InputStream in) {
+        try (JsonParser parser = MAPPER.createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return new GraphReader().readGraph(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid flow definition: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从字符流读取(不关闭字符流)
+     */
+    public static Graph read(Reader reader) {
+        try (JsonParser parser = MAPPER.createParser(reader)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return new GraphReader().readGraph(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid flow definition: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从 Map 形式的流程定义读取(如: ForEach 节点 data 中的子流程)
+     */
+    public static Graph read(Map<String, Object> definition) {
+        try (JsonParser parser = MAPPER.treeAsTokens(MAPPER.valueToTree(definition))) {
+            return new GraphReader().readGraph(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid flow definition: " + e.getMessage(), e);
+        }
+    }
+
+    private Graph readGraph(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            token = parser.nextToken();
+            if ("nodes".equals(field) && token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    readNode(parser, token);
+                }
+            } else if ("edges".equals(field) && token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    readEdge(parser, token);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Graph(this.nodes, this.edges);
+    }
+
+    private void readNode(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        final GNode node = new GNode();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            token = parser.nextToken();
+            switch (field) {
+                case "id" -> node.setId(readString(parser, token));
+                case "type" -> node.setType(readString(parser, token));
+                case "data" -> node.setData(token == JsonToken.VALUE_NULL ? null : DATA_READER.readValue(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        if (node.isValidNode()) {
+            this.nodes.add(node);
+        }
+    }
+
+    private void readEdge(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return;
+        }
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        final GEdge edge = new GEdge();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            token = parser.nextToken();
+            switch (field) {
+                case "id" -> edge.setId(readString(parser, token));
+                case "source", "from" -> edge.setSource(readString(parser, token));
+                case "target", "to" -> edge.setTarget(readString(parser, token));
+                case "sourceHandle", "source_handle", "sourcePort", "source_port", "fromPort", "from_port" ->
+                        edge.setSourceHandle(readString(parser, token));
+                case "targetHandle", "target_handle", "targetPort", "target_port", "toPort", "to_port" ->
+                        edge.setTargetHandle(readString(parser, token));
+                default -> parser.skipChildren();
+            }
+        }
+        if (edge.isValidEdge()) {
+            this.edges.add(edge);
+        }
+    }
+
+    /**
+     * 读取标量为字符串(数字ID与绑定方式一样转换为字符串)，并在本次读取内去重
+     */
+    private String readString(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new IllegalArgumentException("Expected a string value at " + parser.currentLocation() + ", but was " + token);
+        }
+        final String value = parser.getValueAsString();
+        final String existing = this.strings.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) {
+        if (actual != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " at " + parser.currentLocation() + ", but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.myweb.workflow.graph;
+
+import java.util.Arrays;
+
+/**
+ * DAG图的宽度(最大反链：两两之间不存在路径的最大节点集合)计算.
+ * <p>
+ * 最大反链的大小就是图中最多能同时执行的节点数。按 BFS 分层取最宽的一层只是它的一个下界，
+ * 层与层之间交错的分支(如: 长短不一的并行链路)会被低估。
+ * <p>
+ * 精确计算基于 Dilworth 定理：最大反链大小 = 最小链覆盖数 = n - 最大匹配数，
+ * 其中匹配是在传递闭包(u 可达 v 即连边 u→v)的二分图上做的 Hopcroft-Karp 最大匹配。
+ * 注意必须使用传递闭包而不是传递约简，在传递约简上求得的是"不相交路径覆盖"，它只是最大反链的上界。
+ * 传递闭包使用位图存储，需要 O(n²/8) 字节内存，因此只用于节点数不超过阈值的图；
+ * 更大的图使用近似算法：分别按"到入口的最长距离"和"到出口的最长距离"分层，取最宽的一层，
+ * 每一层都是一个反链，因此结果是一个真实可达的并行度(下界)。
+ *
+ * @author yswang
+ */
+final class GraphWidth {
+    private static final int INF = Integer.MAX_VALUE;
+
+    private GraphWidth() {
+    }
+
+    /**
+     * 精确计算最大反链大小
+     *
+     * @param cg 编译后的图
+     * @param topologicalOrder 拓扑序
+     * @return 最大反链大小，空图返回 0
+     */
+    static int exact(CompiledGraph cg, int[] topologicalOrder) {
+        final int n = cg.size();
+        if (n <= 1) {
+            return n;
+        }
+
+        final long[][] reach = transitiveClosure(cg, topologicalOrder);
+        return n - maxMatching(n, reach, topologicalOrder);
+    }
+
+    /**
+     * 近似计算最大反链大小(下界)，时间复杂度 O(n + e)
+     *
+     * @param cg 编译后的图
+     * @param topologicalOrder 拓扑序
+     * @return 近似的最大反链大小，空图返回 0
+     */
+    static int approximate(CompiledGraph cg, int[] topologicalOrder) {
+        final int n = cg.size();
+        if (n <= 1) {
+            return n;
+        }
+
+        // depth: 从入口节点到该节点的最长距离；height: 从该节点到出口节点的最长距离
+        final int[] depth = new int[n];
+        final int[] height = new int[n];
+        for (int k = 0; k < n; k++) {
+            final int u = topologicalOrder[k];
+            for (int p = cg.getDownstreamStart(u), end = cg.getDownstreamEnd(u); p < end; p++) {
+                final int v = cg.getDownstreamAt(p);
+                depth[v] = Math.max(depth[v], depth[u] + 1);
+            }
+        }
+        for (int k = n - 1; k >= 0; k--) {
+            final int u = topologicalOrder[k];
+            for (int p = cg.getDownstreamStart(u), end = cg.getDownstreamEnd(u); p < end; p++) {
+                height[u] = Math.max(height[u], height[cg.getDownstreamAt(p)] + 1);
+            }
+        }
+
+        // 同一层的节点之间不可能存在路径(否则距离不同)，因此每一层都是反链
+        final int[] depthCount = new int[n];
+        final int[] heightCount = new int[n];
+        int width = 0;
+        for (int i = 0; i < n; i++) {
+            width = Math.max(width, ++depthCount[depth[i]]);
+            width = Math.max(width, ++heightCount[height[i]]);
+        }
+        return width;
+    }
+
+    /**
+     * 逆拓扑序计算传递闭包：reach[u] 为 u 的所有后代节点(不包括自身)
+     */
+    private static long[][] transitiveClosure(CompiledGraph cg, int[] topologicalOrder) {
+        final int n = cg.size();
+        final int words = (n + 63) >>> 6;
+        final long[][] reach = new long[n][words];
+        for (int k = n - 1; k >= 0; k--) {
+            final int u = topologicalOrder[k];
+            final long[] row = reach[u];
+            for (int p = cg.getDownstreamStart(u), end = cg.getDownstreamEnd(u); p < end; p++) {
+                final int v = cg.getDownstreamAt(p);
+                final long[] vRow = reach[v];
+                for (int w = 0; w < words; w++) {
+                    row[w] |= vRow[w];
+                }
+                row[v >>> 6] |= 1L << v;
+            }
+        }
+        return reach;
+    }
+
+    /**
+     * Hopcroft-Karp 二分图最大匹配，左右两侧均为全部节点，u 可达 v 即存在边 u→v
+     */
+    private static int maxMatching(int n, long[][] reach, int[] topologicalOrder) {
+        final int[] matchL = new int[n];
+        final int[] matchR = new int[n];
+        Arrays.fill(matchL, -1);
+        Arrays.fill(matchR, -1);
+
+        // 贪心初始匹配：按拓扑序为每个节点匹配第一个未匹配的后代，通常能直接得到大部分匹配
+        int matching = 0;
+        for (int k = 0; k < n; k++) {
+            final int u = topologicalOrder[k];
+            final long[] row = reach[u];
+            for (int v = nextSetBit(row, 0); v >= 0; v = nextSetBit(row, v + 1)) {
+                if (matchR[v] < 0) {
+                    matchL[u] = v;
+                    matchR[v] = u;
+                    matching++;
+                    break;
+                }
+            }
+        }
+
+        final int[] dist = new int[n];
+        final int[] queue = new int[n];
+        // DFS 中每个左侧节点下一次要尝试的右侧节点，同一轮中不重复扫描已失败的边
+        final int[] cursor = new int[n];
+        while (bfs(n, reach, matchL, matchR, dist, queue)) {
+            Arrays.fill(cursor, 0);
+            for (int u = 0; u < n; u++) {
+                if (matchL[u] < 0 && dfs(u, reach, matchL, matchR, dist, cursor)) {
+                    matching++;
+                }
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * 从所有未匹配的左侧节点出发分层，返回是否存在增广路径
+     */
+    private static boolean bfs(int n, long[][] reach, int[] matchL, int[] matchR, int[] dist, int[] queue) {
+        int head = 0, tail = 0;
+        for (int u = 0; u < n; u++) {
+            if (matchL[u] < 0) {
+                dist[u] = 0;
+                queue[tail++] = u;
+            } else {
+                dist[u] = INF;
+            }
+        }
+
+        boolean found = false;
+        while (head < tail) {
+            final int u = queue[head++];
+            final long[] row = reach[u];
+            for (int v = nextSetBit(row, 0); v >= 0; v = nextSetBit(row, v + 1)) {
+                final int w = matchR[v];
+                if (w < 0) {
+                    found = true;
+                } else if (dist[w] == INF) {
+                    dist[w] = dist[u] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 沿分层图寻找增广路径，递归深度不超过分层数(即不超过节点数)
+     */
+    private static boolean dfs(int u, long[][] reach, int[] matchL, int[] matchR, int[] dist, int[] cursor) {
+        final long[] row = reach[u];
+        for (int v = nextSetBit(row, cursor[u]); v >= 0; v = nextSetBit(row, v + 1)) {
+            cursor[u] = v + 1;
+            final int w = matchR[v];
+            if (w < 0 || (dist[w] == dist[u] + 1 && dfs(w, reach, matchL, matchR, dist, cursor))) {
+                matchL[u] = v;
+                matchR[v] = u;
+                return true;
+            }
+        }
+        dist[u] = INF;
+        return false;
+    }
+
+    private static int nextSetBit(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= bits.length) {
+            return -1;
+        }
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == bits.length) {
+                return -1;
+            }
+            word = bits[w];
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.myweb.workflow.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的耗时直方图(对数-线性分桶，类似 HdrHistogram).
+ * <p>
+ * 小于 {@value #SUB_BUCKET_COUNT} 的值每个值一个桶；更大的值按 2 的幂分段，每段再线性分为
+ * {@value #SUB_BUCKET_COUNT}/2 个桶，相对误差不超过 1/{@value #SUB_BUCKET_COUNT}/2(约 3%)。
+ * 记录一个值只需计算桶下标并原子递增，不加锁、不分配对象，可以在节点执行的热路径上使用。
+ * 超过 {@link #MAX_TRACKABLE_VALUE} 的值计入最后一个桶(最大值仍准确记录)。
+ * <p>
+ * 读取百分位数时逐个扫描桶，读取期间并发写入的值可能部分可见，适用于监控而非精确统计。
+ */
+public class LatencyHistogram {
+    // 每段的桶数(2 的幂)
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+    // 可以区分的最大值：2^36(以微秒为单位约 19 小时)
+    private static final int MAX_VALUE_BITS = 36;
+    public static final long MAX_TRACKABLE_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * 记录一个值，负数按 0 记录
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.buckets.incrementAndGet(bucketIndex(Math.min(value, MAX_TRACKABLE_VALUE)));
+        this.count.increment();
+        this.sum.add(value);
+        long current;
+        while (value > (current = this.max.get())) {
+            if (this.max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        final long n = this.count.sum();
+        return n > 0 ? (double) this.sum.sum() / n : 0d;
+    }
+
+    /**
+     * 百分位数(返回所在桶的上界，不超过最大值)
+     * @param percentile 0 ~ 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        return valueAtPercentile(counts, total, percentile);
+    }
+
+    /**
+     * 计数、平均值、常用百分位数和最大值的快照
+     */
+    public Summary summary() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        final Summary summary = new Summary();
+        summary.count = total;
+        summary.mean = getMean();
+        summary.p50 = valueAtPercentile(counts, total, 50);
+        summary.p90 = valueAtPercentile(counts, total, 90);
+        summary.p99 = valueAtPercentile(counts, total, 99);
+        summary.p999 = valueAtPercentile(counts, total, 99.9);
+        summary.max = getMax();
+        return summary;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    private long valueAtPercentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(100d, Math.max(0d, percentile)) / 100d * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // 保留最高的 SUB_BUCKET_BITS 位：shift >= 1，value >>> shift 落在 [HALF, COUNT)
+        final int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) ((value >>> shift) - SUB_BUCKET_HALF);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int k = index - SUB_BUCKET_COUNT;
+        final int shift = k / SUB_BUCKET_HALF + 1;
+        final long subBucket = k % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static class Summary {
+        private long count;
+        private double mean;
+        private long p50;
+        private long p90;
+        private long p99;
+        private long p999;
+        private long max;
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + Math.round(mean) + ", p50=" + p50 + ", p90=" + p90
+                    + ", p99=" + p99 + ", p999=" + p999 + ", max=" + max + '}';
+        }
+    }
+
+}
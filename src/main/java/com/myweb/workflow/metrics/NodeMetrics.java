@@ -0,0 +1,175 @@
+package com.myweb.workflow.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按节点类型统计的节点执行指标.
+ * <p>
+ * 一个节点从就绪到执行结束分为三段(单位均为微秒)：
+ * <ul>
+ *     <li>readyToSubmitted：进入就绪队列到提交给线程池，即等待执行槽位(单次执行的并行度上限)的时间</li>
+ *     <li>submittedToRunning：提交给线程池到开始执行，即在线程池队列中排队的时间</li>
+ *     <li>runningToDone：开始执行到结束，异步节点包括等待响应的时间，批量节点为整个批次的时间</li>
+ * </ul>
+ * 前两段偏大说明是执行槽位或线程池饱和导致的延迟，第三段偏大说明是节点本身慢。
+ * 另外统计执行次数(每次尝试都计入)、重试次数和最终失败次数。
+ * <p>
+ * 同一个实例可以被多个执行共享，所有统计都是无锁的。
+ */
+public class NodeMetrics {
+    private final ConcurrentMap<String, TypeMetrics> types = new ConcurrentHashMap<>();
+
+    /**
+     * 节点类型的指标，不存在时创建
+     */
+    public TypeMetrics forType(String type) {
+        final String key = type != null ? type : "unknown";
+        final TypeMetrics metrics = this.types.get(key);
+        return metrics != null ? metrics : this.types.computeIfAbsent(key, k -> new TypeMetrics());
+    }
+
+    /**
+     * 所有节点类型的指标快照(按类型排序)
+     */
+    public Map<String, Snapshot> snapshot() {
+        final Map<String, Snapshot> snapshot = new TreeMap<>();
+        this.types.forEach((type, metrics) -> snapshot.put(type, metrics.snapshot()));
+        return snapshot;
+    }
+
+    public void reset() {
+        this.types.values().forEach(TypeMetrics::reset);
+    }
+
+    /**
+     * 一种节点类型的指标
+     */
+    public static class TypeMetrics {
+        private final LatencyHistogram readyToSubmitted = new LatencyHistogram();
+        private final LatencyHistogram submittedToRunning = new LatencyHistogram();
+        private final LatencyHistogram runningToDone = new LatencyHistogram();
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        /**
+         * 记录一次节点执行(一次尝试)的各段耗时
+         * @param readyMicros 就绪到提交，未知时传 -1
+         * @param queuedMicros 提交到开始执行，未开始执行(如被取消)时传 -1
+         * @param runMicros 开始执行到结束，未开始执行时传 -1
+         */
+        public void recordExecution(long readyMicros, long queuedMicros, long runMicros) {
+            if (readyMicros >= 0) {
+                this.readyToSubmitted.record(readyMicros);
+            }
+            if (queuedMicros >= 0) {
+                this.submittedToRunning.record(queuedMicros);
+            }
+            if (runMicros >= 0) {
+                this.runningToDone.record(runMicros);
+                this.executions.increment();
+            }
+        }
+
+        public void recordRetry() {
+            this.retries.increment();
+        }
+
+        public void recordFailure() {
+            this.failures.increment();
+        }
+
+        public LatencyHistogram getReadyToSubmitted() {
+            return readyToSubmitted;
+        }
+
+        public LatencyHistogram getSubmittedToRunning() {
+            return submittedToRunning;
+        }
+
+        public LatencyHistogram getRunningToDone() {
+            return runningToDone;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        Snapshot snapshot() {
+            final Snapshot snapshot = new Snapshot();
+            snapshot.executions = getExecutions();
+            snapshot.retries = getRetries();
+            snapshot.failures = getFailures();
+            snapshot.readyToSubmittedMicros = this.readyToSubmitted.summary();
+            snapshot.submittedToRunningMicros = this.submittedToRunning.summary();
+            snapshot.runningToDoneMicros = this.runningToDone.summary();
+            return snapshot;
+        }
+
+        void reset() {
+            this.readyToSubmitted.reset();
+            this.submittedToRunning.reset();
+            this.runningToDone.reset();
+            this.executions.reset();
+            this.retries.reset();
+            this.failures.reset();
+        }
+    }
+
+    /**
+     * 一种节点类型的指标快照
+     */
+    public static class Snapshot {
+        private long executions;
+        private long retries;
+        private long failures;
+        private LatencyHistogram.Summary readyToSubmittedMicros;
+        private LatencyHistogram.Summary submittedToRunningMicros;
+        private LatencyHistogram.Summary runningToDoneMicros;
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public LatencyHistogram.Summary getReadyToSubmittedMicros() {
+            return readyToSubmittedMicros;
+        }
+
+        public LatencyHistogram.Summary getSubmittedToRunningMicros() {
+            return submittedToRunningMicros;
+        }
+
+        public LatencyHistogram.Summary getRunningToDoneMicros() {
+            return runningToDoneMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "{executions=" + executions + ", retries=" + retries + ", failures=" + failures
+                    + ", readyToSubmitted=" + readyToSubmittedMicros
+                    + ", submittedToRunning=" + submittedToRunningMicros
+                    + ", runningToDone=" + runningToDoneMicros + '}';
+        }
+    }
+
+}
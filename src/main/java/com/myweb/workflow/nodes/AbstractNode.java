@@ -6,6 +6,13 @@ import com.myweb.workflow.TaskTriggerRule;
 import com.myweb.workflow.graph.GNode;
 
 public abstract class AbstractNode implements TaskNode {
+    // 节点配置中开启结果缓存的属性，如: {"cacheable": true}
+    public static final String CACHEABLE_KEY = "cacheable";
+    // 节点配置中标记输出为流程结果的属性，如: {"flowResult": true}
+    public static final String FLOW_RESULT_KEY = "flowResult";
+    // 节点配置中允许由其他应用实例执行的属性，如: {"distributable": true}
+    public static final String DISTRIBUTABLE_KEY = "distributable";
+
     protected final GNode gNode;
     protected volatile TaskState taskState = TaskState.PENDING;
 
@@ -33,4 +40,19 @@ public abstract class AbstractNode implements TaskNode {
         return TaskTriggerRule.ALL_SUCCESS;
     }
 
+    @Override
+    public boolean isCacheable() {
+        return this.gNode.getData() != null && Boolean.TRUE.equals(this.gNode.getData().get(CACHEABLE_KEY));
+    }
+
+    @Override
+    public boolean isFlowResult() {
+        return this.gNode.getData() != null && Boolean.TRUE.equals(this.gNode.getData().get(FLOW_RESULT_KEY));
+    }
+
+    @Override
+    public boolean isDistributable() {
+        return this.gNode.getData() != null && Boolean.TRUE.equals(this.gNode.getData().get(DISTRIBUTABLE_KEY));
+    }
+
 }
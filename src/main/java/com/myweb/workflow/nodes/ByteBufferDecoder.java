@@ -1,4 +1,4 @@
-package llm;
+package com.myweb.workflow.nodes;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -1,4 +1,4 @@
-package llm;
+package com.myweb.workflow.nodes;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
@@ -17,8 +17,8 @@ public class ChatStreamChunkParser {
     private static final String END_TAG = "</think>";
     private static final String SSE_PREFIX = "data:";
     private static final String SSE_DONE = "[DONE]";
-    // 缓冲区保留的最大长度，只需足够容纳最长的标签即可 (7个字符)
-    private static final int MAX_BUFFER_KEEP = Math.max(START_TAG.length(), END_TAG.length());
+    // ObjectMapper 是线程安全的，所有解析器共用一个
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
 
     // 当前是否处于思考模式
     private volatile boolean isThinking = false;
@@ -39,8 +39,6 @@ public class ChatStreamChunkParser {
     private Consumer<String> thinkContentConsumer;
     private Consumer<String> mainContentConsumer;
 
-    private final ObjectMapper jsonMapper = new ObjectMapper();
-
     public ChatStreamChunkParser() {
         this(false);
     }
@@ -83,7 +81,7 @@ public class ChatStreamChunkParser {
 
         // 提取 choices[0].delta.content 和 reasoning_content
         try {
-            JsonNode node = jsonMapper.readTree(data);
+            JsonNode node = JSON_MAPPER.readTree(data);
             JsonNode choices = node.path("choices");
             if (choices == null || choices.size() == 0) {
                 return;
@@ -187,7 +185,7 @@ public class ChatStreamChunkParser {
 
     /**
      * 处理缓冲区中未匹配完整标签的剩余部分
-     * 策略：除了末尾可能构成标签的一部分字符外，前面的都可以安全flush
+     * 策略：只保留末尾可能构成标签前缀的字符(如 "<thi" 等待下一个包的 "nk>")，其余内容立即发出，不增加首字延迟
      * @param targetIsThink true表示目标是思考内容，false表示正文
      */
     private void handlePartialBuffer(boolean targetIsThink) {
@@ -196,17 +194,9 @@ public class ChatStreamChunkParser {
             return;
         }
 
-        // 我们只需要保留可能形成标签的后缀
-        // 例如：内容是 "abcde<thi"，我们必须保留 "<thi" 等待下一个包的 "nk>"
-        // 如果内容是 "abcdefg"，且不包含标签头，理论上可以全刷，但为了安全保留最后几个字符
-
-        // 只有当缓冲区长度超过标签最大长度时，才需要 Flush 前面的内容
-        // 这样可以大幅减少 substring 操作，提升性能
-        if (length > MAX_BUFFER_KEEP) {
-            // 保留末尾 MAX_BUFFER_KEEP 个字符，把前面的都刷入内容
-            int keepLength = MAX_BUFFER_KEEP;
+        int keepLength = partialTagLength(targetIsThink ? END_TAG : START_TAG);
+        if (keepLength < length) {
             String safeContent = deltaBuffer.substring(0, length - keepLength);
-
             if (targetIsThink) {
                 appendThink(safeContent);
             } else {
@@ -218,6 +208,26 @@ public class ChatStreamChunkParser {
         }
     }
 
+    /**
+     * 缓冲区末尾与标签前缀相同的最大长度(不含完整标签)
+     */
+    private int partialTagLength(String tag) {
+        int length = deltaBuffer.length();
+        for (int k = Math.min(length, tag.length() - 1); k > 0; k--) {
+            boolean matched = true;
+            for (int i = 0; i < k; i++) {
+                if (deltaBuffer.charAt(length - k + i) != tag.charAt(i)) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
     private void appendThink(String text) {
         if (this.thinkContentConsumer != null) {
             this.thinkContentConsumer.accept(text);
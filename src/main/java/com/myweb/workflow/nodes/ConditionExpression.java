@@ -0,0 +1,697 @@
+package com.myweb.workflow.nodes;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.myweb.workflow.ExecutionContext;
+import com.myweb.workflow.NodeInputs;
+import com.myweb.workflow.NodeOutput;
+import com.myweb.workflow.StreamingNodeOutput;
+import com.myweb.workflow.exception.FlowExecuteException;
+
+/**
+ * 分支条件表达式.
+ * <p>
+ * 表达式在节点创建时(即编译执行计划时)解析一次，编译为嵌套的求值函数，执行时只做取值和比较，不再解析字符串；
+ * 编译后的表达式不保存执行状态，可以被同一执行计划的多次执行并发使用。
+ * <p>
+ * 语法：
+ * <ul>
+ *     <li>取值：{@code input}(默认输入端口上的数据)、{@code inputs.端口}、{@code context.键}(流程上下文)、
+ *         {@code workflowInput}(流程输入)，之后可以通过 {@code .字段}、{@code [下标]}、{@code ['键']} 访问 Map、List、数组和 JavaBean 属性(getX/isX)</li>
+ *     <li>常量：数字、'字符串'/"字符串"、true、false、null</li>
+ *     <li>比较：{@code == != > >= < <=}，以及 {@code contains}、{@code startsWith}、{@code endsWith}、{@code matches '正则'}</li>
+ *     <li>逻辑：{@code && || !} 和括号</li>
+ * </ul>
+ * 数字与数字、数字与数字字符串按数值比较；单独的取值按"真值"判断(null、false、0、空字符串和空集合为假)。
+ * 例如：{@code inputs.order.amount >= 100 && (context.level == 'vip' || input.tags contains 'urgent')}
+ */
+public final class ConditionExpression {
+
+    /**
+     * 编译后的求值函数
+     */
+    @FunctionalInterface
+    private interface Expr {
+        Object eval(ExecutionContext context, NodeInputs inputs);
+    }
+
+    private final String source;
+    private final Expr expr;
+
+    private ConditionExpression(String source, Expr expr) {
+        this.source = source;
+        this.expr = expr;
+    }
+
+    /**
+     * 解析并编译条件表达式
+     * @param source 表达式
+     * @return 编译后的表达式
+     * @throws FlowExecuteException 表达式语法错误
+     */
+    public static ConditionExpression compile(String source) {
+        if (source == null || source.isBlank()) {
+            throw new FlowExecuteException("Condition expression must not be empty");
+        }
+        return new ConditionExpression(source, new Parser(source).parse());
+    }
+
+    /**
+     * 对当前节点的输入和流程上下文求值
+     */
+    public boolean test(ExecutionContext context, NodeInputs inputs) {
+        return truthy(this.expr.eval(context, inputs));
+    }
+
+    public String getSource() {
+        return this.source;
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+
+    // ------------------------------------------------------------------------
+    // 求值
+    // ------------------------------------------------------------------------
+
+    static boolean truthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() > 0;
+        }
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        if (value instanceof Map) {
+            return !((Map<?, ?>) value).isEmpty();
+        }
+        if (value.getClass().isArray()) {
+            return Array.getLength(value) > 0;
+        }
+        return true;
+    }
+
+    static boolean looseEquals(Object left, Object right) {
+        if (left == right) {
+            return true;
+        }
+        if (left == null || right == null) {
+            return false;
+        }
+        final Number l = toNumber(left);
+        final Number r = toNumber(right);
+        if (l != null && r != null && (left instanceof Number || right instanceof Number)) {
+            return compareNumbers(l, r) == 0;
+        }
+        if (left instanceof Boolean && right instanceof CharSequence || left instanceof CharSequence && right instanceof Boolean) {
+            return left.toString().equalsIgnoreCase(right.toString());
+        }
+        if (left instanceof CharSequence || right instanceof CharSequence || left instanceof Enum || right instanceof Enum) {
+            return left.toString().equals(right.toString());
+        }
+        return Objects.equals(left, right);
+    }
+
+    /**
+     * 比较大小，不可比较时返回 null(比较结果为 false)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Integer compare(Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        final Number l = toNumber(left);
+        final Number r = toNumber(right);
+        if (l != null && r != null) {
+            return compareNumbers(l, r);
+        }
+        if (left instanceof CharSequence && right instanceof CharSequence) {
+            return left.toString().compareTo(right.toString());
+        }
+        if (left instanceof Comparable && left.getClass() == right.getClass()) {
+            return ((Comparable) left).compareTo(right);
+        }
+        return null;
+    }
+
+    private static int compareNumbers(Number l, Number r) {
+        if (isIntegral(l) && isIntegral(r)) {
+            return Long.compare(l.longValue(), r.longValue());
+        }
+        return Double.compare(l.doubleValue(), r.doubleValue());
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    private static Number toNumber(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof CharSequence) {
+            return parseNumber(value.toString());
+        }
+        return null;
+    }
+
+    private static Number parseNumber(String text) {
+        final int len = text.length();
+        if (len == 0 || len > 32) {
+            return null;
+        }
+        // 先做字符检查，避免非数字字符串抛出异常
+        boolean decimal = false;
+        for (int i = 0; i < len; i++) {
+            final char c = text.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!(c >= '0' && c <= '9') && !((c == '-' || c == '+') && (i == 0 || decimal))) {
+                return null;
+            }
+        }
+        try {
+            return decimal ? (Number) Double.parseDouble(text) : (Number) Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static boolean contains(Object container, Object element) {
+        if (container == null) {
+            return false;
+        }
+        if (container instanceof CharSequence) {
+            return element != null && container.toString().contains(element.toString());
+        }
+        if (container instanceof Map) {
+            return element != null && ((Map<?, ?>) container).containsKey(element.toString());
+        }
+        if (container instanceof Collection) {
+            for (Object item : (Collection<?>) container) {
+                if (looseEquals(item, element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (container.getClass().isArray()) {
+            for (int i = 0, n = Array.getLength(container); i < n; i++) {
+                if (looseEquals(Array.get(container, i), element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Object payload(NodeOutput output) {
+        return output != null ? output.getPayload() : null;
+    }
+
+    private static Object input(NodeInputs inputs, String port) {
+        if (inputs == null) {
+            return null;
+        }
+        final List<NodeOutput> outputs = inputs.getAllInputs(port);
+        if (!outputs.isEmpty() && outputs.get(0) instanceof StreamingNodeOutput) {
+            // 流式输入等待数据流结束，按完整的文本/列表判断
+            return inputs.getInput(port, Object.class);
+        }
+        return outputs.isEmpty() ? null : payload(outputs.get(0));
+    }
+
+    /**
+     * 属性访问：Map 的键、List/数组的下标、对象的 getter。
+     * 每个访问位置缓存上一次对象类型对应的 getter(内联缓存)，同一位置的数据类型通常不变
+     */
+    private static final class Property {
+        private final String name;
+        private final int index;
+        private volatile GetterCache getterCache;
+
+        Property(String name) {
+            this.name = name;
+            final Number number = parseNumber(name);
+            this.index = number instanceof Long && number.longValue() >= 0 && number.longValue() <= Integer.MAX_VALUE
+                    ? number.intValue() : -1;
+        }
+
+        Object get(Object target) {
+            if (target == null) {
+                return null;
+            }
+            if (target instanceof Map) {
+                return ((Map<?, ?>) target).get(this.name);
+            }
+            if (target instanceof List) {
+                final List<?> list = (List<?>) target;
+                if (this.index >= 0) {
+                    return this.index < list.size() ? list.get(this.index) : null;
+                }
+                return "size".equals(this.name) ? list.size() : null;
+            }
+            if (target.getClass().isArray()) {
+                final int length = Array.getLength(target);
+                if (this.index >= 0) {
+                    return this.index < length ? Array.get(target, this.index) : null;
+                }
+                return "length".equals(this.name) ? length : null;
+            }
+            if (target instanceof CharSequence) {
+                return "length".equals(this.name) ? ((CharSequence) target).length() : null;
+            }
+            return getByGetter(target);
+        }
+
+        private Object getByGetter(Object target) {
+            GetterCache cache = this.getterCache;
+            if (cache == null || cache.type != target.getClass()) {
+                cache = new GetterCache(target.getClass(), findGetter(target.getClass(), this.name));
+                this.getterCache = cache;
+            }
+            if (cache.getter == null) {
+                return null;
+            }
+            try {
+                return cache.getter.invoke(target);
+            } catch (ReflectiveOperationException e) {
+                throw new FlowExecuteException("Failed to read property '" + this.name + "' of " + target.getClass().getName(), e);
+            }
+        }
+
+        /**
+         * 只查找 JavaBean 的 getter(getX，返回 boolean 的 isX)，条件中不能调用其他方法；getClass() 不视为属性
+         */
+        private static Method findGetter(Class<?> type, String name) {
+            if ("class".equals(name)) {
+                return null;
+            }
+            final String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            try {
+                final Method method = type.getMethod("get" + suffix);
+                if (method.getReturnType() != void.class) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignore) {
+                // try isX
+            }
+            try {
+                final Method method = type.getMethod("is" + suffix);
+                if (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignore) {
+                // not a property
+            }
+            return null;
+        }
+    }
+
+    private static final class GetterCache {
+        final Class<?> type;
+        final Method getter;
+
+        GetterCache(Class<?> type, Method getter) {
+            this.type = type;
+            this.getter = getter;
+        }
+    }
+
+    /**
+     * 常量子表达式(编译时折叠)
+     */
+    private static final class Constant implements Expr {
+        final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object eval(ExecutionContext context, NodeInputs inputs) {
+            return this.value;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // 解析：递归下降，直接生成求值函数
+    // ------------------------------------------------------------------------
+
+    private static final class Parser {
+        private final String source;
+        private int pos = 0;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        Expr parse() {
+            final Expr expr = parseOr();
+            skipWhitespace();
+            if (this.pos < this.source.length()) {
+                throw error("Unexpected '" + this.source.charAt(this.pos) + "'");
+            }
+            return expr;
+        }
+
+        private Expr parseOr() {
+            Expr left = parseAnd();
+            while (accept("||")) {
+                final Expr l = left;
+                final Expr r = parseAnd();
+                left = fold((c, i) -> truthy(l.eval(c, i)) || truthy(r.eval(c, i)), l, r);
+            }
+            return left;
+        }
+
+        private Expr parseAnd() {
+            Expr left = parseNot();
+            while (accept("&&")) {
+                final Expr l = left;
+                final Expr r = parseNot();
+                left = fold((c, i) -> truthy(l.eval(c, i)) && truthy(r.eval(c, i)), l, r);
+            }
+            return left;
+        }
+
+        private Expr parseNot() {
+            if (peek('!') && !peek("!=")) {
+                this.pos++;
+                final Expr operand = parseNot();
+                return fold((c, i) -> !truthy(operand.eval(c, i)), operand);
+            }
+            return parseComparison();
+        }
+
+        private Expr parseComparison() {
+            final Expr l = parsePrimary();
+            if (accept("==")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> looseEquals(l.eval(c, i), r.eval(c, i)), l, r);
+            }
+            if (accept("!=")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> !looseEquals(l.eval(c, i), r.eval(c, i)), l, r);
+            }
+            if (accept(">=")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> { Integer v = compare(l.eval(c, i), r.eval(c, i)); return v != null && v >= 0; }, l, r);
+            }
+            if (accept("<=")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> { Integer v = compare(l.eval(c, i), r.eval(c, i)); return v != null && v <= 0; }, l, r);
+            }
+            if (accept(">")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> { Integer v = compare(l.eval(c, i), r.eval(c, i)); return v != null && v > 0; }, l, r);
+            }
+            if (accept("<")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> { Integer v = compare(l.eval(c, i), r.eval(c, i)); return v != null && v < 0; }, l, r);
+            }
+            if (acceptKeyword("contains")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> contains(l.eval(c, i), r.eval(c, i)), l, r);
+            }
+            if (acceptKeyword("startsWith")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> {
+                    Object v = l.eval(c, i), prefix = r.eval(c, i);
+                    return v != null && prefix != null && v.toString().startsWith(prefix.toString());
+                }, l, r);
+            }
+            if (acceptKeyword("endsWith")) {
+                final Expr r = parsePrimary();
+                return fold((c, i) -> {
+                    Object v = l.eval(c, i), suffix = r.eval(c, i);
+                    return v != null && suffix != null && v.toString().endsWith(suffix.toString());
+                }, l, r);
+            }
+            if (acceptKeyword("matches")) {
+                final int start = this.pos;
+                final Expr r = parsePrimary();
+                if (!(r instanceof Constant) || !(((Constant) r).value instanceof String)) {
+                    this.pos = start;
+                    throw error("matches requires a string literal pattern");
+                }
+                final Pattern pattern;
+                try {
+                    // 正则只编译一次
+                    pattern = Pattern.compile((String) ((Constant) r).value);
+                } catch (PatternSyntaxException e) {
+                    this.pos = start;
+                    throw error("Invalid pattern: " + e.getDescription());
+                }
+                return fold((c, i) -> {
+                    Object v = l.eval(c, i);
+                    return v != null && pattern.matcher(v.toString()).matches();
+                }, l);
+            }
+            return l;
+        }
+
+        private Expr parsePrimary() {
+            skipWhitespace();
+            if (this.pos >= this.source.length()) {
+                throw error("Unexpected end of expression");
+            }
+            final char ch = this.source.charAt(this.pos);
+            if (ch == '(') {
+                this.pos++;
+                final Expr expr = parseOr();
+                expect(')');
+                return expr;
+            }
+            if (ch == '\'' || ch == '"') {
+                return new Constant(parseString());
+            }
+            if (ch == '-' || Character.isDigit(ch)) {
+                return new Constant(parseNumberLiteral());
+            }
+            if (isIdentifierStart(ch)) {
+                final int start = this.pos;
+                final String name = parseIdentifier();
+                switch (name) {
+                    case "true":
+                        return new Constant(Boolean.TRUE);
+                    case "false":
+                        return new Constant(Boolean.FALSE);
+                    case "null":
+                        return new Constant(null);
+                    case "input":
+                        return parsePath((c, i) -> input(i, AbstractNode.DEFAULT_INPUT_PORT_NAME));
+                    case "workflowInput":
+                        return parsePath((c, i) -> c != null ? c.getWorkflowInput() : null);
+                    case "inputs": {
+                        final String port = parseMember("input port");
+                        return parsePath((c, i) -> input(i, port));
+                    }
+                    case "context": {
+                        final String key = parseMember("context key");
+                        return parsePath((c, i) -> c != null ? c.get(key) : null);
+                    }
+                    default:
+                        this.pos = start;
+                        throw error("Unknown variable '" + name + "', expected input, inputs, context or workflowInput");
+                }
+            }
+            throw error("Unexpected '" + ch + "'");
+        }
+
+        /**
+         * 取值之后的 .字段 / [下标] 访问链
+         */
+        private Expr parsePath(Expr root) {
+            final List<Property> properties = new ArrayList<>();
+            while (this.pos < this.source.length()
+                    && (this.source.charAt(this.pos) == '.' || this.source.charAt(this.pos) == '[')) {
+                properties.add(new Property(parseMember("property")));
+            }
+            if (properties.isEmpty()) {
+                return root;
+            }
+            final Property[] path = properties.toArray(new Property[0]);
+            return (c, i) -> {
+                Object value = root.eval(c, i);
+                for (int k = 0; k < path.length && value != null; k++) {
+                    value = path[k].get(value);
+                }
+                return value;
+            };
+        }
+
+        private String parseMember(String what) {
+            if (this.pos < this.source.length() && this.source.charAt(this.pos) == '.') {
+                this.pos++;
+                if (this.pos < this.source.length() && Character.isDigit(this.source.charAt(this.pos))) {
+                    final int start = this.pos;
+                    while (this.pos < this.source.length() && Character.isDigit(this.source.charAt(this.pos))) {
+                        this.pos++;
+                    }
+                    return this.source.substring(start, this.pos);
+                }
+                if (this.pos < this.source.length() && isIdentifierStart(this.source.charAt(this.pos))) {
+                    return parseIdentifier();
+                }
+                throw error("Expected " + what + " name");
+            }
+            if (this.pos < this.source.length() && this.source.charAt(this.pos) == '[') {
+                this.pos++;
+                skipWhitespace();
+                final String member;
+                if (this.pos < this.source.length() && (this.source.charAt(this.pos) == '\'' || this.source.charAt(this.pos) == '"')) {
+                    member = parseString();
+                } else {
+                    final Object number = parseNumberLiteral();
+                    if (!(number instanceof Long) || (Long) number < 0) {
+                        throw error("Expected index or quoted " + what + " name");
+                    }
+                    member = number.toString();
+                }
+                expect(']');
+                return member;
+            }
+            throw error("Expected ." + what);
+        }
+
+        private String parseIdentifier() {
+            final int start = this.pos;
+            while (this.pos < this.source.length() && isIdentifierPart(this.source.charAt(this.pos))) {
+                this.pos++;
+            }
+            return this.source.substring(start, this.pos);
+        }
+
+        private String parseString() {
+            final char quote = this.source.charAt(this.pos++);
+            final StringBuilder sb = new StringBuilder();
+            while (this.pos < this.source.length()) {
+                final char ch = this.source.charAt(this.pos++);
+                if (ch == quote) {
+                    return sb.toString();
+                }
+                if (ch == '\\' && this.pos < this.source.length()) {
+                    final char escaped = this.source.charAt(this.pos++);
+                    switch (escaped) {
+                        case 'n': sb.append('\n'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'r': sb.append('\r'); break;
+                        default: sb.append(escaped);
+                    }
+                } else {
+                    sb.append(ch);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Object parseNumberLiteral() {
+            final int start = this.pos;
+            if (this.pos < this.source.length() && this.source.charAt(this.pos) == '-') {
+                this.pos++;
+            }
+            while (this.pos < this.source.length()) {
+                final char ch = this.source.charAt(this.pos);
+                if (Character.isDigit(ch) || ch == '.' || ch == 'e' || ch == 'E'
+                        || ((ch == '-' || ch == '+') && (this.source.charAt(this.pos - 1) == 'e' || this.source.charAt(this.pos - 1) == 'E'))) {
+                    this.pos++;
+                } else {
+                    break;
+                }
+            }
+            final Number number = parseNumber(this.source.substring(start, this.pos));
+            if (number == null) {
+                this.pos = start;
+                throw error("Invalid number");
+            }
+            return number;
+        }
+
+        private boolean accept(String operator) {
+            skipWhitespace();
+            if (this.source.startsWith(operator, this.pos)) {
+                this.pos += operator.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            skipWhitespace();
+            final int end = this.pos + keyword.length();
+            if (this.source.startsWith(keyword, this.pos)
+                    && (end >= this.source.length() || !isIdentifierPart(this.source.charAt(end)))) {
+                this.pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean peek(char ch) {
+            skipWhitespace();
+            return this.pos < this.source.length() && this.source.charAt(this.pos) == ch;
+        }
+
+        private boolean peek(String operator) {
+            skipWhitespace();
+            return this.source.startsWith(operator, this.pos);
+        }
+
+        private void expect(char ch) {
+            if (!peek(ch)) {
+                throw error("Expected '" + ch + "'");
+            }
+            this.pos++;
+        }
+
+        private void skipWhitespace() {
+            while (this.pos < this.source.length() && Character.isWhitespace(this.source.charAt(this.pos))) {
+                this.pos++;
+            }
+        }
+
+        private static boolean isIdentifierStart(char ch) {
+            return Character.isLetter(ch) || ch == '_' || ch == '$';
+        }
+
+        private static boolean isIdentifierPart(char ch) {
+            return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+        }
+
+        /**
+         * 操作数都是常量时在编译时求值
+         */
+        private static Expr fold(Expr expr, Expr... operands) {
+            for (Expr operand : operands) {
+                if (!(operand instanceof Constant)) {
+                    return expr;
+                }
+            }
+            return new Constant(expr.eval(null, null));
+        }
+
+        private FlowExecuteException error(String message) {
+            return new FlowExecuteException(message + " at position " + this.pos + " in condition: " + this.source);
+        }
+    }
+
+}
@@ -0,0 +1,324 @@
+package com.myweb.workflow.nodes;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.myweb.workflow.AsyncTaskNode;
+import com.myweb.workflow.ExecutionContext;
+import com.myweb.workflow.FlowExecutionResult;
+import com.myweb.workflow.FlowPlan;
+import com.myweb.workflow.NodeExecutionResult;
+import com.myweb.workflow.NodeInputs;
+import com.myweb.workflow.NodeOutput;
+import com.myweb.workflow.exception.FlowExecuteException;
+import com.myweb.workflow.graph.CompiledGraph;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.graph.GraphReader;
+
+/**
+ * 循环节点(Map/ForEach)：对输入集合中的每个元素执行一次子图，收集每个元素的结果.
+ * <p>
+ * 子图只编译一次，每个元素作为一次子流程执行(子图开始节点的输入为元素本身，子流程上下文中
+ * {@link #ITEM_KEY}/{@link #INDEX_KEY} 为元素和下标)，因此 5 万个元素的列表不会展开成 5 万个图节点。
+ * 最多 parallelism 个执行通道同时进行，每个通道完成一个元素后领取下一个未执行的元素，
+ * 快慢不均的元素会自动摊到空闲的通道上；子流程在执行引擎的线程池中执行，等待期间不占用工作线程。
+ * <p>
+ * 节点配置：
+ * <ul>
+ *     <li>subGraph：子图定义 {nodes: [...], edges: [...]}(必填)</li>
+ *     <li>parallelism：同时执行的元素数，默认为 CPU 核数</li>
+ *     <li>ordered：结果是否按元素顺序排列，默认 true；false 时按完成顺序排列</li>
+ *     <li>resultNode：子图中结果节点的ID，默认为子图中唯一没有下游的节点；resultPort：结果端口，默认 "output"</li>
+ *     <li>continueOnError：元素执行失败时是否继续，默认 false(第一个失败的元素使节点失败，不再执行后面的元素)；
+ *         true 时失败元素的结果为 null，失败信息输出到 "errors" 端口</li>
+ * </ul>
+ * 输入为默认输入端口上的集合(Collection 或数组)，输出端口 "output" 为结果列表。
+ */
+public class ForEachNode extends AbstractNode implements AsyncTaskNode {
+    public static final String ITEM_KEY = "item";
+    public static final String INDEX_KEY = "index";
+    public static final String ERRORS_OUTPUT_PORT_NAME = "errors";
+
+    private final Map<String, Object> forEachData;
+
+    // 子图的执行计划，首次执行时编译
+    private volatile FlowPlan subPlan;
+    private volatile int resultNodeIndex = -1;
+
+    public ForEachNode(GNode gNode) {
+        super(gNode);
+
+        this.forEachData = gNode.getData() != null ? gNode.getData() : Map.of();
+    }
+
+    @Override
+    public String getType() {
+        return "foreach";
+    }
+
+    @Override
+    public CompletableFuture<NodeExecutionResult> callAsync(ExecutionContext context, NodeInputs inputs) {
+        final List<?> items;
+        try {
+            subPlan();
+            items = toList(inputs.getInput(Object.class));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final Loop loop = new Loop(context, items, getIntConfig("parallelism", Runtime.getRuntime().availableProcessors()),
+                !Boolean.FALSE.equals(this.forEachData.get("ordered")),
+                Boolean.TRUE.equals(this.forEachData.get("continueOnError")));
+        loop.start();
+        return loop.future;
+    }
+
+    private FlowPlan subPlan() {
+        FlowPlan plan = this.subPlan;
+        if (plan == null) {
+            synchronized (this) {
+                plan = this.subPlan;
+                if (plan == null) {
+                    plan = FlowPlan.compile(getId() + "#subGraph", parseSubGraph());
+                    this.resultNodeIndex = findResultNode(plan.getCompiledGraph());
+                    this.subPlan = plan;
+                }
+            }
+        }
+        return plan;
+    }
+
+    private Graph parseSubGraph() {
+        final Object subGraph = this.forEachData.get("subGraph");
+        if (subGraph instanceof Graph) {
+            return (Graph) subGraph;
+        }
+        if (subGraph instanceof Map) {
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> definition = (Map<String, Object>) subGraph;
+            return GraphReader.read(definition);
+        }
+        if (subGraph instanceof String) {
+            return GraphReader.read((String) subGraph);
+        }
+        throw new FlowExecuteException("ForEachNode <" + getId() + "> subGraph is required");
+    }
+
+    private int findResultNode(CompiledGraph cg) {
+        final Object resultNode = this.forEachData.get("resultNode");
+        if (resultNode != null) {
+            final int index = cg.indexOf(resultNode.toString());
+            if (index < 0) {
+                throw new FlowExecuteException("ForEachNode <" + getId() + "> resultNode not found in subGraph: " + resultNode);
+            }
+            return index;
+        }
+        int sink = -1;
+        for (int i = 0; i < cg.size(); i++) {
+            if (cg.getDownstreamStart(i) == cg.getDownstreamEnd(i)) {
+                if (sink >= 0) {
+                    throw new FlowExecuteException("ForEachNode <" + getId() + "> subGraph has multiple sink nodes, resultNode is required");
+                }
+                sink = i;
+            }
+        }
+        return sink;
+    }
+
+    private static List<?> toList(Object input) {
+        if (input == null) {
+            return List.of();
+        }
+        if (input instanceof List) {
+            return (List<?>) input;
+        }
+        if (input instanceof Collection) {
+            return new ArrayList<>((Collection<?>) input);
+        }
+        if (input instanceof Object[]) {
+            return Arrays.asList((Object[]) input);
+        }
+        if (input.getClass().isArray()) {
+            final int length = Array.getLength(input);
+            final List<Object> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                list.add(Array.get(input, i));
+            }
+            return list;
+        }
+        throw new FlowExecuteException("ForEach input must be a collection or an array, but got " + input.getClass().getName());
+    }
+
+    private int getIntConfig(String key, int defaultValue) {
+        final Object value = this.forEachData.get(key);
+        return value instanceof Number && ((Number) value).intValue() > 0 ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /**
+     * 一次循环执行：parallelism 个通道从共享的下标领取元素，每个通道同时只执行一个子流程
+     */
+    private final class Loop {
+        private final ExecutionContext context;
+        private final List<?> items;
+        private final int lanes;
+        private final boolean ordered;
+        private final boolean continueOnError;
+        private final String resultPort;
+
+        private final AtomicInteger nextIndex = new AtomicInteger(0);
+        private final AtomicInteger activeLanes;
+        private final Object[] orderedResults;
+        private final ConcurrentLinkedQueue<Object> unorderedResults;
+        private final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<CompletableFuture<FlowExecutionResult>> running = new ConcurrentLinkedQueue<>();
+        private final CompletableFuture<NodeExecutionResult> future = new CompletableFuture<>();
+
+        Loop(ExecutionContext context, List<?> items, int parallelism, boolean ordered, boolean continueOnError) {
+            this.context = context;
+            this.items = items;
+            this.lanes = Math.max(1, Math.min(parallelism, items.size()));
+            this.ordered = ordered;
+            this.continueOnError = continueOnError;
+            this.resultPort = String.valueOf(forEachData.getOrDefault("resultPort", DEFAULT_OUTPUT_PORT_NAME));
+            this.activeLanes = new AtomicInteger(this.lanes);
+            this.orderedResults = ordered ? new Object[items.size()] : null;
+            this.unorderedResults = ordered ? null : new ConcurrentLinkedQueue<>();
+        }
+
+        void start() {
+            // 节点被取消或失败时取消正在执行的子流程
+            this.future.whenComplete((r, e) -> {
+                if (e != null) {
+                    this.running.forEach(f -> f.cancel(true));
+                }
+            });
+            for (int lane = 0; lane < this.lanes; lane++) {
+                advance();
+            }
+        }
+
+        /**
+         * 通道领取并执行下一个元素；子流程同步完成时继续循环领取，避免回调嵌套过深
+         */
+        private void advance() {
+            while (true) {
+                final int index = this.nextIndex.getAndIncrement();
+                if (index >= this.items.size() || this.future.isDone()) {
+                    laneFinished();
+                    return;
+                }
+
+                final ExecutionContext subContext = subContext(index);
+                final CompletableFuture<FlowExecutionResult> sub;
+                try {
+                    sub = this.context.executeSubFlow(subPlan, subContext);
+                } catch (RuntimeException e) {
+                    this.future.completeExceptionally(e);
+                    laneFinished();
+                    return;
+                }
+                if (!sub.isDone()) {
+                    this.running.add(sub);
+                    sub.whenComplete((r, e) -> {
+                        this.running.remove(sub);
+                        onItemDone(index, subContext, sub);
+                        advance();
+                    });
+                    return;
+                }
+                onItemDone(index, subContext, sub);
+            }
+        }
+
+        private ExecutionContext subContext(int index) {
+            final Object item = this.items.get(index);
+            final ExecutionContext subContext = new ExecutionContext();
+            subContext.setWorkflowInput(item);
+            if (item != null) {
+                subContext.put(ITEM_KEY, item);
+            }
+            subContext.put(INDEX_KEY, index);
+            return subContext;
+        }
+
+        private void onItemDone(int index, ExecutionContext subContext, CompletableFuture<FlowExecutionResult> sub) {
+            FlowExecutionResult result = null;
+            Throwable error = null;
+            try {
+                result = sub.join();
+            } catch (CompletionException e) {
+                error = e.getCause() != null ? e.getCause() : e;
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            if (error == null && result != null && result.isSuccess()) {
+                addResult(index, itemResult(subContext));
+                return;
+            }
+            final String message = "Item " + index + " failed: "
+                    + (error != null ? error.getMessage() : result != null ? result.getFailedNodes() : "no result");
+            if (this.continueOnError) {
+                this.errors.add(message);
+                addResult(index, null);
+            } else {
+                this.future.completeExceptionally(new FlowExecuteException("ForEachNode <" + getId() + "> " + message, error));
+            }
+        }
+
+        private void addResult(int index, Object value) {
+            if (this.ordered) {
+                this.orderedResults[index] = value;
+            } else {
+                this.unorderedResults.add(value != null ? value : NullResult.INSTANCE);
+            }
+        }
+
+        private Object itemResult(ExecutionContext subContext) {
+            if (resultNodeIndex < 0) {
+                return null;
+            }
+            final String nodeId = subPlan.getCompiledGraph().getNodeId(resultNodeIndex);
+            return subContext.getNodeExecutionResult(nodeId)
+                    .map(r -> r.getNodeOutput(this.resultPort))
+                    .map(NodeOutput::getPayload)
+                    .orElse(null);
+        }
+
+        private void laneFinished() {
+            if (this.activeLanes.decrementAndGet() > 0 || this.future.isDone()) {
+                return;
+            }
+            final List<Object> results;
+            if (this.ordered) {
+                results = Arrays.asList(this.orderedResults);
+            } else {
+                results = new ArrayList<>(this.items.size());
+                for (Object value : this.unorderedResults) {
+                    results.add(value == NullResult.INSTANCE ? null : value);
+                }
+            }
+            final NodeExecutionResult result = NodeExecutionResult.success()
+                    .addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, new NodeOutput(results));
+            if (!this.errors.isEmpty()) {
+                result.addNodeOutput(ERRORS_OUTPUT_PORT_NAME, new NodeOutput(new ArrayList<>(this.errors)));
+            }
+            this.future.complete(result);
+        }
+    }
+
+    // ConcurrentLinkedQueue 不能保存 null
+    private enum NullResult {
+        INSTANCE
+    }
+
+}
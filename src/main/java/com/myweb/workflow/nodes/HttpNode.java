@@ -1,23 +1,121 @@
 package com.myweb.workflow.nodes;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.myweb.util.JsonObjectMapper;
+import com.myweb.workflow.AsyncTaskNode;
 import com.myweb.workflow.ExecutionContext;
 import com.myweb.workflow.NodeExecutionResult;
 import com.myweb.workflow.NodeInputs;
+import com.myweb.workflow.NodeOutput;
+import com.myweb.workflow.exception.FlowExecuteException;
 import com.myweb.workflow.graph.GNode;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
 /**
  * HTTP请求节点
- * TODO
+ * <p>
+ * 节点配置：
+ * <ul>
+ *     <li>url：请求地址(必填)</li>
+ *     <li>method：请求方法，默认 GET</li>
+ *     <li>headers：请求头 {name: value}</li>
+ *     <li>body：请求体，字符串原样发送，其他对象序列化为 JSON；未配置时使用默认输入端口上的数据</li>
+ *     <li>timeoutMillis：整个请求的超时时间，默认使用共享客户端的超时设置</li>
+ * </ul>
+ * 输出端口 "output" 为响应体文本，"status" 为响应状态码；非 2xx 响应按节点失败处理(会重试)。
+ * <p>
+ * 所有 HTTP 节点共用一个 {@link OkHttpClient}(共享连接池和 HTTP/2 连接)，通过 {@code enqueue} 异步发送请求，
+ * 请求进行中不占用执行引擎的工作线程，同时进行的请求数由客户端的 {@link Dispatcher} 限制。
  */
-public class HttpNode extends AbstractNode {
+public class HttpNode extends AbstractNode implements AsyncTaskNode {
+    public static final String STATUS_OUTPUT_PORT_NAME = "status";
+
+    // 共享客户端的默认设置：同时进行的请求数、每个主机同时进行的请求数、空闲连接数
+    public static final int DEFAULT_MAX_REQUESTS = 1024;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 256;
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 64;
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType TEXT = MediaType.get("text/plain; charset=utf-8");
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+
+    private static volatile OkHttpClient sharedClient;
+
     private Map<String, Object> httpData;
 
     public HttpNode(GNode gNode) {
         super(gNode);
 
-        this.httpData = gNode.getData();
+        this.httpData = gNode.getData() != null ? gNode.getData() : Map.of();
+    }
+
+    /**
+     * 所有 HTTP 节点共用的客户端，首次使用时按默认设置创建
+     */
+    public static OkHttpClient getSharedClient() {
+        OkHttpClient client = sharedClient;
+        if (client == null) {
+            synchronized (HttpNode.class) {
+                client = sharedClient;
+                if (client == null) {
+                    client = createDefaultClient();
+                    sharedClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 替换共享客户端(如应用中已有配置好的客户端)，需要在执行流程之前调用
+     */
+    public static void setSharedClient(OkHttpClient client) {
+        sharedClient = client;
+    }
+
+    private static OkHttpClient createDefaultClient() {
+        // 回调线程只负责读取响应，结果处理会回到执行引擎的工作线程
+        final AtomicInteger threadNum = new AtomicInteger(0);
+        final ThreadPoolExecutor callbackExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "flow-http-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        final Dispatcher dispatcher = new Dispatcher(callbackExecutor);
+        dispatcher.setMaxRequests(DEFAULT_MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(DEFAULT_MAX_REQUESTS_PER_HOST);
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(DEFAULT_MAX_IDLE_CONNECTIONS, 5, TimeUnit.MINUTES))
+                // HTTPS 上通过 ALPN 协商 HTTP/2，同一主机的请求复用一个连接
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
     }
 
     @Override
@@ -26,12 +124,118 @@ public class HttpNode extends AbstractNode {
     }
 
     @Override
-    public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+    public CompletableFuture<NodeExecutionResult> callAsync(ExecutionContext context, NodeInputs inputs) {
+        final String url = (String) httpData.getOrDefault("url", "");
+        final String method = ((String) httpData.getOrDefault("method", "GET")).toUpperCase();
+        if (url == null || url.isEmpty()) {
+            return CompletableFuture.failedFuture(new FlowExecuteException("HttpNode <" + getId() + "> url is required"));
+        }
 
-        String url = (String) httpData.getOrDefault("url", "");
-        String method = (String) httpData.getOrDefault("method", "GET");
+        final Request request;
+        try {
+            request = new Request.Builder()
+                    .url(url)
+                    .headers(buildHeaders())
+                    .method(method, buildBody(method, inputs))
+                    .build();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
 
+        final Call call = client().newCall(request);
+        final CompletableFuture<NodeExecutionResult> future = new CompletableFuture<>();
+        // 节点被取消时中止请求
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                try (ResponseBody body = response.body()) {
+                    final String text = body != null ? body.string() : "";
+                    if (!response.isSuccessful()) {
+                        future.completeExceptionally(new FlowExecuteException(
+                                "HTTP " + response.code() + " " + method + " " + url + ": " + abbreviate(text)));
+                        return;
+                    }
+                    future.complete(NodeExecutionResult.success()
+                            .addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, new NodeOutput(text))
+                            .addNodeOutput(STATUS_OUTPUT_PORT_NAME, new NodeOutput(response.code())));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private OkHttpClient client() {
+        final OkHttpClient client = getSharedClient();
+        final Object timeout = httpData.get("timeoutMillis");
+        if (timeout instanceof Number && ((Number) timeout).longValue() > 0) {
+            // newBuilder() 创建的客户端共用连接池和 Dispatcher
+            return client.newBuilder().callTimeout(((Number) timeout).longValue(), TimeUnit.MILLISECONDS).build();
+        }
+        return client;
+    }
+
+    private Headers buildHeaders() {
+        final Headers.Builder headers = new Headers.Builder();
+        final Object configHeaders = httpData.get("headers");
+        if (configHeaders instanceof Map) {
+            ((Map<?, ?>) configHeaders).forEach((name, value) -> {
+                if (name != null && value != null) {
+                    headers.add(name.toString(), value.toString());
+                }
+            });
+        }
+        return headers.build();
+    }
+
+    private RequestBody buildBody(String method, NodeInputs inputs) {
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return null;
+        }
+        Object body = httpData.get("body");
+        if (body == null && inputs != null) {
+            body = inputs.getInput(Object.class);
+        }
+        final MediaType contentType = contentType();
+        if (body == null) {
+            // POST/PUT/PATCH 必须有请求体
+            return "POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)
+                    ? RequestBody.create(new byte[0], contentType) : null;
+        }
+        if (body instanceof byte[]) {
+            return RequestBody.create((byte[]) body, contentType != null ? contentType : OCTET_STREAM);
+        }
+        if (body instanceof CharSequence) {
+            return RequestBody.create(body.toString(), contentType != null ? contentType : TEXT);
+        }
+        return RequestBody.create(JsonObjectMapper.toBytes(body), contentType != null ? contentType : JSON);
+    }
+
+    private MediaType contentType() {
+        final Object configHeaders = httpData.get("headers");
+        if (configHeaders instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) configHeaders).entrySet()) {
+                if (entry.getKey() != null && "Content-Type".equalsIgnoreCase(entry.getKey().toString()) && entry.getValue() != null) {
+                    return MediaType.parse(entry.getValue().toString());
+                }
+            }
+        }
         return null;
     }
 
+    private static String abbreviate(String text) {
+        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    }
+
 }
@@ -3,20 +3,63 @@ package com.myweb.workflow.nodes;
 import com.myweb.workflow.ExecutionContext;
 import com.myweb.workflow.NodeExecutionResult;
 import com.myweb.workflow.NodeInputs;
+import com.myweb.workflow.NodeOutput;
+import com.myweb.workflow.StreamingNodeOutput;
+import com.myweb.workflow.exception.FlowExecuteException;
 import com.myweb.workflow.graph.GNode;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * if-else分支节点
+ * <p>
+ * 按顺序对每个分支的条件({@link ConditionExpression})求值，只激活第一个条件成立的分支的目标节点，
+ * 都不成立时激活 else 目标节点，其他下游节点被跳过；没有配置 else 且都不成立时所有下游节点都被跳过。
+ * 条件在节点创建时(编译执行计划时)编译一次，同一执行计划的每次执行都复用编译结果，条件语法错误会使执行计划编译失败。
+ * <p>
+ * 节点配置：
+ * <ul>
+ *     <li>branches：分支列表 [{condition: "inputs.score >= 60", targetNodeId: "pass"}, ...]，对应 if, else if...</li>
+ *     <li>elseTargetNodeId：else 目标节点ID</li>
+ * </ul>
+ * 默认输入端口上的数据原样输出到 "output" 端口；每个分支的命中次数通过 {@link #getBranchHits()} 获取(随执行计划累计)。
  */
 public class IfElseNode extends AbstractNode {
+    // 没有选中任何分支时不激活任何下游节点，所有下游节点被跳过
+    private static final List<String> NO_TARGET = Collections.emptyList();
+
     private List<Branch> branches = new ArrayList<>(); // 对应 if, else if...
     private String elseTargetNodeId; // 对应 else
 
+    // 编译后的分支条件和命中计数(写时复制，addBranch 不影响正在进行的求值)
+    private volatile CompiledBranch[] compiledBranches = new CompiledBranch[0];
+    private final LongAdder elseHits = new LongAdder();
+
     public IfElseNode(GNode gNode) {
         super(gNode);
+
+        final Map<String, Object> data = gNode.getData();
+        if (data == null) {
+            return;
+        }
+        final Object configBranches = data.get("branches");
+        if (configBranches instanceof List) {
+            for (Object item : (List<?>) configBranches) {
+                if (!(item instanceof Map)) {
+                    throw new FlowExecuteException("IfElseNode <" + getId() + "> invalid branch: " + item);
+                }
+                final Map<?, ?> branch = (Map<?, ?>) item;
+                final Object condition = branch.get("condition");
+                final Object target = branch.get("targetNodeId");
+                addBranch(condition != null ? condition.toString() : null, target != null ? target.toString() : null);
+            }
+        }
+        final Object elseTarget = data.get("elseTargetNodeId");
+        this.elseTargetNodeId = elseTarget != null ? elseTarget.toString() : null;
     }
 
     @Override
@@ -24,13 +67,96 @@ public class IfElseNode extends AbstractNode {
         return "branch";
     }
 
+    @Override
+    public int getMaxRetries() {
+        // 条件求值是确定的，重试没有意义
+        return 0;
+    }
+
     @Override
     public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
-        return null;
+        String target = null;
+        for (CompiledBranch branch : this.compiledBranches) {
+            if (branch.condition.test(context, inputs)) {
+                branch.hits.increment();
+                target = branch.targetNodeId;
+                break;
+            }
+        }
+        if (target == null) {
+            this.elseHits.increment();
+            target = this.elseTargetNodeId;
+        }
+
+        final NodeExecutionResult result = NodeExecutionResult.success()
+                .setNextNodesToActivate(target != null ? Collections.singletonList(target) : NO_TARGET);
+        final List<NodeOutput> sourceInputs = inputs != null ? inputs.getAllInputs(DEFAULT_INPUT_PORT_NAME) : List.of();
+        if (!sourceInputs.isEmpty()) {
+            final NodeOutput source = sourceInputs.get(0);
+            // 数据流只登记了本节点为订阅者，向分支节点传递物化后的完整数据
+            result.addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, source instanceof StreamingNodeOutput
+                    ? new NodeOutput(inputs.getInput(Object.class)) : source);
+        }
+        return result;
     }
 
-    public void addBranch(String condition, String targetNodeId) {
+    /**
+     * 添加分支，条件立即编译
+     * @throws FlowExecuteException 条件语法错误或目标节点为空
+     */
+    public synchronized void addBranch(String condition, String targetNodeId) {
+        if (targetNodeId == null || targetNodeId.isEmpty()) {
+            throw new FlowExecuteException("IfElseNode <" + getId() + "> branch targetNodeId is required");
+        }
+        final ConditionExpression compiled;
+        try {
+            compiled = ConditionExpression.compile(condition);
+        } catch (FlowExecuteException e) {
+            throw new FlowExecuteException("IfElseNode <" + getId() + "> " + e.getMessage(), e);
+        }
         branches.add(new Branch(condition, targetNodeId));
+
+        final CompiledBranch[] current = this.compiledBranches;
+        final CompiledBranch[] next = new CompiledBranch[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new CompiledBranch(compiled, targetNodeId);
+        this.compiledBranches = next;
+    }
+
+    public List<Branch> getBranches() {
+        return Collections.unmodifiableList(branches);
+    }
+
+    public String getElseTargetNodeId() {
+        return elseTargetNodeId;
+    }
+
+    public void setElseTargetNodeId(String elseTargetNodeId) {
+        this.elseTargetNodeId = elseTargetNodeId;
+    }
+
+    /**
+     * 每个分支的命中次数，顺序与分支列表相同，最后一个元素为 else 的次数
+     */
+    public long[] getBranchHits() {
+        final CompiledBranch[] current = this.compiledBranches;
+        final long[] hits = new long[current.length + 1];
+        for (int i = 0; i < current.length; i++) {
+            hits[i] = current[i].hits.sum();
+        }
+        hits[current.length] = this.elseHits.sum();
+        return hits;
+    }
+
+    private static final class CompiledBranch {
+        final ConditionExpression condition;
+        final String targetNodeId;
+        final LongAdder hits = new LongAdder();
+
+        CompiledBranch(ConditionExpression condition, String targetNodeId) {
+            this.condition = condition;
+            this.targetNodeId = targetNodeId;
+        }
     }
 
     public static class Branch {
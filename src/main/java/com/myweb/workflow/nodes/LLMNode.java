@@ -1,18 +1,88 @@
 package com.myweb.workflow.nodes;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.myweb.util.JsonObjectMapper;
+import com.myweb.workflow.AsyncTaskNode;
 import com.myweb.workflow.ExecutionContext;
 import com.myweb.workflow.NodeExecutionResult;
 import com.myweb.workflow.NodeInputs;
+import com.myweb.workflow.NodeOutput;
+import com.myweb.workflow.StreamingNodeOutput;
+import com.myweb.workflow.exception.FlowExecuteException;
 import com.myweb.workflow.graph.GNode;
 
 /**
  * LLM大模型调用节点
- * TODO
+ * <p>
+ * 调用 OpenAI 兼容的 chat/completions 接口(stream=true)，通过 JDK HttpClient 增量读取 SSE 响应：
+ * {@link ByteBufferDecoder} 解码字节块，{@link ChatStreamChunkParser} 按行解析 SSE 并分离思考内容，
+ * 每个 token 到达后立即写入流式输出，下游节点边生成边消费。
+ * <p>
+ * 节点配置：
+ * <ul>
+ *     <li>url：接口地址(必填)，如 http://127.0.0.1:11434/v1/chat/completions</li>
+ *     <li>apiKey：可选，作为 Bearer Token 发送</li>
+ *     <li>model：模型名称</li>
+ *     <li>messages：完整的消息列表；未配置时由 systemPrompt + prompt 组成，prompt 未配置时使用默认输入端口上的数据
+ *     (上游是流式输出时，数据流结束后以拼接的文本作为 prompt 发送请求)</li>
+ *     <li>params：其他请求参数(如 temperature、max_tokens)，原样合并到请求体中</li>
+ *     <li>timeoutMillis：等待响应头的超时时间</li>
+ *     <li>stream：是否流式输出，未配置时可缓存(cacheable)的节点为 false，其他节点为 true</li>
+ * </ul>
+ * 流式输出时，输出端口 "output" 为正文 token 流，"think" 为思考内容 token 流(均为 {@link StreamingNodeOutput}&lt;String&gt;)，
+ * 节点在收到响应头后返回：非 2xx 响应按节点失败处理(会重试)；之后的网络错误会使数据流异常结束。
+ * <p>
+ * 非流式输出时，两个端口为完整的文本，节点在响应结束后返回，结果可以写入节点结果缓存和检查点。
  */
-public class LLMNode extends AbstractNode {
+public class LLMNode extends AbstractNode implements AsyncTaskNode {
+    private static final Logger LOG = LoggerFactory.getLogger(LLMNode.class);
+
+    public static final String THINK_OUTPUT_PORT_NAME = "think";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    // 所有 LLM 节点共用的客户端：写入流式输出时可能因背压阻塞，使用独立的线程池，不占用公共线程池
+    private static final HttpClient HTTP_CLIENT = createHttpClient();
+
+    protected final Map<String, Object> llmData;
 
     public LLMNode(GNode gNode) {
         super(gNode);
+
+        this.llmData = gNode.getData() != null ? gNode.getData() : Map.of();
+    }
+
+    private static HttpClient createHttpClient() {
+        final AtomicInteger threadNum = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "flow-llm-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        return HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
     }
 
     @Override
@@ -21,8 +91,324 @@ public class LLMNode extends AbstractNode {
     }
 
     @Override
-    public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
-        return null;
+    public CompletableFuture<NodeExecutionResult> callAsync(ExecutionContext context, NodeInputs inputs) {
+        final String url = (String) this.llmData.get("url");
+        if (url == null || url.isEmpty()) {
+            return CompletableFuture.failedFuture(new FlowExecuteException("LLMNode <" + getId() + "> url is required"));
+        }
+
+        final CompletableFuture<NodeExecutionResult> future = new CompletableFuture<>();
+        final StreamingNodeOutput<?> promptStream = promptStream(inputs);
+        if (promptStream == null) {
+            send(url, inputs, future);
+            return future;
+        }
+        // 提示词来自上游的数据流(如另一个 LLM 节点)：不占用线程等待，数据流结束后再发送请求，
+        // 组装请求时 getInput() 直接使用收集到的数据；同时订阅其他流式输入(如上游的 think)，避免上游阻塞在订阅闸门上
+        inputs.subscribeStreams();
+        promptStream.collectAsync(getId()).whenComplete((items, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else if (!future.isDone()) {
+                send(url, inputs, future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 是否以流式输出返回结果：优先使用配置 stream；未配置时可缓存的节点返回完整文本(流式输出不写入缓存和检查点)
+     */
+    protected boolean isStreaming() {
+        final Object stream = this.llmData.get("stream");
+        return stream != null ? Boolean.parseBoolean(stream.toString()) : !isCacheable();
+    }
+
+    /**
+     * 提示词取自默认输入端口，且该端口的第一个输入是流式输出时返回该数据流
+     */
+    private StreamingNodeOutput<?> promptStream(NodeInputs inputs) {
+        if (inputs == null || this.llmData.get("messages") instanceof List || this.llmData.get("prompt") != null) {
+            return null;
+        }
+        final List<NodeOutput> outputs = inputs.getAllInputs(DEFAULT_INPUT_PORT_NAME);
+        return !outputs.isEmpty() && outputs.get(0) instanceof StreamingNodeOutput ? (StreamingNodeOutput<?>) outputs.get(0) : null;
+    }
+
+    private void send(String url, NodeInputs inputs, CompletableFuture<NodeExecutionResult> future) {
+        final HttpRequest request;
+        try {
+            final HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .header("Content-Type", "application/json")
+                    // 告知服务端需流式返回
+                    .header("Accept", "text/event-stream")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(JsonObjectMapper.toBytes(buildRequestBody(inputs))));
+            final Object apiKey = this.llmData.get("apiKey");
+            if (apiKey != null && !apiKey.toString().isEmpty()) {
+                builder.header("Authorization", "Bearer " + apiKey);
+            }
+            final Object timeout = this.llmData.get("timeoutMillis");
+            if (timeout instanceof Number && ((Number) timeout).longValue() > 0) {
+                builder.timeout(Duration.ofMillis(((Number) timeout).longValue()));
+            }
+            request = builder.build();
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+
+        final TokenSink mainSink;
+        final TokenSink thinkSink;
+        final NodeExecutionResult streamingResult;
+        if (isStreaming()) {
+            final StreamingNodeOutput<String> mainStream = new StreamingNodeOutput<>();
+            final StreamingNodeOutput<String> thinkStream = new StreamingNodeOutput<>();
+            mainSink = new StreamSink(mainStream);
+            thinkSink = new StreamSink(thinkStream);
+            streamingResult = NodeExecutionResult.success()
+                    .addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, mainStream)
+                    .addNodeOutput(THINK_OUTPUT_PORT_NAME, thinkStream);
+        } else {
+            // 非流式：仍按 SSE 增量读取，响应结束后返回完整文本
+            final TextSink mainText = new TextSink();
+            final TextSink thinkText = new TextSink();
+            mainSink = mainText;
+            thinkSink = thinkText;
+            streamingResult = null;
+            mainText.result.thenCombine(thinkText.result, (main, think) -> NodeExecutionResult.success()
+                    .addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, new NodeOutput(main))
+                    .addNodeOutput(THINK_OUTPUT_PORT_NAME, new NodeOutput(think)))
+                    .whenComplete((r, e) -> {
+                        if (e != null) {
+                            future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                        } else {
+                            future.complete(r);
+                        }
+                    });
+        }
+
+        final CompletableFuture<?> response = HTTP_CLIENT.sendAsync(request, info -> {
+            if (info.statusCode() / 100 != 2) {
+                // 读取错误信息后按节点失败处理
+                return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), body -> {
+                    future.completeExceptionally(new FlowExecuteException(
+                            "LLM request failed: HTTP " + info.statusCode() + " " + url + ": " + abbreviate(body)));
+                    return null;
+                });
+            }
+            if (streamingResult != null) {
+                // 收到响应头即返回流式输出，下游节点马上被调度并订阅
+                future.complete(streamingResult);
+            }
+            return HttpResponse.BodySubscribers.fromSubscriber(new SseSubscriber(getId(), mainSink, thinkSink), s -> null);
+        });
+        response.whenComplete((r, e) -> {
+            if (e != null && !future.completeExceptionally(e)) {
+                // 已返回流式输出，数据流异常结束
+                mainSink.completeExceptionally(e);
+                thinkSink.completeExceptionally(e);
+            }
+        });
+        // 节点被取消时中止请求
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) {
+                response.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * 组装 chat/completions 请求体
+     */
+    protected Map<String, Object> buildRequestBody(NodeInputs inputs) {
+        final Map<String, Object> body = new LinkedHashMap<>();
+        final Object model = this.llmData.get("model");
+        if (model != null) {
+            body.put("model", model);
+        }
+        body.put("messages", buildMessages(inputs));
+        final Object params = this.llmData.get("params");
+        if (params instanceof Map) {
+            ((Map<?, ?>) params).forEach((k, v) -> body.put(String.valueOf(k), v));
+        }
+        body.put("stream", true);
+        return body;
+    }
+
+    protected List<Object> buildMessages(NodeInputs inputs) {
+        final Object messages = this.llmData.get("messages");
+        if (messages instanceof List) {
+            return new ArrayList<>((List<?>) messages);
+        }
+        final List<Object> result = new ArrayList<>(2);
+        final Object systemPrompt = this.llmData.get("systemPrompt");
+        if (systemPrompt != null) {
+            result.add(Map.of("role", "system", "content", systemPrompt.toString()));
+        }
+        Object prompt = this.llmData.get("prompt");
+        if (prompt == null && inputs != null) {
+            prompt = inputs.getInput(Object.class);
+        }
+        if (prompt != null) {
+            result.add(Map.of("role", "user", "content", prompt instanceof CharSequence ? prompt.toString() : JsonObjectMapper.stringify(prompt)));
+        }
+        return result;
+    }
+
+    private static String abbreviate(String text) {
+        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    }
+
+    /**
+     * SSE 响应中解析出的 token 的去向：流式输出，或拼接为完整文本
+     */
+    private interface TokenSink {
+        void emit(String token) throws InterruptedException;
+
+        void complete();
+
+        void completeExceptionally(Throwable error);
+
+        void cancel();
+    }
+
+    private static final class StreamSink implements TokenSink {
+        private final StreamingNodeOutput<String> stream;
+
+        StreamSink(StreamingNodeOutput<String> stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void emit(String token) throws InterruptedException {
+            this.stream.emit(token);
+        }
+
+        @Override
+        public void complete() {
+            this.stream.complete();
+        }
+
+        @Override
+        public void completeExceptionally(Throwable error) {
+            this.stream.completeExceptionally(error);
+        }
+
+        @Override
+        public void cancel() {
+            this.stream.cancel();
+        }
+    }
+
+    private static final class TextSink implements TokenSink {
+        // SSE 订阅者的回调按顺序执行，不需要同步
+        private final StringBuilder text = new StringBuilder();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        @Override
+        public void emit(String token) {
+            this.text.append(token);
+        }
+
+        @Override
+        public void complete() {
+            this.result.complete(this.text.toString());
+        }
+
+        @Override
+        public void completeExceptionally(Throwable error) {
+            this.result.completeExceptionally(error);
+        }
+
+        @Override
+        public void cancel() {
+            this.result.cancel(false);
+        }
+    }
+
+    /**
+     * 增量解析 SSE 响应，逐个 token 写入流式输出。
+     * 写入时如果下游消费不过来会阻塞，阻塞期间不再请求新的数据，背压一直传递到 TCP 连接
+     */
+    private static final class SseSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        private final String nodeId;
+        private final TokenSink mainStream;
+        private final TokenSink thinkStream;
+        private final ChatStreamChunkParser chunkParser = new ChatStreamChunkParser();
+        private final ByteBufferDecoder decoder = new ByteBufferDecoder(chunkParser::pushChunk);
+
+        private Flow.Subscription subscription;
+        private volatile boolean cancelled = false;
+
+        SseSubscriber(String nodeId, TokenSink mainStream, TokenSink thinkStream) {
+            this.nodeId = nodeId;
+            this.mainStream = mainStream;
+            this.thinkStream = thinkStream;
+            this.chunkParser.onThink(token -> emit(this.thinkStream, token));
+            this.chunkParser.onMain(token -> emit(this.mainStream, token));
+        }
+
+        private void emit(TokenSink stream, String token) {
+            if (this.cancelled || token.isEmpty()) {
+                return;
+            }
+            try {
+                stream.emit(token);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            } catch (IllegalStateException e) {
+                // 数据流已被取消(如流程被取消)，中止请求
+                cancel();
+            }
+        }
+
+        private void cancel() {
+            if (!this.cancelled) {
+                this.cancelled = true;
+                LOG.warn(">> WARNING: LLM stream of <{}> cancelled.", this.nodeId);
+                this.subscription.cancel();
+                this.mainStream.cancel();
+                this.thinkStream.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                this.decoder.onBytes(buffer);
+            }
+            if (!this.cancelled) {
+                this.subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            this.decoder.finish();
+            this.chunkParser.finish();
+            if (!this.cancelled) {
+                this.mainStream.complete();
+                this.thinkStream.complete();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.decoder.finish();
+            this.chunkParser.finish();
+            if (!this.cancelled) {
+                this.mainStream.completeExceptionally(throwable);
+                this.thinkStream.completeExceptionally(throwable);
+            }
+        }
     }
 
 }
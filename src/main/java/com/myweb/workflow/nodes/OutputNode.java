@@ -19,6 +19,11 @@ public class OutputNode extends AbstractNode {
         return "output";
     }
 
+    @Override
+    public boolean isFlowResult() {
+        return true;
+    }
+
     @Override
     public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
         List<NodeOutput> allInputs = inputs.getAllInputs(OutputNode.DEFAULT_INPUT_PORT_NAME);
@@ -0,0 +1,31 @@
+-- 分布式执行队列(PgWorkQueue，仅支持 PostgreSQL)
+-- 1.0.2.xml 和 PgWorkQueue.initSchema() 都执行本文件，语句以 ; 结尾，均可重复执行
+CREATE TABLE IF NOT EXISTS flow_work_items (
+    id BIGSERIAL PRIMARY KEY,
+    owner VARCHAR(128) NOT NULL,
+    run_id VARCHAR(64) NOT NULL,
+    node_id VARCHAR(128) NOT NULL,
+    node_key VARCHAR(128) NOT NULL,
+    node_type VARCHAR(64) NOT NULL,
+    node_data BYTEA,
+    inputs BYTEA,
+    workflow_input BYTEA,
+    variables BYTEA,
+    status VARCHAR(16) NOT NULL,
+    worker VARCHAR(128),
+    attempts INT NOT NULL DEFAULT 0,
+    success BOOLEAN,
+    skipped BOOLEAN,
+    error_message TEXT,
+    next_nodes BYTEA,
+    outputs BYTEA,
+    start_time TIMESTAMPTZ,
+    end_time TIMESTAMPTZ,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    claimed_at TIMESTAMPTZ,
+    finished_at TIMESTAMPTZ
+);
+
+CREATE INDEX IF NOT EXISTS indx_flow_work_status ON flow_work_items (status, id);
+
+CREATE INDEX IF NOT EXISTS indx_flow_work_owner ON flow_work_items (owner, status);
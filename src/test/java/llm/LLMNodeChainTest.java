@@ -0,0 +1,274 @@
+package llm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import com.myweb.util.JsonObjectMapper;
+import com.myweb.workflow.*;
+import com.myweb.workflow.cache.NodeResultCache;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+import com.myweb.workflow.nodes.LLMNode;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * LLMNode 流式输出作为其他节点输入的测试：进程内的 SSE 服务把收到的 prompt 加上 "re:" 前缀逐字返回(思考内容为 "hmm")
+ * 1. 链式调用：llm → llm 时第二个节点以第一个节点的完整输出作为 prompt；
+ *    通过 getInput(String.class) 读取流式输入的节点、if-else 的条件得到完整的文本
+ * 2. 非流式输出：可缓存的 LLM 节点返回完整文本，第二次执行命中节点结果缓存，不再请求服务
+ * 3. 同时读取 output 和 think：一个节点先读完正文再读思考内容(服务先返回思考内容)，
+ *    不会因为 think 尚未订阅而使 SSE 线程阻塞到订阅闸门超时
+ */
+public class LLMNodeChainTest {
+    private static final List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+
+    public static void main(String[] args) throws Exception {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/chat/completions", exchange -> {
+            Map<?, ?> body = JsonObjectMapper.parse(exchange.getRequestBody().readAllBytes(), Map.class);
+            List<?> messages = (List<?>) body.get("messages");
+            String prompt = String.valueOf(((Map<?, ?>) messages.get(messages.size() - 1)).get("content"));
+            prompts.add(prompt);
+
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                List<String> deltas = new ArrayList<>(List.of("<think>", "hmm", "</think>", "re:"));
+                prompt.codePoints().forEach(c -> deltas.add(new String(Character.toChars(c))));
+                for (String delta : deltas) {
+                    Map<String, Object> chunk = Map.of("choices", List.of(Map.of("delta", Map.of("content", delta))));
+                    out.write(("data: " + JsonObjectMapper.stringify(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(1);
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | InterruptedException e) {
+                // client closed
+            }
+        });
+        server.start();
+
+        TaskNodeFactory.register("text-collector", TextCollectorNode::new);
+        TaskNodeFactory.register("pair-reader", PairReaderNode::new);
+
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+        try {
+            chain(url);
+            nonStreaming(url);
+            bothPorts(url);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void chain(String url) throws Exception {
+        prompts.clear();
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.afterPropertiesSet();
+        try {
+            Map<String, Object> branch = new HashMap<>();
+            branch.put("branches", List.of(Map.of("condition", "input startsWith 're:hello'", "targetNodeId", "yes")));
+            branch.put("elseTargetNodeId", "no");
+
+            List<GNode> nodes = new ArrayList<>();
+            List<GEdge> edges = new ArrayList<>();
+            nodes.add(node("start", "start", new HashMap<>()));
+            nodes.add(node("a", "llm", llmData(url)));
+            nodes.add(node("b", "llm", llmData(url)));
+            nodes.add(node("text", "text-collector", new HashMap<>()));
+            nodes.add(node("branch", "branch", branch));
+            nodes.add(node("yes", "text-collector", new HashMap<>()));
+            nodes.add(node("no", "text-collector", new HashMap<>()));
+            edges.add(edge("start", "a", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            edges.add(edge("a", "b", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            edges.add(edge("b", "text", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            edges.add(edge("a", "branch", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            edges.add(edge("branch", "yes", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            edges.add(edge("branch", "no", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+
+            ExecutionContext context = new ExecutionContext();
+            context.setWorkflowInput("hello world");
+            FlowExecutionResult result = engine.execute(engine.getPlanCache().getOrCompile(new Graph(nodes, edges)), context, null);
+            Object text = payload(context, "text");
+            Object yes = payload(context, "yes");
+            boolean noSkipped = context.getNodeExecutionResult("no").map(NodeExecutionResult::isSkipped).orElse(true);
+            System.out.printf("[chain] success=%s, prompts=%s, text=%s, yes=%s, no skipped=%s%n",
+                    result.isSuccess(), prompts, text, yes, noSkipped);
+            check(result.isSuccess(), "flow should succeed");
+            check(prompts.equals(List.of("hello world", "re:hello world")), "second LLM should receive the full output of the first");
+            check("re:re:hello world".equals(text), "streaming input should be read as the full text");
+            check("re:hello world".equals(yes) && noSkipped, "branch condition should see the full text");
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static void nonStreaming(String url) throws Exception {
+        prompts.clear();
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.setNodeResultCache(new NodeResultCache());
+        engine.afterPropertiesSet();
+        try {
+            Map<String, Object> data = llmData(url);
+            data.put(AbstractNode.CACHEABLE_KEY, true);
+            List<GNode> nodes = new ArrayList<>();
+            List<GEdge> edges = new ArrayList<>();
+            nodes.add(node("start", "start", new HashMap<>()));
+            nodes.add(node("llm", "llm", data));
+            nodes.add(node("text", "text-collector", new HashMap<>()));
+            edges.add(edge("start", "llm", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            edges.add(edge("llm", "text", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            FlowPlan plan = engine.getPlanCache().getOrCompile(new Graph(nodes, edges));
+
+            for (int round = 1; round <= 2; round++) {
+                ExecutionContext context = new ExecutionContext();
+                context.setWorkflowInput("cache me");
+                FlowExecutionResult result = engine.execute(plan, context, null);
+                NodeExecutionResult llm = context.getNodeExecutionResult("llm").orElseThrow();
+                NodeOutput output = llm.getNodeOutput(TaskNode.DEFAULT_OUTPUT_PORT_NAME);
+                Object think = llm.getNodeOutput(LLMNode.THINK_OUTPUT_PORT_NAME).getPayload();
+                System.out.printf("[non-streaming] round=%d, success=%s, output=%s, think=%s, text=%s, requests=%d%n",
+                        round, result.isSuccess(), output.getPayload(), think, payload(context, "text"), prompts.size());
+                check(result.isSuccess(), "flow should succeed");
+                check(!(output instanceof StreamingNodeOutput) && "re:cache me".equals(output.getPayload()) && "hmm".equals(think),
+                        "non-streaming LLM should return the full text");
+                check("re:cache me".equals(payload(context, "text")), "unexpected downstream text");
+            }
+            check(prompts.size() == 1, "second run should hit the node result cache");
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static void bothPorts(String url) throws Exception {
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.afterPropertiesSet();
+        try {
+            List<GNode> nodes = new ArrayList<>();
+            List<GEdge> edges = new ArrayList<>();
+            nodes.add(node("start", "start", new HashMap<>()));
+            nodes.add(node("llm", "llm", llmData(url)));
+            nodes.add(node("pair", "pair-reader", new HashMap<>()));
+            edges.add(edge("start", "llm", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+            GEdge text = edge("llm", "pair", TaskNode.DEFAULT_OUTPUT_PORT_NAME);
+            text.setId("llm-pair-text");
+            text.setTargetHandle("text");
+            edges.add(text);
+            GEdge reasoning = edge("llm", "pair", LLMNode.THINK_OUTPUT_PORT_NAME);
+            reasoning.setId("llm-pair-reasoning");
+            reasoning.setTargetHandle("reasoning");
+            edges.add(reasoning);
+
+            ExecutionContext context = new ExecutionContext();
+            context.setWorkflowInput("both");
+            long stime = System.nanoTime();
+            FlowExecutionResult result = engine.execute(engine.getPlanCache().getOrCompile(new Graph(nodes, edges)), context, null);
+            long cost = (System.nanoTime() - stime) / 1_000_000;
+            Object pair = payload(context, "pair");
+            System.out.printf("[both ports] success=%s, pair=%s, cost=%dms%n", result.isSuccess(), pair, cost);
+            check(result.isSuccess() && "re:both|hmm".equals(pair), "node should read both streaming ports");
+            check(cost < StreamingNodeOutput.DEFAULT_GATE_TIMEOUT_MILLIS / 2, "producer should not wait for the gate timeout");
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static Map<String, Object> llmData(String url) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("url", url);
+        data.put("model", "fake");
+        return data;
+    }
+
+    private static Object payload(ExecutionContext context, String nodeId) {
+        return context.getNodeExecutionResult(nodeId)
+                .map(r -> r.getNodeOutput(TaskNode.DEFAULT_OUTPUT_PORT_NAME))
+                .map(NodeOutput::getPayload)
+                .orElse(null);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target, String sourcePort) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        edge.setSourceHandle(sourcePort);
+        return edge;
+    }
+
+    /**
+     * 依次读取 text 和 reasoning 两个端口的完整文本，输出 "text|reasoning"
+     */
+    private static final class PairReaderNode extends AbstractNode {
+        PairReaderNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "pair-reader";
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return 0;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            String text = inputs.getInput("text", String.class);
+            String reasoning = inputs.getInput("reasoning", String.class);
+            return NodeExecutionResult.success().addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, new NodeOutput(text + "|" + reasoning));
+        }
+    }
+
+    /**
+     * 以完整文本的方式读取输入(不关心上游是否为流式输出)
+     */
+    private static final class TextCollectorNode extends AbstractNode {
+        TextCollectorNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "text-collector";
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return 0;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            return NodeExecutionResult.success()
+                    .addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, new NodeOutput(inputs.getInput(String.class)));
+        }
+    }
+}
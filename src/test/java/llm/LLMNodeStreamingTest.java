@@ -0,0 +1,166 @@
+package llm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+import com.myweb.workflow.nodes.LLMNode;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * LLMNode 流式输出测试：进程内的 SSE 服务模拟 OpenAI 兼容接口(每 5ms 一个 token，&lt;think&gt; 标签被拆到多个 chunk 中)，
+ * 流程 start → llm → 正文/思考内容的消费节点，统计首字延迟(从流程开始到消费节点收到第一个正文 token)和 tokens/sec。
+ */
+public class LLMNodeStreamingTest {
+    private static final int THINK_TOKENS = 20;
+    private static final int MAIN_TOKENS = 200;
+    private static final long TOKEN_INTERVAL_MILLIS = 5;
+    private static final int ROUNDS = 3;
+
+    private static volatile long flowStartNanos;
+
+    public static void main(String[] args) throws Exception {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                List<String> deltas = new ArrayList<>();
+                deltas.add("<th");
+                deltas.add("ink>");
+                for (int i = 0; i < THINK_TOKENS; i++) {
+                    deltas.add("t" + i + " ");
+                }
+                deltas.add("</thi");
+                deltas.add("nk>");
+                for (int i = 0; i < MAIN_TOKENS; i++) {
+                    deltas.add("m" + i + " ");
+                }
+                for (String delta : deltas) {
+                    out.write(("data: {\"choices\":[{\"delta\":{\"content\":\"" + delta + "\"}}]}\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(TOKEN_INTERVAL_MILLIS);
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | InterruptedException e) {
+                // client closed
+            }
+        });
+        server.start();
+
+        TaskNodeFactory.register("token-collector", TokenCollectorNode::new);
+
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.afterPropertiesSet();
+        try {
+            FlowPlan plan = engine.getPlanCache().getOrCompile(graph(url));
+            for (int r = 0; r < ROUNDS; r++) {
+                ExecutionContext context = new ExecutionContext();
+                context.setWorkflowInput("你好");
+                flowStartNanos = System.nanoTime();
+                FlowExecutionResult result = engine.execute(plan, context, null);
+                long costMillis = (System.nanoTime() - flowStartNanos) / 1_000_000;
+
+                NodeExecutionResult main = context.getNodeExecutionResult("main").orElseThrow();
+                NodeExecutionResult think = context.getNodeExecutionResult("think").orElseThrow();
+                System.out.printf("Round %d: success=%s, ttft=%sms, total=%dms, main-tokens=%s, %.0f tokens/s, think-tokens=%s, think-ok=%s%n",
+                        r + 1, result.isSuccess(), main.getNodeOutput("ttftMillis").getPayload(), costMillis,
+                        main.getNodeOutput("tokens").getPayload(),
+                        ((Number) main.getNodeOutput("tokens").getPayload()).intValue() * 1000.0 / Math.max(1, costMillis),
+                        think.getNodeOutput("tokens").getPayload(),
+                        String.valueOf(think.getNodeOutput(TaskNode.DEFAULT_OUTPUT_PORT_NAME).getPayload()).startsWith("t0 t1 "));
+            }
+        } finally {
+            engine.destroy();
+            server.stop(0);
+        }
+    }
+
+    private static Graph graph(String url) {
+        Map<String, Object> llmData = new HashMap<>();
+        llmData.put("url", url);
+        llmData.put("model", "fake");
+
+        List<GNode> nodes = new ArrayList<>();
+        nodes.add(node("start", "start", new HashMap<>()));
+        nodes.add(node("llm", "llm", llmData));
+        nodes.add(node("main", "token-collector", new HashMap<>()));
+        nodes.add(node("think", "token-collector", new HashMap<>()));
+        List<GEdge> edges = new ArrayList<>();
+        edges.add(edge("start", "llm", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+        edges.add(edge("llm", "main", TaskNode.DEFAULT_OUTPUT_PORT_NAME));
+        edges.add(edge("llm", "think", LLMNode.THINK_OUTPUT_PORT_NAME));
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target, String sourcePort) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        edge.setSourceHandle(sourcePort);
+        return edge;
+    }
+
+    /**
+     * 逐个消费上游的 token 流，记录首个 token 的到达时间
+     */
+    private static final class TokenCollectorNode extends AbstractNode {
+        TokenCollectorNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "token-collector";
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return 0;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            StreamingNodeOutput<String> stream = inputs.getStream(DEFAULT_INPUT_PORT_NAME);
+            long ttftMillis = -1;
+            int tokens = 0;
+            StringBuilder text = new StringBuilder();
+            for (Iterator<String> it = stream.iterator(getId()); it.hasNext(); ) {
+                String token = it.next();
+                if (ttftMillis < 0) {
+                    ttftMillis = (System.nanoTime() - flowStartNanos) / 1_000_000;
+                }
+                tokens++;
+                text.append(token);
+            }
+            return NodeExecutionResult.success()
+                    .addNodeOutput(DEFAULT_OUTPUT_PORT_NAME, new NodeOutput(text.toString()))
+                    .addNodeOutput("tokens", new NodeOutput(tokens))
+                    .addNodeOutput("ttftMillis", new NodeOutput(ttftMillis));
+        }
+    }
+}
@@ -9,6 +9,9 @@ import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.Flow;
 
+import com.myweb.workflow.nodes.ByteBufferDecoder;
+import com.myweb.workflow.nodes.ChatStreamChunkParser;
+
 public class StreamChunkTest {
     public static void main(String[] args) {
         String targetUrl = "http://127.0.0.1:11434/v1/chat/completions";
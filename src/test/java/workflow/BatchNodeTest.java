@@ -0,0 +1,247 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.cache.CachedNodeResult;
+import com.myweb.workflow.cache.NodeResultCache;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+
+/**
+ * 批量执行测试：start 之后 n 个同时就绪的 {@link BatchableTaskNode}
+ * 1. 时间窗口：节点数小于批次上限，窗口结束时一次调用执行全部节点
+ * 2. 批次上限：达到上限的批次立即执行，剩余的节点等窗口结束
+ * 3. 部分失败：callBatch() 返回某个节点的失败结果，只有该节点失败
+ * 4. 整批失败：callBatch() 抛出异常，每个节点按各自的重试次数重试后成功
+ * 5. 组装输入/查找缓存时出现异常：只有该节点失败并重试，批次中的其他节点正常完成，流程不会挂起
+ */
+public class BatchNodeTest {
+    private static final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private static final List<Long> batchMillis = Collections.synchronizedList(new ArrayList<>());
+    private static final AtomicInteger failingBatches = new AtomicInteger();
+    private static volatile long startNanos;
+
+    public static void main(String[] args) throws Exception {
+        TaskNodeFactory.register("batch-echo", EchoBatchNode::new);
+
+        FlowEngine engine = new FlowEngine(8, 1, 0, 64);
+        engine.afterPropertiesSet();
+        try {
+            windowFlush(engine);
+            maxSizeFlush(engine);
+            partialFailure(engine);
+            batchFailureWithRetry(engine);
+        } finally {
+            engine.destroy();
+        }
+
+        FlowEngine cached = new FlowEngine(8, 1, 0, 64);
+        cached.setNodeResultCache(new FailingOnceCache());
+        cached.afterPropertiesSet();
+        try {
+            preparationFailure(cached);
+        } finally {
+            cached.destroy();
+        }
+    }
+
+    private static void windowFlush(FlowEngine engine) throws Exception {
+        ExecutionContext context = run(engine, graph(5, 32, 50, 0, false, null));
+        System.out.printf("[window] batches=%s at %sms%n", batchSizes, batchMillis);
+        check(batchSizes.equals(List.of(5)), "nodes ready in the same window should run in one batch");
+        checkOutputs(context, 5, null);
+    }
+
+    private static void maxSizeFlush(FlowEngine engine) throws Exception {
+        ExecutionContext context = run(engine, graph(10, 4, 500, 0, false, null));
+        System.out.printf("[max size] batches=%s at %sms%n", batchSizes, batchMillis);
+        List<Integer> sorted = new ArrayList<>(batchSizes);
+        sorted.sort(null);
+        check(sorted.equals(List.of(2, 4, 4)), "expected two full batches and one partial batch");
+        // 满批次不等窗口结束
+        for (int k = 0; k < batchSizes.size(); k++) {
+            if (batchSizes.get(k) == 4) {
+                check(batchMillis.get(k) < 400, "full batch should not wait for the window");
+            }
+        }
+        checkOutputs(context, 10, null);
+    }
+
+    private static void partialFailure(FlowEngine engine) throws Exception {
+        ExecutionContext context = run(engine, graph(6, 32, 20, 0, false, "b3"));
+        String error = context.getNodeExecutionResult("b3").map(NodeExecutionResult::getErrorMessage).orElse(null);
+        System.out.printf("[partial failure] batches=%s, b3 error=%s%n", batchSizes, error);
+        check(error != null && error.contains("rejected b3"), "only b3 should fail");
+        checkOutputs(context, 6, "b3");
+    }
+
+    private static void batchFailureWithRetry(FlowEngine engine) throws Exception {
+        failingBatches.set(1);
+        ExecutionContext context = run(engine, graph(4, 32, 20, 1, false, null));
+        int items = batchSizes.stream().mapToInt(Integer::intValue).sum();
+        System.out.printf("[batch failure] batches=%s, items called=%d%n", batchSizes, items);
+        check(batchSizes.size() >= 2 && items == 8, "every node should be retried after the batch failure");
+        checkOutputs(context, 4, null);
+    }
+
+    private static void preparationFailure(FlowEngine engine) throws Exception {
+        ExecutionContext context = run(engine, graph(4, 32, 20, 1, true, null));
+        int items = batchSizes.stream().mapToInt(Integer::intValue).sum();
+        System.out.printf("[preparation failure] batches=%s, items called=%d%n", batchSizes, items);
+        check(items == 4, "each node should be called exactly once");
+        checkOutputs(context, 4, null);
+    }
+
+    private static ExecutionContext run(FlowEngine engine, Graph graph) throws Exception {
+        batchSizes.clear();
+        batchMillis.clear();
+        ExecutionContext context = new ExecutionContext();
+        context.setWorkflowInput("in");
+        startNanos = System.nanoTime();
+        // 节点挂起时这里会超时
+        engine.submit(graph, context, null).getResultFuture().get(10, TimeUnit.SECONDS);
+        return context;
+    }
+
+    private static void checkOutputs(ExecutionContext context, int n, String failedNode) {
+        for (int i = 0; i < n; i++) {
+            String id = "b" + i;
+            NodeExecutionResult result = context.getNodeExecutionResult(id).orElse(null);
+            check(result != null, "node " + id + " never completed");
+            if (id.equals(failedNode)) {
+                check(!result.isSuccess(), "node " + id + " should fail");
+            } else {
+                check(result.isSuccess() && ("in->" + id).equals(result.getNodeOutput("output").getPayload()),
+                        "unexpected result of " + id + ": " + result);
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static Graph graph(int n, int maxBatchSize, long windowMillis, int retries, boolean cacheable, String failNode) {
+        List<GNode> nodes = new ArrayList<>();
+        List<GEdge> edges = new ArrayList<>();
+        nodes.add(node("start", "start", new HashMap<>()));
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("maxBatchSize", maxBatchSize);
+            data.put("windowMillis", windowMillis);
+            data.put("retries", retries);
+            data.put("fail", ("b" + i).equals(failNode));
+            data.put(AbstractNode.CACHEABLE_KEY, cacheable);
+            // 配置各不相同，节点之间不会共享缓存结果
+            data.put("name", "b" + i);
+            nodes.add(node("b" + i, "batch-echo", data));
+            edges.add(edge("start", "b" + i));
+        }
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    /**
+     * 第一次查找缓存时抛出异常，模拟组装节点输入时的系统级异常
+     */
+    private static class FailingOnceCache extends NodeResultCache {
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        @Override
+        public CachedNodeResult get(String key) {
+            if (this.failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("cache unavailable");
+            }
+            return super.get(key);
+        }
+    }
+
+    /**
+     * 输出 "输入->节点ID"；data.fail 为 true 的节点返回失败结果，failingBatches 大于 0 时整批抛出异常
+     */
+    private static class EchoBatchNode extends AbstractNode implements BatchableTaskNode {
+        EchoBatchNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "batch-echo";
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return ((Number) this.gNode.getData().get("maxBatchSize")).intValue();
+        }
+
+        @Override
+        public long getBatchWindowMillis() {
+            return ((Number) this.gNode.getData().get("windowMillis")).longValue();
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return ((Number) this.gNode.getData().get("retries")).intValue();
+        }
+
+        @Override
+        public long getRetryDelayMillis() {
+            return 10;
+        }
+
+        boolean isRejected() {
+            return Boolean.TRUE.equals(this.gNode.getData().get("fail"));
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            throw new IllegalStateException("Batchable node should be called in batch");
+        }
+
+        @Override
+        public List<NodeExecutionResult> callBatch(ExecutionContext context, List<BatchItem> items) {
+            batchSizes.add(items.size());
+            batchMillis.add((System.nanoTime() - startNanos) / 1_000_000);
+            if (failingBatches.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new IllegalStateException("batch service unavailable");
+            }
+            List<NodeExecutionResult> results = new ArrayList<>(items.size());
+            for (BatchItem item : items) {
+                if (((EchoBatchNode) item.getNode()).isRejected()) {
+                    results.add(NodeExecutionResult.failed("rejected " + item.getNodeId()));
+                } else {
+                    results.add(NodeExecutionResult.success().addNodeOutput("output",
+                            new NodeOutput(item.getInputs().getInput(Object.class) + "->" + item.getNodeId())));
+                }
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package workflow;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.FlowExecutorPro.ExecutionState;
+import com.myweb.workflow.checkpoint.AsyncCheckpointWriter;
+import com.myweb.workflow.checkpoint.H2CheckpointStore;
+import com.myweb.workflow.checkpoint.NodeCheckpoint;
+import com.myweb.workflow.checkpoint.RunCheckpoint;
+import com.myweb.workflow.exception.FlowExecuteException;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+
+/**
+ * 检查点测试(嵌入式 H2 文件库)
+ * 1. 同一批中主键重复：同一执行的 RUNNING/COMPLETED、同一节点的两条记录在一批中写入，保留最后一条，不丢弃整批
+ * 2. 短流程正常结束：检查点中的执行状态为 COMPLETED，不会出现在可恢复列表中
+ * 3. 进程崩溃后恢复：慢节点执行中关闭引擎和存储，重新打开后恢复执行，已完成的节点不重复执行；
+ *    多个线程同时恢复同一个执行时只有一个成功，慢节点只重新执行一次
+ */
+public class CheckpointResumeTest {
+    private static final Map<String, AtomicInteger> CALLS = new ConcurrentHashMap<>();
+    private static volatile CountDownLatch slowGate = new CountDownLatch(0);
+
+    public static void main(String[] args) throws Exception {
+        TaskNodeFactory.register("ckpt-step", StepNode::new);
+
+        final Path dir = Files.createTempDirectory("flow-checkpoints");
+        final String jdbcUrl = "jdbc:h2:file:" + dir.resolve("flow") + ";DB_CLOSE_ON_EXIT=FALSE";
+        try {
+            duplicateKeysInBatch(jdbcUrl);
+            completedRun(jdbcUrl);
+            crashAndResume(jdbcUrl);
+        } finally {
+            try (var files = Files.list(dir)) {
+                files.forEach(f -> f.toFile().delete());
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void duplicateKeysInBatch(String jdbcUrl) throws Exception {
+        try (H2CheckpointStore store = new H2CheckpointStore(jdbcUrl);
+             AsyncCheckpointWriter writer = new AsyncCheckpointWriter(store)) {
+            // 写入线程空闲时先取走第一条，后面的记录合并为一批；两次都必须成功
+            for (int i = 0; i < 2; i++) {
+                String runId = "dup-run-" + i;
+                writer.writeRun(runCheckpoint(runId, ExecutionState.RUNNING));
+                writer.writeNode(nodeCheckpoint(runId, "a", 1, "first"));
+                writer.writeNode(nodeCheckpoint(runId, "a", 1, "second"));
+                writer.writeRun(runCheckpoint(runId, ExecutionState.COMPLETED));
+                writer.flush(5000);
+
+                RunCheckpoint run = store.loadRun(runId);
+                List<NodeCheckpoint> nodes = store.loadNodes(runId);
+                check(run != null && !nodes.isEmpty(), "batch of run <" + runId + "> was dropped");
+                System.out.printf("[duplicate keys] run=%s, state=%s, nodes=%d, output=%s, dropped=%d%n",
+                        runId, run.getState(), nodes.size(), nodes.get(0).getOutputs(), writer.getDroppedCount());
+                check(run.getState() == ExecutionState.COMPLETED, "run state should be COMPLETED");
+                check(nodes.size() == 1 && "second".equals(nodes.get(0).getOutputs().get("output")), "last node record should win");
+                check(writer.getDroppedCount() == 0, "no checkpoint should be dropped");
+            }
+        }
+    }
+
+    private static void completedRun(String jdbcUrl) throws Exception {
+        try (H2CheckpointStore store = new H2CheckpointStore(jdbcUrl)) {
+            FlowEngine engine = engine(store);
+            try {
+                ExecutionContext context = new ExecutionContext();
+                context.setWorkflowInput("short");
+                FlowRun run = engine.submit(graph(), context, null);
+                FlowExecutionResult result = run.getResultFuture().get(10, TimeUnit.SECONDS);
+
+                RunCheckpoint stored = awaitState(store, run.getRunId(), ExecutionState.COMPLETED);
+                System.out.printf("[completed run] success=%s, stored state=%s, nodes=%d, resumable=%d%n",
+                        result.isSuccess(), stored.getState(), store.loadNodes(run.getRunId()).size(),
+                        engine.findResumableRuns(null).size());
+                check(stored.getState() == ExecutionState.COMPLETED, "stored run should be COMPLETED");
+                check(engine.findResumableRuns(null).stream().noneMatch(r -> r.getRunId().equals(run.getRunId())),
+                        "completed run should not be resumable");
+            } finally {
+                engine.destroy();
+            }
+        }
+    }
+
+    private static void crashAndResume(String jdbcUrl) throws Exception {
+        CALLS.clear();
+        slowGate = new CountDownLatch(1);
+
+        final String runId;
+        H2CheckpointStore store = new H2CheckpointStore(jdbcUrl);
+        FlowEngine engine = engine(store);
+        try {
+            ExecutionContext context = new ExecutionContext();
+            context.setWorkflowInput("resume");
+            FlowRun run = engine.submit(graph(), context, null);
+            runId = run.getRunId();
+            // 等待 a、b 完成并写入检查点，slow 仍在执行
+            awaitNodes(store, runId, 3);
+        } finally {
+            // 模拟进程崩溃：引擎和存储直接关闭，执行停留在 RUNNING
+            engine.destroy();
+            store.close();
+        }
+        final Map<String, Integer> before = snapshotCalls();
+        slowGate.countDown();
+        // 恢复的执行中 slow 再次等待，保证并发恢复时执行仍未结束
+        slowGate = new CountDownLatch(1);
+
+        store = new H2CheckpointStore(jdbcUrl);
+        engine = engine(store);
+        try {
+            check(engine.findResumableRuns(null).stream().anyMatch(r -> r.getRunId().equals(runId)), "crashed run should be resumable");
+            FlowRun resumed = concurrentResume(engine, runId);
+            slowGate.countDown();
+            FlowExecutionResult result = resumed.getResultFuture().get(10, TimeUnit.SECONDS);
+            Object output = resumed.getContext().getNodeExecutionResult("join")
+                    .map(r -> r.getNodeOutput("output").getPayload()).orElse(null);
+            RunCheckpoint stored = awaitState(store, runId, ExecutionState.COMPLETED);
+
+            System.out.printf("[crash and resume] calls before=%s, after=%s, success=%s, join=%s, stored state=%s%n",
+                    before, snapshotCalls(), result.isSuccess(), output, stored.getState());
+            check(result.isSuccess(), "resumed run should succeed");
+            check(CALLS.get("a").get() == 1 && CALLS.get("b").get() == 1, "completed nodes should not run again");
+            check(CALLS.get("slow").get() == 2, "slow should run exactly once after resume");
+            check("resume:join(resume:b(resume:a(resume)),resume:slow(resume))".equals(output), "unexpected output: " + output);
+            check(stored.getState() == ExecutionState.COMPLETED, "resumed run should be stored as COMPLETED");
+        } finally {
+            engine.destroy();
+            store.close();
+        }
+    }
+
+    /**
+     * 8 个线程同时恢复同一个执行，只能有一个成功
+     */
+    private static FlowRun concurrentResume(FlowEngine engine, String runId) throws Exception {
+        final int threads = 8;
+        final CountDownLatch ready = new CountDownLatch(1);
+        final List<FlowRun> resumed = java.util.Collections.synchronizedList(new ArrayList<>());
+        final List<String> rejected = java.util.Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    ready.await();
+                    resumed.add(engine.resume(runId, CheckpointResumeTest::graph, null));
+                } catch (FlowExecuteException e) {
+                    rejected.add(e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            t.start();
+            workers.add(t);
+        }
+        ready.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+        System.out.printf("[concurrent resume] resumed=%d, rejected=%d, active=%s%n",
+                resumed.size(), rejected.size(), engine.getRun(runId) != null);
+        check(resumed.size() == 1 && rejected.size() == threads - 1, "only one concurrent resume should succeed");
+        check(engine.getRun(runId) == resumed.get(0), "the resumed run should be the active one");
+        return resumed.get(0);
+    }
+
+    private static FlowEngine engine(H2CheckpointStore store) throws Exception {
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.setCheckpointStore(store);
+        engine.afterPropertiesSet();
+        return engine;
+    }
+
+    private static RunCheckpoint awaitState(H2CheckpointStore store, String runId, ExecutionState state) throws InterruptedException {
+        RunCheckpoint run = null;
+        for (int i = 0; i < 100; i++) {
+            run = store.loadRun(runId);
+            if (run != null && run.getState() == state) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        return run;
+    }
+
+    private static void awaitNodes(H2CheckpointStore store, String runId, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && store.loadNodes(runId).size() < count; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static Map<String, Integer> snapshotCalls() {
+        Map<String, Integer> calls = new java.util.TreeMap<>();
+        CALLS.forEach((k, v) -> calls.put(k, v.get()));
+        return calls;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static RunCheckpoint runCheckpoint(String runId, ExecutionState state) {
+        return new RunCheckpoint().setRunId(runId).setPlanKey("dup-plan").setState(state).setWorkflowInput("input");
+    }
+
+    private static NodeCheckpoint nodeCheckpoint(String runId, String nodeId, int seq, String output) {
+        return new NodeCheckpoint().setRunId(runId).setNodeId(nodeId).setSeq(seq).setState(TaskState.SUCCESS)
+                .setSuccess(true).setOutputs(Map.of("output", output));
+    }
+
+    /**
+     * start -> a -> b -> join, start -> slow -> join
+     */
+    private static Graph graph() {
+        List<GNode> nodes = new ArrayList<>();
+        List<GEdge> edges = new ArrayList<>();
+        nodes.add(node("start", "start"));
+        for (String id : new String[]{"a", "b", "slow", "join"}) {
+            nodes.add(node(id, "ckpt-step"));
+        }
+        edges.add(edge("start", "a"));
+        edges.add(edge("a", "b"));
+        edges.add(edge("b", "join"));
+        edges.add(edge("start", "slow"));
+        edges.add(edge("slow", "join"));
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(new java.util.HashMap<>());
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    /**
+     * 输出 "流程输入:节点ID(上游输出,...)"，slow 节点等待 slowGate
+     */
+    private static class StepNode extends AbstractNode {
+        StepNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "ckpt-step";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            CALLS.computeIfAbsent(getId(), k -> new AtomicInteger()).incrementAndGet();
+            if ("slow".equals(getId())) {
+                slowGate.await();
+            }
+            List<String> upstream = new ArrayList<>();
+            for (NodeOutput out : inputs.getAllInputs("input")) {
+                upstream.add(String.valueOf(out.getPayload()));
+            }
+            upstream.sort(null);
+            String output = context.getWorkflowInput() + ":" + getId() + "(" + String.join(",", upstream) + ")";
+            return NodeExecutionResult.success().addNodeOutput("output", new NodeOutput(output));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package workflow;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.exception.FlowExecuteException;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.ConditionExpression;
+
+/**
+ * 分支条件表达式测试(性能见 jmh 下的 ConditionBenchmark)
+ * 1. 优先级：! 高于比较，比较高于 &&，&& 高于 ||，括号改变求值顺序
+ * 2. matches：整体匹配、非法正则和非字面量的正则在编译时报错
+ * 3. 常量折叠：只包含常量的子表达式编译为常量，含变量的表达式不折叠
+ * 4. 属性访问：缺失的属性为 null 不抛异常；对象只能读取 getX/isX 属性，不能调用 getClass() 等其他方法
+ * 5. 流程中：没有配置 else 且条件都不成立时，所有下游节点被跳过，流程成功
+ */
+public class ConditionExpressionTest {
+
+    public static void main(String[] args) throws Exception {
+        ExecutionContext context = new ExecutionContext();
+        Map<String, Object> order = new HashMap<>();
+        order.put("amount", 120);
+        order.put("tags", List.of("urgent", "vip"));
+        order.put("user", new User("alice", true));
+        context.setWorkflowInput(order);
+        context.put("level", "vip");
+
+        precedence(context);
+        matches(context);
+        constantFolding();
+        properties(context);
+        noBranchMatched();
+    }
+
+    private static void precedence(ExecutionContext context) {
+        expect(context, "true || false && false", true);
+        expect(context, "(true || false) && false", false);
+        expect(context, "false && true || true", true);
+        expect(context, "!false && false", false);
+        expect(context, "!(false && false)", true);
+        expect(context, "workflowInput.amount > 100 && context.level == 'vip' || false", true);
+        expect(context, "workflowInput.amount > 200 || context.level == 'vip' && workflowInput.tags contains 'urgent'", true);
+        expect(context, "(workflowInput.amount > 200 || context.level == 'vip') && workflowInput.tags contains 'none'", false);
+        expect(context, "workflowInput.amount >= 120 && workflowInput.amount <= '120'", true);
+        System.out.println("[precedence] ok");
+    }
+
+    private static void matches(ExecutionContext context) {
+        expect(context, "workflowInput.user.name matches 'al.*'", true);
+        // 整体匹配，不是查找
+        expect(context, "workflowInput.user.name matches 'li'", false);
+        expect(context, "workflowInput.missing matches '.*'", false);
+        String invalid = compileError("workflowInput.user.name matches '[a-'");
+        String notLiteral = compileError("workflowInput.user.name matches context.pattern");
+        System.out.printf("[matches] invalid pattern: %s; non-literal pattern: %s%n", invalid, notLiteral);
+        check(invalid != null && notLiteral != null, "bad patterns should fail at compile time");
+    }
+
+    private static void constantFolding() throws Exception {
+        String folded = exprType("1 < 2 && ('abc' startsWith 'a' || 'x' matches '[0-9]+')");
+        String partial = exprType("1 < 2 && context.level == 'vip'");
+        System.out.printf("[constant folding] constant=%s, with variable=%s%n", folded, partial);
+        check("Constant".equals(folded), "constant expression should be folded");
+        check(!"Constant".equals(partial), "expression with variables should not be folded");
+        check(ConditionExpression.compile("1 < 2 && 'abc' startsWith 'a'").test(null, null), "folded value mismatch");
+    }
+
+    private static void properties(ExecutionContext context) {
+        expect(context, "workflowInput.missing == null", true);
+        expect(context, "workflowInput.missing.deep == null", true);
+        expect(context, "workflowInput.missing", false);
+        expect(context, "workflowInput.missing > 1", false);
+        expect(context, "workflowInput.tags[5] == null", true);
+        expect(context, "workflowInput.tags[1] == 'vip' && workflowInput.tags.size == 2", true);
+        expect(context, "workflowInput.user.active && workflowInput.user.name.length == 5", true);
+        // 只能读取 JavaBean 属性
+        expect(context, "workflowInput.user.class == null", true);
+        expect(context, "workflowInput.user.toString == null", true);
+        expect(context, "workflowInput.user.reset == null", true);
+        expect(context, "workflowInput.user.name == 'alice'", true);
+        System.out.println("[properties] ok");
+    }
+
+    private static void noBranchMatched() throws Exception {
+        Map<String, Object> branch = new HashMap<>();
+        branch.put("branches", List.of(
+                Map.of("condition", "workflowInput > 10", "targetNodeId", "a"),
+                Map.of("condition", "workflowInput > 5", "targetNodeId", "b")));
+
+        List<GNode> nodes = new ArrayList<>();
+        List<GEdge> edges = new ArrayList<>();
+        nodes.add(node("start", "start", new HashMap<>()));
+        nodes.add(node("branch", "branch", branch));
+        nodes.add(node("a", "output", new HashMap<>()));
+        nodes.add(node("b", "output", new HashMap<>()));
+        edges.add(edge("start", "branch"));
+        edges.add(edge("branch", "a"));
+        edges.add(edge("branch", "b"));
+
+        FlowEngine engine = new FlowEngine(2, 1, 0, 16);
+        engine.afterPropertiesSet();
+        try {
+            FlowPlan plan = engine.getPlanCache().getOrCompile(new Graph(nodes, edges));
+            for (int input : new int[]{1, 7}) {
+                ExecutionContext context = new ExecutionContext();
+                context.setWorkflowInput(input);
+                FlowExecutionResult result = engine.execute(plan, context, null);
+                boolean aSkipped = skipped(context, "a");
+                boolean bSkipped = skipped(context, "b");
+                System.out.printf("[no branch matched] input=%d, success=%s, a skipped=%s, b skipped=%s, next=%s%n", input,
+                        result.isSuccess(), aSkipped, bSkipped,
+                        context.getNodeExecutionResult("branch").map(NodeExecutionResult::getNextNodesToActivate).orElse(null));
+                check(result.isSuccess(), "flow should succeed");
+                check(aSkipped && bSkipped == (input == 1), "unexpected branch selection for input " + input);
+            }
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static boolean skipped(ExecutionContext context, String nodeId) {
+        return context.getNodeExecutionResult(nodeId).map(NodeExecutionResult::isSkipped).orElse(true);
+    }
+
+    private static void expect(ExecutionContext context, String source, boolean expected) {
+        boolean actual = ConditionExpression.compile(source).test(context, new NodeInputs());
+        check(actual == expected, source + " should be " + expected);
+    }
+
+    private static String compileError(String source) {
+        try {
+            ConditionExpression.compile(source);
+            return null;
+        } catch (FlowExecuteException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String exprType(String source) throws Exception {
+        Field field = ConditionExpression.class.getDeclaredField("expr");
+        field.setAccessible(true);
+        return field.get(ConditionExpression.compile(source)).getClass().getSimpleName();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    public static class User {
+        private final String name;
+        private final boolean active;
+        private int resets = 0;
+
+        User(String name, boolean active) {
+            this.name = name;
+            this.active = active;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public boolean isActive() {
+            return this.active;
+        }
+
+        /**
+         * 不是属性，条件中不能调用
+         */
+        public int reset() {
+            return ++this.resets;
+        }
+    }
+}
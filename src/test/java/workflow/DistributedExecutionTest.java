@@ -0,0 +1,249 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.distributed.PgWorkQueue;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * 分布式执行测试(需要本地安装的 PostgreSQL，连接信息与 pg.PostgresPubSubTest 相同)
+ * 1. 单实例：64 个可分布式执行的慢节点(每个 50ms)全部由提交流程的实例 A 执行
+ * 2. 两个实例：流程仍只提交给 A，空闲的实例 B 通过 SKIP LOCKED 领取一部分节点，总耗时约减半
+ * 3. 实例关闭：执行过程中关闭 C，C 领取但未完成的节点通过 close() 交还队列，由 A 重新领取，流程仍然成功
+ * 4. 实例崩溃：执行过程中断开 D 的数据库连接(不调用 close())，D 无法续约、写回结果和交还节点，
+ *    租约过期后由 A 重新放回队列并执行，这些节点被执行了两次，流程仍然成功
+ * 每次都校验流程成功和汇总节点的结果，确认节点输出经过队列传递后正确。
+ */
+public class DistributedExecutionTest {
+    static String jdbcUrl = "jdbc:postgresql://localhost:5432/postgres";
+    static String user = "postgres";
+    static String password = "postgres";
+
+    private static final int WORK_NODES = 64;
+    private static final long WORK_MILLIS = 50;
+    private static final int THREADS = 4;
+    // 较短的租约，崩溃的实例领取的节点尽快被重新放回队列
+    private static final long LEASE_MILLIS = 1500;
+
+    // 所有实例执行 dist-work 节点的总次数
+    private static final AtomicInteger executions = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        TaskNodeFactory.register("dist-work", WorkNode::new);
+        TaskNodeFactory.register("dist-sum", SumNode::new);
+
+        try (HikariDataSource dataSource = dataSource()) {
+            FlowEngine a = engine(dataSource, "instance-a");
+            try {
+                // 预热：建表、类加载、JIT
+                run("warm-up", a, null);
+                run("single instance", a, null);
+
+                FlowEngine b = engine(dataSource, "instance-b");
+                try {
+                    run("two instances", a, b);
+                } finally {
+                    b.destroy();
+                }
+
+                FlowEngine c = engine(dataSource, "instance-c");
+                new Thread(() -> {
+                    try {
+                        awaitExecuted(c);
+                        c.destroy();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }).start();
+                run("instance closed", a, c);
+
+                // D 使用独立的连接池，关闭连接池模拟实例崩溃/断网：不会经过 close() 交还领取的节点
+                HikariDataSource lostDataSource = dataSource();
+                FlowEngine d = engine(lostDataSource, "instance-d");
+                try {
+                    new Thread(() -> {
+                        awaitExecuted(d);
+                        lostDataSource.close();
+                    }).start();
+                    int executed = run("instance crashed", a, d);
+                    check(executed > WORK_NODES, "work items of the crashed instance should be requeued and executed again");
+                } finally {
+                    lostDataSource.close();
+                    d.destroy();
+                }
+            } finally {
+                a.destroy();
+            }
+        }
+    }
+
+    /**
+     * @return 本次执行中 dist-work 节点被执行的总次数
+     */
+    private static int run(String name, FlowEngine owner, FlowEngine helper) {
+        final PgWorkQueue ownerQueue = queueOf(owner);
+        final PgWorkQueue helperQueue = helper != null ? queueOf(helper) : null;
+        final long ownerExecuted = ownerQueue.getExecutedCount();
+        final long helperExecuted = helperQueue != null ? helperQueue.getExecutedCount() : 0;
+        final int executionsBefore = executions.get();
+
+        ExecutionContext context = new ExecutionContext();
+        context.setWorkflowInput(3);
+        long stime = System.nanoTime();
+        FlowExecutionResult result = owner.execute(owner.getPlanCache().getOrCompile(graph()), context, null);
+        long cost = (System.nanoTime() - stime) / 1_000_000;
+
+        Object sum = context.getNodeExecutionResult("sum").map(r -> r.getNodeOutput("output").getPayload()).orElse(null);
+        final int executed = executions.get() - executionsBefore;
+        System.out.printf("[%s] success=%s, cost=%dms, sum=%s (expected %d), executions=%d, executed by %s=%d, %s=%d%n",
+                name, result.isSuccess(), cost, sum, expectedSum(3), executed,
+                ownerQueue.getInstanceId(), ownerQueue.getExecutedCount() - ownerExecuted,
+                helperQueue != null ? helperQueue.getInstanceId() : "-",
+                helperQueue != null ? helperQueue.getExecutedCount() - helperExecuted : 0);
+        check(result.isSuccess(), "[" + name + "] flow should succeed");
+        check(sum instanceof Number && ((Number) sum).longValue() == expectedSum(3), "[" + name + "] unexpected sum: " + sum);
+        return executed;
+    }
+
+    /**
+     * 等待实例至少执行完一个领取的节点(之后它仍在持续领取)
+     */
+    private static void awaitExecuted(FlowEngine engine) {
+        final PgWorkQueue queue = queueOf(engine);
+        try {
+            for (int i = 0; i < 200 && queue.getExecutedCount() == 0; i++) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static long expectedSum(long input) {
+        return input * WORK_NODES * (WORK_NODES + 1) / 2;
+    }
+
+    private static FlowEngine engine(HikariDataSource dataSource, String instanceId) throws Exception {
+        PgWorkQueue queue = new PgWorkQueue(dataSource, instanceId);
+        queue.setMaxClaimed(THREADS);
+        queue.setClaimBatchSize(THREADS);
+        queue.setLeaseMillis(LEASE_MILLIS);
+        FlowEngine engine = new FlowEngine(THREADS, 1, 0, 16);
+        engine.setWorkQueue(queue);
+        engine.afterPropertiesSet();
+        return engine;
+    }
+
+    private static PgWorkQueue queueOf(FlowEngine engine) {
+        try {
+            java.lang.reflect.Field field = FlowEngine.class.getDeclaredField("workQueue");
+            field.setAccessible(true);
+            return (PgWorkQueue) field.get(engine);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static HikariDataSource dataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMaximumPoolSize(16);
+        return new HikariDataSource(config);
+    }
+
+    private static Graph graph() {
+        List<GNode> nodes = new ArrayList<>();
+        List<GEdge> edges = new ArrayList<>();
+        nodes.add(node("start", "start", new HashMap<>()));
+        nodes.add(node("sum", "dist-sum", new HashMap<>()));
+        for (int i = 1; i <= WORK_NODES; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put(AbstractNode.DISTRIBUTABLE_KEY, true);
+            data.put("factor", i);
+            nodes.add(node("w" + i, "dist-work", data));
+            edges.add(edge("start", "w" + i));
+            edges.add(edge("w" + i, "sum"));
+        }
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    /**
+     * 可分布式执行的慢节点：输出 输入 x factor
+     */
+    private static class WorkNode extends AbstractNode {
+        WorkNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "dist-work";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            executions.incrementAndGet();
+            Thread.sleep(WORK_MILLIS);
+            long input = inputs.getInput(Number.class).longValue();
+            long factor = ((Number) this.gNode.getData().get("factor")).longValue();
+            return NodeExecutionResult.success().addNodeOutput("output", new NodeOutput(input * factor));
+        }
+    }
+
+    /**
+     * 在提交流程的实例中汇总所有上游的输出
+     */
+    private static class SumNode extends AbstractNode {
+        SumNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "dist-sum";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            long sum = 0;
+            for (NodeOutput out : inputs.getAllInputs("input")) {
+                sum += out.getPayload(Number.class).longValue();
+            }
+            return NodeExecutionResult.success().addNodeOutput("output", new NodeOutput(sum));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+
+/**
+ * 多租户公平调度测试：租户 batch 提交一个 20000 个节点同时就绪的大流程(每个节点 1ms)，
+ * 随后租户 interactive 依次提交 20 个 3 节点的小流程，统计小流程的耗时。
+ * 关闭公平调度时小流程的节点排在大流程已提交的节点后面；开启后两个租户轮流使用工作线程。
+ */
+public class FairSchedulingTest {
+    private static final int BIG_NODES = 20_000;
+    private static final int SMALL_RUNS = 20;
+    private static final int WORKER_THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        TaskNodeFactory.register("fair-sleep", SleepNode::new);
+        run(false);
+        run(true);
+    }
+
+    private static void run(boolean fair) throws Exception {
+        FlowEngine engine = new FlowEngine(WORKER_THREADS, 1, 0, 16);
+        // 单次执行不限制执行槽位，大流程的就绪节点会一次全部提交
+        engine.setMaxInFlightPerRun(BIG_NODES);
+        engine.setFairSchedulingEnabled(fair);
+        engine.afterPropertiesSet();
+        try {
+            FlowPlan bigPlan = engine.getPlanCache().getOrCompile(fanOut(BIG_NODES));
+            FlowPlan smallPlan = engine.getPlanCache().getOrCompile(chain(3));
+
+            ExecutionContext bigContext = new ExecutionContext();
+            bigContext.setTenant("batch");
+            long bigStart = System.nanoTime();
+            FlowRun big = engine.submit(bigPlan, bigContext, null);
+            Thread.sleep(50);
+
+            long total = 0;
+            long max = 0;
+            for (int i = 0; i < SMALL_RUNS; i++) {
+                ExecutionContext context = new ExecutionContext();
+                context.setTenant("interactive");
+                long stime = System.nanoTime();
+                engine.execute(smallPlan, context, null);
+                long cost = (System.nanoTime() - stime) / 1_000_000;
+                total += cost;
+                max = Math.max(max, cost);
+            }
+            FlowExecutionResult bigResult = big.getResultFuture().get(5, TimeUnit.MINUTES);
+            System.out.printf("fair=%s: small flows avg=%dms max=%dms, big flow success=%s cost=%dms%n",
+                    fair, total / SMALL_RUNS, max, bigResult.isSuccess(), (System.nanoTime() - bigStart) / 1_000_000);
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static Graph fanOut(int n) {
+        List<GNode> nodes = new ArrayList<>(n + 1);
+        List<GEdge> edges = new ArrayList<>(n);
+        nodes.add(node("start", "start"));
+        for (int i = 0; i < n; i++) {
+            nodes.add(node("n" + i, "fair-sleep"));
+            edges.add(edge("start", "n" + i));
+        }
+        return new Graph(nodes, edges);
+    }
+
+    private static Graph chain(int n) {
+        List<GNode> nodes = new ArrayList<>(n);
+        List<GEdge> edges = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            nodes.add(node("c" + i, "fair-sleep"));
+            if (i > 0) {
+                edges.add(edge("c" + (i - 1), "c" + i));
+            }
+        }
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(new HashMap<>());
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    private static class SleepNode extends AbstractNode {
+        SleepNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "fair-sleep";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            Thread.sleep(1);
+            return NodeExecutionResult.success();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package workflow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.HttpNode;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HttpNode 吞吐量测试：进程内的 HTTP 服务(每个请求延迟 50ms 响应)，一个流程中 1000 个 HTTP 节点同时就绪
+ * 1. 同步调用：节点在工作线程中阻塞等待响应，同时进行的请求数受工作线程数限制
+ * 2. 异步调用：节点通过共享的 OkHttpClient enqueue 请求，工作线程不等待响应
+ */
+public class HttpNodeThroughputTest {
+    private static final int REQUESTS = 1000;
+    private static final int WORKER_THREADS = 8;
+    private static final long RESPONSE_DELAY_MILLIS = 50;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        final AtomicInteger served = new AtomicInteger(0);
+        final ExecutorService serverExecutor = Executors.newFixedThreadPool(REQUESTS + 16);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), REQUESTS);
+        server.setExecutor(serverExecutor);
+        server.createContext("/echo", exchange -> {
+            try {
+                Thread.sleep(RESPONSE_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = exchange.getRequestURI().getQuery().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            } catch (IOException ignore) {
+                // client closed
+            }
+            served.incrementAndGet();
+        });
+        server.start();
+
+        // 同步调用的对照：在工作线程中阻塞等待 HttpNode 的结果
+        TaskNodeFactory.register("http-blocking", gNode -> new BlockingNode(new HttpNode(gNode)));
+
+        final String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+        FlowEngine engine = new FlowEngine(WORKER_THREADS, 1, 0, 16);
+        engine.afterPropertiesSet();
+        try {
+            for (int r = 0; r < ROUNDS; r++) {
+                System.out.printf("Round %d: blocking %s%n", r + 1, run(engine, fanOutGraph("http-blocking", baseUrl)));
+                System.out.printf("Round %d: async    %s%n", r + 1, run(engine, fanOutGraph("http", baseUrl)));
+            }
+            System.out.println("served=" + served.get());
+        } finally {
+            engine.destroy();
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    private static String run(FlowEngine engine, Graph graph) {
+        ExecutionContext context = new ExecutionContext();
+        long stime = System.nanoTime();
+        FlowExecutionResult result = engine.execute(engine.getPlanCache().getOrCompile(graph), context, null);
+        long costMillis = (System.nanoTime() - stime) / 1_000_000;
+
+        int ok = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            NodeExecutionResult nodeResult = context.getNodeExecutionResult("h" + i).orElse(null);
+            if (nodeResult != null && nodeResult.isSuccess()
+                    && ("i=" + i).equals(nodeResult.getNodeOutput(TaskNode.DEFAULT_OUTPUT_PORT_NAME).getPayload())) {
+                ok++;
+            }
+        }
+        return String.format("requests=%d, success=%s, ok=%d, cost=%dms, throughput=%.0f req/s",
+                REQUESTS, result.isSuccess(), ok, costMillis, REQUESTS * 1000.0 / Math.max(1, costMillis));
+    }
+
+    private static Graph fanOutGraph(String httpType, String baseUrl) {
+        List<GNode> nodes = new ArrayList<>(REQUESTS + 1);
+        List<GEdge> edges = new ArrayList<>(REQUESTS);
+        nodes.add(node("start", "start", new HashMap<>()));
+        for (int i = 0; i < REQUESTS; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("url", baseUrl + "?i=" + i);
+            data.put("method", "GET");
+            String id = "h" + i;
+            nodes.add(node(id, httpType, data));
+            edges.add(edge("start", id));
+        }
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    /**
+     * 只通过同步 call() 执行的节点
+     */
+    private static final class BlockingNode implements TaskNode {
+        private final HttpNode delegate;
+
+        BlockingNode(HttpNode delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getId() {
+            return this.delegate.getId();
+        }
+
+        @Override
+        public String getType() {
+            return "http-blocking";
+        }
+
+        @Override
+        public void setTaskState(TaskState taskState) {
+            this.delegate.setTaskState(taskState);
+        }
+
+        @Override
+        public TaskState getTaskState() {
+            return this.delegate.getTaskState();
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            return this.delegate.call(context, inputs);
+        }
+    }
+}
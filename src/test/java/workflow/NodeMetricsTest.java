@@ -0,0 +1,144 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.metrics.LatencyHistogram;
+import com.myweb.workflow.metrics.NodeMetrics;
+import com.myweb.workflow.nodes.AbstractNode;
+
+/**
+ * 节点执行指标测试
+ * 1. 直方图精度：随机耗时的百分位数与精确值对比
+ * 2. 线程池饱和：4 个工作线程执行 64 个同时就绪的慢节点，排队时间应体现在 readyToSubmitted 上，
+ *    失败两次后成功的节点应记录 2 次重试
+ */
+public class NodeMetricsTest {
+    private static final int SLOW_NODES = 64;
+    private static final long SLOW_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        histogramAccuracy();
+        poolSaturation();
+    }
+
+    private static void histogramAccuracy() {
+        final Random random = new Random(42);
+        final long[] values = new long[100_000];
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // 对数分布：1us ~ 10s
+            values[i] = (long) Math.pow(10, random.nextDouble() * 7);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long approx = histogram.getValueAtPercentile(p);
+            System.out.printf("p%s exact=%d histogram=%d error=%.2f%%%n", p, exact, approx, (approx - exact) * 100.0 / exact);
+        }
+        System.out.println("max=" + histogram.getMax() + " exactMax=" + values[values.length - 1]);
+    }
+
+    private static void poolSaturation() throws Exception {
+        TaskNodeFactory.register("metrics-slow", SlowNode::new);
+        TaskNodeFactory.register("metrics-flaky", FlakyNode::new);
+
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.setMetricsEnabled(true);
+        engine.afterPropertiesSet();
+        try {
+            FlowPlan plan = engine.getPlanCache().getOrCompile(graph());
+            long stime = System.nanoTime();
+            FlowExecutionResult result = engine.execute(plan, new ExecutionContext(), null);
+            System.out.printf("success=%s, cost=%dms%n", result.isSuccess(), (System.nanoTime() - stime) / 1_000_000);
+
+            for (Map.Entry<String, NodeMetrics.Snapshot> entry : engine.getNodeMetrics().snapshot().entrySet()) {
+                System.out.println(entry.getKey() + " " + entry.getValue());
+            }
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static Graph graph() {
+        List<GNode> nodes = new ArrayList<>();
+        List<GEdge> edges = new ArrayList<>();
+        nodes.add(node("start", "start"));
+        for (int i = 0; i < SLOW_NODES; i++) {
+            nodes.add(node("s" + i, "metrics-slow"));
+            edges.add(edge("start", "s" + i));
+        }
+        nodes.add(node("flaky", "metrics-flaky"));
+        edges.add(edge("start", "flaky"));
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(new HashMap<>());
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    private static class SlowNode extends AbstractNode {
+        SlowNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "metrics-slow";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            Thread.sleep(SLOW_MILLIS);
+            return NodeExecutionResult.success();
+        }
+    }
+
+    private static class FlakyNode extends AbstractNode {
+        private final AtomicInteger calls = new AtomicInteger(0);
+
+        FlakyNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "metrics-flaky";
+        }
+
+        @Override
+        public long getRetryDelayMillis() {
+            return 10;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            if (this.calls.incrementAndGet() <= 2) {
+                throw new IllegalStateException("flaky call " + this.calls.get());
+            }
+            return NodeExecutionResult.success();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package workflow;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.cache.NodeResultCache;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+
+/**
+ * 大输出数据溢写测试
+ * 1. 阈值：byte[] 按长度、文本按字符数 × 2 计算，未达到阈值或不支持的类型保持原样
+ * 2. 视图：ASCII 文本/非 ASCII 文本/二进制数据的 CharSequence、Reader、ByteBuffer、InputStream、String/byte[] 视图
+ * 3. 流程中：开启释放输出后，下游读取完溢写的输出，临时文件即被删除；
+ *    溢写的结果不写入节点结果缓存(第二次执行仍然调用节点)
+ */
+public class PayloadSpillTest {
+    private static final int THRESHOLD = 1000;
+
+    private static final AtomicInteger producerCalls = new AtomicInteger();
+    private static final AtomicLong consumedChars = new AtomicLong();
+    private static volatile Path spillDir;
+
+    public static void main(String[] args) throws Exception {
+        final Path dir = Files.createTempDirectory("flow-spill");
+        spillDir = dir;
+        try {
+            threshold(dir);
+            views(dir);
+            releaseInFlow(dir);
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(f -> f.toFile().delete());
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void threshold(Path dir) {
+        PayloadSpiller spiller = new PayloadSpiller(THRESHOLD, dir);
+        NodeOutput smallBytes = new NodeOutput(new byte[THRESHOLD - 1]);
+        NodeOutput bigBytes = new NodeOutput(new byte[THRESHOLD]);
+        NodeOutput smallText = new NodeOutput("a".repeat(THRESHOLD / 2 - 1));
+        NodeOutput bigText = new NodeOutput("a".repeat(THRESHOLD / 2));
+        NodeOutput map = new NodeOutput(Map.of("text", "a".repeat(THRESHOLD * 10)));
+
+        System.out.printf("[threshold] bytes %d/%d, text %d/%d chars, map: spilled=%s/%s, %s/%s, %s%n",
+                THRESHOLD - 1, THRESHOLD, THRESHOLD / 2 - 1, THRESHOLD / 2,
+                spiller.spill(smallBytes) instanceof SpilledNodeOutput, spiller.spill(bigBytes) instanceof SpilledNodeOutput,
+                spiller.spill(smallText) instanceof SpilledNodeOutput, spiller.spill(bigText) instanceof SpilledNodeOutput,
+                spiller.spill(map) instanceof SpilledNodeOutput);
+        check(spiller.spill(smallBytes) == smallBytes && spiller.spill(smallText) == smallText, "payload below threshold should stay in memory");
+        check(spiller.spill(bigBytes) instanceof SpilledNodeOutput && spiller.spill(bigText) instanceof SpilledNodeOutput,
+                "payload reaching threshold should be spilled");
+        check(spiller.spill(map) == map, "unsupported payload type should stay in memory");
+    }
+
+    private static void views(Path dir) throws Exception {
+        PayloadSpiller spiller = new PayloadSpiller(THRESHOLD, dir);
+
+        String ascii = "abcdefghij".repeat(1000);
+        SpilledNodeOutput asciiOut = (SpilledNodeOutput) spiller.spill(new NodeOutput(ascii));
+        CharSequence asciiView = asciiOut.getPayload(CharSequence.class);
+        char[] head = new char[10];
+        try (Reader reader = asciiOut.getPayload(Reader.class)) {
+            reader.read(head);
+        }
+        System.out.printf("[views] ascii: length=%d, bytes=%d, sub=%s, reader=%s%n",
+                asciiView.length(), asciiOut.getLength(), asciiView.subSequence(12, 15), new String(head));
+        check(asciiView.length() == ascii.length() && ascii.contentEquals(asciiView), "ascii CharSequence view mismatch");
+        check("cde".contentEquals(asciiView.subSequence(12, 15)) && "abcdefghij".equals(new String(head)), "ascii sub view mismatch");
+        check(ascii.equals(asciiOut.getPayload()) && ascii.equals(asciiOut.getPayload(String.class)), "ascii String view mismatch");
+
+        String unicode = "héllo😀".repeat(500);
+        SpilledNodeOutput unicodeOut = (SpilledNodeOutput) spiller.spill(new NodeOutput(unicode));
+        System.out.printf("[views] unicode: chars=%d, bytes=%d%n", unicode.length(), unicodeOut.getLength());
+        check(unicode.contentEquals(unicodeOut.getPayload(CharSequence.class)), "unicode CharSequence view mismatch");
+        check(unicode.equals(unicodeOut.getPayload(String.class)), "unicode String view mismatch");
+
+        byte[] bytes = new byte[THRESHOLD * 5];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        SpilledNodeOutput binaryOut = (SpilledNodeOutput) spiller.spill(new NodeOutput(bytes));
+        ByteBuffer mapped = binaryOut.getPayload(ByteBuffer.class);
+        long streamed;
+        try (InputStream in = binaryOut.getPayload(InputStream.class)) {
+            streamed = in.transferTo(OutputStream.nullOutputStream());
+        }
+        boolean rejected = false;
+        try {
+            binaryOut.getPayload(String.class);
+        } catch (ClassCastException e) {
+            rejected = true;
+        }
+        System.out.printf("[views] binary: mapped=%d, last=%d, streamed=%d, String rejected=%s%n",
+                mapped.remaining(), mapped.get(bytes.length - 1), streamed, rejected);
+        check(mapped.isReadOnly() && mapped.remaining() == bytes.length && mapped.get(bytes.length - 1) == bytes[bytes.length - 1],
+                "binary ByteBuffer view mismatch");
+        check(streamed == bytes.length && java.util.Arrays.equals(bytes, binaryOut.getPayload(byte[].class)), "binary stream view mismatch");
+        check(rejected, "binary payload should not be readable as String");
+    }
+
+    private static void releaseInFlow(Path dir) throws Exception {
+        TaskNodeFactory.register("spill-produce", ProducerNode::new);
+        TaskNodeFactory.register("spill-consume", ConsumerNode::new);
+        clean(dir);
+
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.setPayloadSpiller(new PayloadSpiller(THRESHOLD, dir));
+        engine.setReleaseOutputs(true);
+        engine.setNodeResultCache(new NodeResultCache());
+        engine.afterPropertiesSet();
+        try {
+            for (int round = 1; round <= 2; round++) {
+                ExecutionContext context = new ExecutionContext();
+                context.setWorkflowInput(round);
+                FlowExecutionResult result = engine.execute(engine.getPlanCache().getOrCompile(graph()), context, null);
+                long filesLeft = countFiles(dir);
+                System.out.printf("[release] round=%d, success=%s, consumed=%d chars, files left=%d, producer calls=%d, spilled=%d%n",
+                        round, result.isSuccess(), consumedChars.get(), filesLeft, producerCalls.get(), engine.getStats().getSpilledOutputs());
+                check(result.isSuccess(), "flow should succeed");
+                check(filesLeft == 0, "spill file should be deleted once all consumers are done");
+            }
+            // 溢写的结果不进入缓存，两次执行都调用了节点
+            check(producerCalls.get() == 2, "spilled result should not be cached");
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static long countFiles(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static void clean(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> f.toFile().delete());
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * start -> big(可缓存) -> c1, c2
+     */
+    private static Graph graph() {
+        List<GNode> nodes = new ArrayList<>();
+        List<GEdge> edges = new ArrayList<>();
+        Map<String, Object> producer = new HashMap<>();
+        producer.put(AbstractNode.CACHEABLE_KEY, true);
+        nodes.add(node("start", "start", new HashMap<>()));
+        nodes.add(node("big", "spill-produce", producer));
+        nodes.add(node("c1", "spill-consume", new HashMap<>()));
+        nodes.add(node("c2", "spill-consume", new HashMap<>()));
+        edges.add(edge("start", "big"));
+        edges.add(edge("big", "c1"));
+        edges.add(edge("big", "c2"));
+        return new Graph(nodes, edges);
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    /**
+     * 输出超过阈值的文本(与流程输入无关，输入相同即可命中缓存)
+     */
+    private static class ProducerNode extends AbstractNode {
+        ProducerNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "spill-produce";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            producerCalls.incrementAndGet();
+            return NodeExecutionResult.success().addNodeOutput("output", new NodeOutput("x".repeat(THRESHOLD * 10)));
+        }
+    }
+
+    /**
+     * 通过 CharSequence 视图读取输入，此时临时文件必须存在
+     */
+    private static class ConsumerNode extends AbstractNode {
+        ConsumerNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "spill-consume";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            NodeOutput input = inputs.getAllInputs("input").get(0);
+            if (!(input instanceof SpilledNodeOutput spilled) || !Files.exists(spilled.getFile())
+                    || !spilled.getFile().startsWith(spillDir)) {
+                throw new IllegalStateException("Expected a spilled input but was " + input);
+            }
+            consumedChars.addAndGet(input.getPayload(CharSequence.class).length());
+            return NodeExecutionResult.success();
+        }
+    }
+}
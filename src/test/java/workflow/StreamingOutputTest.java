@@ -0,0 +1,224 @@
+package workflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.myweb.workflow.*;
+import com.myweb.workflow.graph.GEdge;
+import com.myweb.workflow.graph.GNode;
+import com.myweb.workflow.graph.Graph;
+import com.myweb.workflow.nodes.AbstractNode;
+
+/**
+ * 流式输出测试：start → producer → 若干个 consumer
+ * 1. 背压：缓冲区为 4，消费者每项等待 1ms，生产者领先消费者的数据项不超过两个缓冲区
+ * 2. 取消：消费过程中取消流程，阻塞在 emit() 的生产者应立即结束
+ * 3. 订阅闸门：下游节点在超时之内订阅时收到全部数据；超时之后才订阅的节点失败，不会拿到缺少开头数据的数据流，
+ *    按时订阅的节点仍然收到全部数据
+ */
+public class StreamingOutputTest {
+    private static final int BUFFER = 4;
+
+    // 生产者已产生的数据项数 / 生产者结束时的异常
+    private static final AtomicInteger emitted = new AtomicInteger();
+    private static final AtomicReference<Throwable> producerError = new AtomicReference<>();
+    private static final Map<String, Integer> maxLead = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        TaskNodeFactory.register("stream-produce", ProducerNode::new);
+        TaskNodeFactory.register("stream-consume", ConsumerNode::new);
+
+        FlowEngine engine = new FlowEngine(4, 1, 0, 16);
+        engine.afterPropertiesSet();
+        try {
+            backpressure(engine);
+            cancellation(engine);
+            gate(engine);
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    private static void backpressure(FlowEngine engine) throws Exception {
+        FlowRun run = start(engine, 200, 10_000, Map.of("c", consumer(1, 0)));
+        FlowExecutionResult result = run.getResultFuture().get(20, TimeUnit.SECONDS);
+        System.out.printf("[backpressure] success=%s, consumed=%s, max lead=%d (buffer=%d)%n",
+                result.isSuccess(), payload(run, "c"), maxLead.get("c"), BUFFER);
+        check(result.isSuccess() && Integer.valueOf(200).equals(payload(run, "c")), "consumer should receive all items");
+        // 发布者缓冲区 + 迭代器缓冲区 + 正在处理的一项
+        check(maxLead.get("c") <= BUFFER * 2 + 2, "producer ran ahead of the consumer");
+    }
+
+    private static void cancellation(FlowEngine engine) throws Exception {
+        FlowRun run = start(engine, Integer.MAX_VALUE, 10_000, Map.of("c", consumer(1, 0)));
+        Thread.sleep(200);
+        run.cancel();
+        FlowExecutionResult result = run.getResultFuture().get(10, TimeUnit.SECONDS);
+
+        long stime = System.nanoTime();
+        while (producerError.get() == null && System.nanoTime() - stime < TimeUnit.SECONDS.toNanos(2)) {
+            Thread.sleep(10);
+        }
+        System.out.printf("[cancellation] success=%s, emitted=%d, producer ended with %s in %dms%n",
+                result.isSuccess(), emitted.get(), producerError.get(), (System.nanoTime() - stime) / 1_000_000);
+        check(!result.isSuccess(), "cancelled run should not succeed");
+        check(producerError.get() instanceof IllegalStateException, "blocked producer should be released by cancel()");
+    }
+
+    private static void gate(FlowEngine engine) throws Exception {
+        // 订阅晚于第一个数据项，但在闸门超时之内：两者都收到全部数据
+        FlowRun run = start(engine, 50, 1000, Map.of("early", consumer(0, 0), "late", consumer(0, 200)));
+        FlowExecutionResult result = run.getResultFuture().get(10, TimeUnit.SECONDS);
+        System.out.printf("[gate] success=%s, early=%s, late=%s%n", result.isSuccess(), payload(run, "early"), payload(run, "late"));
+        check(result.isSuccess() && Integer.valueOf(50).equals(payload(run, "late")), "late consumer within the gate should not lose items");
+
+        // 订阅晚于闸门超时：晚到的节点失败，按时订阅的节点不受影响
+        run = start(engine, 50, 100, Map.of("early", consumer(0, 0), "late", consumer(0, 500)));
+        result = run.getResultFuture().get(10, TimeUnit.SECONDS);
+        String lateError = run.getContext().getNodeExecutionResult("late").map(NodeExecutionResult::getErrorMessage).orElse(null);
+        System.out.printf("[gate timeout] success=%s, early=%s, late error=%s%n", result.isSuccess(), payload(run, "early"), lateError);
+        check(!result.isSuccess() && lateError != null && lateError.contains("Timeout"), "late consumer should fail after the gate timeout");
+        check(Integer.valueOf(50).equals(payload(run, "early")), "consumer subscribed in time should receive all items");
+    }
+
+    private static FlowRun start(FlowEngine engine, int items, long gateTimeoutMillis, Map<String, Map<String, Object>> consumers) {
+        emitted.set(0);
+        producerError.set(null);
+        maxLead.clear();
+
+        List<GNode> nodes = new ArrayList<>();
+        List<GEdge> edges = new ArrayList<>();
+        Map<String, Object> producer = new HashMap<>();
+        producer.put("items", items);
+        producer.put("gateTimeoutMillis", gateTimeoutMillis);
+        nodes.add(node("start", "start", new HashMap<>()));
+        nodes.add(node("p", "stream-produce", producer));
+        edges.add(edge("start", "p"));
+        consumers.forEach((id, data) -> {
+            nodes.add(node(id, "stream-consume", data));
+            edges.add(edge("p", id));
+        });
+        return engine.submit(new Graph(nodes, edges), new ExecutionContext(), null);
+    }
+
+    private static Map<String, Object> consumer(long itemMillis, long subscribeDelayMillis) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("itemMillis", itemMillis);
+        data.put("subscribeDelayMillis", subscribeDelayMillis);
+        return data;
+    }
+
+    private static Object payload(FlowRun run, String nodeId) {
+        return run.getContext().getNodeExecutionResult(nodeId)
+                .map(r -> r.getNodeOutput("output"))
+                .map(NodeOutput::getPayload)
+                .orElse(null);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static GNode node(String id, String type, Map<String, Object> data) {
+        GNode node = new GNode();
+        node.setId(id);
+        node.setType(type);
+        node.setData(data);
+        return node;
+    }
+
+    private static GEdge edge(String source, String target) {
+        GEdge edge = new GEdge();
+        edge.setId(source + "-" + target);
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
+    }
+
+    private static long longData(GNode gNode, String key) {
+        return ((Number) gNode.getData().get(key)).longValue();
+    }
+
+    /**
+     * 返回流式输出，由独立线程产生 items 个整数
+     */
+    private static class ProducerNode extends AbstractNode {
+        ProducerNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "stream-produce";
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) {
+            final int items = (int) longData(this.gNode, "items");
+            final StreamingNodeOutput<Integer> stream = new StreamingNodeOutput<>(ForkJoinPool.commonPool(), BUFFER,
+                    longData(this.gNode, "gateTimeoutMillis"));
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < items; i++) {
+                        stream.emit(i);
+                        emitted.incrementAndGet();
+                    }
+                    stream.complete();
+                } catch (Throwable e) {
+                    producerError.set(e);
+                }
+            }, "stream-producer").start();
+            return NodeExecutionResult.success().addNodeOutput("output", stream);
+        }
+    }
+
+    /**
+     * 延迟 subscribeDelayMillis 后订阅，每项数据处理 itemMillis，输出收到的数据项数
+     */
+    private static class ConsumerNode extends AbstractNode {
+        ConsumerNode(GNode gNode) {
+            super(gNode);
+        }
+
+        @Override
+        public String getType() {
+            return "stream-consume";
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return 0;
+        }
+
+        @Override
+        public NodeExecutionResult call(ExecutionContext context, NodeInputs inputs) throws Exception {
+            Thread.sleep(longData(this.gNode, "subscribeDelayMillis"));
+            final long itemMillis = longData(this.gNode, "itemMillis");
+            final StreamingNodeOutput<Integer> stream = inputs.getStream("input");
+            final Iterator<Integer> it = stream.iterator(getId());
+            int count = 0;
+            while (it.hasNext()) {
+                int item = it.next();
+                if (item != count) {
+                    throw new IllegalStateException("Expected item " + count + " but was " + item);
+                }
+                count++;
+                maxLead.merge(getId(), emitted.get() - count, Math::max);
+                if (itemMillis > 0) {
+                    Thread.sleep(itemMillis);
+                }
+            }
+            return NodeExecutionResult.success().addNodeOutput("output", new NodeOutput(count));
+        }
+    }
+}